@@ -0,0 +1,53 @@
+package com.danielmcheng1.wikiracing;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs every benchmark, the CrawlerState ones at 1 to 64 threads (each with the state in memory and on a state server),
+ * and writes all results to one JMH JSON file that CI can diff against a baseline to gate regressions.
+ * <p>
+ * Usage: java -jar target/benchmarks.jar [results.json]
+ * For ad hoc runs use the standard JMH command line instead: java -cp target/benchmarks.jar org.openjdk.jmh.Main -h
+ */
+public class BenchmarkRunner {
+    private static final int[] stateThreads = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws RunnerException, FileNotFoundException {
+        String resultsFile = args.length > 0 ? args[0] : "jmh-results.json";
+        List<RunResult> results = new ArrayList<RunResult>();
+
+        results.addAll(run(new OptionsBuilder()
+                .include(ResponseParsingBenchmark.class.getSimpleName())
+                .include(PathBenchmark.class.getSimpleName())
+                .include(EndToEndCrawlBenchmark.class.getSimpleName())
+                .include(ParallelBfsBenchmark.class.getSimpleName())
+                .include(CompressedLinkGraphBenchmark.class.getSimpleName())
+                .build()));
+        for (int threads : stateThreads) {
+            results.addAll(run(new OptionsBuilder()
+                    .include(CrawlerStateBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()));
+        }
+
+        try (PrintStream out = new PrintStream(resultsFile)) {
+            ResultFormatFactory.getInstance(ResultFormatType.JSON, out).writeOut(results);
+        }
+        System.out.println("Wrote " + results.size() + " benchmark results to " + resultsFile);
+    }
+
+    private static List<RunResult> run(Options options) throws RunnerException {
+        return new ArrayList<RunResult>(new Runner(options).run());
+    }
+}
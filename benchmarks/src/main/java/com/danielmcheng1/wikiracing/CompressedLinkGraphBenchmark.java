@@ -0,0 +1,69 @@
+package com.danielmcheng1.wikiracing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding one page's links from a memory-mapped CompressedLinkGraph against reading them out of the same graph as
+ * uncompressed CSR. The compression ratio is printed at setup, since JMH only reports times.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressedLinkGraphBenchmark {
+    private LinkGraph graph;
+    private CompressedLinkGraph compressed;
+    private File graphFile;
+    private Random random;
+
+    @Setup
+    public void setUp() throws IOException {
+        Util.setAllLogLevels(java.util.logging.Level.WARNING);
+        graph = Fixtures.getGraph();
+        graphFile = File.createTempFile("benchmark", ".wrg");
+        CompressedLinkGraph.write(graph, graphFile.getPath());
+        compressed = new CompressedLinkGraph(graphFile.getPath());
+        long csrBytes = 8L * graph.getNumLinks() + 8L * (graph.getNumPages() + 1);
+        System.out.println(String.format("Compressed %d links to %d bytes, %.2f bytes a link in each direction, %.2fx smaller than CSR",
+                graph.getNumLinks(), compressed.getNumBytes(), compressed.getNumBytes() / 2.0 / graph.getNumLinks(),
+                (double) csrBytes / compressed.getNumBytes()));
+        random = new Random(Fixtures.seed);
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphFile.delete();
+    }
+
+    @Benchmark
+    public int[] decodeCompressed() {
+        return compressed.getLinks(random.nextInt(Fixtures.numPages), Direction.FORWARDS);
+    }
+
+    @Benchmark
+    public int[] readCsr() {
+        int page = random.nextInt(Fixtures.numPages);
+        int[] links = new int[graph.getNumLinks(page, Direction.FORWARDS)];
+        for (int i = 0; i < links.length; i++) {
+            links[i] = graph.getLink(page, Direction.FORWARDS, i);
+        }
+        return links;
+    }
+}
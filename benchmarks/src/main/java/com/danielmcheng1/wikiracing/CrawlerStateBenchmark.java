@@ -0,0 +1,147 @@
+package com.danielmcheng1.wikiracing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention on the shared CrawlerState, which every crawler thread hits for each page it expands, with the state in
+ * memory and on a state server (an in-process RespServer, so the round trips are over loopback). The BenchmarkRunner
+ * runs this at 1 to 64 threads; run it directly with -t to pick a thread count.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrawlerStateBenchmark {
+    // links on a page, and titles in a Wiki API batch, at the API's limit
+    private static final int linksPerPage = 500;
+
+    @State(Scope.Benchmark)
+    public static class SharedState {
+        @Param({"memory", "server"})
+        String store;
+
+        RespServer server;
+        RespClient client;
+        CrawlerState crawlerState;
+
+        @Setup(Level.Trial)
+        public void startServer() throws IOException {
+            if ("server".equals(store)) {
+                server = new RespServer(0);
+                client = new RespClient(server.getAddress());
+            }
+        }
+
+        // start each iteration from an empty state so the visited maps don't grow without bound
+        @Setup(Level.Iteration)
+        public void setUp() {
+            CrawlerStateStore stateStore = "server".equals(store) ? RespCrawlerStateStore.forCrawl(client, "benchmark") : new InMemoryCrawlerStateStore();
+            crawlerState = new CrawlerState("benchmark", CrawlerState.FrontierOrder.FIFO, stateStore);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            crawlerState.releaseQueues();
+        }
+
+        @TearDown(Level.Trial)
+        public void stopServer() {
+            if (server != null) {
+                client.close();
+                server.close();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        // titles are unique per thread so that every discovery is a new page
+        private static int nextThread;
+        final String prefix;
+        final WebNode parent;
+        long next;
+
+        public ThreadState() {
+            synchronized (ThreadState.class) {
+                prefix = "Thread " + (nextThread++) + " page ";
+            }
+            parent = new WebNode(prefix + "parent", null, Direction.FORWARDS, 0);
+        }
+
+        WebNode nextNode(Direction direction) {
+            return new WebNode(prefix + (next++), parent, direction, 1);
+        }
+
+        List<WebNode> nextPage(Direction direction) {
+            List<WebNode> page = new ArrayList<WebNode>(linksPerPage);
+            for (int i = 0; i < linksPerPage; i++) {
+                page.add(nextNode(direction));
+            }
+            return page;
+        }
+    }
+
+    // what Crawler.addOnePageToVisit does with each page: mark its links visited, queue the new ones, and look for
+    // them in the other direction
+    @Benchmark
+    public int discoverPage(SharedState shared, ThreadState thread) {
+        CrawlerState crawlerState = shared.crawlerState;
+        List<WebNode> page = thread.nextPage(Direction.FORWARDS);
+        boolean[] added = crawlerState.markAsVisited(page);
+        List<WebNode> newNodes = new ArrayList<WebNode>(page.size());
+        for (int i = 0; i < added.length; i++) {
+            if (added[i]) {
+                newNodes.add(page.get(i));
+            }
+        }
+        crawlerState.addToVisit(newNodes);
+        return crawlerState.visitedFromOtherEnd(newNodes).size();
+    }
+
+    // re-checking a page whose links were all visited already, the common case once a crawl is a few levels deep
+    @Benchmark
+    public boolean revisitPage(SharedState shared, ThreadState thread) {
+        List<WebNode> page = new ArrayList<WebNode>(linksPerPage);
+        for (int i = 0; i < linksPerPage; i++) {
+            page.add(new WebNode(thread.prefix + "revisited " + i, thread.parent, Direction.BACKWARDS, 1));
+        }
+        return shared.crawlerState.markAsVisited(page)[0];
+    }
+
+    // a crawler thread pulling a batch off the queue and marking it processed
+    @Benchmark
+    public int dequeueBatch(SharedState shared, ThreadState thread) {
+        CrawlerState crawlerState = shared.crawlerState;
+        List<WebNode> nodes = new ArrayList<WebNode>(Crawler.maxBatchSize);
+        for (int i = 0; i < Crawler.maxBatchSize; i++) {
+            nodes.add(thread.nextNode(Direction.BACKWARDS));
+        }
+        // a shared store builds the nodes it dequeues from the ones visited here
+        crawlerState.markAsVisited(nodes);
+        crawlerState.addToVisit(nodes);
+        HashMap<String, WebNode> batch = crawlerState.getNextBatchToVisit(Direction.BACKWARDS);
+        for (WebNode wN : batch.values()) {
+            crawlerState.removeNodeFromIsProcessing(wN);
+        }
+        return batch.size();
+    }
+}
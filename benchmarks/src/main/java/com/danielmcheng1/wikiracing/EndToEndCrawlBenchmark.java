@@ -0,0 +1,60 @@
+package com.danielmcheng1.wikiracing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole races through CrawlerController against an in-process MockLinkSource, with and without simulated API
+ * latency. The link cache is disabled so that every race does the same amount of work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndCrawlBenchmark {
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    private WikiTransport liveTransport;
+    private LinkGraph graph;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        Util.setAllLogLevels(java.util.logging.Level.WARNING);
+        graph = Fixtures.getGraph();
+        liveTransport = WikiRetriever.getTransport();
+        WikiRetriever.setTransport(new MockLinkSource(graph, latencyMillis));
+        random = new Random(Fixtures.seed);
+    }
+
+    @TearDown
+    public void tearDown() {
+        WikiRetriever.setTransport(liveTransport);
+    }
+
+    @Benchmark
+    public CrawlerResult race() {
+        String sourceTitle = graph.getTitle(random.nextInt(graph.getNumPages()));
+        String destTitle = graph.getTitle(random.nextInt(graph.getNumPages()));
+        CrawlerController crawlerController = new CrawlerController(new CrawlOptions(sourceTitle, destTitle).timeoutSeconds((long) 15).linkCache(null).pathStore(null));
+        crawlerController.setPrintProgress(false);
+        crawlerController.runCrawl();
+        return crawlerController.getResult();
+    }
+}
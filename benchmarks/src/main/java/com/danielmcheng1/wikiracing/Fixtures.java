@@ -0,0 +1,58 @@
+package com.danielmcheng1.wikiracing;
+
+import okhttp3.HttpUrl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+/**
+ * Shared inputs for the benchmarks. By default responses are generated by a MockLinkSource over a fixed-seed graph, so
+ * every run sees identical bytes. Pass -Dwikiracing.fixture=response.json to benchmark parsing on a response recorded
+ * from the live API instead.
+ */
+public class Fixtures {
+    public static final int numPages = 100000;
+    public static final int avgLinks = 40;
+    public static final long seed = 42;
+
+    private static LinkGraph graph;
+
+    public static synchronized LinkGraph getGraph() {
+        if (graph == null) {
+            graph = LinkGraph.generate(numPages, avgLinks, seed);
+        }
+        return graph;
+    }
+
+    // a batch of numTitles hub pages, which is what a crawl spends most of its early batches on
+    public static String getBatchTitles(int numTitles) {
+        StringBuilder sB = new StringBuilder();
+        for (int i = 0; i < numTitles; i++) {
+            if (i > 0) {
+                sB.append('|');
+            }
+            sB.append(getGraph().getTitle(i * 7));
+        }
+        return sB.toString();
+    }
+
+    public static byte[] getResponse(String titles, Direction direction) throws IOException {
+        String fixture = System.getProperty("wikiracing.fixture");
+        if (fixture != null) {
+            return Files.readAllBytes(Paths.get(fixture));
+        }
+        HttpUrl url = WikiRetriever.buildWikiURL(titles, direction, null);
+        return new MockLinkSource(getGraph()).fetch(url, "wikiracer-benchmarks");
+    }
+
+    // the parent nodes the crawler would have dequeued for the pages in this response
+    public static HashMap<String, WebNode> getTitlesToWebNodes(String titles, Direction direction) {
+        HashMap<String, WebNode> titlesToWebNodes = new HashMap<String, WebNode>();
+        for (String title : titles.split("\\|")) {
+            titlesToWebNodes.put(title, new WebNode(title, null, direction, 0));
+        }
+        return titlesToWebNodes;
+    }
+}
@@ -0,0 +1,47 @@
+package com.danielmcheng1.wikiracing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline races with ParallelBfs on generated graphs of up to several million pages, to set against the same races
+ * crawled through a MockLinkSource in EndToEndCrawlBenchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx6g"})
+@State(Scope.Benchmark)
+public class ParallelBfsBenchmark {
+    @Param({"100000", "4000000"})
+    public int numPages;
+
+    private LinkGraph graph;
+    private ParallelBfs parallelBfs;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        graph = numPages == Fixtures.numPages ? Fixtures.getGraph() : LinkGraph.generate(numPages, Fixtures.avgLinks, Fixtures.seed);
+        parallelBfs = new ParallelBfs(graph);
+        random = new Random(Fixtures.seed);
+    }
+
+    @Benchmark
+    public ParallelBfs.Result race() {
+        return parallelBfs.race(random.nextInt(numPages), random.nextInt(numPages), System.nanoTime() + TimeUnit.SECONDS.toNanos(15));
+    }
+}
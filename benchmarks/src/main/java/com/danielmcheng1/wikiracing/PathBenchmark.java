@@ -0,0 +1,86 @@
+package com.danielmcheng1.wikiracing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Path.markIfNodeCompletesPath, which runs for every newly discovered link, and Path.tracePath (via savePath), which
+ * runs once the two crawls meet.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PathBenchmark {
+    // clicks from source to destination
+    @Param({"2", "6"})
+    public int pathLength;
+
+    // pages visited in each direction besides the path itself
+    @Param({"10000"})
+    public int numVisited;
+
+    private ConcurrentHashMap<String, WebNode> visitedForwards;
+    private ConcurrentHashMap<String, WebNode> visitedBackwards;
+    private WebNode missNode;
+    private WebNode meetingNode;
+
+    @Setup
+    public void setUp() {
+        Util.setAllLogLevels(java.util.logging.Level.WARNING);
+        visitedForwards = new ConcurrentHashMap<String, WebNode>();
+        visitedBackwards = new ConcurrentHashMap<String, WebNode>();
+        for (int i = 0; i < numVisited; i++) {
+            visitedForwards.put("Forwards " + i, new WebNode("Forwards " + i, null, Direction.FORWARDS, 1));
+            visitedBackwards.put("Backwards " + i, new WebNode("Backwards " + i, null, Direction.BACKWARDS, 1));
+        }
+
+        // chain source -> ... -> meeting page forwards, and destination -> ... -> meeting page backwards
+        int forwardsLength = pathLength / 2;
+        WebNode forwards = new WebNode("Source", null, Direction.FORWARDS, 0);
+        visitedForwards.put(forwards.getTitle(), forwards);
+        for (int i = 1; i < forwardsLength; i++) {
+            forwards = new WebNode("Path " + i, forwards, Direction.FORWARDS, i);
+            visitedForwards.put(forwards.getTitle(), forwards);
+        }
+        WebNode backwards = new WebNode("Destination", null, Direction.BACKWARDS, 0);
+        visitedBackwards.put(backwards.getTitle(), backwards);
+        for (int i = pathLength - 1; i > forwardsLength; i--) {
+            backwards = new WebNode("Path " + i, backwards, Direction.BACKWARDS, pathLength - i);
+            visitedBackwards.put(backwards.getTitle(), backwards);
+        }
+        WebNode meetingBackwards = new WebNode("Meeting", backwards, Direction.BACKWARDS, pathLength - forwardsLength);
+        visitedBackwards.put(meetingBackwards.getTitle(), meetingBackwards);
+        meetingNode = new WebNode("Meeting", forwards, Direction.FORWARDS, forwardsLength);
+        missNode = new WebNode("Forwards 0", null, Direction.FORWARDS, 1);
+    }
+
+    @Benchmark
+    public boolean markMiss() {
+        Path path = new Path(visitedForwards, visitedBackwards);
+        path.markIfNodeCompletesPath(missNode);
+        return path.foundPath();
+    }
+
+    @Benchmark
+    public Deque<WebNode> markHitAndTracePath() {
+        Path path = new Path(visitedForwards, visitedBackwards);
+        path.markIfNodeCompletesPath(meetingNode);
+        return path.getPath();
+    }
+}
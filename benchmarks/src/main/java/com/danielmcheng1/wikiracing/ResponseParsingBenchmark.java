@@ -0,0 +1,70 @@
+package com.danielmcheng1.wikiracing;
+
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing one Wiki API response (WikiRetriever.parseResponse) and extracting its links into the crawl state
+ * (Crawler.addAllPagesToVisit).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseParsingBenchmark {
+    @Param({"1", "50"})
+    public int batchSize;
+
+    @Param({"FORWARDS", "BACKWARDS"})
+    public Direction direction;
+
+    private String titles;
+    private byte[] responseBytes;
+    private JsonObject response;
+
+    private Crawler crawler;
+    private HashMap<String, WebNode> titlesToWebNodes;
+
+    @Setup(Level.Trial)
+    public void setUpResponse() throws IOException {
+        Util.setAllLogLevels(java.util.logging.Level.WARNING);
+        titles = Fixtures.getBatchTitles(batchSize);
+        responseBytes = Fixtures.getResponse(titles, direction);
+        response = WikiRetriever.parseResponse(responseBytes);
+    }
+
+    // extraction dedupes against the visited set, so every invocation needs a fresh crawl state to do real work
+    @Setup(Level.Invocation)
+    public void setUpCrawler() {
+        crawler = new Crawler(new CrawlOptions("Page 1", "Page 2").timeoutSeconds((long) 15).linkCache(null).pathStore(null));
+        titlesToWebNodes = Fixtures.getTitlesToWebNodes(titles, direction);
+    }
+
+    @Benchmark
+    public JsonObject parseResponse() {
+        return WikiRetriever.parseResponse(responseBytes);
+    }
+
+    @Benchmark
+    public int extractLinks() {
+        crawler.addAllPagesToVisit(response, titlesToWebNodes, direction, null, new BatchStats(0));
+        return crawler.getCrawlerState().getNumToVisit(direction);
+    }
+}
@@ -0,0 +1,177 @@
+package com.danielmcheng1.wikiracing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searches for the CrawlerConfig that races a fixed set of source/destination pairs fastest against whatever link
+ * source WikiRetriever is using, which should be a local one: a MockLinkSource, or a ReplayTransport with the recorded
+ * latencies. The goal is either latency (the mean runtime of one crawl at a time) or throughput (crawls completed per
+ * second with several running at once, as on the REST service).
+ * <p>
+ * The search is coordinate descent: starting from the current config, try every candidate value of one knob with the
+ * others held, keep the best, and move on to the next knob, for a couple of passes. That takes a few dozen evaluations
+ * rather than the few hundred of a full grid, and the knobs interact little enough that it finds the same answer.
+ * Crawls run without the link cache, path store or landmark index, so that no config gains from what an earlier one
+ * fetched. The backoff is left as it is, since a local source never fails a request.
+ */
+public class Autotuner {
+    public static final String goalLatency = "latency";
+    public static final String goalThroughput = "throughput";
+    public static final int defaultNumPairs = 20;
+    public static final int throughputParallelism = 8;
+    protected static final int[] candidateNumThreads = {4, 8, 16, 32, 64};
+    protected static final int[] candidateMaxBatchSizes = {10, 25, 50};
+    protected static final long[] candidatePollMillis = {5, 20, 50, 100};
+    private static final int numPasses = 2;
+
+    private final List<String[]> pairs;
+    private final String goal;
+    private final long timeoutSeconds;
+    // scores of the configs tried so far, since the second pass revisits most of them
+    private final HashMap<String, Double> scores = new HashMap<String, Double>();
+    private boolean printProgress = true;
+
+    public Autotuner(List<String[]> pairs, String goal, long timeoutSeconds) {
+        if (!goalLatency.equals(goal) && !goalThroughput.equals(goal)) {
+            throw new IllegalArgumentException("Unknown goal " + goal + ", expected " + goalLatency + " or " + goalThroughput);
+        }
+        this.pairs = pairs;
+        this.goal = goal;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    // random pairs of distinct pages that have links, so that the crawls have somewhere to go
+    public static List<String[]> generatePairs(LinkGraph graph, int numPairs, long seed) {
+        Random random = new Random(seed);
+        ArrayList<String[]> pairs = new ArrayList<String[]>();
+        for (int attempt = 0; pairs.size() < numPairs && attempt < numPairs * 100; attempt++) {
+            int source = random.nextInt(graph.getNumPages());
+            int dest = random.nextInt(graph.getNumPages());
+            if (source != dest && graph.getNumLinks(source, Direction.FORWARDS) > 0 && graph.getNumLinks(dest, Direction.BACKWARDS) > 0) {
+                pairs.add(new String[]{graph.getTitle(source), graph.getTitle(dest)});
+            }
+        }
+        return pairs;
+    }
+
+    /******************************************/
+    // METHODS FOR SEARCHING
+    /******************************************/
+    public CrawlerConfig tune(CrawlerConfig start) {
+        CrawlerConfig best = start;
+        double bestScore = evaluate(best);
+        for (int pass = 0; pass < numPasses; pass++) {
+            CrawlerConfig passStart = best;
+            for (int numThreads : candidateNumThreads) {
+                CrawlerConfig candidate = new CrawlerConfig(numThreads, best.getMaxBatchSize(), best.getPollMillis(), best.getBackoffMillis());
+                double score = evaluate(candidate);
+                if (isBetter(score, bestScore)) {
+                    best = candidate;
+                    bestScore = score;
+                }
+            }
+            for (int maxBatchSize : candidateMaxBatchSizes) {
+                CrawlerConfig candidate = new CrawlerConfig(best.getNumThreads(), maxBatchSize, best.getPollMillis(), best.getBackoffMillis());
+                double score = evaluate(candidate);
+                if (isBetter(score, bestScore)) {
+                    best = candidate;
+                    bestScore = score;
+                }
+            }
+            for (long pollMillis : candidatePollMillis) {
+                CrawlerConfig candidate = new CrawlerConfig(best.getNumThreads(), best.getMaxBatchSize(), pollMillis, best.getBackoffMillis());
+                double score = evaluate(candidate);
+                if (isBetter(score, bestScore)) {
+                    best = candidate;
+                    bestScore = score;
+                }
+            }
+            if (best == passStart) {
+                break;
+            }
+        }
+        printProgress("Best: " + best + " (" + formatScore(bestScore) + ")");
+        return best;
+    }
+
+    // mean milliseconds per crawl for latency (lower is better), crawls per second for throughput (higher is better)
+    protected double evaluate(CrawlerConfig config) {
+        Double cached = scores.get(config.toString());
+        if (cached != null) {
+            return cached;
+        }
+        int parallelism = goalLatency.equals(goal) ? 1 : throughputParallelism;
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        long startMillis = System.currentTimeMillis();
+        long totalMillis = 0;
+        int numFound = 0;
+        try {
+            ArrayList<Future<CrawlerResult>> results = new ArrayList<Future<CrawlerResult>>();
+            for (String[] pair : pairs) {
+                results.add(executor.submit(() -> runCrawl(pair, config)));
+            }
+            for (Future<CrawlerResult> future : results) {
+                CrawlerResult result = future.get();
+                // a crawl that timed out counts as the whole timeout
+                totalMillis += result.foundPath() ? result.getRuntimeMillis() : timeoutSeconds * 1000;
+                numFound += result.foundPath() ? 1 : 0;
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Autotune crawl failed for " + config, e);
+        } finally {
+            executor.shutdown();
+        }
+        double score;
+        if (goalLatency.equals(goal)) {
+            score = (double) totalMillis / pairs.size();
+        } else {
+            score = numFound * 1000.0 / Math.max(System.currentTimeMillis() - startMillis, 1);
+        }
+        scores.put(config.toString(), score);
+        printProgress(config + ": " + formatScore(score));
+        return score;
+    }
+
+    private CrawlerResult runCrawl(String[] pair, CrawlerConfig config) {
+        CrawlerController crawlerController = new CrawlerController(new CrawlOptions(pair[0], pair[1]).timeoutSeconds(timeoutSeconds)
+                .linkCache(null).pathStore(null).landmarkIndex(null).config(config));
+        crawlerController.setPrintProgress(false);
+        crawlerController.runCrawl();
+        return crawlerController.getResult();
+    }
+
+    private boolean isBetter(double score, double bestScore) {
+        return goalLatency.equals(goal) ? score < bestScore : score > bestScore;
+    }
+
+    private String formatScore(double score) {
+        return goalLatency.equals(goal) ? String.format("%.0f ms per crawl", score) : String.format("%.2f crawls/s", score);
+    }
+
+    public void setPrintProgress(boolean printProgress) {
+        this.printProgress = printProgress;
+    }
+
+    private void printProgress(String message) {
+        if (printProgress) {
+            System.out.println(message);
+        }
+    }
+
+    protected int getNumEvaluated() {
+        return scores.size();
+    }
+
+    // every value the search may pick for each knob, for reference in usage messages
+    public static String describeCandidates() {
+        return "numThreads " + Arrays.toString(candidateNumThreads) + ", maxBatchSize " + Arrays.toString(candidateMaxBatchSizes)
+                + ", pollMillis " + Arrays.toString(candidatePollMillis);
+    }
+}
@@ -0,0 +1,46 @@
+package com.danielmcheng1.wikiracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one batch of titles expanded by Crawler.findNextLinks, from the link cache or the Wiki API.
+ */
+@Name("com.danielmcheng1.wikiracing.BatchExpand")
+@Label("Batch Expand")
+@Category("Wikiracer")
+@Description("One batch of titles expanded by the crawler")
+@StackTrace(false)
+@Registered(false)
+public class BatchExpandEvent extends Event {
+    @Label("Direction")
+    String direction;
+
+    @Label("Titles")
+    int numTitles;
+
+    @Label("API Calls")
+    int numApiCalls;
+
+    @Label("Continues")
+    int numContinues;
+
+    @Label("Links Parsed")
+    int numLinksParsed;
+
+    @Label("Response Size")
+    @DataAmount
+    long responseBytes;
+
+    @Label("Queue Wait")
+    @Description("Time the batch waited for a free crawler thread")
+    @Timespan(Timespan.NANOSECONDS)
+    long queueWaitNanos;
+}
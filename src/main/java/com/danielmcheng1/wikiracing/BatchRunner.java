@@ -0,0 +1,215 @@
+package com.danielmcheng1.wikiracing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class races a stream of (sourceTitle, destTitle) pairs headlessly, e.g. for offline evaluation of the crawler.
+ * Pairs are read lazily and at most parallelism pairs are in flight at once, so memory stays flat no matter how long the
+ * input is. Every crawl shares the same link cache, and each result is written out as soon as its pair finishes.
+ * <p>
+ * Input is one pair per line, separated by a tab or a comma. Blank lines and lines starting with # are skipped.
+ */
+public class BatchRunner {
+    public static final String formatCsv = "csv";
+    public static final String formatJsonLines = "jsonl";
+
+    private static final Logger LOGGER = Logger.getLogger(BatchRunner.class.getName());
+    private static final String stdStream = "-";
+
+    private final int parallelism;
+    private final Long timeoutSeconds;
+    private final String format;
+    private final LinkCache linkCache;
+
+    private Writer writer;
+
+    public BatchRunner(int parallelism, Long timeoutSeconds, String format, LinkCache linkCache) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Batch parallelism must be at least 1: " + parallelism);
+        }
+        if (!formatCsv.equals(format) && !formatJsonLines.equals(format)) {
+            throw new IllegalArgumentException("Invalid batch format specified: " + format);
+        }
+        this.parallelism = parallelism;
+        this.timeoutSeconds = timeoutSeconds;
+        this.format = format;
+        this.linkCache = linkCache;
+    }
+
+    // input and output may be file paths, or null/"-" for stdin and stdout
+    public void run(String input, String output) throws IOException {
+        InputStream in = input == null || stdStream.equals(input) ? System.in : new FileInputStream(input);
+        OutputStream out = output == null || stdStream.equals(output) ? System.out : new FileOutputStream(output);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        try {
+            run(reader);
+        } finally {
+            writer.flush();
+            if (in != System.in) {
+                in.close();
+            }
+            if (out != System.out) {
+                out.close();
+            }
+        }
+    }
+
+    private void run(BufferedReader reader) throws IOException {
+        if (formatCsv.equals(format)) {
+            writeLine("sourceTitle,destTitle,foundPath,length,runtimeMillis,numApiCalls,path,info");
+        }
+
+        ExecutorService taskExecutor = Executors.newFixedThreadPool(parallelism);
+        // only read the next pair once a slot is free, so that we never hold more than parallelism pairs in memory
+        final Semaphore slots = new Semaphore(parallelism);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] pair = parsePair(line);
+                if (pair == null) {
+                    continue;
+                }
+                slots.acquire();
+                Runnable task = new Runnable() {
+                    public void run() {
+                        try {
+                            racePair(pair[0], pair[1]);
+                        } finally {
+                            slots.release();
+                        }
+                    }
+                };
+                taskExecutor.execute(task);
+            }
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.INFO, Util.getThread() + "Batch run interrupted while waiting for a free slot");
+            Thread.currentThread().interrupt();
+        }
+
+        // wait for the last pairs to finish
+        taskExecutor.shutdown();
+        try {
+            taskExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.INFO, Util.getThread() + "Batch run interrupted while waiting for pairs to finish");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void racePair(String sourceTitle, String destTitle) {
+        CrawlerResult result;
+        try {
+            CrawlerController crawlerController = new CrawlerController(new CrawlOptions(sourceTitle, destTitle).timeoutSeconds(timeoutSeconds).linkCache(linkCache));
+            crawlerController.setPrintProgress(false);
+            crawlerController.runCrawl();
+            result = crawlerController.getResult();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, Util.getThread() + "Crawl failed for " + sourceTitle + " -> " + destTitle, e);
+            writeResult(sourceTitle, destTitle, null, "Crawl failed: " + e.getMessage());
+            return;
+        }
+        writeResult(sourceTitle, destTitle, result, result.getInfo());
+    }
+
+    // returns null for lines that do not hold a pair
+    protected static String[] parsePair(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return null;
+        }
+        String separator = trimmed.indexOf('\t') >= 0 ? "\t" : ",";
+        String[] fields = trimmed.split(separator, -1);
+        if (fields.length != 2 || fields[0].trim().isEmpty() || fields[1].trim().isEmpty()) {
+            LOGGER.log(Level.WARNING, "Skipping malformed batch line: " + line);
+            return null;
+        }
+        return new String[]{fields[0].trim(), fields[1].trim()};
+    }
+
+    /******************************************/
+    // METHODS FOR WRITING RESULTS
+    /******************************************/
+    private void writeResult(String sourceTitle, String destTitle, CrawlerResult result, String info) {
+        ArrayList<String> path = result == null ? null : result.getPath();
+        boolean foundPath = result != null && result.foundPath();
+        // a path of N titles takes N - 1 clicks
+        int length = path == null ? -1 : path.size() - 1;
+        long runtimeMillis = result == null ? 0 : result.getRuntimeMillis();
+        int numApiCalls = result == null ? 0 : result.getNumApiCalls();
+
+        String line;
+        if (formatCsv.equals(format)) {
+            StringBuilder sB = new StringBuilder();
+            sB.append(escapeCsv(sourceTitle)).append(',');
+            sB.append(escapeCsv(destTitle)).append(',');
+            sB.append(foundPath ? 'Y' : 'N').append(',');
+            sB.append(length).append(',');
+            sB.append(runtimeMillis).append(',');
+            sB.append(numApiCalls).append(',');
+            sB.append(escapeCsv(path == null ? "" : String.join("|", path))).append(',');
+            sB.append(escapeCsv(info));
+            line = sB.toString();
+        } else {
+            JsonObject json = new JsonObject();
+            json.addProperty("sourceTitle", sourceTitle);
+            json.addProperty("destTitle", destTitle);
+            json.addProperty("foundPath", foundPath ? "Y" : "N");
+            json.addProperty("length", length);
+            json.addProperty("runtimeMillis", runtimeMillis);
+            json.addProperty("numApiCalls", numApiCalls);
+            if (path != null) {
+                JsonArray pathJson = new JsonArray();
+                for (String title : path) {
+                    pathJson.add(title);
+                }
+                json.add("path", pathJson);
+            }
+            json.addProperty("info", info);
+            line = new Gson().toJson(json);
+        }
+        writeLine(line);
+    }
+
+    // flush every line so results are visible as soon as each pair finishes
+    private synchronized void writeLine(String line) {
+        try {
+            writer.write(line);
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, Util.getThread() + "Failed to write batch result: " + e.getMessage());
+        }
+    }
+
+    private static String escapeCsv(String field) {
+        if (field == null) {
+            return "";
+        }
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0) {
+            return field;
+        }
+        return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+}
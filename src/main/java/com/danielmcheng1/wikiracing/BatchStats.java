@@ -0,0 +1,83 @@
+package com.danielmcheng1.wikiracing;
+
+/**
+ * Stats gathered while the Crawler expands one batch of titles, used for metrics and for the optional crawl trace.
+ * Each batch is expanded by a single thread so none of this needs to be synchronized.
+ */
+public class BatchStats {
+    private final long queuedNanos;
+    private long startNanos;
+    private long requestStartNanos;
+    private long requestEndNanos;
+    private long endNanos;
+    private long bytes;
+    private int numApiCalls;
+    private int numContinues;
+    private int numLinksParsed;
+
+    // queuedNanos is when the batch task was submitted, so we can tell how long it waited for a free thread
+    public BatchStats(long queuedNanos) {
+        this.queuedNanos = queuedNanos;
+        this.startNanos = System.nanoTime();
+    }
+
+    protected void markRequestStart() {
+        if (numApiCalls == 0) {
+            requestStartNanos = System.nanoTime();
+        }
+        numApiCalls++;
+    }
+
+    protected void markRequestEnd(long responseBytes) {
+        requestEndNanos = System.nanoTime();
+        bytes += responseBytes;
+    }
+
+    protected void markContinue() {
+        numContinues++;
+    }
+
+    protected void addLinksParsed(int links) {
+        numLinksParsed += links;
+    }
+
+    protected void markEnd() {
+        endNanos = System.nanoTime();
+    }
+
+    public long getQueuedNanos() {
+        return queuedNanos;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getRequestStartNanos() {
+        return requestStartNanos;
+    }
+
+    public long getRequestEndNanos() {
+        return requestEndNanos;
+    }
+
+    public long getEndNanos() {
+        return endNanos;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getNumApiCalls() {
+        return numApiCalls;
+    }
+
+    public int getNumContinues() {
+        return numContinues;
+    }
+
+    public int getNumLinksParsed() {
+        return numLinksParsed;
+    }
+}
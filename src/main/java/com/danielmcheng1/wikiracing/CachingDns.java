@@ -0,0 +1,65 @@
+package com.danielmcheng1.wikiracing;
+
+import okhttp3.Dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resolves the Wiki API's host once per TTL instead of on every new connection, and keeps using the last addresses it
+ * got if a lookup fails, so that a resolver blip in the middle of a crawl costs no requests. The crawler only ever
+ * talks to a handful of hosts, so entries are never evicted.
+ */
+public class CachingDns implements Dns {
+    public static final long defaultTtlMillis = 5 * 60 * 1000;
+
+    private static final Logger LOGGER = Logger.getLogger(CachingDns.class.getName());
+
+    private final Dns delegate;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    public CachingDns() {
+        this(Dns.SYSTEM, defaultTtlMillis);
+    }
+
+    public CachingDns(Dns delegate, long ttlMillis) {
+        this.delegate = delegate;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        Entry entry = entries.get(hostname);
+        long now = System.currentTimeMillis();
+        if (entry != null && now < entry.expiresMillis) {
+            Metrics.dnsCacheHits.increment();
+            return entry.addresses;
+        }
+        Metrics.dnsLookups.increment();
+        try {
+            List<InetAddress> addresses = delegate.lookup(hostname);
+            entries.put(hostname, new Entry(addresses, now + ttlMillis));
+            return addresses;
+        } catch (UnknownHostException e) {
+            if (entry == null) {
+                throw e;
+            }
+            LOGGER.log(Level.WARNING, "Failed to resolve " + hostname + ", using the addresses from the last lookup: " + e.getMessage());
+            return entry.addresses;
+        }
+    }
+
+    private static class Entry {
+        final List<InetAddress> addresses;
+        final long expiresMillis;
+
+        Entry(List<InetAddress> addresses, long expiresMillis) {
+            this.addresses = addresses;
+            this.expiresMillis = expiresMillis;
+        }
+    }
+}
@@ -0,0 +1,548 @@
+package com.danielmcheng1.wikiracing;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the link cache and the compressed link graph up to date with Wikipedia from a log of recent changes, instead
+ * of rebuilding them. The log is a set of files in the format of the MediaWiki recentchanges API
+ * (list=recentchanges&rcprop=title|ids|timestamp|loginfo), applied in file name order:
+ * <ul>
+ *   <li>edits and new pages refetch the page's links from the Wiki API and replace its list, then add the page to or
+ *   remove it from the linkshere of every page it gained or lost a link to. If the links cannot be fetched the list
+ *   is invalidated instead, and crawls fetch it themselves;</li>
+ *   <li>deletes empty the page's links (pages linking to it keep their red links);</li>
+ *   <li>moves give the new title the old page's links and leave the old title as a redirect to it, unless the move
+ *   suppressed the redirect, and update the link cache's redirects to match.</li>
+ * </ul>
+ * The link cache only has the affected lists dropped, since they are cheap to fetch again, and the title cache learns
+ * which titles exist now and which no longer do. The compressed link graph
+ * cannot be written in place, so changed lists go into DeltaSegments that its lookups check first. Once enough
+ * segments have been sealed they are compacted: the graph and its segments are merged into a new file, which is
+ * loaded and swapped in as the shared graph while crawls carry on reading the old one.
+ * <p>
+ * Offline races (see ParallelBfs) race over a decoded copy of the graph, which cannot read segments. With
+ * setUpdatesParallelBfs, each compaction also swaps in a ParallelBfs over the merged graph, so offline races see the
+ * changes as of the last compaction.
+ * <p>
+ * A crawl may see a change half applied (a page's new links before the linkshere of its targets), which costs it at
+ * most a slightly stale link, as it would with the live API.
+ */
+public class ChangeLogUpdater {
+    public static final int defaultMaxSegmentEntries = 10000;
+    public static final int defaultMaxSegments = 8;
+    public static final long defaultPollSeconds = 60;
+
+    private static final Logger LOGGER = Logger.getLogger(ChangeLogUpdater.class.getName());
+
+    private final LinkCache linkCache;
+    private final int maxSegmentEntries;
+    private final int maxSegments;
+    // files already applied from the watched directory
+    private final HashSet<String> appliedFiles = new HashSet<String>();
+    private ScheduledExecutorService poller;
+    private volatile boolean updatesParallelBfs;
+
+    public ChangeLogUpdater(LinkCache linkCache) {
+        this(linkCache, defaultMaxSegmentEntries, defaultMaxSegments);
+    }
+
+    public ChangeLogUpdater(LinkCache linkCache, int maxSegmentEntries, int maxSegments) {
+        this.linkCache = linkCache;
+        this.maxSegmentEntries = maxSegmentEntries;
+        this.maxSegments = maxSegments;
+    }
+
+    // rebuild the shared ParallelBfs from each compacted graph, for -offlineGraph
+    public void setUpdatesParallelBfs(boolean updatesParallelBfs) {
+        this.updatesParallelBfs = updatesParallelBfs;
+    }
+
+    /**
+     * One entry of the recent changes log. Edits and new pages are the same to us, as are log entries we do not
+     * handle (e.g. protections), which are dropped when parsing.
+     */
+    protected static class Change {
+        static final String edit = "edit";
+        static final String delete = "delete";
+        static final String move = "move";
+
+        final String type;
+        final String title;
+        final String targetTitle;
+        final boolean suppressRedirect;
+        final String timestamp;
+        final long rcid;
+
+        Change(String type, String title, String targetTitle, boolean suppressRedirect, String timestamp, long rcid) {
+            this.type = type;
+            this.title = title;
+            this.targetTitle = targetTitle;
+            this.suppressRedirect = suppressRedirect;
+            this.timestamp = timestamp;
+            this.rcid = rcid;
+        }
+    }
+
+    /******************************************/
+    // METHODS FOR READING THE LOG
+    /******************************************/
+    // the article changes in a recentchanges response, oldest first (the API lists the newest first by default)
+    protected static List<Change> parse(String fileName) throws IOException {
+        JsonObject response;
+        try (Reader reader = new InputStreamReader(Files.newInputStream(Paths.get(fileName)), StandardCharsets.UTF_8)) {
+            response = new JsonParser().parse(reader).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("Not a recent changes log: " + fileName, e);
+        }
+        JsonObject query = response.getAsJsonObject("query");
+        JsonArray recentChanges = query == null ? null : query.getAsJsonArray("recentchanges");
+        if (recentChanges == null) {
+            throw new IOException("Not a recent changes log: " + fileName);
+        }
+        ArrayList<Change> changes = new ArrayList<Change>();
+        for (JsonElement element : recentChanges) {
+            Change change = parseChange(element.getAsJsonObject());
+            if (change != null) {
+                changes.add(change);
+            }
+        }
+        Collections.sort(changes, new Comparator<Change>() {
+            public int compare(Change a, Change b) {
+                int byTime = a.timestamp.compareTo(b.timestamp);
+                return byTime != 0 ? byTime : Long.compare(a.rcid, b.rcid);
+            }
+        });
+        return changes;
+    }
+
+    // null for changes outside the main namespace, and for kinds of change that do not touch links
+    private static Change parseChange(JsonObject entry) {
+        if (!entry.has("title") || (entry.has("ns") && entry.get("ns").getAsInt() != 0)) {
+            return null;
+        }
+        String title = entry.get("title").getAsString();
+        String timestamp = entry.has("timestamp") ? entry.get("timestamp").getAsString() : "";
+        long rcid = entry.has("rcid") ? entry.get("rcid").getAsLong() : 0;
+        String type = entry.has("type") ? entry.get("type").getAsString() : "";
+        if ("edit".equals(type) || "new".equals(type)) {
+            return new Change(Change.edit, title, null, false, timestamp, rcid);
+        }
+        if (!"log".equals(type) || !entry.has("logtype")) {
+            return null;
+        }
+        String logType = entry.get("logtype").getAsString();
+        String logAction = entry.has("logaction") ? entry.get("logaction").getAsString() : "";
+        if ("delete".equals(logType)) {
+            // an undeleted page comes back with whatever links its restored revision has
+            return "restore".equals(logAction) ? new Change(Change.edit, title, null, false, timestamp, rcid)
+                    : "delete".equals(logAction) ? new Change(Change.delete, title, null, false, timestamp, rcid) : null;
+        }
+        JsonObject logParams = entry.getAsJsonObject("logparams");
+        if ("move".equals(logType) && logParams != null && logParams.has("target_title")) {
+            if (logParams.has("target_ns") && logParams.get("target_ns").getAsInt() != 0) {
+                return new Change(Change.delete, title, null, false, timestamp, rcid);
+            }
+            // formatversion=1 marks a suppressed redirect with an empty string, formatversion=2 with true
+            JsonElement suppressRedirect = logParams.get("suppressredirect");
+            boolean suppressed = suppressRedirect != null && !(suppressRedirect.isJsonPrimitive()
+                    && suppressRedirect.getAsJsonPrimitive().isBoolean() && !suppressRedirect.getAsBoolean());
+            return new Change(Change.move, title, logParams.get("target_title").getAsString(), suppressed, timestamp, rcid);
+        }
+        return null;
+    }
+
+    /******************************************/
+    // METHODS FOR APPLYING CHANGES
+    /******************************************/
+    // apply every change in a recentchanges file; returns how many there were
+    public synchronized int apply(String fileName) throws IOException {
+        List<Change> changes = parse(fileName);
+        apply(changes);
+        LOGGER.log(Level.INFO, "Applied " + changes.size() + " changes from " + fileName);
+        return changes.size();
+    }
+
+    protected synchronized void apply(List<Change> changes) {
+        Map<String, String[]> editedLinks = fetchEditedLinks(changes);
+        for (Change change : changes) {
+            CompressedLinkGraph graph = CompressedLinkGraph.getShared();
+            if (Change.edit.equals(change.type)) {
+                setForwards(graph, change.title, editedLinks.get(change.title));
+            } else if (Change.delete.equals(change.type)) {
+                setForwards(graph, change.title, new String[0]);
+                if (linkCache != null) {
+                    linkCache.removeRedirect(change.title);
+                }
+            } else {
+                String[] movedLinks = getForwards(graph, change.title);
+                setForwards(graph, change.targetTitle, movedLinks);
+                setForwards(graph, change.title, change.suppressRedirect ? new String[0] : new String[]{change.targetTitle});
+                if (linkCache != null) {
+                    linkCache.removeRedirect(change.targetTitle);
+                    if (change.suppressRedirect) {
+                        linkCache.removeRedirect(change.title);
+                    } else {
+                        linkCache.putRedirect(change.title, change.targetTitle);
+                    }
+                }
+            }
+            recordTitleValidity(change);
+            Metrics.changeLogChanges.increment();
+            sealIfFull(graph);
+        }
+    }
+
+    // so that races to a deleted page fail fast, and races to a new one are not turned away
+    private void recordTitleValidity(Change change) {
+        TitleCache titleCache = TitleCache.getShared();
+        if (titleCache == null) {
+            return;
+        }
+        if (Change.edit.equals(change.type)) {
+            titleCache.markValid(change.title);
+        } else if (Change.delete.equals(change.type) || change.suppressRedirect) {
+            titleCache.markMissing(change.title);
+        }
+        if (Change.move.equals(change.type)) {
+            titleCache.markValid(change.targetTitle);
+        }
+    }
+
+    // the links of every edited page as they are now, or no entry if they could not be fetched
+    private Map<String, String[]> fetchEditedLinks(List<Change> changes) {
+        LinkedHashSet<String> titles = new LinkedHashSet<String>();
+        for (Change change : changes) {
+            if (Change.edit.equals(change.type)) {
+                titles.add(change.title);
+            }
+        }
+        ArrayList<String> titleList = new ArrayList<String>(titles);
+        HashMap<String, String[]> linksByTitle = new HashMap<String, String[]>();
+        for (int i = 0; i < titleList.size(); i += Crawler.maxBatchSize) {
+            List<String> batch = titleList.subList(i, Math.min(i + Crawler.maxBatchSize, titleList.size()));
+            try {
+                Map<String, ArrayList<String>> fetched = HubIndex.fetchAllLinks(batch, Direction.FORWARDS);
+                for (String title : batch) {
+                    // pages without links, including ones deleted since, are left out of the response
+                    ArrayList<String> links = fetched.get(title);
+                    linksByTitle.put(title, links == null ? new String[0] : links.toArray(new String[links.size()]));
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to fetch links of edited pages, invalidating them instead: " + e.getMessage());
+            }
+        }
+        return linksByTitle;
+    }
+
+    // the page's links as the graph or, failing that, the link cache last knew them; null if neither does
+    private String[] getForwards(CompressedLinkGraph graph, String title) {
+        String[] links = graph == null ? null : graph.getLinkTitles(title, Direction.FORWARDS);
+        if (links == null && linkCache != null) {
+            links = linkCache.getLinks(title, Direction.FORWARDS);
+        }
+        return links;
+    }
+
+    /**
+     * Replace the page's links with newLinks, or invalidate them if newLinks is null, and patch the linkshere of the
+     * pages that gained or lost a link from it. Without the old links we cannot tell which pages lost one, so theirs
+     * are left as they are; without the new ones, the linkshere of every page it linked to is invalidated.
+     */
+    private void setForwards(CompressedLinkGraph graph, String title, String[] newLinks) {
+        String[] oldLinks = getForwards(graph, title);
+        if (linkCache != null) {
+            linkCache.invalidate(title, Direction.FORWARDS);
+        }
+        if (graph != null) {
+            if (newLinks == null) {
+                getActiveSegment(graph).invalidate(title, Direction.FORWARDS);
+                Metrics.changeLogInvalidations.increment();
+            } else {
+                getActiveSegment(graph).putLinks(title, Direction.FORWARDS, newLinks);
+            }
+        }
+        HashSet<String> oldTargets = new HashSet<String>(oldLinks == null ? Collections.<String>emptyList() : Arrays.asList(oldLinks));
+        HashSet<String> newTargets = new HashSet<String>(newLinks == null ? Collections.<String>emptyList() : Arrays.asList(newLinks));
+        for (String target : newTargets) {
+            if (newLinks != null && !oldTargets.contains(target)) {
+                patchBackwards(graph, target, title, true);
+            }
+        }
+        for (String target : oldTargets) {
+            if (newLinks == null) {
+                invalidateBackwards(graph, target);
+            } else if (!newTargets.contains(target)) {
+                patchBackwards(graph, target, title, false);
+            }
+        }
+    }
+
+    private void patchBackwards(CompressedLinkGraph graph, String target, String title, boolean add) {
+        if (linkCache != null) {
+            linkCache.invalidate(target, Direction.BACKWARDS);
+        }
+        // a page the graph does not have, or whose linkshere is already invalidated, is fetched whole by crawls anyway
+        String[] backLinks = graph == null ? null : graph.getLinkTitles(target, Direction.BACKWARDS);
+        if (backLinks == null) {
+            return;
+        }
+        ArrayList<String> patched = new ArrayList<String>(Arrays.asList(backLinks));
+        if (add && !patched.contains(title)) {
+            patched.add(title);
+        } else if (!add) {
+            patched.remove(title);
+        }
+        getActiveSegment(graph).putLinks(target, Direction.BACKWARDS, patched.toArray(new String[patched.size()]));
+    }
+
+    private void invalidateBackwards(CompressedLinkGraph graph, String target) {
+        if (linkCache != null) {
+            linkCache.invalidate(target, Direction.BACKWARDS);
+        }
+        if (graph != null) {
+            getActiveSegment(graph).invalidate(target, Direction.BACKWARDS);
+            Metrics.changeLogInvalidations.increment();
+        }
+    }
+
+    // the open segment changes are written to, starting one if the graph has none
+    private DeltaSegment getActiveSegment(CompressedLinkGraph graph) {
+        DeltaSegment[] deltas = graph.getDeltas();
+        if (deltas.length == 0 || deltas[0].isSealed()) {
+            graph.setDeltas(prepend(new DeltaSegment(), deltas));
+            return graph.getDeltas()[0];
+        }
+        return deltas[0];
+    }
+
+    private void sealIfFull(CompressedLinkGraph graph) {
+        if (graph != null && graph.getDeltas().length > 0 && graph.getDeltas()[0].getNumEntries() >= maxSegmentEntries) {
+            graph.getDeltas()[0].seal();
+        }
+    }
+
+    private static DeltaSegment[] prepend(DeltaSegment delta, DeltaSegment[] deltas) {
+        DeltaSegment[] prepended = new DeltaSegment[deltas.length + 1];
+        prepended[0] = delta;
+        System.arraycopy(deltas, 0, prepended, 1, deltas.length);
+        return prepended;
+    }
+
+    /******************************************/
+    // METHODS FOR COMPACTING
+    /******************************************/
+    /**
+     * Merge the shared graph and all of its segments into a new file in its place, then load that and make it the
+     * shared graph. Changes applied while the merge runs go to a new segment that the new graph keeps. Invalidated
+     * lists stay invalidated in a segment of their own, since the merge cannot know what they are now. Returns false
+     * if there was nothing to compact.
+     */
+    public boolean compact() throws IOException {
+        CompressedLinkGraph graph;
+        DeltaSegment[] compacting;
+        synchronized (this) {
+            graph = CompressedLinkGraph.getShared();
+            if (graph == null || graph.getDeltas().length == 0) {
+                return false;
+            }
+            compacting = graph.getDeltas();
+            for (DeltaSegment delta : compacting) {
+                delta.seal();
+            }
+        }
+        long startMillis = System.currentTimeMillis();
+        DeltaSegment carried = new DeltaSegment();
+        LinkGraph merged = merge(graph, compacting, carried);
+        CompressedLinkGraph.write(merged, graph.getFileName());
+        CompressedLinkGraph compacted = new CompressedLinkGraph(graph.getFileName());
+        synchronized (this) {
+            if (CompressedLinkGraph.getShared() != graph) {
+                LOGGER.log(Level.WARNING, "Shared link graph was replaced while compacting, dropping the compacted one");
+                return false;
+            }
+            // the segments started since we sealed, which are newer than everything merged
+            DeltaSegment[] current = graph.getDeltas();
+            int numNewer = current.length - compacting.length;
+            DeltaSegment[] deltas = Arrays.copyOf(current, numNewer + (carried.getNumEntries() > 0 ? 1 : 0));
+            if (carried.getNumEntries() > 0) {
+                carried.seal();
+                deltas[numNewer] = carried;
+            }
+            compacted.setDeltas(deltas);
+            CompressedLinkGraph.setShared(compacted);
+        }
+        if (updatesParallelBfs) {
+            // races already running keep the old one
+            ParallelBfs.setShared(new ParallelBfs(merged));
+        }
+        Metrics.linkGraphCompactions.increment();
+        LOGGER.log(Level.INFO, "Compacted " + compacting.length + " delta segments into " + graph.getFileName() + " in "
+                + (System.currentTimeMillis() - startMillis) + " ms");
+        return true;
+    }
+
+    // the graph with its segments applied, e.g. for a ParallelBfs; invalidated lists keep their old links
+    public static LinkGraph toLinkGraph(CompressedLinkGraph graph) {
+        if (graph.getDeltas().length == 0) {
+            return graph.toLinkGraph();
+        }
+        return merge(graph, graph.getDeltas(), new DeltaSegment());
+    }
+
+    // the graph with the newest forwards list of every page that changed; the linkshere follow from them
+    private static LinkGraph merge(CompressedLinkGraph graph, DeltaSegment[] compacting, DeltaSegment carried) {
+        LinkGraph base = graph.toLinkGraph();
+        HashMap<String, String[]> changed = new HashMap<String, String[]>();
+        for (int i = compacting.length - 1; i >= 0; i--) {
+            changed.putAll(compacting[i].getMap(Direction.FORWARDS));
+            for (Direction direction : Direction.values()) {
+                for (Map.Entry<String, String[]> entry : compacting[i].getMap(direction).entrySet()) {
+                    if (entry.getValue() == DeltaSegment.invalidated) {
+                        carried.invalidate(entry.getKey(), direction);
+                    } else {
+                        carried.getMap(direction).remove(entry.getKey());
+                    }
+                }
+            }
+        }
+        ArrayList<String> titles = new ArrayList<String>(base.getNumPages() + changed.size());
+        HashMap<String, Integer> newIds = new HashMap<String, Integer>();
+        for (int page = 0; page < base.getNumPages(); page++) {
+            titles.add(base.getTitle(page));
+        }
+        for (Map.Entry<String, String[]> entry : changed.entrySet()) {
+            addTitle(entry.getKey(), base, titles, newIds);
+            if (entry.getValue() != DeltaSegment.invalidated) {
+                for (String link : entry.getValue()) {
+                    addTitle(link, base, titles, newIds);
+                }
+            }
+        }
+        int[] offsets = new int[titles.size() + 1];
+        int[][] links = new int[titles.size()][];
+        for (int page = 0; page < titles.size(); page++) {
+            String[] changedLinks = changed.get(titles.get(page));
+            if (changedLinks == null || changedLinks == DeltaSegment.invalidated) {
+                // an invalidated list keeps its old links in the file, hidden behind the carried invalidation
+                links[page] = page < base.getNumPages() ? graph.getLinks(page, Direction.FORWARDS) : new int[0];
+            } else {
+                int[] ids = new int[changedLinks.length];
+                for (int i = 0; i < ids.length; i++) {
+                    int id = base.getId(changedLinks[i]);
+                    ids[i] = id >= 0 ? id : newIds.get(changedLinks[i]);
+                }
+                Arrays.sort(ids);
+                int numDistinct = 0;
+                for (int i = 0; i < ids.length; i++) {
+                    if (i == 0 || ids[i] != ids[i - 1]) {
+                        ids[numDistinct++] = ids[i];
+                    }
+                }
+                links[page] = Arrays.copyOf(ids, numDistinct);
+            }
+            if ((long) offsets[page] + links[page].length > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too many links to compact in memory");
+            }
+            offsets[page + 1] = offsets[page] + links[page].length;
+        }
+        int[] targets = new int[offsets[titles.size()]];
+        for (int page = 0; page < titles.size(); page++) {
+            System.arraycopy(links[page], 0, targets, offsets[page], links[page].length);
+        }
+        return new LinkGraph(titles.toArray(new String[titles.size()]), offsets, targets);
+    }
+
+    private static void addTitle(String title, LinkGraph base, ArrayList<String> titles, HashMap<String, Integer> newIds) {
+        if (base.getId(title) < 0 && !newIds.containsKey(title)) {
+            newIds.put(title, titles.size());
+            titles.add(title);
+        }
+    }
+
+    /******************************************/
+    // METHODS FOR WATCHING A DIRECTORY
+    /******************************************/
+    /**
+     * Apply every .json file in dirName not applied yet, in name order (so name them by time), then compact the
+     * shared graph if more than maxSegments of its segments have been sealed. Returns how many files were applied.
+     */
+    public synchronized int applyNewFiles(String dirName) {
+        File[] files = new File(dirName).listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null) {
+            LOGGER.log(Level.WARNING, "Cannot list change log directory " + dirName);
+            return 0;
+        }
+        Arrays.sort(files);
+        int numApplied = 0;
+        for (File file : files) {
+            if (appliedFiles.contains(file.getName())) {
+                continue;
+            }
+            try {
+                apply(file.getPath());
+                numApplied++;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Skipping change log " + file + ": " + e.getMessage());
+            }
+            // a file that does not parse would fail the same way every time
+            appliedFiles.add(file.getName());
+        }
+        CompressedLinkGraph graph = CompressedLinkGraph.getShared();
+        if (graph != null && getNumSealed(graph) > maxSegments) {
+            try {
+                compact();
+            } catch (IOException | RuntimeException e) {
+                // keep serving the graph and segments we have
+                LOGGER.log(Level.WARNING, "Failed to compact link graph " + graph.getFileName() + ": " + e.getMessage());
+            }
+        }
+        return numApplied;
+    }
+
+    // check dirName for new files every periodSeconds in the background, until the JVM exits
+    public synchronized void scheduleUpdates(String dirName, long periodSeconds) {
+        if (poller != null || periodSeconds <= 0) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-log-updates");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(() -> applyNewFiles(dirName), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    private static int getNumSealed(CompressedLinkGraph graph) {
+        int numSealed = 0;
+        for (DeltaSegment delta : graph.getDeltas()) {
+            numSealed += delta.isSealed() ? 1 : 0;
+        }
+        return numSealed;
+    }
+}
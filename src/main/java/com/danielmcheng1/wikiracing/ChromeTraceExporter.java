@@ -0,0 +1,103 @@
+package com.danielmcheng1.wikiracing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Converts a crawl trace to the Chrome trace-event JSON format, which can be opened in chrome://tracing or Perfetto.
+ * Each crawler thread becomes a track holding its batches, with the Wiki API requests nested inside each batch. The time
+ * each batch spent waiting for a free thread is shown as an async "queued" span, since those overlap freely.
+ * https://docs.google.com/document/d/1CvAClvFfyA5R-PhYUmn5OOQtYMH4h6I0nSsKchNAySU
+ */
+public class ChromeTraceExporter {
+    private static final int pid = 1;
+
+    public static String toJson(CrawlerResult result) {
+        JsonArray events = new JsonArray();
+        List<CrawlTrace.BatchTrace> batches = result.getTrace();
+        if (batches != null) {
+            HashMap<Long, String> threadNames = new HashMap<Long, String>();
+            for (int i = 0; i < batches.size(); i++) {
+                CrawlTrace.BatchTrace batch = batches.get(i);
+                threadNames.put(batch.getThreadId(), batch.getThread());
+                addBatchEvents(events, batch, i);
+            }
+            for (Long threadId : threadNames.keySet()) {
+                JsonObject args = new JsonObject();
+                args.addProperty("name", threadNames.get(threadId));
+                events.add(event("thread_name", "__metadata", "M", 0, threadId, args));
+            }
+        }
+
+        JsonObject root = new JsonObject();
+        root.add("traceEvents", events);
+        root.addProperty("displayTimeUnit", "ms");
+        JsonObject metadata = new JsonObject();
+        metadata.addProperty("info", result.getInfo());
+        metadata.addProperty("runtimeMillis", result.getRuntimeMillis());
+        metadata.addProperty("numApiCalls", result.getNumApiCalls());
+        root.add("otherData", metadata);
+        return new Gson().toJson(root);
+    }
+
+    public static void export(CrawlerResult result, String fileName) throws IOException {
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(Paths.get(fileName)), StandardCharsets.UTF_8)) {
+            writer.write(toJson(result));
+        }
+    }
+
+    private static void addBatchEvents(JsonArray events, CrawlTrace.BatchTrace batch, int batchId) {
+        String direction = batch.getDirection().toString();
+        long threadId = batch.getThreadId();
+
+        if (batch.getQueuedMicros() > 0) {
+            JsonObject queued = event("queued", "queue", "b", batch.getQueuedMicros(), threadId, null);
+            queued.addProperty("id", batchId);
+            events.add(queued);
+            JsonObject dequeued = event("queued", "queue", "e", batch.getStartMicros(), threadId, null);
+            dequeued.addProperty("id", batchId);
+            events.add(dequeued);
+        }
+
+        JsonObject args = new JsonObject();
+        args.addProperty("titles", batch.getTitles());
+        args.addProperty("bytes", batch.getBytes());
+        args.addProperty("numApiCalls", batch.getNumApiCalls());
+        args.addProperty("numContinues", batch.getNumContinues());
+        args.addProperty("numLinksParsed", batch.getNumLinksParsed());
+        args.addProperty("queueWaitMicros", batch.getQueueWaitMicros());
+        JsonObject batchEvent = event(direction + " batch", direction, "X", batch.getStartMicros(), threadId, args);
+        batchEvent.addProperty("dur", batch.getEndMicros() - batch.getStartMicros());
+        events.add(batchEvent);
+
+        if (batch.getNumApiCalls() > 0) {
+            JsonObject request = event("Wiki API", direction, "X", batch.getRequestStartMicros(), threadId, null);
+            request.addProperty("dur", batch.getRequestEndMicros() - batch.getRequestStartMicros());
+            events.add(request);
+        }
+    }
+
+    private static JsonObject event(String name, String category, String phase, long timestampMicros, long threadId, JsonObject args) {
+        JsonObject event = new JsonObject();
+        event.addProperty("name", name);
+        event.addProperty("cat", category);
+        event.addProperty("ph", phase);
+        event.addProperty("ts", timestampMicros);
+        event.addProperty("pid", pid);
+        event.addProperty("tid", threadId);
+        if (args != null) {
+            event.add("args", args);
+        }
+        return event;
+    }
+}
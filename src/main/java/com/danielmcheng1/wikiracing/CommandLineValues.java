@@ -14,6 +14,100 @@ public class CommandLineValues {
     private Long timeout;
     @Option(name = "-startREST", required = false, usage = "Specify optional flag as Y to start the REST service")
     private String startREST;
+    @Option(name = "-batchFile", required = false, usage = "Specify optional file of tab or comma separated sourceTitle/destTitle pairs to race headlessly (- for stdin)")
+    private String batchFile;
+    @Option(name = "-batchOutput", required = false, usage = "Specify optional file to write batch results to (defaults to stdout)")
+    private String batchOutput;
+    @Option(name = "-batchFormat", required = false, usage = "Specify optional batch output format of csv or jsonl (defaults to csv)")
+    private String batchFormat = BatchRunner.formatCsv;
+    @Option(name = "-batchParallelism", required = false, usage = "Specify optional number of pairs to race at once in batch mode (defaults to 4)")
+    private int batchParallelism = 4;
+    @Option(name = "-linkCacheSize", required = false, usage = "Specify optional max # of links held in the shared link cache (defaults to 1000000, 0 to disable)")
+    private Long linkCacheSize;
+    @Option(name = "-pathStoreSize", required = false, usage = "Specify optional max # of links held in the shared store of found paths (defaults to 200000, 0 to disable)")
+    private Long pathStoreSize;
+    @Option(name = "-warmStartDir", required = false, usage = "Specify optional directory to save the link cache, redirects and path store to at shutdown, and map them back from at startup")
+    private String warmStartDir;
+    @Option(name = "-traceFile", required = false, usage = "Specify optional file to write a Chrome trace-event timeline of the crawl to")
+    private String traceFile;
+    @Option(name = "-recordFile", required = false, usage = "Specify optional file to record all Wiki API traffic to, for later replay")
+    private String recordFile;
+    @Option(name = "-replayFile", required = false, usage = "Specify optional file of recorded Wiki API traffic to serve requests from instead of the live API")
+    private String replayFile;
+    @Option(name = "-replayLatency", required = false, usage = "Specify optional simulated latency when replaying: none, recorded, empirical, fixed:MILLIS or lognormal:MEDIAN_MILLIS:SIGMA (defaults to none)")
+    private String replayLatency;
+    @Option(name = "-hedgePercentile", required = false, usage = "Specify optional percentile of recent Wiki API latencies past which a call is sent again, the first response winning, e.g. 95 (defaults to 0, no hedging)")
+    private double hedgePercentile;
+    @Option(name = "-hedgeBudget", required = false, usage = "Specify optional max fraction of Wiki API calls that may be hedged (defaults to 0.05)")
+    private double hedgeBudget = HedgingTransport.defaultBudget;
+    @Option(name = "-maxFetchesPerHost", required = false, usage = "Specify optional max # of Wiki API requests open at once across all crawls, and of connections kept open for them (defaults to -numThreads times -batchParallelism)")
+    private Integer maxFetchesPerHost;
+    @Option(name = "-landmarkIndex", required = false, usage = "Specify optional landmark index file to steer crawls towards their destination with (goal-directed ALT crawl)")
+    private String landmarkIndex;
+    @Option(name = "-buildLandmarkIndex", required = false, usage = "Specify optional file to build a landmark index into, from the recorded traffic in -replayFile")
+    private String buildLandmarkIndex;
+    @Option(name = "-numLandmarks", required = false, usage = "Specify optional # of landmarks when building a landmark index (defaults to 32)")
+    private int numLandmarks = LandmarkIndex.defaultNumLandmarks;
+    @Option(name = "-hubIndex", required = false, usage = "Specify optional hub index file of the most-linked pages, expanded without calling the Wiki API")
+    private String hubIndex;
+    @Option(name = "-buildHubIndex", required = false, usage = "Specify optional file to build a hub index into, from the most-linked pages in -replayFile")
+    private String buildHubIndex;
+    @Option(name = "-numHubs", required = false, usage = "Specify optional # of most-linked pages to put in a hub index (defaults to 1000)")
+    private int numHubs = HubIndex.defaultNumHubs;
+    @Option(name = "-hubIndexMaxBytes", required = false, usage = "Specify optional size budget of the hub index file in bytes, leaving out the least-linked hubs past it (defaults to 256MB)")
+    private long hubIndexMaxBytes = HubIndex.defaultMaxBytes;
+    @Option(name = "-hubRefreshMinutes", required = false, usage = "Specify optional minutes between refreshes of the hub index from the Wiki API (defaults to 0, never)")
+    private long hubRefreshMinutes;
+    @Option(name = "-bestFirst", required = false, usage = "Specify optional scorer for a best-first crawl, which expands the most promising pages first: title (words shared with the target) or degree (hub links)")
+    private String bestFirst;
+    @Option(name = "-beamWidth", required = false, usage = "Specify optional max # of pages each best-first frontier keeps, dropping the least promising (defaults to 0, no limit)")
+    private int beamWidth;
+    @Option(name = "-numPaths", required = false, usage = "Specify optional # of paths to return, shortest first, from the pages the crawl visits (defaults to 1)")
+    private int numPaths = 1;
+    @Option(name = "-shortestPathsOnly", required = false, usage = "Specify optional flag as Y to return only paths of the shortest length found with -numPaths")
+    private String shortestPathsOnly;
+    @Option(name = "-exportGraph", required = false, usage = "Specify optional file to stream every link the crawl looks up to as it runs")
+    private String exportGraph;
+    @Option(name = "-exportFormat", required = false, usage = "Specify optional format of -exportGraph: graphml, dot or jsonl (defaults to jsonl)")
+    private String exportFormat = GraphExporter.formatJsonLines;
+    @Option(name = "-visualize", required = false, usage = "Specify optional visualization: replay (animate the crawl once it is over), live (draw a sample of it as it runs) or none (defaults to replay)")
+    private String visualize = Visualizer.modeReplay;
+    @Option(name = "-linkGraph", required = false, usage = "Specify optional compressed link graph file to expand pages from without calling the Wiki API")
+    private String linkGraph;
+    @Option(name = "-buildLinkGraph", required = false, usage = "Specify optional file to write a compressed link graph to, from the recorded traffic in -replayFile")
+    private String buildLinkGraph;
+    @Option(name = "-changeLogDir", required = false, usage = "Specify optional directory of MediaWiki recentchanges JSON files to keep the link cache and -linkGraph up to date from")
+    private String changeLogDir;
+    @Option(name = "-changeLogPollSeconds", required = false, usage = "Specify optional seconds between checks of -changeLogDir for new files (defaults to 60)")
+    private long changeLogPollSeconds = ChangeLogUpdater.defaultPollSeconds;
+    @Option(name = "-offlineGraph", required = false, usage = "Specify optional flag as Y to race in memory over the -linkGraph or the graph recorded in -replayFile, with a parallel BFS instead of crawling")
+    private String offlineGraph;
+    @Option(name = "-workers", required = false, usage = "Specify optional comma separated host:port list of PartitionWorkers to split each race across, by title")
+    private String workers;
+    @Option(name = "-stateServer", required = false, usage = "Specify optional host:port of a Redis server (6.2 or later) to keep the state of breadth-first crawls on, instead of in memory")
+    private String stateServer;
+    @Option(name = "-crawlId", required = false, usage = "Specify optional id of a run to share on the -stateServer: every instance racing the same titles with the same -crawlId expands one crawl")
+    private String crawlId;
+    @Option(name = "-crawlTtlSeconds", required = false, usage = "Specify optional seconds a -crawlId run is kept on the -stateServer after its last batch, or 0 to keep it forever (defaults to a day)")
+    private long crawlTtlSeconds = RespCrawlerStateStore.defaultRunTtlSeconds;
+    @Option(name = "-profile", required = false, usage = "Specify optional crawler profile file of thread, batch and polling settings, e.g. written by -autotune")
+    private String profile;
+    @Option(name = "-numThreads", required = false, usage = "Specify optional # of crawler threads, split between the two directions (defaults to 16, or the -profile setting)")
+    private Integer numThreads;
+    @Option(name = "-maxBatchSize", required = false, usage = "Specify optional max # of titles in each Wiki API request, up to 500 (defaults to 50, or the -profile setting)")
+    private Integer maxBatchSize;
+    @Option(name = "-pollMillis", required = false, usage = "Specify optional ms a crawler thread waits for pages to expand before checking again (defaults to 100, or the -profile setting)")
+    private Long pollMillis;
+    @Option(name = "-backoffMillis", required = false, usage = "Specify optional ms a crawler thread backs off after a failed request (defaults to 500, or the -profile setting)")
+    private Long backoffMillis;
+    @Option(name = "-autotune", required = false, usage = "Specify optional profile file to write the best crawler settings to, searched for against -replayFile or else a mock link graph")
+    private String autotune;
+    @Option(name = "-autotuneGoal", required = false, usage = "Specify optional goal of -autotune: latency (one crawl at a time) or throughput (many at once) (defaults to latency)")
+    private String autotuneGoal = Autotuner.goalLatency;
+    @Option(name = "-autotunePairs", required = false, usage = "Specify optional # of source/destination pairs -autotune races for each setting (defaults to 20)")
+    private int autotunePairs = Autotuner.defaultNumPairs;
+    @Option(name = "-autotuneLatency", required = false, usage = "Specify optional simulated ms per request of the mock link graph -autotune uses without -replayFile (defaults to 20)")
+    private long autotuneLatency = 20;
 
     public CommandLineValues() {
     }
@@ -32,4 +126,192 @@ public class CommandLineValues {
     public String getStartREST() {
         return startREST;
     }
+
+    public String getBatchFile() {
+        return batchFile;
+    }
+
+    public String getBatchOutput() {
+        return batchOutput;
+    }
+
+    public String getBatchFormat() {
+        return batchFormat;
+    }
+
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    public Long getLinkCacheSize() {
+        return linkCacheSize;
+    }
+
+    public Long getPathStoreSize() {
+        return pathStoreSize;
+    }
+
+    public String getWarmStartDir() {
+        return warmStartDir;
+    }
+
+    public String getTraceFile() {
+        return traceFile;
+    }
+
+    public String getRecordFile() {
+        return recordFile;
+    }
+
+    public String getReplayFile() {
+        return replayFile;
+    }
+
+    public String getReplayLatency() {
+        return replayLatency;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public double getHedgeBudget() {
+        return hedgeBudget;
+    }
+
+    public Integer getMaxFetchesPerHost() {
+        return maxFetchesPerHost;
+    }
+
+    public String getLandmarkIndex() {
+        return landmarkIndex;
+    }
+
+    public String getBuildLandmarkIndex() {
+        return buildLandmarkIndex;
+    }
+
+    public int getNumLandmarks() {
+        return numLandmarks;
+    }
+
+    public String getHubIndex() {
+        return hubIndex;
+    }
+
+    public String getBuildHubIndex() {
+        return buildHubIndex;
+    }
+
+    public int getNumHubs() {
+        return numHubs;
+    }
+
+    public long getHubIndexMaxBytes() {
+        return hubIndexMaxBytes;
+    }
+
+    public long getHubRefreshMinutes() {
+        return hubRefreshMinutes;
+    }
+
+    public String getBestFirst() {
+        return bestFirst;
+    }
+
+    public int getBeamWidth() {
+        return beamWidth;
+    }
+
+    public int getNumPaths() {
+        return numPaths;
+    }
+
+    public String getShortestPathsOnly() {
+        return shortestPathsOnly;
+    }
+
+    public String getExportGraph() {
+        return exportGraph;
+    }
+
+    public String getExportFormat() {
+        return exportFormat;
+    }
+
+    public String getVisualize() {
+        return visualize;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public Integer getNumThreads() {
+        return numThreads;
+    }
+
+    public Integer getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public Long getPollMillis() {
+        return pollMillis;
+    }
+
+    public Long getBackoffMillis() {
+        return backoffMillis;
+    }
+
+    public String getAutotune() {
+        return autotune;
+    }
+
+    public String getAutotuneGoal() {
+        return autotuneGoal;
+    }
+
+    public int getAutotunePairs() {
+        return autotunePairs;
+    }
+
+    public long getAutotuneLatency() {
+        return autotuneLatency;
+    }
+
+    public String getOfflineGraph() {
+        return offlineGraph;
+    }
+
+    public String getLinkGraph() {
+        return linkGraph;
+    }
+
+    public String getBuildLinkGraph() {
+        return buildLinkGraph;
+    }
+
+    public String getChangeLogDir() {
+        return changeLogDir;
+    }
+
+    public long getChangeLogPollSeconds() {
+        return changeLogPollSeconds;
+    }
+
+    public String getWorkers() {
+        return workers;
+    }
+
+    public String getStateServer() {
+        return stateServer;
+    }
+
+    public String getCrawlId() {
+        return crawlId;
+    }
+
+    public long getCrawlTtlSeconds() {
+        return crawlTtlSeconds;
+    }
 }
@@ -0,0 +1,550 @@
+package com.danielmcheng1.wikiracing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A LinkGraph compressed into a file that is memory-mapped and decoded one page at a time, so that a graph of all of
+ * Wikipedia fits on a crawler host and the crawler can expand pages straight from it without calling the API. Raw CSR
+ * costs 4 bytes a link in each direction. This format takes a little over 2 on generated graphs, whose links are random
+ * (reference compression only pays off on real graphs, whose neighbouring pages share links). It works in the manner of
+ * WebGraph (Boldi and Vigna):
+ * <ul>
+ *   <li>each page's sorted links are stored as gaps, which are small since links cluster, in variable-length bytes;</li>
+ *   <li>a page may instead copy runs of links from one of the windowSize pages before it (reference compression),
+ *   since neighbouring pages (e.g. the years of a decade) link to much the same pages, and only store the rest as gaps.
+ *   References chain at most maxRefCount deep, which bounds the pages decoded to expand one;</li>
+ *   <li>a sparse index holds the position of every indexInterval-th page, and the pages in between are jumped over by
+ *   their lengths.</li>
+ * </ul>
+ * Varints are used rather than WebGraph's Elias-gamma codes, which are a little smaller but decode a bit at a time.
+ * <p>
+ * File layout, header integers big-endian:
+ * <pre>
+ *   header:    int magic, int version, int numPages, int windowSize, int maxRefCount, int indexInterval,
+ *              long numLinks, long titleBytesLength, long forwardsLength, long backwardsLength
+ *   titles:    int offset per title plus one, then the UTF-8 title bytes, in page id order
+ *   order:     int page id per page, sorted by title bytes, for looking titles up
+ *   forwards:  the encoded links of every page, then the position of every indexInterval-th page among them as a long
+ *   backwards: the same for linkshere
+ * </pre>
+ * Each page's links are encoded as: varint count; if any, varint length in bytes of the rest, so that pages can be
+ * skipped without decoding them, and varint reference (0 for none, otherwise how many pages back);
+ * with a reference, varint number of blocks and a varint per block, alternately copying and skipping links of the
+ * referenced page (links after the last block are skipped); then the remaining links as a zigzag varint of the first
+ * link minus the page id and a varint per further link of the gap minus one.
+ */
+public class CompressedLinkGraph {
+    protected static final int magic = 0x57524c47; // "WRLG"
+    protected static final int version = 1;
+    protected static final int headerLength = 64;
+    public static final int defaultWindowSize = 7;
+    public static final int defaultMaxRefCount = 3;
+    public static final int defaultIndexInterval = 16;
+    // links are mapped in 1GB segments, since a single mapping stops at 2GB
+    private static final int segmentBits = 30;
+
+    private static final Logger LOGGER = Logger.getLogger(CompressedLinkGraph.class.getName());
+
+    // no graph unless one is loaded, e.g. from the command line
+    private static volatile CompressedLinkGraph shared;
+
+    private final String fileName;
+    private final int numPages;
+    private final long numLinks;
+    private final int indexInterval;
+    private final long numBytes;
+    private final MappedByteBuffer titleOffsets;
+    private final MappedByteBuffer titleBytes;
+    private final MappedByteBuffer titleOrder;
+    private final Lists forwards;
+    private final Lists backwards;
+    // lists changed since the file was written, newest first; replaced whole, never modified, so reads need no lock
+    private volatile DeltaSegment[] deltas = new DeltaSegment[0];
+
+    public CompressedLinkGraph(String fileName) throws IOException {
+        this.fileName = fileName;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (channel.size() < headerLength) {
+                throw new IOException("Not a compressed link graph: " + fileName);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerLength);
+            if (header.getInt() != magic || header.getInt() != version) {
+                throw new IOException("Not a compressed link graph: " + fileName);
+            }
+            this.numPages = header.getInt();
+            header.getInt(); // windowSize, only needed to write
+            header.getInt(); // maxRefCount, likewise
+            this.indexInterval = header.getInt();
+            this.numLinks = header.getLong();
+            long titleBytesLength = header.getLong();
+            long forwardsLength = header.getLong();
+            long backwardsLength = header.getLong();
+            long position = headerLength;
+            this.titleOffsets = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * (numPages + 1));
+            position += titleOffsets.capacity();
+            this.titleBytes = channel.map(FileChannel.MapMode.READ_ONLY, position, titleBytesLength);
+            position += titleBytesLength;
+            this.titleOrder = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * numPages);
+            position += titleOrder.capacity();
+            this.forwards = new Lists(channel, position, forwardsLength);
+            position += forwardsLength;
+            this.backwards = new Lists(channel, position, backwardsLength);
+            position += backwardsLength;
+            if (position != channel.size()) {
+                throw new IOException("Compressed link graph is truncated or corrupt: " + fileName);
+            }
+            this.numBytes = position;
+        }
+        LOGGER.log(Level.INFO, "Loaded " + numPages + " pages with " + numLinks + " links in " + numBytes + " bytes from " + fileName);
+    }
+
+    public static CompressedLinkGraph getShared() {
+        return shared;
+    }
+
+    // install a graph for every crawl in the JVM to expand pages from, or null to fetch everything
+    public static void setShared(CompressedLinkGraph compressedLinkGraph) {
+        shared = compressedLinkGraph;
+    }
+
+    /******************************************/
+    // METHODS FOR LOOKING UP PAGES
+    /******************************************/
+    public int getNumPages() {
+        return numPages;
+    }
+
+    public long getNumLinks() {
+        return numLinks;
+    }
+
+    // size of the whole file, titles included
+    public long getNumBytes() {
+        return numBytes;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    // binary search of the titles in title order; returns -1 if the title is not in the graph
+    public int getId(String title) {
+        byte[] key = title.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = numPages - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int id = titleOrder.getInt(4 * mid);
+            int cmp = compareTitle(id, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    public String getTitle(int id) {
+        int start = titleOffsets.getInt(4 * id);
+        byte[] bytes = new byte[titleOffsets.getInt(4 * (id + 1)) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = titleBytes.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int compareTitle(int id, byte[] key) {
+        int start = titleOffsets.getInt(4 * id);
+        int length = titleOffsets.getInt(4 * (id + 1)) - start;
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int cmp = (titleBytes.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    // the links of page id in this direction, in increasing order of page id
+    public int[] getLinks(int id, Direction direction) {
+        return (Direction.FORWARDS.equals(direction) ? forwards : backwards).decode(id);
+    }
+
+    // all links of the page in this direction, or null if it is not in the graph or its links were invalidated
+    public String[] getLinkTitles(String title, Direction direction) {
+        for (DeltaSegment delta : deltas) {
+            String[] links = delta.getLinks(title, direction);
+            if (links != null) {
+                return links == DeltaSegment.invalidated ? null : links;
+            }
+        }
+        int id = getId(title);
+        if (id < 0) {
+            return null;
+        }
+        int[] links = getLinks(id, direction);
+        String[] linkTitles = new String[links.length];
+        for (int i = 0; i < links.length; i++) {
+            linkTitles[i] = getTitle(links[i]);
+        }
+        return linkTitles;
+    }
+
+    public DeltaSegment[] getDeltas() {
+        return deltas;
+    }
+
+    // install the lists changed since the file was written, newest first; see ChangeLogUpdater
+    public void setDeltas(DeltaSegment[] deltas) {
+        this.deltas = deltas;
+    }
+
+    // decode the whole graph, as written to the file and so without its deltas, into memory, e.g. for the ParallelBfs
+    public LinkGraph toLinkGraph() {
+        if (numLinks > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many links to decode into memory: " + numLinks);
+        }
+        String[] titles = new String[numPages];
+        int[] offsets = new int[numPages + 1];
+        int[] targets = new int[(int) numLinks];
+        for (int page = 0; page < numPages; page++) {
+            titles[page] = getTitle(page);
+            int[] links = forwards.decode(page);
+            System.arraycopy(links, 0, targets, offsets[page], links.length);
+            offsets[page + 1] = offsets[page] + links.length;
+        }
+        return new LinkGraph(titles, offsets, targets);
+    }
+
+    /**
+     * The encoded links of every page in one direction, followed by their sparse index.
+     */
+    private class Lists {
+        private final MappedByteBuffer[] segments;
+        private final MappedByteBuffer index;
+
+        Lists(FileChannel channel, long position, long length) throws IOException {
+            long indexLength = 8L * ((numPages + indexInterval - 1) / indexInterval);
+            long listsLength = length - indexLength;
+            if (listsLength < 0) {
+                throw new IOException("Compressed link graph is truncated or corrupt: " + fileName);
+            }
+            this.segments = new MappedByteBuffer[(int) ((listsLength >>> segmentBits) + 1)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << segmentBits;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + start, Math.min(1L << segmentBits, listsLength - start));
+            }
+            this.index = channel.map(FileChannel.MapMode.READ_ONLY, position + listsLength, indexLength);
+        }
+
+        private byte get(long position) {
+            return segments[(int) (position >>> segmentBits)].get((int) (position & ((1 << segmentBits) - 1)));
+        }
+
+        private long readVarint(long[] position) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = get(position[0]++);
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        // seek to the nearest indexed page and jump over the pages between it and this one
+        private long getPosition(int page) {
+            long[] position = {index.getLong(8 * (page / indexInterval))};
+            for (int skipped = page - page % indexInterval; skipped < page; skipped++) {
+                if (readVarint(position) > 0) {
+                    long length = readVarint(position);
+                    position[0] += length;
+                }
+            }
+            return position[0];
+        }
+
+        int[] decode(int page) {
+            long[] position = {getPosition(page)};
+            int count = (int) readVarint(position);
+            int[] links = new int[count];
+            if (count == 0) {
+                return links;
+            }
+            readVarint(position); // length, only needed to skip the page
+            int reference = (int) readVarint(position);
+            int[] copied = null;
+            int numCopied = 0;
+            if (reference > 0) {
+                int[] referenceLinks = decode(page - reference);
+                copied = new int[referenceLinks.length];
+                int numBlocks = (int) readVarint(position);
+                int next = 0;
+                for (int block = 0; block < numBlocks; block++) {
+                    int blockLength = (int) readVarint(position);
+                    if (block % 2 == 0) {
+                        System.arraycopy(referenceLinks, next, copied, numCopied, blockLength);
+                        numCopied += blockLength;
+                    }
+                    next += blockLength;
+                }
+            }
+            int numResiduals = count - numCopied;
+            int[] residuals = new int[numResiduals];
+            if (numResiduals > 0) {
+                long first = readVarint(position);
+                int previous = page + (int) ((first >>> 1) ^ -(first & 1));
+                residuals[0] = previous;
+                for (int i = 1; i < numResiduals; i++) {
+                    previous += (int) readVarint(position) + 1;
+                    residuals[i] = previous;
+                }
+            }
+            if (numCopied == 0) {
+                return residuals;
+            }
+            // merge the copied links and the rest, which are disjoint and each sorted
+            int i = 0, j = 0;
+            for (int k = 0; k < count; k++) {
+                links[k] = j >= numResiduals || (i < numCopied && copied[i] < residuals[j]) ? copied[i++] : residuals[j++];
+            }
+            return links;
+        }
+    }
+
+    /******************************************/
+    // METHODS FOR WRITING THE FILE
+    /******************************************/
+    public static void write(LinkGraph graph, String fileName) throws IOException {
+        write(graph, fileName, defaultWindowSize, defaultMaxRefCount, defaultIndexInterval);
+    }
+
+    /**
+     * Compress the graph into fileName. The file is written alongside and then moved into place, so crawls reading a
+     * graph already mapped from it are unaffected.
+     */
+    public static void write(LinkGraph graph, String fileName, int windowSize, int maxRefCount, int indexInterval) throws IOException {
+        int numPages = graph.getNumPages();
+        File target = new File(fileName).getAbsoluteFile();
+        File temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+        long titleBytesLength = 0;
+        long forwardsLength;
+        long backwardsLength;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+                out.write(new byte[headerLength]);
+                final byte[][] titles = new byte[numPages][];
+                out.writeInt(0);
+                for (int page = 0; page < numPages; page++) {
+                    titles[page] = graph.getTitle(page).getBytes(StandardCharsets.UTF_8);
+                    titleBytesLength += titles[page].length;
+                    if (titleBytesLength > Integer.MAX_VALUE) {
+                        throw new IOException("Titles too large for a compressed link graph");
+                    }
+                    out.writeInt((int) titleBytesLength);
+                }
+                for (byte[] title : titles) {
+                    out.write(title);
+                }
+                Integer[] order = new Integer[numPages];
+                for (int page = 0; page < numPages; page++) {
+                    order[page] = page;
+                }
+                Arrays.sort(order, new Comparator<Integer>() {
+                    public int compare(Integer a, Integer b) {
+                        return compareBytes(titles[a], titles[b]);
+                    }
+                });
+                for (int page : order) {
+                    out.writeInt(page);
+                }
+                forwardsLength = writeLists(graph, Direction.FORWARDS, windowSize, maxRefCount, indexInterval, out);
+                backwardsLength = writeLists(graph, Direction.BACKWARDS, windowSize, maxRefCount, indexInterval, out);
+            }
+            // the header comes last, once the lengths are known
+            ByteBuffer header = ByteBuffer.allocate(headerLength);
+            header.putInt(magic).putInt(version).putInt(numPages).putInt(windowSize).putInt(maxRefCount).putInt(indexInterval);
+            header.putLong(graph.getNumLinks()).putLong(titleBytesLength).putLong(forwardsLength).putLong(backwardsLength);
+            header.flip();
+            try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                channel.write(header, 0);
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    // returns the bytes written; the index holds positions from the start of the lists
+    private static long writeLists(LinkGraph graph, Direction direction, int windowSize, int maxRefCount, int indexInterval,
+                                   DataOutputStream out) throws IOException {
+        int numPages = graph.getNumPages();
+        int[] offsets = graph.getOffsets(direction);
+        int[] targets = graph.getTargets(direction);
+        long[] index = new long[(numPages + indexInterval - 1) / indexInterval];
+        byte[] refCounts = new byte[numPages];
+        Encoder best = new Encoder();
+        Encoder candidate = new Encoder();
+        long position = 0;
+        for (int page = 0; page < numPages; page++) {
+            if (page % indexInterval == 0) {
+                index[page / indexInterval] = position;
+            }
+            best.encode(page, targets, offsets[page], offsets[page + 1], 0, targets, 0, 0);
+            int bestReference = 0;
+            for (int reference = 1; reference <= windowSize && reference <= page && offsets[page] < offsets[page + 1]; reference++) {
+                int referencePage = page - reference;
+                if (refCounts[referencePage] >= maxRefCount || offsets[referencePage] == offsets[referencePage + 1]) {
+                    continue;
+                }
+                candidate.encode(page, targets, offsets[page], offsets[page + 1], reference, targets, offsets[referencePage], offsets[referencePage + 1]);
+                if (candidate.size < best.size) {
+                    Encoder swap = best;
+                    best = candidate;
+                    candidate = swap;
+                    bestReference = reference;
+                }
+            }
+            refCounts[page] = bestReference == 0 ? 0 : (byte) (refCounts[page - bestReference] + 1);
+            int count = offsets[page + 1] - offsets[page];
+            position += writeVarint(out, count);
+            if (count > 0) {
+                position += writeVarint(out, best.size);
+                out.write(best.bytes, 0, best.size);
+                position += best.size;
+            }
+        }
+        for (long indexPosition : index) {
+            out.writeLong(indexPosition);
+        }
+        return position + 8L * index.length;
+    }
+
+    // returns the number of bytes written
+    private static int writeVarint(DataOutputStream out, int value) throws IOException {
+        int numBytes = 1;
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+            numBytes++;
+        }
+        out.write(value);
+        return numBytes;
+    }
+
+    /**
+     * Encodes one page's links into a reusable buffer, so that candidate references can be compared by size.
+     */
+    private static class Encoder {
+        private byte[] bytes = new byte[64];
+        private int size;
+        private int[] residuals = new int[64];
+        private int[] blocks = new int[64];
+
+        // the links after their count and length, which are written with them
+        void encode(int page, int[] links, int from, int to, int reference, int[] referenceLinks, int referenceFrom, int referenceTo) {
+            size = 0;
+            int count = to - from;
+            if (count == 0) {
+                return;
+            }
+            writeVarint(reference);
+            int numResiduals = 0;
+            if (residuals.length < count) {
+                residuals = new int[count];
+            }
+            if (reference == 0) {
+                System.arraycopy(links, from, residuals, 0, count);
+                numResiduals = count;
+            } else {
+                // runs of the referenced links alternately in and not in this page's links, starting with a run in
+                int numBlocks = 0;
+                boolean copying = true;
+                int blockLength = 0;
+                int i = from;
+                for (int r = referenceFrom; r < referenceTo; r++) {
+                    while (i < to && links[i] < referenceLinks[r]) {
+                        residuals[numResiduals++] = links[i++];
+                    }
+                    boolean inLinks = i < to && links[i] == referenceLinks[r];
+                    if (inLinks) {
+                        i++;
+                    }
+                    if (inLinks != copying) {
+                        numBlocks = addBlock(numBlocks, blockLength);
+                        copying = inLinks;
+                        blockLength = 0;
+                    }
+                    blockLength++;
+                }
+                while (i < to) {
+                    residuals[numResiduals++] = links[i++];
+                }
+                // a trailing run of skipped links is implied
+                if (copying) {
+                    numBlocks = addBlock(numBlocks, blockLength);
+                }
+                writeVarint(numBlocks);
+                for (int b = 0; b < numBlocks; b++) {
+                    writeVarint(blocks[b]);
+                }
+            }
+            if (numResiduals > 0) {
+                int first = residuals[0] - page;
+                writeVarint((first << 1) ^ (first >> 31));
+                for (int r = 1; r < numResiduals; r++) {
+                    writeVarint(residuals[r] - residuals[r - 1] - 1);
+                }
+            }
+        }
+
+        private int addBlock(int numBlocks, int blockLength) {
+            if (numBlocks == blocks.length) {
+                blocks = Arrays.copyOf(blocks, numBlocks * 2);
+            }
+            blocks[numBlocks] = blockLength;
+            return numBlocks + 1;
+        }
+
+        private void writeVarint(int value) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7f) != 0) {
+                bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.danielmcheng1.wikiracing;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+
+/**
+ * Counts, for each Wiki API call, whether it had to open a connection or got one from the pool (or shared an HTTP/2
+ * connection another call had open), and how many bytes its response took on the wire before OkHttp gunzipped it.
+ * One is created per call, so it needs no synchronization of its own.
+ */
+public class ConnectionMetricsListener extends EventListener {
+    public static final EventListener.Factory factory = call -> new ConnectionMetricsListener();
+
+    private boolean connected;
+
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connected = true;
+    }
+
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        Metrics.httpConnectionsOpened.increment();
+        if (protocol == Protocol.HTTP_2) {
+            Metrics.http2ConnectionsOpened.increment();
+        }
+    }
+
+    public void connectionAcquired(Call call, Connection connection) {
+        if (!connected) {
+            Metrics.httpConnectionsReused.increment();
+        }
+    }
+
+    // the body as it came off the socket, so compressed if the server gzipped it
+    public void responseBodyEnd(Call call, long byteCount) {
+        Metrics.httpResponseWireBytes.add(byteCount);
+    }
+}
@@ -0,0 +1,40 @@
+package com.danielmcheng1.wikiracing;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonically increasing count (e.g. errors, cache hits). Backed by a LongAdder so that many crawler threads can
+ * increment it without contending on a single memory location.
+ */
+public class Counter {
+    private final String name;
+    private final String help;
+    private final LongAdder value = new LongAdder();
+
+    public Counter(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    public void render(StringBuilder sB) {
+        sB.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sB.append("# TYPE ").append(name).append(" counter\n");
+        sB.append(name).append(' ').append(value.sum()).append('\n');
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,22 @@
+package com.danielmcheng1.wikiracing;
+
+import java.util.ArrayList;
+
+/**
+ * Callback for watching a crawl as it runs, e.g. to export the graph it discovers or draw it live. Listeners are called
+ * on the crawler threads themselves, so they must be thread-safe and hand any slow work (like I/O or drawing) off to a
+ * thread of their own. Listeners only interested in some events can leave the others as they are.
+ */
+public interface CrawlListener {
+    // every link (or backlink, crawling backwards) of a page the crawl has just looked up
+    default void pageExpanded(WebNode wN, String[] links) {
+    }
+
+    // a page reached for the first time from this end of the crawl (the source and destination are not reported)
+    default void pageVisited(WebNode wN) {
+    }
+
+    // the titles from source to destination, once per crawl
+    default void pathFound(ArrayList<String> path) {
+    }
+}
@@ -0,0 +1,143 @@
+package com.danielmcheng1.wikiracing;
+
+/**
+ * Everything a single crawl can be given besides its source and destination, for a Crawler, CrawlerController or
+ * CrawlerService.getCrawl. Each setting starts at its default, i.e. what a crawl started from the command line gets,
+ * so callers only name the settings they change, e.g.
+ * <pre>
+ *     new CrawlOptions("Apple", "Chair").timeoutSeconds(15L).linkCache(null).pathStore(null)
+ * </pre>
+ * <ul>
+ *     <li>linkCache, pathStore and landmarkIndex default to the shared ones; set them to null to crawl without reusing
+ *     anything from earlier crawls, or without steering by landmarks</li>
+ *     <li>nodeScorer defaults to null for a breadth-first (or, with a landmarkIndex, goal-directed) crawl. With a
+ *     nodeScorer the crawl is best-first, still pruning by the landmarkIndex if there is one, and each frontier keeps at
+ *     most beamWidth pages (0 for no limit)</li>
+ *     <li>stateStore holds the pages the crawl visits and queues, e.g. a RespCrawlerStateStore.forRun shared with other
+ *     crawler instances working on the same crawl. If null, a breadth-first crawl keeps them on the shared state
+ *     server, if there is one, under a key of its own; any other crawl keeps them in memory</li>
+ *     <li>config defaults to null for the shared CrawlerConfig</li>
+ *     <li>numPaths paths are returned, shortest first, or only the shortest ones with shortestOnly</li>
+ * </ul>
+ */
+public class CrawlOptions {
+    private final String sourceTitle;
+    private final String destTitle;
+    private Long timeoutSeconds;
+    private LinkCache linkCache = LinkCache.getShared();
+    private PathStore pathStore = PathStore.getShared();
+    private LandmarkIndex landmarkIndex = LandmarkIndex.getShared();
+    private NodeScorer nodeScorer;
+    private int beamWidth;
+    private CrawlerStateStore stateStore;
+    private CrawlerConfig config;
+    private int numPaths = 1;
+    private boolean shortestOnly;
+    private boolean trace;
+
+    public CrawlOptions(String sourceTitle, String destTitle) {
+        this.sourceTitle = sourceTitle;
+        this.destTitle = destTitle;
+    }
+
+    // null for the Crawler's default timeout
+    public CrawlOptions timeoutSeconds(Long timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+        return this;
+    }
+
+    public CrawlOptions linkCache(LinkCache linkCache) {
+        this.linkCache = linkCache;
+        return this;
+    }
+
+    public CrawlOptions pathStore(PathStore pathStore) {
+        this.pathStore = pathStore;
+        return this;
+    }
+
+    public CrawlOptions landmarkIndex(LandmarkIndex landmarkIndex) {
+        this.landmarkIndex = landmarkIndex;
+        return this;
+    }
+
+    public CrawlOptions nodeScorer(NodeScorer nodeScorer, int beamWidth) {
+        this.nodeScorer = nodeScorer;
+        this.beamWidth = beamWidth;
+        return this;
+    }
+
+    public CrawlOptions stateStore(CrawlerStateStore stateStore) {
+        this.stateStore = stateStore;
+        return this;
+    }
+
+    public CrawlOptions config(CrawlerConfig config) {
+        this.config = config;
+        return this;
+    }
+
+    public CrawlOptions numPaths(int numPaths, boolean shortestOnly) {
+        this.numPaths = numPaths;
+        this.shortestOnly = shortestOnly;
+        return this;
+    }
+
+    // record a timeline of every batch, serialized with the result
+    public CrawlOptions trace(boolean trace) {
+        this.trace = trace;
+        return this;
+    }
+
+    public String getSourceTitle() {
+        return sourceTitle;
+    }
+
+    public String getDestTitle() {
+        return destTitle;
+    }
+
+    public Long getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    public LinkCache getLinkCache() {
+        return linkCache;
+    }
+
+    public PathStore getPathStore() {
+        return pathStore;
+    }
+
+    public LandmarkIndex getLandmarkIndex() {
+        return landmarkIndex;
+    }
+
+    public NodeScorer getNodeScorer() {
+        return nodeScorer;
+    }
+
+    public int getBeamWidth() {
+        return beamWidth;
+    }
+
+    public CrawlerStateStore getStateStore() {
+        return stateStore;
+    }
+
+    public CrawlerConfig getConfig() {
+        return config;
+    }
+
+    public int getNumPaths() {
+        return numPaths;
+    }
+
+    public boolean isShortestOnly() {
+        return shortestOnly;
+    }
+
+    public boolean isTrace() {
+        return trace;
+    }
+}
@@ -0,0 +1,195 @@
+package com.danielmcheng1.wikiracing;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Optional timeline of every batch a single crawl expanded, for working out why a race was slow.
+ * <p>
+ * All storage is preallocated as parallel arrays when the crawl starts, so recording a batch is a slot claim plus a
+ * handful of array writes and never allocates or locks. Once the buffer is full further batches are only counted.
+ * Timestamps are stored in nanoseconds relative to the start of the crawl.
+ */
+public class CrawlTrace {
+    public static final int defaultCapacity = 4096;
+
+    private final long originNanos;
+    private final int capacity;
+    private final AtomicInteger numRecorded = new AtomicInteger();
+
+    // set last, once the rest of the slot is written, so a reader that sees a slot's direction sees all of it
+    private final AtomicReferenceArray<Direction> directions;
+    private final String[] titles;
+    private final long[] queuedNanos;
+    private final long[] startNanos;
+    private final long[] requestStartNanos;
+    private final long[] requestEndNanos;
+    private final long[] endNanos;
+    private final long[] bytes;
+    private final int[] numApiCalls;
+    private final int[] numContinues;
+    private final int[] numLinksParsed;
+    private final long[] threadIds;
+    private final String[] threadNames;
+
+    public CrawlTrace(int capacity) {
+        this.originNanos = System.nanoTime();
+        this.capacity = capacity;
+        directions = new AtomicReferenceArray<Direction>(capacity);
+        titles = new String[capacity];
+        queuedNanos = new long[capacity];
+        startNanos = new long[capacity];
+        requestStartNanos = new long[capacity];
+        requestEndNanos = new long[capacity];
+        endNanos = new long[capacity];
+        bytes = new long[capacity];
+        numApiCalls = new int[capacity];
+        numContinues = new int[capacity];
+        numLinksParsed = new int[capacity];
+        threadIds = new long[capacity];
+        threadNames = new String[capacity];
+    }
+
+    // titlesConcatenated is the "|" separated list of titles the batch expanded
+    public void record(Direction direction, String titlesConcatenated, BatchStats stats) {
+        int slot = numRecorded.getAndIncrement();
+        if (slot >= capacity) {
+            return;
+        }
+        Thread thread = Thread.currentThread();
+        titles[slot] = titlesConcatenated;
+        queuedNanos[slot] = relative(stats.getQueuedNanos());
+        startNanos[slot] = relative(stats.getStartNanos());
+        requestStartNanos[slot] = stats.getNumApiCalls() == 0 ? 0 : relative(stats.getRequestStartNanos());
+        requestEndNanos[slot] = stats.getNumApiCalls() == 0 ? 0 : relative(stats.getRequestEndNanos());
+        endNanos[slot] = relative(stats.getEndNanos());
+        bytes[slot] = stats.getBytes();
+        numApiCalls[slot] = stats.getNumApiCalls();
+        numContinues[slot] = stats.getNumContinues();
+        numLinksParsed[slot] = stats.getNumLinksParsed();
+        threadIds[slot] = thread.getId();
+        threadNames[slot] = thread.getName();
+        directions.set(slot, direction);
+    }
+
+    private long relative(long nanos) {
+        return nanos == 0 ? 0 : nanos - originNanos;
+    }
+
+    // copy out the batches recorded so far, e.g. for serializing alongside the CrawlerResult
+    public ArrayList<BatchTrace> getBatches() {
+        int recorded = Math.min(numRecorded.get(), capacity);
+        ArrayList<BatchTrace> batches = new ArrayList<BatchTrace>(recorded);
+        for (int i = 0; i < recorded; i++) {
+            // a slot that was claimed but not yet written by a still-running thread
+            Direction direction = directions.get(i);
+            if (direction == null) {
+                continue;
+            }
+            batches.add(new BatchTrace(direction, titles[i], queuedNanos[i], startNanos[i], requestStartNanos[i],
+                    requestEndNanos[i], endNanos[i], bytes[i], numApiCalls[i], numContinues[i], numLinksParsed[i],
+                    threadIds[i], threadNames[i]));
+        }
+        return batches;
+    }
+
+    public int getNumDropped() {
+        return Math.max(0, numRecorded.get() - capacity);
+    }
+
+    /**
+     * One recorded batch, in the shape it is serialized to JSON
+     */
+    public static class BatchTrace {
+        private final Direction direction;
+        private final String titles;
+        private final long queuedMicros;
+        private final long startMicros;
+        private final long requestStartMicros;
+        private final long requestEndMicros;
+        private final long endMicros;
+        private final long queueWaitMicros;
+        private final long bytes;
+        private final int numApiCalls;
+        private final int numContinues;
+        private final int numLinksParsed;
+        private final long threadId;
+        private final String thread;
+
+        public BatchTrace(Direction direction, String titles, long queuedNanos, long startNanos, long requestStartNanos,
+                          long requestEndNanos, long endNanos, long bytes, int numApiCalls, int numContinues,
+                          int numLinksParsed, long threadId, String thread) {
+            this.direction = direction;
+            this.titles = titles;
+            this.queuedMicros = queuedNanos / 1000;
+            this.startMicros = startNanos / 1000;
+            this.requestStartMicros = requestStartNanos / 1000;
+            this.requestEndMicros = requestEndNanos / 1000;
+            this.endMicros = endNanos / 1000;
+            this.queueWaitMicros = queuedNanos == 0 ? 0 : (startNanos - queuedNanos) / 1000;
+            this.bytes = bytes;
+            this.numApiCalls = numApiCalls;
+            this.numContinues = numContinues;
+            this.numLinksParsed = numLinksParsed;
+            this.threadId = threadId;
+            this.thread = thread;
+        }
+
+        public Direction getDirection() {
+            return direction;
+        }
+
+        public String getTitles() {
+            return titles;
+        }
+
+        public long getQueuedMicros() {
+            return queuedMicros;
+        }
+
+        public long getStartMicros() {
+            return startMicros;
+        }
+
+        public long getRequestStartMicros() {
+            return requestStartMicros;
+        }
+
+        public long getRequestEndMicros() {
+            return requestEndMicros;
+        }
+
+        public long getEndMicros() {
+            return endMicros;
+        }
+
+        public long getQueueWaitMicros() {
+            return queueWaitMicros;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getNumApiCalls() {
+            return numApiCalls;
+        }
+
+        public int getNumContinues() {
+            return numContinues;
+        }
+
+        public int getNumLinksParsed() {
+            return numLinksParsed;
+        }
+
+        public long getThreadId() {
+            return threadId;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+    }
+}
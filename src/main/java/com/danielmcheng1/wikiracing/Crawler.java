@@ -5,10 +5,23 @@ import com.google.gson.JsonObject;
 import okhttp3.Response;
 import org.apache.commons.lang.StringUtils;
 
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,9 +34,15 @@ import static com.danielmcheng1.wikiracing.Util.getThread;
  */
 public class Crawler {
     public static final int maxBatchSize = 50;
+    // most parents kept per page when a crawl returns several paths, which bounds both memory and the paths enumerated
+    public static final int maxParentsPerPage = 8;
+    public static final String algorithmBFS = "Bidirectional BFS";
+    public static final String algorithmALT = "Bidirectional ALT";
+    public static final String algorithmBestFirst = "Bidirectional Best-First";
 
     private static final Logger LOGGER = Logger.getLogger(Crawler.class.getName());
-    private static final long defaultTimeoutMillis = (long) (15 * 1000);
+    public static final long defaultTimeoutSeconds = 15;
+    private static final long defaultTimeoutMillis = defaultTimeoutSeconds * 1000;
 
     private final String sourceTitle;
     private final String destTitle;
@@ -31,72 +50,395 @@ public class Crawler {
 
     private Path path;
     private CrawlerState crawlerState;
-
-    public Crawler(String sourceTitle, String destTitle, Long timeoutSeconds) {
-        this.sourceTitle = Util.normalizeTitle(sourceTitle);
-        this.destTitle = Util.normalizeTitle(destTitle);
+    private final LinkCache linkCache;
+    private final PathStore pathStore;
+    // when set, the crawl is goal-directed: frontiers are ordered by the landmarks' bounds and dead ends are pruned
+    private final LandmarkIndex landmarkIndex;
+    // when set, the crawl is best-first: frontiers hand out the pages this scores highest, as soon as a thread is free
+    private final NodeScorer nodeScorer;
+    // snapshot of the most-linked pages, expanded without calling the API (taken when the crawl starts, so a refresh
+    // mid-crawl does not mix two snapshots)
+    private final HubIndex hubIndex;
+    private final CompressedLinkGraph compressedLinkGraph;
+    private int sourceId = -1;
+    private int destId = -1;
+    private final AtomicInteger numApiCalls = new AtomicInteger();
+    private final AtomicInteger numPagesExpanded = new AtomicInteger();
+    private CrawlTrace trace;
+    private CrawlerConfig config;
+    // paths to return from this crawl; above 1, pages keep the other parents they are found from at the same distance
+    private int numPaths = 1;
+    private final AtomicInteger numOtherParents = new AtomicInteger();
+    private final List<CrawlListener> listeners = new CopyOnWriteArrayList<CrawlListener>();
+    private final AtomicBoolean pathAnnounced = new AtomicBoolean();
+    private final TitleCache titleCache;
+    // the source or destination, if the Wiki API told us it does not exist
+    private volatile String invalidTitle;
+    // why the crawl's state store failed, e.g. a state server that went away, which ends the crawl
+    private volatile String stateFailure;
+
+    // see CrawlOptions for what each option does and its default
+    public Crawler(CrawlOptions options) {
+        LandmarkIndex landmarkIndex = options.getLandmarkIndex();
+        NodeScorer nodeScorer = options.getNodeScorer();
+        CrawlerStateStore stateStore = options.getStateStore();
+        this.linkCache = options.getLinkCache();
+        this.pathStore = options.getPathStore();
+        this.landmarkIndex = landmarkIndex;
+        this.nodeScorer = nodeScorer;
+        this.hubIndex = HubIndex.getShared();
+        this.compressedLinkGraph = CompressedLinkGraph.getShared();
+        this.titleCache = TitleCache.getShared();
+        this.config = options.getConfig() == null ? CrawlerConfig.getShared() : options.getConfig();
+        this.numPaths = options.getNumPaths();
+        if (options.isTrace()) {
+            this.trace = new CrawlTrace(CrawlTrace.defaultCapacity);
+        }
+        this.sourceTitle = resolveTitle(Util.normalizeTitle(options.getSourceTitle()));
+        this.destTitle = resolveTitle(Util.normalizeTitle(options.getDestTitle()));
+        Long timeoutSeconds = options.getTimeoutSeconds();
         if (timeoutSeconds == null) this.timeoutMillis = defaultTimeoutMillis;
         else this.timeoutMillis = timeoutSeconds * 1000;
+        if (landmarkIndex != null && this.sourceTitle != null && this.destTitle != null) {
+            this.sourceId = landmarkIndex.getId(this.sourceTitle);
+            this.destId = landmarkIndex.getId(this.destTitle);
+        }
 
-        this.crawlerState = new CrawlerState();
-        this.path = new Path(crawlerState.getVisitedForwards(), crawlerState.getVisitedBackwards());
+        CrawlerState.FrontierOrder frontierOrder = CrawlerState.FrontierOrder.FIFO;
+        if (nodeScorer != null) {
+            frontierOrder = CrawlerState.FrontierOrder.PRIORITY;
+        } else if (landmarkIndex != null) {
+            frontierOrder = CrawlerState.FrontierOrder.PRIORITY_LEVELS;
+        }
+        String name = this.sourceTitle + " -> " + this.destTitle;
+        // a state server's queues are first in, first out, so it cannot order a frontier by priority
+        boolean breadthFirst = CrawlerState.FrontierOrder.FIFO.equals(frontierOrder);
+        if (stateStore != null && !breadthFirst && !(stateStore instanceof InMemoryCrawlerStateStore)) {
+            throw new IllegalArgumentException("Only breadth-first crawls can keep their state on a state server");
+        }
+        if (stateStore == null && breadthFirst && RespClient.getShared() != null) {
+            stateStore = RespCrawlerStateStore.forCrawl(RespClient.getShared(), name);
+        }
+        this.crawlerState = stateStore == null ? new CrawlerState(name, frontierOrder, options.getBeamWidth()) : new CrawlerState(name, frontierOrder, stateStore);
+        crawlerState.setMaxBatchSize(config.getMaxBatchSize());
+        this.path = new Path(crawlerState.getVisitedForwards(), crawlerState.getVisitedBackwards(), pathStore);
         initializeQueues();
 
         Util.setAllLogLevels(Level.WARNING);
     }
 
+    public Crawler(String sourceTitle, String destTitle, Long timeoutSeconds) {
+        this(new CrawlOptions(sourceTitle, destTitle).timeoutSeconds(timeoutSeconds));
+    }
+
     public Crawler(String sourceTitle, String destTitle) {
         this(sourceTitle, destTitle, defaultTimeoutMillis);
     }
 
-    // call the Wiki API to get all links corresponding to the input list of titles
+    // get all links corresponding to the input list of titles, from the link cache where possible and otherwise the Wiki API
     public void findNextLinks(HashMap<String, WebNode> titlesToWebNodes, Direction direction) {
+        findNextLinks(titlesToWebNodes, direction, 0);
+    }
+
+    // queuedNanos is when this batch was handed to the thread pool (0 if unknown)
+    protected void findNextLinks(HashMap<String, WebNode> titlesToWebNodes, Direction direction, long queuedNanos) {
         if (titlesToWebNodes.isEmpty()) {
             return;
         }
 
+        numPagesExpanded.addAndGet(titlesToWebNodes.size());
+        BatchStats stats = new BatchStats(queuedNanos);
+        BatchExpandEvent event = new BatchExpandEvent();
+        event.begin();
+        try {
+            HashMap<String, WebNode> titlesToFetch = addAllCachedPagesToVisit(titlesToWebNodes, direction, stats);
+            // return as soon as possible since the cache may have completed the path
+            if (stopExpanding()) {
+                return;
+            }
+            HashMap<String, CompletableFuture<String[]>> pendingFetches = new HashMap<String, CompletableFuture<String[]>>();
+            titlesToFetch = claimFetches(titlesToFetch, direction, pendingFetches);
+            try {
+                refillBatch(titlesToWebNodes, titlesToFetch, pendingFetches, direction, stats);
+            } catch (UncheckedIOException e) {
+                // nobody is going to fetch the titles claimed so far, so other crawls must not wait on them
+                abandonFetches(titlesToFetch, direction);
+                throw e;
+            }
+            // titles whose fetch another batch gave up on are claimed again, and fetched here if nobody else has
+            while (!titlesToFetch.isEmpty() || !pendingFetches.isEmpty()) {
+                if (stopExpanding()) {
+                    abandonFetches(titlesToFetch, direction);
+                    return;
+                }
+                if (!titlesToFetch.isEmpty() && !fetchAllPagesToVisit(titlesToFetch, direction, stats)) {
+                    return;
+                }
+                HashMap<String, WebNode> abandoned = addAllPendingPagesToVisit(pendingFetches, titlesToWebNodes, stats);
+                if (abandoned == null) {
+                    return;
+                }
+                pendingFetches.clear();
+                titlesToFetch = claimFetches(abandoned, direction, pendingFetches);
+            }
+
+            // all processing complete for these nodes
+            for (WebNode wN : titlesToWebNodes.values()) {
+                crawlerState.removeNodeFromIsProcessing(wN);
+            }
+        } finally {
+            stats.markEnd();
+            if (stats.getNumApiCalls() > 0) {
+                Metrics.continuationsPerBatch.record(stats.getNumContinues());
+            }
+            if (trace != null) {
+                trace.record(direction, StringUtils.join(titlesToWebNodes.keySet().toArray(), "|"), stats);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.direction = direction.toString();
+                event.numTitles = titlesToWebNodes.size();
+                event.numApiCalls = stats.getNumApiCalls();
+                event.numContinues = stats.getNumContinues();
+                event.numLinksParsed = stats.getNumLinksParsed();
+                event.responseBytes = stats.getBytes();
+                event.queueWaitNanos = queuedNanos == 0 ? 0 : stats.getStartNanos() - queuedNanos;
+                event.commit();
+            }
+        }
+    }
+
+    // expand every title in the batch that the hub index, compressed link graph or link cache already knows about, and
+    // return the titles still to fetch
+    private HashMap<String, WebNode> addAllCachedPagesToVisit(HashMap<String, WebNode> titlesToWebNodes, Direction direction, BatchStats stats) {
+        if (linkCache == null && hubIndex == null && compressedLinkGraph == null) {
+            return titlesToWebNodes;
+        }
+        HashMap<String, WebNode> titlesToFetch = new HashMap<String, WebNode>();
+        for (Map.Entry<String, WebNode> entry : titlesToWebNodes.entrySet()) {
+            String[] cachedLinks = getLocalLinks(entry.getKey(), direction);
+            if (cachedLinks == null) {
+                titlesToFetch.put(entry.getKey(), entry.getValue());
+                continue;
+            }
+            stats.addLinksParsed(cachedLinks.length);
+            addOnePageToVisit(cachedLinks, entry.getValue());
+            if (stopExpanding()) {
+                break;
+            }
+        }
+        return titlesToFetch;
+    }
+
+    // hubs come from the snapshot, which saves the most API calls, then other pages from the compressed link graph;
+    // neither is copied into the link cache
+    private String[] getLocalLinks(String title, Direction direction) {
+        if (hubIndex != null) {
+            String[] hubLinks = hubIndex.getLinks(title, direction);
+            if (hubLinks != null) {
+                Metrics.hubIndexExpansions.increment();
+                return hubLinks;
+            }
+        }
+        if (compressedLinkGraph != null) {
+            String[] graphLinks = compressedLinkGraph.getLinkTitles(title, direction);
+            if (graphLinks != null) {
+                Metrics.compressedGraphExpansions.increment();
+                return graphLinks;
+            }
+        }
+        return linkCache == null ? null : linkCache.getLinks(title, direction);
+    }
+
+    /******************************************/
+    // METHODS FOR SHARING IN-FLIGHT FETCHES
+    /******************************************/
+    // return the titles this batch should fetch itself, leaving those another batch is already fetching in pendingFetches
+    private HashMap<String, WebNode> claimFetches(HashMap<String, WebNode> titlesToWebNodes, Direction direction,
+                                                 HashMap<String, CompletableFuture<String[]>> pendingFetches) {
+        HashMap<String, WebNode> titlesToFetch = new HashMap<String, WebNode>();
+        for (Map.Entry<String, WebNode> entry : titlesToWebNodes.entrySet()) {
+            CompletableFuture<String[]> pending = WikiRetriever.claimFetch(entry.getKey(), direction);
+            if (pending == null) {
+                titlesToFetch.put(entry.getKey(), entry.getValue());
+            } else {
+                pendingFetches.put(entry.getKey(), pending);
+            }
+        }
+        return titlesToFetch;
+    }
+
+    private void abandonFetches(HashMap<String, WebNode> titlesToFetch, Direction direction) {
+        for (String title : titlesToFetch.keySet()) {
+            WikiRetriever.abandonFetch(title, direction);
+        }
+    }
+
+    // top the request back up from the frontier, so that titles left to other batches do not leave it half empty
+    private void refillBatch(HashMap<String, WebNode> titlesToWebNodes, HashMap<String, WebNode> titlesToFetch,
+                             HashMap<String, CompletableFuture<String[]>> pendingFetches, Direction direction, BatchStats stats) {
+        int numToRefill = pendingFetches.size();
+        while (numToRefill > 0 && !stopExpanding()) {
+            HashMap<String, WebNode> refill = crawlerState.getNextBatchToVisit(direction, numToRefill);
+            if (refill.isEmpty()) {
+                return;
+            }
+            Metrics.refilledPages.add(refill.size());
+            numPagesExpanded.addAndGet(refill.size());
+            titlesToWebNodes.putAll(refill);
+            int numPendingBefore = pendingFetches.size();
+            titlesToFetch.putAll(claimFetches(addAllCachedPagesToVisit(refill, direction, stats), direction, pendingFetches));
+            // pages expanded from the cache need no request, so only refill again for titles left to other batches
+            numToRefill = pendingFetches.size() - numPendingBefore;
+        }
+    }
+
+    /**
+     * Expand the pages other batches fetched for us, once they have. Returns the titles whose fetch was given up on,
+     * or null if we stopped early because the path was found or the crawl ended.
+     */
+    private HashMap<String, WebNode> addAllPendingPagesToVisit(HashMap<String, CompletableFuture<String[]>> pendingFetches,
+                                                              HashMap<String, WebNode> titlesToWebNodes, BatchStats stats) {
+        HashMap<String, WebNode> abandoned = new HashMap<String, WebNode>();
+        for (Map.Entry<String, CompletableFuture<String[]>> entry : pendingFetches.entrySet()) {
+            String[] links = null;
+            while (links == null && !entry.getValue().isDone()) {
+                if (stopExpanding() || Thread.currentThread().isInterrupted()) {
+                    return null;
+                }
+                try {
+                    links = entry.getValue().get(config.getPollMillis(), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // check whether the crawl is still on, then keep waiting
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+            if (links == null) {
+                links = entry.getValue().getNow(null);
+            }
+            if (links == null) {
+                abandoned.put(entry.getKey(), titlesToWebNodes.get(entry.getKey()));
+                continue;
+            }
+            if (links == WikiRetriever.missingPage) {
+                recordMissingTitle(entry.getKey(), titlesToWebNodes.get(entry.getKey()).getDirection());
+                if (stopExpanding()) {
+                    return null;
+                }
+                continue;
+            }
+            stats.addLinksParsed(links.length);
+            addOnePageToVisit(links, titlesToWebNodes.get(entry.getKey()));
+            if (stopExpanding()) {
+                return null;
+            }
+        }
+        return abandoned;
+    }
+
+    // call the Wiki API for this batch of titles, which we have claimed, and hand their links to any batch waiting on
+    // them; returns false if we stopped early because the path was found
+    private boolean fetchAllPagesToVisit(HashMap<String, WebNode> titlesToWebNodes, Direction direction, BatchStats stats) {
         String titlesConcatenated = StringUtils.join(titlesToWebNodes.keySet().toArray(), "|");
-        LOGGER.log(Level.INFO, getThread() + "API call for: " + titlesConcatenated);
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.log(Level.INFO, getThread() + "API call for: " + titlesConcatenated);
+        }
 
+        // collect the complete set of links for each title so that they can be cached and shared once all continues
+        // have returned
+        HashMap<String, ArrayList<String>> linksFetched = new HashMap<String, ArrayList<String>>();
+        boolean complete = false;
+        try {
+            complete = fetchAllPages(titlesConcatenated, titlesToWebNodes, direction, linksFetched, stats);
+        } finally {
+            for (String title : titlesToWebNodes.keySet()) {
+                if (!complete) {
+                    WikiRetriever.abandonFetch(title, direction);
+                    continue;
+                }
+                ArrayList<String> links = linksFetched.get(title);
+                // a page that does not exist is left to the title cache, of each crawl waiting on it too
+                if (linksFetched.containsKey(title) && links == null) {
+                    WikiRetriever.completeFetch(title, direction, WikiRetriever.missingPage);
+                    continue;
+                }
+                String[] linksArray = links == null ? new String[0] : links.toArray(new String[links.size()]);
+                WikiRetriever.completeFetch(title, direction, linksArray);
+                if (linkCache != null) {
+                    linkCache.putLinks(title, direction, linksArray);
+                }
+            }
+        }
+        return complete || !stopExpanding();
+    }
+
+    // returns true once every link of every title has come back
+    private boolean fetchAllPages(String titlesConcatenated, HashMap<String, WebNode> titlesToWebNodes, Direction direction,
+                                  HashMap<String, ArrayList<String>> linksFetched, BatchStats stats) {
         Boolean isFirstCall = true;
         JsonObject continueParams = null;
         // continue to query Wiki API for this set of titles, as long as Wikipedia keeps passing us back a continue parameter
         while (isFirstCall || continueParams != null) {
-            isFirstCall = false;
+            if (continueParams != null) {
+                stats.markContinue();
+            }
+            numApiCalls.incrementAndGet();
+            long bytesBefore = WikiRetriever.getBytesReadOnThread();
+            stats.markRequestStart();
             JsonObject response = WikiRetriever.getWikiResponse(titlesConcatenated, direction, continueParams);
+            stats.markRequestEnd(WikiRetriever.getBytesReadOnThread() - bytesBefore);
             // add resulting links for each page/title in our API call
             if (response != null) {
-                addAllPagesToVisit(response, titlesToWebNodes, direction);
-                // return as soon as possible since another thread may have found the path
-                if (path.foundPath()) {
-                    return;
-                }
+                isFirstCall = false;
+                addAllPagesToVisit(response, titlesToWebNodes, direction, linksFetched, stats);
                 // check if we need to send a continue request to retrieve the next set of links for this same query
                 continueParams = WikiRetriever.getContinue(response);
+                // return as soon as possible since another thread may have found the path; if that was the last
+                // response, the links are complete all the same and can go to the batches waiting on them
+                if (stopExpanding()) {
+                    return continueParams == null;
+                }
             }
             // backoff if WikiAPI timed out request
             else {
+                // the crawl may have ended while we were waiting on the Wiki API
+                if (stopExpanding() || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
                 // wait before trying to call again
+                Metrics.backoffs.increment();
                 try {
-                    Thread.currentThread().sleep(500);
+                    Thread.currentThread().sleep(config.getBackoffMillis());
                 } catch (InterruptedException e) {
                     LOGGER.log(Level.INFO, getThread() + "findNextLinks interrupted while sleeping");
+                    Thread.currentThread().interrupt();
                 }
             }
         }
-
-        // all processing complete for these nodes
-        for (WebNode wN : titlesToWebNodes.values()) {
-            crawlerState.removeNodeFromIsProcessing(wN);
-        }
+        return true;
     }
 
     // save the links for all pages from the Wiki API response
-    private void addAllPagesToVisit(JsonObject response, HashMap<String, WebNode> titlesToWebNodes, Direction direction) {
+    protected void addAllPagesToVisit(JsonObject response, HashMap<String, WebNode> titlesToWebNodes, Direction direction, HashMap<String, ArrayList<String>> linksFetched, BatchStats stats) {
         // TBD throw error here
         if (response == null) {
             return;
         }
+        // the API reports any titles it normalized, e.g. "Apple_pie" to "Apple pie", so map them back to what we requested
+        HashMap<String, String> normalizedToRequested = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : WikiRetriever.getNormalizedTitles(response).entrySet()) {
+            normalizedToRequested.put(entry.getValue(), entry.getKey());
+            if (linkCache != null) {
+                linkCache.putRedirect(entry.getKey(), entry.getValue());
+            }
+        }
+
+        recordTitleValidity(response, direction, normalizedToRequested, linksFetched);
+
         // API response maps each page to a set of links
         JsonObject pageResults = response.getAsJsonObject("query").getAsJsonObject("pages");
         String linksKey;
@@ -105,7 +447,26 @@ public class Crawler {
         } else {
             linksKey = "linkshere";
         }
-        for (String page : pageResults.keySet()) {
+        // a batch can hold pages at different distances (e.g. ones seeded from the PathStore along with the source), so
+        // save links from the nearest pages first, or a link would be visited at the longer distance of a deeper page
+        ArrayList<String> pages = new ArrayList<String>(pageResults.keySet());
+        HashMap<String, String> pagesToTitles = new HashMap<String, String>();
+        for (String page : pages) {
+            JsonObject resultsForPage = pageResults.getAsJsonObject(page);
+            if (!resultsForPage.has("title")) {
+                continue;
+            }
+            String title = resultsForPage.get("title").getAsString();
+            if (!titlesToWebNodes.containsKey(title) && normalizedToRequested.containsKey(title)) {
+                title = normalizedToRequested.get(title);
+            }
+            pagesToTitles.put(page, title);
+        }
+        pages.sort(Comparator.comparingInt(page -> {
+            WebNode node = titlesToWebNodes.get(pagesToTitles.get(page));
+            return node == null ? Integer.MAX_VALUE : node.getDistance();
+        }));
+        for (String page : pages) {
             JsonObject resultsForPage = pageResults.getAsJsonObject(page);
             JsonArray linksForPage = resultsForPage.getAsJsonArray(linksKey);
 
@@ -113,9 +474,11 @@ public class Crawler {
             if (linksForPage == null) {
                 continue;
             }
-            String title = resultsForPage.get("title").getAsString();
+            String title = pagesToTitles.get(page);
             WebNode parentNode = titlesToWebNodes.get(title);
-            LOGGER.log(Level.INFO, getThread() + "Saving title links on page: " + title);
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.log(Level.INFO, getThread() + "Saving title links on page: " + title);
+            }
 
             // should never happen but we cannot add this node then since the parent is unknown
             if (parentNode == null) {
@@ -124,71 +487,370 @@ public class Crawler {
             }
 
             // add all discovered links for this page
-            addOnePageToVisit(linksForPage, parentNode);
+            ArrayList<String> linksForCache = null;
+            if (linksFetched != null) {
+                linksForCache = linksFetched.get(title);
+                if (linksForCache == null) {
+                    linksForCache = new ArrayList<String>();
+                    linksFetched.put(title, linksForCache);
+                }
+            }
+            // once the crawl has stopped, only collect the rest of the links, for the batches waiting on them
+            if (stopExpanding()) {
+                for (int i = 0; linksForCache != null && i < linksForPage.size(); i++) {
+                    linksForCache.add(linksForPage.get(i).getAsJsonObject().get("title").getAsString());
+                }
+                continue;
+            }
+            stats.addLinksParsed(linksForPage.size());
+            addOnePageToVisit(linksForPage, parentNode, linksForCache);
+        }
+    }
 
-            // return as soon as possible since another thread may have found the path
-            if (path.foundPath()) {
-                return;
+    /**
+     * The first batch of each direction holds the source or destination, so its response tells us whether that title
+     * exists, without a separate request to validate it. Titles that do not exist are marked in linksFetched with no
+     * links, so that they are not cached as pages without links.
+     */
+    private void recordTitleValidity(JsonObject response, Direction direction, HashMap<String, String> normalizedToRequested,
+                                     HashMap<String, ArrayList<String>> linksFetched) {
+        String startTitle = Direction.FORWARDS.equals(direction) ? sourceTitle : destTitle;
+        JsonObject pageResults = response.getAsJsonObject("query").getAsJsonObject("pages");
+        for (String page : pageResults.keySet()) {
+            JsonObject resultsForPage = pageResults.getAsJsonObject(page);
+            if (!resultsForPage.has("title")) {
+                continue;
+            }
+            String title = resultsForPage.get("title").getAsString();
+            if (normalizedToRequested.containsKey(title)) {
+                title = normalizedToRequested.get(title);
             }
+            if (Integer.valueOf(page) < 0) {
+                if (linksFetched != null) {
+                    linksFetched.put(title, null);
+                }
+                recordMissingTitle(title, direction);
+            } else if (title.equals(startTitle)) {
+                if (titleCache != null) {
+                    titleCache.markValid(title);
+                }
+                recordValidStartTitle(new WebNode(title, null, direction, 0));
+            }
+        }
+    }
+
+    private boolean isRaceToItself() {
+        return sourceTitle != null && sourceTitle.equals(destTitle);
+    }
+
+    // a race from a page to itself is the page alone, but only once we know the page exists
+    private void recordValidStartTitle(WebNode startWebNode) {
+        if (isRaceToItself()) {
+            markIfNodeCompletesPath(startWebNode);
+        }
+    }
+
+    // a title the Wiki API says does not exist, whether we fetched it or another batch did; if it is where this crawl
+    // starts in that direction, the crawl is over
+    private void recordMissingTitle(String title, Direction direction) {
+        if (titleCache != null) {
+            titleCache.markMissing(title);
+        }
+        if (title.equals(Direction.FORWARDS.equals(direction) ? sourceTitle : destTitle)) {
+            invalidTitle = title;
         }
     }
 
     // save the links for one page within the Wiki API response
-    private void addOnePageToVisit(JsonArray linksForPage, WebNode parent) {
+    private void addOnePageToVisit(JsonArray linksForPage, WebNode parent, ArrayList<String> linksForCache) {
+        // the whole page is read before we check for a path, so that the links we cache for it are complete
+        String[] titles = new String[linksForPage.size()];
         for (int i = 0; i < linksForPage.size(); i++) {
-            String title = linksForPage.get(i).getAsJsonObject().get("title").getAsString();
-            WebNode titleNode = new WebNode(title, parent, parent.getDirection(), parent.getDistance() + 1);
+            titles[i] = linksForPage.get(i).getAsJsonObject().get("title").getAsString();
+        }
+        if (linksForCache != null) {
+            for (String title : titles) {
+                linksForCache.add(title);
+            }
+        }
+        addOnePageToVisit(titles, parent);
+    }
+
+    // save the links for one page, whether from the Wiki API response or from the link cache
+    private void addOnePageToVisit(String[] titles, WebNode parent) {
+        // only a page that exists has links to give, whichever batch or cache they came from
+        if (parent.getParent() == null) {
+            recordValidStartTitle(parent);
+            if (stopExpanding()) {
+                return;
+            }
+        }
+        for (CrawlListener listener : listeners) {
+            listener.pageExpanded(parent, titles);
+        }
+        List<WebNode> titleNodes = new ArrayList<WebNode>(titles.length);
+        for (String title : titles) {
+            titleNodes.add(new WebNode(title, parent, parent.getDirection(), parent.getDistance() + 1));
+        }
 
-            if (!crawlerState.visited(titleNode)) {
-                crawlerState.addToVisit(titleNode); // add this as a new title to visit
-                crawlerState.markAsVisited(titleNode); // eagerly mark it as visited (prevents duplicates from queueing)
-                path.markIfNodeCompletesPath(titleNode); // check if this new link connects our backwards and forwards search
+        // the whole page goes to the crawler state at once, so that a state server is one round trip per step:
+        // eagerly mark the links as visited (prevents duplicates from queueing), then queue the new ones
+        boolean[] added = crawlerState.markAsVisited(titleNodes);
+        List<WebNode> newNodes = new ArrayList<WebNode>();
+        List<WebNode> nodesToVisit = new ArrayList<WebNode>();
+        for (int i = 0; i < added.length; i++) {
+            WebNode titleNode = titleNodes.get(i);
+            if (added[i]) {
+                newNodes.add(titleNode);
+                if (prioritize(titleNode)) {
+                    nodesToVisit.add(titleNode);
+                } else {
+                    Metrics.landmarkPrunedPages.increment(); // never expand it, but it can still complete a path
+                }
+            } else if (numPaths > 1) {
+                addOtherParent(titleNode);
+            }
+        }
+        crawlerState.addToVisit(nodesToVisit);
+        for (WebNode titleNode : newNodes) {
+            for (CrawlListener listener : listeners) {
+                listener.pageVisited(titleNode);
             }
+        }
 
+        // check if any new link connects our backwards and forwards search
+        for (WebNode titleNode : crawlerState.visitedFromOtherEnd(newNodes)) {
+            markIfNodeCompletesPath(titleNode);
             // return as soon as possible since another thread may have found the path
-            if (path.foundPath()) {
+            if (stopExpanding()) {
                 return;
             }
         }
     }
 
+    // tell the listeners about the path, the first time it is found
+    private void markIfNodeCompletesPath(WebNode wN) {
+        path.markIfNodeCompletesPath(wN);
+        if (path.foundPath() && !listeners.isEmpty() && pathAnnounced.compareAndSet(false, true)) {
+            ArrayList<String> titles = CrawlerResult.savePathAsArray(path.getPath());
+            for (CrawlListener listener : listeners) {
+                listener.pathFound(titles);
+            }
+        }
+    }
+
+    // batches stop as soon as a path is found, unless we want several paths: then the batches already running finish,
+    // since the other pages they hold are the likeliest to meet the other end at the same distance
+    private boolean stopExpanding() {
+        return (path.foundPath() && numPaths <= 1) || invalidTitle != null || stateFailure != null;
+    }
+
+    // the crawl is over once it finds a path, finds that the source or destination does not exist, or loses its state
+    private boolean isOver() {
+        return path.foundPath() || invalidTitle != null || stateFailure != null;
+    }
+
+    // a state store that cannot be reached leaves nothing to crawl from, so the crawl ends rather than polling it (the
+    // store has logged the failure)
+    private void recordStateFailure(UncheckedIOException e) {
+        if (stateFailure == null) {
+            stateFailure = e.getCause().getMessage();
+        }
+    }
+
+    // another route to a page we already visited counts if it is just as short
+    private void addOtherParent(WebNode titleNode) {
+        Map<String, WebNode> visited = Direction.FORWARDS.equals(titleNode.getDirection()) ? crawlerState.getVisitedForwards() : crawlerState.getVisitedBackwards();
+        WebNode visitedNode = visited.get(titleNode.getTitle());
+        if (visitedNode != null && visitedNode.getDistance() == titleNode.getDistance()
+                && visitedNode.addParent(titleNode.getParent(), Math.min(numPaths, maxParentsPerPage))) {
+            numOtherParents.incrementAndGet();
+            Metrics.otherParentLinks.increment();
+        }
+    }
+
+    /**
+     * Set the node's priority in a best-first or goal-directed crawl, and return false if the landmarks prove it cannot
+     * reach the other end of the crawl at all. A best-first crawl orders nodes by their score, highest first.
+     * <p>
+     * A goal-directed crawl orders them by the landmarks' lower bounds. Pages the index does not know get bounds of 0
+     * and are never pruned. Both directions steer by the same average of the bound to the destination and the bound
+     * from the source, so that they converge on the same pages in the middle rather than passing each other on the way
+     * to the far ends: priority = 2 * distance + bound(page, dest) - bound(source, page) forwards, and the mirror image
+     * backwards.
+     */
+    private boolean prioritize(WebNode wN) {
+        if (nodeScorer != null) {
+            wN.setPriority(-nodeScorer.score(wN, Direction.FORWARDS.equals(wN.getDirection()) ? destTitle : sourceTitle));
+        }
+        if (landmarkIndex == null) {
+            return true;
+        }
+        int id = landmarkIndex.getId(wN.getTitle());
+        int boundToDest = id >= 0 && destId >= 0 ? landmarkIndex.lowerBound(id, destId) : 0;
+        int boundFromSource = id >= 0 && sourceId >= 0 ? landmarkIndex.lowerBound(sourceId, id) : 0;
+        if (Direction.FORWARDS.equals(wN.getDirection())) {
+            if (boundToDest == LandmarkIndex.unreachable) {
+                return false;
+            }
+            // whether the source reaches this page is moot, we already have
+            boundFromSource = boundFromSource == LandmarkIndex.unreachable ? 0 : boundFromSource;
+            if (nodeScorer == null) {
+                wN.setPriority(2 * wN.getDistance() + boundToDest - boundFromSource);
+            }
+        } else {
+            if (boundFromSource == LandmarkIndex.unreachable) {
+                return false;
+            }
+            boundToDest = boundToDest == LandmarkIndex.unreachable ? 0 : boundToDest;
+            if (nodeScorer == null) {
+                wN.setPriority(2 * wN.getDistance() + boundFromSource - boundToDest);
+            }
+        }
+        return true;
+    }
+
+    private String resolveTitle(String title) {
+        if (linkCache == null || title == null) {
+            return title;
+        }
+        return linkCache.resolveTitle(title);
+    }
+
     protected void initializeQueues() {
+        try {
+            seedQueues();
+        } catch (UncheckedIOException e) {
+            recordStateFailure(e);
+        }
+    }
+
+    private void seedQueues() {
         WebNode sourceWebNode = new WebNode(sourceTitle, null, Direction.FORWARDS, 0);
         WebNode destWebNode = new WebNode(destTitle, null, Direction.BACKWARDS, 0);
-        crawlerState.addToVisit(sourceWebNode);
-        crawlerState.addToVisit(destWebNode);
+        // eager implementation: preemptively mark to prevent duplicates from queueing up; a crawler joining a crawl on
+        // a state server finds both marked already, and takes up the queues where the other crawlers are
+        boolean[] added = crawlerState.markAsVisited(Arrays.asList(sourceWebNode, destWebNode));
+        List<WebNode> nodesToVisit = new ArrayList<WebNode>(2);
+        if (added[0]) {
+            nodesToVisit.add(sourceWebNode);
+        }
+        if (added[1]) {
+            nodesToVisit.add(destWebNode);
+        }
+        crawlerState.addToVisit(nodesToVisit);
+
+        // if source = dest, there is nothing to crawl once we know the title exists: straight away if the title cache
+        // says so, or else when the first batch fetches it
+        if (isRaceToItself()) {
+            if (titleCache != null && Boolean.TRUE.equals(titleCache.isValid(sourceTitle))) {
+                markIfNodeCompletesPath(sourceWebNode);
+            }
+            return;
+        }
+
+        if (pathStore != null) {
+            int pagesSeeded = seedFromPathStore(sourceWebNode) + seedFromPathStore(destWebNode);
+            pathStore.recordLookup(path.foundPath(), pagesSeeded);
+        }
+    }
 
-        // eager implementation: preemptively mark to prevent duplicates from queueing up
-        crawlerState.markAsVisited(sourceWebNode);
-        crawlerState.markAsVisited(destWebNode);
+    // queue up every page on earlier paths from or to this end of the crawl, at its distance along them
+    private int seedFromPathStore(WebNode startWebNode) {
+        if (path.foundPath()) {
+            return 0;
+        }
+        Direction direction = startWebNode.getDirection();
+        Map<String, WebNode> visited = Direction.FORWARDS.equals(direction) ? crawlerState.getVisitedForwards() : crawlerState.getVisitedBackwards();
+        // parents always come before their children in the walk, so each parent node already exists
+        Map<String, WebNode> seeded = new HashMap<String, WebNode>();
+        List<WebNode> nodes = new ArrayList<WebNode>();
+        for (Map.Entry<String, String> entry : pathStore.walk(startWebNode.getTitle(), direction, PathStore.maxSeedPages).entrySet()) {
+            WebNode parentNode = seeded.containsKey(entry.getValue()) ? seeded.get(entry.getValue()) : visited.get(entry.getValue());
+            if (parentNode == null || visited.containsKey(entry.getKey()) || seeded.containsKey(entry.getKey())) {
+                continue;
+            }
+            WebNode wN = new WebNode(entry.getKey(), parentNode, direction, parentNode.getDistance() + 1);
+            // earlier paths prove these pages lead somewhere, so they are ordered but never pruned
+            prioritize(wN);
+            seeded.put(wN.getTitle(), wN);
+            nodes.add(wN);
+        }
 
-        // check if source = dest
-        path.markIfNodeCompletesPath(sourceWebNode);
+        // all seeded at once, like the links on a page
+        boolean[] added = crawlerState.markAsVisited(nodes);
+        List<WebNode> newNodes = new ArrayList<WebNode>();
+        for (int i = 0; i < added.length; i++) {
+            if (added[i]) {
+                newNodes.add(nodes.get(i));
+            }
+        }
+        crawlerState.addToVisit(newNodes);
+        for (WebNode wN : crawlerState.visitedFromOtherEnd(newNodes)) {
+            markIfNodeCompletesPath(wN);
+            if (path.foundPath()) {
+                break;
+            }
+        }
+        return newNodes.size();
     }
 
     protected void runCrawlMultithreaded(Direction direction, long startTime, int threads) {
         ExecutorService taskExecutor = Executors.newFixedThreadPool(threads);
-        while (!path.foundPath() && withinTimeoutBounds(startTime)) {
-            while (crawlerState.noNodesInQueueToVisit(direction) && crawlerState.someNodesAreProcessing(direction)) {
+        Metrics.crawlerThreads.add(threads);
+        try {
+            queueBatches(taskExecutor, direction, startTime);
+        } catch (UncheckedIOException e) {
+            recordStateFailure(e);
+        }
+
+        taskExecutor.shutdown(); // prevent more tasks
+        if (numPaths > 1 && path.foundPath()) {
+            try {
+                taskExecutor.awaitTermination(Math.max(timeoutMillis - (System.currentTimeMillis() - startTime), 0), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                LOGGER.log(Level.INFO, getThread() + "runCrawlMultithreaded interrupted waiting for running batches: " + e.getMessage());
+            }
+        }
+        // cancel current threads, and stop counting the tasks that will now never run
+        Metrics.pendingTasks.add(-taskExecutor.shutdownNow().size());
+        Metrics.crawlerThreads.add(-threads);
+    }
+
+    // hand the direction's batches to the thread pool until the crawl is over
+    private void queueBatches(ExecutorService taskExecutor, Direction direction, long startTime) {
+        while (!isOver() && withinTimeoutBounds(startTime)) {
+            // batches that return early (e.g. once the path is found) leave their nodes marked as processing,
+            // so stop waiting as soon as the crawl is over
+            while ((crawlerState.noNodesInQueueToVisit(direction) || crawlerState.nextNodeIsBehindProcessing(direction))
+                    && crawlerState.someNodesAreProcessing(direction)
+                    && !isOver() && withinTimeoutBounds(startTime)) {
                 try {
-                    Thread.currentThread().sleep(100);
+                    Thread.currentThread().sleep(config.getPollMillis());
                 } catch (InterruptedException e) {
                     // continue on as this is merely to prevent repeated calls from building up when queue is starting out
                     LOGGER.log(Level.INFO, getThread() + "runCrawlMultithreaded interrupted from sleep: " + e.getMessage());
                 }
             }
+            final long queuedNanos = System.nanoTime();
             Runnable task = new Runnable() {
                 public void run() {
-                    if (!path.foundPath()) {
-                        findNextLinks(crawlerState.getNextBatchToVisit(direction), direction);
+                    Metrics.pendingTasks.decrement();
+                    Metrics.busyCrawlerThreads.increment();
+                    try {
+                        if (!isOver()) {
+                            findNextLinks(crawlerState.getNextBatchToVisit(direction), direction, queuedNanos);
+                        }
+                    } catch (UncheckedIOException e) {
+                        recordStateFailure(e);
+                    } finally {
+                        Metrics.busyCrawlerThreads.decrement();
                     }
                 }
             };
+            Metrics.pendingTasks.increment();
             taskExecutor.execute(task);
         }
-
-        taskExecutor.shutdown(); // prevent more tasks
-        taskExecutor.shutdownNow(); // cancel current threads
     }
 
 
@@ -197,7 +859,76 @@ public class Crawler {
     }
 
     protected int getMaxBatchSize() {
-        return maxBatchSize;
+        return config.getMaxBatchSize();
+    }
+
+    // crawl with these settings rather than the shared ones; call before the crawl starts
+    public void setConfig(CrawlerConfig config) {
+        this.config = config;
+        crawlerState.setMaxBatchSize(config.getMaxBatchSize());
+    }
+
+    public CrawlerConfig getConfig() {
+        return config;
+    }
+
+    // the source or destination title, if the crawl found that it does not exist on Wikipedia
+    public String getInvalidTitle() {
+        return invalidTitle;
+    }
+
+    // why the crawl's state store failed, if it did
+    public String getStateFailure() {
+        return stateFailure;
+    }
+
+    public int getNumApiCalls() {
+        return numApiCalls.get();
+    }
+
+    // pages whose links we looked up, from the cache or the Wiki API
+    public int getNumPagesExpanded() {
+        return numPagesExpanded.get();
+    }
+
+    public String getAlgorithm() {
+        if (nodeScorer != null) {
+            return algorithmBestFirst + " (" + nodeScorer.getName() + ")";
+        }
+        return landmarkIndex == null ? algorithmBFS : algorithmALT;
+    }
+
+    // return up to numPaths paths from this crawl instead of just the first one found; call before the crawl starts
+    public void setNumPaths(int numPaths) {
+        this.numPaths = numPaths;
+    }
+
+    public int getNumPaths() {
+        return numPaths;
+    }
+
+    // up to numPaths paths among the pages visited so far, shortest first (see Path.findPaths)
+    public List<ArrayList<String>> findPaths(boolean shortestOnly) {
+        return path.findPaths(numPaths, shortestOnly);
+    }
+
+    // parents kept beyond the first, i.e. the extra memory a multi-path crawl costs
+    public int getNumOtherParents() {
+        return numOtherParents.get();
+    }
+
+    // call before the crawl starts
+    public void addListener(CrawlListener listener) {
+        listeners.add(listener);
+    }
+
+    // record a timeline of every batch in this crawl; call before the crawl starts
+    public void enableTrace(int capacity) {
+        this.trace = new CrawlTrace(capacity);
+    }
+
+    public CrawlTrace getTrace() {
+        return trace;
     }
 
     public static void setLogLevel(Level level) {
@@ -0,0 +1,125 @@
+package com.danielmcheng1.wikiracing;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * The knobs that decide how hard a crawl drives its link source: how many threads it crawls with (split evenly between
+ * the two directions), how many titles go into each Wiki API request, how long a direction with nothing to hand out
+ * waits before checking its queue again, and how long a thread backs off after a failed request. The best values
+ * differ a lot between the live API, a cache-backed deployment and an offline graph, so they can be set from the
+ * command line, per REST request, or from a profile file written by the Autotuner.
+ * <p>
+ * A single instance is shared by every crawl in the JVM unless a crawl is given its own. Configs are immutable, so
+ * swapping the shared one never changes a crawl that is already running.
+ */
+public class CrawlerConfig {
+    public static final int defaultNumThreads = 16;
+    // the Wiki API's limit on titles per request for clients without the apihighlimits right
+    public static final int defaultMaxBatchSize = Crawler.maxBatchSize;
+    public static final long defaultPollMillis = 100;
+    public static final long defaultBackoffMillis = 500;
+    // bots may ask for up to 500 titles at once
+    public static final int maxTitlesPerRequest = 500;
+
+    private static CrawlerConfig shared = new CrawlerConfig();
+
+    private final int numThreads;
+    private final int maxBatchSize;
+    private final long pollMillis;
+    private final long backoffMillis;
+
+    public CrawlerConfig() {
+        this(defaultNumThreads, defaultMaxBatchSize, defaultPollMillis, defaultBackoffMillis);
+    }
+
+    public CrawlerConfig(int numThreads, int maxBatchSize, long pollMillis, long backoffMillis) {
+        this.numThreads = numThreads;
+        this.maxBatchSize = maxBatchSize;
+        this.pollMillis = pollMillis;
+        this.backoffMillis = backoffMillis;
+        validate();
+    }
+
+    public static CrawlerConfig getShared() {
+        return shared;
+    }
+
+    // replace the JVM-wide config, e.g. from the command line or a profile file
+    public static void setShared(CrawlerConfig crawlerConfig) {
+        shared = crawlerConfig;
+    }
+
+    // a copy with whichever settings are given replaced, e.g. from command-line flags or query params
+    public CrawlerConfig withOverrides(Integer numThreads, Integer maxBatchSize, Long pollMillis, Long backoffMillis) {
+        return new CrawlerConfig(numThreads != null ? numThreads : this.numThreads,
+                maxBatchSize != null ? maxBatchSize : this.maxBatchSize,
+                pollMillis != null ? pollMillis : this.pollMillis,
+                backoffMillis != null ? backoffMillis : this.backoffMillis);
+    }
+
+    // configs read from a file skip the constructor, so every config is checked here
+    private void validate() {
+        if (numThreads < 2) {
+            throw new IllegalArgumentException("numThreads must be at least 2 (one for each direction), got " + numThreads);
+        }
+        if (maxBatchSize < 1 || maxBatchSize > maxTitlesPerRequest) {
+            throw new IllegalArgumentException("maxBatchSize must be between 1 and " + maxTitlesPerRequest + ", got " + maxBatchSize);
+        }
+        if (pollMillis < 1) {
+            throw new IllegalArgumentException("pollMillis must be at least 1, got " + pollMillis);
+        }
+        if (backoffMillis < 0) {
+            throw new IllegalArgumentException("backoffMillis must not be negative, got " + backoffMillis);
+        }
+    }
+
+    /******************************************/
+    // METHODS FOR PROFILE FILES
+    /******************************************/
+    public static CrawlerConfig load(String fileName) throws IOException {
+        try (Reader reader = new InputStreamReader(Files.newInputStream(Paths.get(fileName)), StandardCharsets.UTF_8)) {
+            CrawlerConfig config = new Gson().fromJson(reader, CrawlerConfig.class);
+            if (config == null) {
+                throw new IOException("Empty profile " + fileName);
+            }
+            config.validate();
+            return config;
+        }
+    }
+
+    public void save(String fileName) throws IOException {
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(Paths.get(fileName)), StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(this, writer);
+        }
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getPollMillis() {
+        return pollMillis;
+    }
+
+    public long getBackoffMillis() {
+        return backoffMillis;
+    }
+
+    public String toString() {
+        return "numThreads=" + numThreads + " maxBatchSize=" + maxBatchSize + " pollMillis=" + pollMillis + " backoffMillis=" + backoffMillis;
+    }
+}
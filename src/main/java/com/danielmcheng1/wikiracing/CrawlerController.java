@@ -1,9 +1,13 @@
 package com.danielmcheng1.wikiracing;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -21,9 +25,18 @@ import static com.danielmcheng1.wikiracing.Util.getThread;
  */
 public class CrawlerController {
     private static final Logger LOGGER = Logger.getLogger(CrawlerController.class.getName());
-    private static final int numThreads = 16;
     private Crawler crawler;
     private CrawlerResult result;
+    // headless callers (e.g. the batch runner writing results to stdout) turn off the progress messages
+    private boolean printProgress = true;
+    private boolean inputValid;
+    private boolean shortestPathsOnly;
+    // set to race in memory over a locally stored graph rather than crawl
+    private ParallelBfs parallelBfs;
+    // set to split the race across partition worker JVMs rather than crawl in this one
+    private PartitionCoordinator partitionCoordinator;
+    // pages the offline or partitioned race visited, which the Crawler never sees
+    private long numPagesVisitedElsewhere;
 
     public CrawlerController(String sourceTile, String destTile) {
         this.crawler = new Crawler(sourceTile, destTile);
@@ -33,22 +46,55 @@ public class CrawlerController {
         this.crawler = new Crawler(sourceTitle, destTitle, timeoutSeconds);
     }
 
+    // see CrawlOptions for what each option does and its default
+    public CrawlerController(CrawlOptions options) {
+        this.crawler = new Crawler(options);
+        this.shortestPathsOnly = options.isShortestOnly();
+    }
+
     public void runCrawl() {
-        // Validate inputs
-        System.out.println("Validating input source and destination titles exist on Wikipedia...");
-        LOGGER.log(Level.INFO, "Validating input source and destination titles exist on Wikipedia...");
+        long crawlStartTime = System.currentTimeMillis();
+        Metrics.activeCrawls.increment();
+        crawler.getCrawlerState().setActive(true);
         try {
-            Util.assertValidInputTitle(crawler.getSourceTitle());
-            Util.assertValidInputTitle(crawler.getDestTitle());
-        } catch (IllegalArgumentException e) {
-            System.out.println(e.getMessage());
-            result = new CrawlerResult(e.getMessage(), crawler.getPath(), 0, "Bidirectional BFS", numThreads, Crawler.maxBatchSize);
-            LOGGER.log(Level.INFO, "Invalid input: {0}", e.getMessage());
-            return;
+            if (parallelBfs != null) {
+                runOffline();
+            } else if (partitionCoordinator != null) {
+                runPartitioned();
+            } else {
+                runCrawlValidated();
+            }
+        } finally {
+            crawler.getCrawlerState().setActive(false);
+            Metrics.activeCrawls.decrement();
+            recordMetrics(System.currentTimeMillis() - crawlStartTime);
+        }
+        if (result != null) {
+            result.setNumPagesExpanded(parallelBfs != null || partitionCoordinator != null ? (int) numPagesVisitedElsewhere : crawler.getNumPagesExpanded());
+        }
+        if (crawler.getTrace() != null && result != null) {
+            result.setTrace(crawler.getTrace().getBatches());
+        }
+        if (parallelBfs == null && partitionCoordinator == null && crawler.getNumPaths() > 1 && result != null && result.foundPath()) {
+            result.setPaths(crawler.findPaths(shortestPathsOnly), crawler.getNumOtherParents());
+        }
+    }
+
+    private void runCrawlValidated() {
+        CrawlerConfig config = crawler.getConfig();
+        // titles we know are missing fail without calling the API; the rest are checked by the first request of each
+        // direction of the crawl
+        TitleCache titleCache = TitleCache.getShared();
+        for (String title : new String[]{crawler.getSourceTitle(), crawler.getDestTitle()}) {
+            if (titleCache != null && Boolean.FALSE.equals(titleCache.isValid(title))) {
+                Metrics.titleCacheRejections.increment();
+                rejectInvalidTitle(title, 0);
+                return;
+            }
         }
 
         // Kick off forwards and backwards crawl on their own set of threads
-        System.out.println("Running crawl between " + crawler.getSourceTitle() + " and " + crawler.getDestTitle() + "...");
+        printProgress("Running crawl between " + crawler.getSourceTitle() + " and " + crawler.getDestTitle() + "...");
         LOGGER.log(Level.INFO, "Running crawl between " + crawler.getSourceTitle() + " and " + crawler.getDestTitle());
 
         long startTime = System.currentTimeMillis();
@@ -58,7 +104,7 @@ public class CrawlerController {
         Runnable taskForwards = new Runnable() {
             public void run() {
                 LOGGER.log(Level.INFO, getThread() + "Starting taskForwards");
-                crawler.runCrawlMultithreaded(Direction.FORWARDS, startTime, numThreads / 2);
+                crawler.runCrawlMultithreaded(Direction.FORWARDS, startTime, config.getNumThreads() / 2);
             }
         };
         taskExecutor.execute(taskForwards);
@@ -67,7 +113,7 @@ public class CrawlerController {
         Runnable taskBackwards = new Runnable() {
             public void run() {
                 LOGGER.log(Level.INFO, getThread() + "Starting taskBackwards");
-                crawler.runCrawlMultithreaded(Direction.BACKWARDS, startTime, numThreads / 2);
+                crawler.runCrawlMultithreaded(Direction.BACKWARDS, startTime, config.getNumThreads() - config.getNumThreads() / 2);
             }
         };
         taskExecutor.execute(taskBackwards);
@@ -80,6 +126,19 @@ public class CrawlerController {
             LOGGER.log(Level.INFO, getThread() + "runCrawl thread interrupted from sleep: " + e.getMessage());
         }
 
+        if (crawler.getInvalidTitle() != null) {
+            rejectInvalidTitle(crawler.getInvalidTitle(), System.currentTimeMillis() - startTime);
+            return;
+        }
+        inputValid = true;
+        if (crawler.getStateFailure() != null) {
+            String infoMessage = "Crawl state failed: " + crawler.getStateFailure();
+            printProgress(infoMessage);
+            LOGGER.log(Level.WARNING, infoMessage);
+            result = new CrawlerResult(infoMessage, null, System.currentTimeMillis() - startTime, crawler.getAlgorithm(), config.getNumThreads(), config.getMaxBatchSize(), crawler.getNumApiCalls());
+            return;
+        }
+
         // save the results
         String infoMessage;
         if (crawler.getPath() != null) {
@@ -87,8 +146,129 @@ public class CrawlerController {
         } else {
             infoMessage = "Failed to complete within timeout period of " + crawler.getTimeoutMillis() / 1000 + "s"; // input is a long so no need to use double division
         }
-        result = new CrawlerResult(infoMessage, crawler.getPath(), System.currentTimeMillis() - startTime, "Bidirectional BFS", numThreads, Crawler.maxBatchSize);
+        result = new CrawlerResult(infoMessage, crawler.getPath(), System.currentTimeMillis() - startTime, crawler.getAlgorithm(), config.getNumThreads(), config.getMaxBatchSize(), crawler.getNumApiCalls());
+
+    }
+
+    private void rejectInvalidTitle(String title, long runtimeMillis) {
+        String infoMessage = Util.getMissingTitleMessage(title);
+        printProgress(infoMessage);
+        LOGGER.log(Level.INFO, "Invalid input: {0}", infoMessage);
+        CrawlerConfig config = crawler.getConfig();
+        result = new CrawlerResult(infoMessage, null, runtimeMillis, crawler.getAlgorithm(), config.getNumThreads(), config.getMaxBatchSize(), crawler.getNumApiCalls());
+    }
+
+    // the titles must be pages of the graph, which stands in for Wikipedia, so there is no API call to validate them
+    private void runOffline() {
+        LinkGraph graph = parallelBfs.getGraph();
+        int sourceId = graph.getId(crawler.getSourceTitle());
+        int destId = graph.getId(crawler.getDestTitle());
+        if (sourceId < 0 || destId < 0) {
+            String infoMessage = "Title " + (sourceId < 0 ? crawler.getSourceTitle() : crawler.getDestTitle()) + " is not in the offline graph";
+            printProgress(infoMessage);
+            result = new CrawlerResult(infoMessage, null, 0, ParallelBfs.algorithm, parallelBfs.getParallelism(), 0, 0);
+            return;
+        }
+        inputValid = true;
+        printProgress("Racing between " + crawler.getSourceTitle() + " and " + crawler.getDestTitle() + " in the offline graph...");
+
+        long startNanos = System.nanoTime();
+        ParallelBfs.Result race = parallelBfs.race(sourceId, destId, startNanos + crawler.getTimeoutMillis() * 1000000);
+        long runtimeNanos = System.nanoTime() - startNanos;
+        String infoMessage;
+        if (race.getPath() != null) {
+            infoMessage = "Found path!";
+        } else if (race.timedOut()) {
+            infoMessage = "Failed to complete within timeout period of " + crawler.getTimeoutMillis() / 1000 + "s";
+        } else {
+            infoMessage = "No path exists in the offline graph";
+        }
+        numPagesVisitedElsewhere = race.getNumVisited();
+        result = new CrawlerResult(infoMessage, parallelBfs.toWebNodePath(race), runtimeNanos / 1000000, ParallelBfs.algorithm,
+                parallelBfs.getParallelism(), 0, 0);
+        result.setRuntimeMicros(runtimeNanos / 1000);
+    }
+
+    // the workers validate nothing, so a missing title runs until the timeout, as a race with no path does
+    private void runPartitioned() {
+        inputValid = true;
+        printProgress("Racing between " + crawler.getSourceTitle() + " and " + crawler.getDestTitle() + " across "
+                + partitionCoordinator.getNumWorkers() + " partition workers...");
+        long startTime = System.currentTimeMillis();
+        try {
+            PartitionCoordinator.Result race = partitionCoordinator.race(crawler.getSourceTitle(), crawler.getDestTitle(), crawler.getTimeoutMillis());
+            String infoMessage;
+            if (race.getPath() != null) {
+                infoMessage = "Found path!";
+            } else {
+                infoMessage = "Failed to complete within timeout period of " + crawler.getTimeoutMillis() / 1000 + "s";
+            }
+            numPagesVisitedElsewhere = race.getNumPagesExpanded();
+            result = new CrawlerResult(infoMessage, race.toWebNodePath(), System.currentTimeMillis() - startTime, PartitionCoordinator.algorithm,
+                    (int) race.getNumThreads(), crawler.getConfig().getMaxBatchSize(), (int) race.getNumApiCalls());
+        } catch (IOException e) {
+            String infoMessage = "Partitioned race failed: " + e.getMessage();
+            printProgress(infoMessage);
+            LOGGER.log(Level.WARNING, infoMessage);
+            result = new CrawlerResult(infoMessage, null, System.currentTimeMillis() - startTime, PartitionCoordinator.algorithm, 0, 0, 0);
+        }
+    }
+
+    private void recordMetrics(long crawlMillis) {
+        CrawlerState crawlerState = crawler.getCrawlerState();
+        Metrics.crawlLatencyMillis.record(crawlMillis);
+        Metrics.frontierPagesPerCrawl.record(crawlerState.getNumToVisit(Direction.FORWARDS) + crawlerState.getNumToVisit(Direction.BACKWARDS));
+        Metrics.expandedPagesPerCrawl.record(crawler.getNumPagesExpanded());
+        Metrics.visitedPagesPerCrawl.record(crawlerState.getVisitedForwards().size() + crawlerState.getVisitedBackwards().size());
+        crawlerState.releaseQueues();
+        if (!inputValid) {
+            Metrics.crawlsInvalid.increment();
+        } else if (result.foundPath()) {
+            Metrics.crawlsFound.increment();
+        } else {
+            Metrics.crawlsNotFound.increment();
+        }
+    }
+
+    private void printProgress(String message) {
+        if (printProgress) {
+            System.out.println(message);
+        }
+    }
+
+    // call before runCrawl
+    public void addListener(CrawlListener listener) {
+        crawler.addListener(listener);
+    }
+
+    // record a timeline of every batch, serialized with the result; call before runCrawl
+    public void enableTrace() {
+        crawler.enableTrace(CrawlTrace.defaultCapacity);
+    }
+
+    // race in memory over this engine's graph instead of crawling the Wiki API; call before runCrawl
+    public void setParallelBfs(ParallelBfs parallelBfs) {
+        this.parallelBfs = parallelBfs;
+    }
+
+    // split the race across this coordinator's workers instead of crawling in this JVM; call before runCrawl
+    public void setPartitionCoordinator(PartitionCoordinator partitionCoordinator) {
+        this.partitionCoordinator = partitionCoordinator;
+    }
 
+    // crawl with these settings rather than the shared ones; call before runCrawl
+    public void setConfig(CrawlerConfig config) {
+        crawler.setConfig(config);
+    }
+
+    // return up to numPaths paths, shortest first, or only the shortest ones with shortestOnly; call before runCrawl
+    public void setNumPaths(int numPaths, boolean shortestOnly) {
+        crawler.setNumPaths(numPaths);
+        this.shortestPathsOnly = shortestOnly;
+    }
+
+    public void setPrintProgress(boolean printProgress) {
+        this.printProgress = printProgress;
     }
 
     public CrawlerResult getResult() {
@@ -104,6 +284,14 @@ public class CrawlerController {
         Visualizer.visualize(getResult().getPath(), crawlerState.getVisitedForwards(), crawlerState.getVisitedBackwards());
     }
 
+    // open a window that draws the crawl as it runs; call before runCrawl, and stop the visualizer once it is done
+    public LiveVisualizer visualizeLive() {
+        LiveVisualizer liveVisualizer = new LiveVisualizer(crawler.getSourceTitle(), crawler.getDestTitle());
+        crawler.addListener(liveVisualizer);
+        liveVisualizer.start(true);
+        return liveVisualizer;
+    }
+
     public static void setLogLevel(Level level) {
         LOGGER.setLevel(level);
     }
@@ -122,18 +310,258 @@ public class CrawlerController {
         String destTitle = values.getDestTitle();
         Long timeoutSecs = values.getTimeout();
         String startREST = values.getStartREST();
+        if (values.getLinkCacheSize() != null) {
+            LinkCache.setShared(new LinkCache(values.getLinkCacheSize()));
+        }
+        if (values.getPathStoreSize() != null) {
+            PathStore.setShared(new PathStore(values.getPathStoreSize()));
+        }
+        if (values.getWarmStartDir() != null) {
+            try {
+                WarmStart.restore(values.getWarmStartDir(), LinkCache.getShared(), PathStore.getShared());
+            } catch (IOException e) {
+                // a bad snapshot only costs the fetches it would have saved
+                System.err.println("WARNING: Failed to map warm start snapshots, starting cold: " + e.getMessage());
+            }
+            WarmStart.saveOnShutdown(values.getWarmStartDir());
+        }
+        if (values.getLandmarkIndex() != null) {
+            try {
+                LandmarkIndex.setShared(new LandmarkIndex(values.getLandmarkIndex()));
+            } catch (IOException e) {
+                System.err.println("ERROR: Failed to load landmark index: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (values.getHubIndex() != null) {
+            try {
+                HubIndex.setShared(new HubIndex(values.getHubIndex(), values.getHubIndexMaxBytes()));
+                HubIndex.scheduleRefresh(values.getHubRefreshMinutes());
+            } catch (IOException e) {
+                System.err.println("ERROR: Failed to load hub index: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        try {
+            CrawlerConfig config = values.getProfile() != null ? CrawlerConfig.load(values.getProfile()) : CrawlerConfig.getShared();
+            CrawlerConfig.setShared(config.withOverrides(values.getNumThreads(), values.getMaxBatchSize(), values.getPollMillis(), values.getBackoffMillis()));
+        } catch (IOException | IllegalArgumentException | JsonParseException e) {
+            System.err.println("ERROR: Failed to load crawler profile: " + e.getMessage());
+            System.exit(1);
+        }
+        try {
+            // enough for every crawler thread of batchParallelism crawls (or REST requests) to fetch at once
+            int maxFetchesPerHost = values.getMaxFetchesPerHost() != null ? values.getMaxFetchesPerHost()
+                    : CrawlerConfig.getShared().getNumThreads() * values.getBatchParallelism();
+            // hedged requests that lose are only cancelled over HTTP/1.1 (see OkHttpTransport)
+            WikiRetriever.setClient(OkHttpTransport.newClientBuilder(maxFetchesPerHost, values.getHedgePercentile() <= 0).build());
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: Invalid HTTP settings: " + e.getMessage());
+            System.exit(1);
+        }
+        if (values.getHedgePercentile() > 0) {
+            try {
+                // under any recording, which then sees each call once however many times it was sent
+                WikiRetriever.setTransport(new HedgingTransport(WikiRetriever.getTransport(), values.getHedgePercentile(), values.getHedgeBudget()));
+            } catch (IllegalArgumentException e) {
+                System.err.println("ERROR: Invalid hedging settings: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        try {
+            WikiRetriever.useTrafficArchive(values.getRecordFile(), values.getReplayFile(), values.getReplayLatency());
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("ERROR: Failed to open traffic archive: " + e.getMessage());
+            System.exit(1);
+        }
 
-        if ("Y".equals(startREST)) {
+        if (values.getLinkGraph() != null) {
+            try {
+                CompressedLinkGraph.setShared(new CompressedLinkGraph(values.getLinkGraph()));
+            } catch (IOException e) {
+                System.err.println("ERROR: Failed to load compressed link graph: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (values.getChangeLogDir() != null) {
+            // catch up before the first crawl, then keep watching for new files
+            ChangeLogUpdater changeLogUpdater = new ChangeLogUpdater(LinkCache.getShared());
+            changeLogUpdater.applyNewFiles(values.getChangeLogDir());
+            // the offline graph below is decoded once these are applied, and then rebuilt on every compaction
+            changeLogUpdater.setUpdatesParallelBfs("Y".equals(values.getOfflineGraph()));
+            changeLogUpdater.scheduleUpdates(values.getChangeLogDir(), values.getChangeLogPollSeconds());
+        }
+        if (values.getWorkers() != null) {
+            try {
+                PartitionCoordinator.setShared(new PartitionCoordinator(Arrays.asList(values.getWorkers().split(","))));
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("ERROR: Failed to connect to partition workers: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (values.getStateServer() != null) {
+            try {
+                RespClient stateServer = new RespClient(values.getStateServer());
+                stateServer.call("PING");
+                RespClient.setShared(stateServer);
+                RespCrawlerStateStore.setRunTtlSeconds(values.getCrawlTtlSeconds());
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("ERROR: Failed to connect to state server: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if ("Y".equals(values.getOfflineGraph())) {
+            if (values.getReplayFile() == null && CompressedLinkGraph.getShared() == null) {
+                System.err.println("ERROR: -offlineGraph needs a -linkGraph, or the recorded traffic to rebuild the graph from in -replayFile");
+                System.exit(1);
+            }
+            try {
+                if (CompressedLinkGraph.getShared() != null) {
+                    ParallelBfs.setShared(new ParallelBfs(ChangeLogUpdater.toLinkGraph(CompressedLinkGraph.getShared())));
+                } else {
+                    try (TrafficArchive archive = new TrafficArchive(values.getReplayFile())) {
+                        ParallelBfs.setShared(new ParallelBfs(LinkGraph.fromArchive(archive)));
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("ERROR: Failed to load offline graph: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (values.getAutotune() != null) {
+            try {
+                LinkGraph graph;
+                if (values.getReplayFile() != null) {
+                    try (TrafficArchive archive = new TrafficArchive(values.getReplayFile())) {
+                        graph = LinkGraph.fromArchive(archive);
+                    }
+                } else {
+                    graph = LinkGraph.generate(20000, 40, 42);
+                    WikiRetriever.setTransport(new MockLinkSource(graph, values.getAutotuneLatency()));
+                }
+                Autotuner autotuner = new Autotuner(Autotuner.generatePairs(graph, values.getAutotunePairs(), 42), values.getAutotuneGoal(),
+                        timeoutSecs != null ? timeoutSecs : Crawler.defaultTimeoutSeconds);
+                CrawlerConfig best = autotuner.tune(CrawlerConfig.getShared());
+                best.save(values.getAutotune());
+                System.out.println("Wrote crawler profile to " + values.getAutotune());
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("ERROR: Autotune failed: " + e.getMessage());
+                System.exit(1);
+            }
+        } else if (values.getBuildLinkGraph() != null) {
+            if (values.getReplayFile() == null) {
+                System.err.println("ERROR: -buildLinkGraph needs the recorded traffic to rebuild the graph from in -replayFile");
+                System.exit(1);
+            }
+            try (TrafficArchive archive = new TrafficArchive(values.getReplayFile())) {
+                CompressedLinkGraph.write(LinkGraph.fromArchive(archive), values.getBuildLinkGraph());
+                System.out.println("Wrote compressed link graph to " + values.getBuildLinkGraph());
+            } catch (IOException e) {
+                System.err.println("ERROR: Failed to build compressed link graph: " + e.getMessage());
+                System.exit(1);
+            }
+        } else if (values.getBuildLandmarkIndex() != null) {
+            if (values.getReplayFile() == null) {
+                System.err.println("ERROR: -buildLandmarkIndex needs the recorded traffic to build from in -replayFile");
+                System.exit(1);
+            }
+            try (TrafficArchive archive = new TrafficArchive(values.getReplayFile())) {
+                LandmarkIndex.build(LinkGraph.fromArchive(archive), values.getNumLandmarks(), 42, values.getBuildLandmarkIndex());
+                System.out.println("Wrote landmark index to " + values.getBuildLandmarkIndex());
+            } catch (IOException e) {
+                System.err.println("ERROR: Failed to build landmark index: " + e.getMessage());
+                System.exit(1);
+            }
+        } else if (values.getBuildHubIndex() != null) {
+            if (values.getReplayFile() == null) {
+                System.err.println("ERROR: -buildHubIndex needs the recorded traffic to find the most-linked pages in -replayFile");
+                System.exit(1);
+            }
+            try (TrafficArchive archive = new TrafficArchive(values.getReplayFile())) {
+                // links are fetched through the replayed traffic, falling back to what was recorded for each hub
+                HubIndex.build(HubIndex.getMostLinked(LinkGraph.fromArchive(archive), values.getNumHubs()), values.getHubIndexMaxBytes(), values.getBuildHubIndex());
+                System.out.println("Wrote hub index to " + values.getBuildHubIndex());
+            } catch (IOException e) {
+                System.err.println("ERROR: Failed to build hub index: " + e.getMessage());
+                System.exit(1);
+            }
+        } else if ("Y".equals(startREST)) {
             CrawlerService.main(new String[]{});
+        } else if (values.getBatchFile() != null) {
+            BatchRunner batchRunner = new BatchRunner(values.getBatchParallelism(), timeoutSecs, values.getBatchFormat(), LinkCache.getShared());
+            try {
+                batchRunner.run(values.getBatchFile(), values.getBatchOutput());
+            } catch (IOException e) {
+                System.err.println("ERROR: Batch run failed: " + e.getMessage());
+                System.exit(1);
+            }
         } else {
 			if (sourceTitle == null || destTitle == null) {
 				System.out.println("ERROR: Both sourceTitle and destTitle must be specified");
 				System.exit(1);
 			}
-            CrawlerController crawlerController = new CrawlerController(sourceTitle, destTitle, timeoutSecs);
+            CrawlOptions options = new CrawlOptions(sourceTitle, destTitle).timeoutSeconds(timeoutSecs)
+                    .numPaths(values.getNumPaths(), "Y".equals(values.getShortestPathsOnly()))
+                    .trace(values.getTraceFile() != null);
+            if (values.getCrawlId() != null) {
+                if (RespClient.getShared() == null || values.getBestFirst() != null) {
+                    System.err.println("ERROR: -crawlId needs a -stateServer to share the crawl on, and a breadth-first crawl");
+                    System.exit(1);
+                }
+                options.landmarkIndex(null)
+                        .stateStore(RespCrawlerStateStore.forRun(RespClient.getShared(), sourceTitle, destTitle, values.getCrawlId()));
+            } else if (values.getBestFirst() != null) {
+                try {
+                    options.nodeScorer(NodeScorer.forName(values.getBestFirst()), values.getBeamWidth());
+                } catch (IllegalArgumentException e) {
+                    System.err.println("ERROR: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+            CrawlerController crawlerController = new CrawlerController(options);
+            crawlerController.setParallelBfs(ParallelBfs.getShared());
+            crawlerController.setPartitionCoordinator(PartitionCoordinator.getShared());
+            GraphExporter graphExporter = null;
+            if (values.getExportGraph() != null) {
+                try {
+                    graphExporter = new GraphExporter(values.getExportGraph(), values.getExportFormat());
+                    crawlerController.addListener(graphExporter);
+                } catch (IOException | IllegalArgumentException e) {
+                    System.err.println("ERROR: Failed to open graph export: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+            // with no display to draw on, e.g. on a server, don't load GraphStream just to fail
+            String visualize = GraphicsEnvironment.isHeadless() ? Visualizer.modeNone : values.getVisualize();
+            LiveVisualizer liveVisualizer = null;
+            if (Visualizer.modeLive.equals(visualize)) {
+                liveVisualizer = crawlerController.visualizeLive();
+            }
             crawlerController.runCrawl();
+            if (liveVisualizer != null) {
+                liveVisualizer.stop();
+            }
+            if (graphExporter != null) {
+                try {
+                    graphExporter.close();
+                    System.out.println("Wrote " + graphExporter.getNumLinks() + " links to " + values.getExportGraph());
+                } catch (IOException e) {
+                    System.err.println("ERROR: Failed to write graph export: " + e.getMessage());
+                }
+            }
             crawlerController.getResult().printResult();
-            crawlerController.visualize();
+            if (values.getTraceFile() != null) {
+                try {
+                    ChromeTraceExporter.export(crawlerController.getResult(), values.getTraceFile());
+                    System.out.println("Wrote crawl trace to " + values.getTraceFile());
+                } catch (IOException e) {
+                    System.err.println("ERROR: Failed to write crawl trace: " + e.getMessage());
+                }
+            }
+            if (Visualizer.modeReplay.equals(visualize)) {
+                crawlerController.visualize();
+            }
         }
 
     }
@@ -2,6 +2,7 @@ package com.danielmcheng1.wikiracing;
 
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
 
 /**
  * This class provides a convenient data structure for storing the results of our crawl
@@ -18,8 +19,17 @@ public class CrawlerResult {
     private final String algorithm;
     private final int numThreads;
     private final int batchSize;
+    private final int numApiCalls;
+    private int numPagesExpanded;
+    // only set when the crawl was traced
+    private List<CrawlTrace.BatchTrace> trace;
+    // only set when the crawl was asked for more than one path: the paths shortest first, and the extra parents kept to find them
+    private List<ArrayList<String>> paths;
+    private Integer numOtherParents;
+    // only set by races fast enough that milliseconds round them to nothing, i.e. offline ones
+    private Long runtimeMicros;
 
-    public CrawlerResult(String info, Deque<WebNode> webNodePath, long runtimeMillis, String algorithm, int numThreads, int batchSize) {
+    public CrawlerResult(String info, Deque<WebNode> webNodePath, long runtimeMillis, String algorithm, int numThreads, int batchSize, int numApiCalls) {
         this.info = info;
 
         this.webNodePath = webNodePath;
@@ -30,6 +40,7 @@ public class CrawlerResult {
         this.algorithm = algorithm;
         this.numThreads = numThreads;
         this.batchSize = batchSize;
+        this.numApiCalls = numApiCalls;
     }
 
     public ArrayList<String> getPath() {
@@ -44,10 +55,64 @@ public class CrawlerResult {
         return info;
     }
 
+    public boolean foundPath() {
+        return foundPath == 'Y';
+    }
+
+    public long getRuntimeMillis() {
+        return runtimeMillis;
+    }
+
+    public int getNumApiCalls() {
+        return numApiCalls;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getNumPagesExpanded() {
+        return numPagesExpanded;
+    }
+
+    public void setNumPagesExpanded(int numPagesExpanded) {
+        this.numPagesExpanded = numPagesExpanded;
+    }
+
+    public List<CrawlTrace.BatchTrace> getTrace() {
+        return trace;
+    }
+
+    public void setTrace(List<CrawlTrace.BatchTrace> trace) {
+        this.trace = trace;
+    }
+
+    public List<ArrayList<String>> getPaths() {
+        return paths;
+    }
+
+    public void setPaths(List<ArrayList<String>> paths, int numOtherParents) {
+        this.paths = paths;
+        this.numOtherParents = numOtherParents;
+    }
+
+    public Integer getNumOtherParents() {
+        return numOtherParents;
+    }
+
+    public Long getRuntimeMicros() {
+        return runtimeMicros;
+    }
+
+    public void setRuntimeMicros(long runtimeMicros) {
+        this.runtimeMicros = runtimeMicros;
+    }
+
     public void printResult() {
         System.out.println("--------------------------------------------");
         System.out.println(info);
         printPath();
+        printPaths();
         printStats();
         System.out.println();
     }
@@ -73,15 +138,32 @@ public class CrawlerResult {
         }
     }
 
+    private void printPaths() {
+        if (paths == null) {
+            return;
+        }
+        System.out.println();
+        System.out.println(paths.size() + " path(s), shortest first:");
+        for (ArrayList<String> otherPath : paths) {
+            System.out.println(String.join(" --> ", otherPath));
+        }
+    }
+
     private void printStats() {
         System.out.println();
         System.out.println("Algorithm: " + algorithm);
         System.out.println("Runtime (ms): " + runtimeMillis);
+        if (runtimeMicros != null) {
+            System.out.println("Runtime (us): " + runtimeMicros);
+        }
         System.out.println("# of Threads: " + numThreads);
         System.out.println("Batch Size: " + batchSize);
+        System.out.println("# of API Calls: " + numApiCalls);
+        System.out.println("# of Pages Expanded: " + numPagesExpanded);
     }
 
-    private ArrayList<String> savePathAsArray(Deque<WebNode> webNodePath) {
+    // titles from source to destination (the connecting title ends the forwards half of the path and starts the backwards one)
+    protected static ArrayList<String> savePathAsArray(Deque<WebNode> webNodePath) {
         if (webNodePath == null) {
             return null;
         }
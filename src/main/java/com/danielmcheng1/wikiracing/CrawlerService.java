@@ -1,7 +1,10 @@
 package com.danielmcheng1.wikiracing;
 
 import com.google.gson.Gson;
+import spark.Request;
+import spark.Response;
 
+import static spark.Spark.exception;
 import static spark.Spark.get;
 
 /**
@@ -10,27 +13,118 @@ import static spark.Spark.get;
 public class CrawlerService {
     public static void main(String[] args) {
         final CrawlerService crawlerService = new CrawlerService();
+        get("/metrics", (request, response) -> {
+            response.type("text/plain; version=0.0.4");
+            return Metrics.render();
+        });
+        // add ?trace=Y to include a timeline of every batch in the result, or ?trace=chrome for Chrome trace-event JSON
+        // add ?scorer=title or ?scorer=degree for a best-first crawl, and &beamWidth=N to bound its frontiers
+        // add ?numPaths=K for up to K paths, shortest first, and &shortestOnly=Y to keep only the shortest
+        // add ?numThreads=, &maxBatchSize=, &pollMillis= or &backoffMillis= to override the service's crawler profile
+        // add ?crawlId=RUN to share a breadth-first crawl on the state server with every other instance given the same RUN
         get("/crawl/:sourceTitle/:destTitle", (request, response) -> {
-            response.type("application/json");
-            CrawlerResult crawlResult = crawlerService.getCrawl(request.params(":sourceTitle"), request.params(":destTitle"));
-            return new Gson().toJson(new StandardResponse(StatusResponse.SUCCESS, new Gson().toJsonTree(crawlResult)));
+            CrawlerResult crawlResult = crawlerService.getCrawl(getOptions(request, (long) 15));
+            return crawlerService.toResponseBody(crawlResult, request.queryParams("trace"), response);
         });
         get("/crawl/:sourceTitle/:destTitle/:timeoutSeconds", (request, response) -> {
+            CrawlerResult crawlResult = crawlerService.getCrawl(getOptions(request, Long.parseLong(request.params(":timeoutSeconds"))));
+            return crawlerService.toResponseBody(crawlResult, request.queryParams("trace"), response);
+        });
+        // malformed or out-of-range params are the caller's mistake, so answer with a 400 rather than a bare 500
+        exception(IllegalArgumentException.class, (e, request, response) -> {
+            response.status(400);
             response.type("application/json");
-            CrawlerResult crawlResult = crawlerService.getCrawl(request.params(":sourceTitle"), request.params(":destTitle"), Long.parseLong(request.params(":timeoutSeconds")));
-            return new Gson().toJson(new StandardResponse(StatusResponse.SUCCESS, new Gson().toJsonTree(crawlResult)));
+            response.body(new Gson().toJson(new StandardResponse(StatusResponse.ERROR, e.getMessage())));
         });
     }
 
     public CrawlerResult getCrawl(String sourceTitle, String destTitle) {
-        CrawlerController crawlerController = new CrawlerController(sourceTitle, destTitle, (long) 15);
-        crawlerController.runCrawl();
-        return crawlerController.getResult();
+        return getCrawl(sourceTitle, destTitle, (long) 15);
     }
 
     public CrawlerResult getCrawl(String sourceTitle, String destTitle, Long timeoutSeconds) {
-        CrawlerController crawlerController = new CrawlerController(sourceTitle, destTitle, timeoutSeconds);
+        return getCrawl(new CrawlOptions(sourceTitle, destTitle).timeoutSeconds(timeoutSeconds));
+    }
+
+    public CrawlerResult getCrawl(CrawlOptions options) {
+        CrawlerController crawlerController = new CrawlerController(options);
+        // the service is headless, and under load the progress messages would interleave on stdout anyway
+        crawlerController.setPrintProgress(false);
+        crawlerController.setParallelBfs(ParallelBfs.getShared());
+        crawlerController.setPartitionCoordinator(PartitionCoordinator.getShared());
         crawlerController.runCrawl();
         return crawlerController.getResult();
     }
+
+    // the crawl the request's path and query params ask for; throws IllegalArgumentException for params that are malformed
+    // or that this service cannot honour
+    private static CrawlOptions getOptions(Request request, Long timeoutSeconds) {
+        String sourceTitle = request.params(":sourceTitle");
+        String destTitle = request.params(":destTitle");
+        CrawlOptions options = new CrawlOptions(sourceTitle, destTitle).timeoutSeconds(timeoutSeconds)
+                .trace(request.queryParams("trace") != null)
+                .config(getConfig(request));
+        String scorerName = request.queryParams("scorer");
+        if (scorerName != null) {
+            String beamWidth = request.queryParams("beamWidth");
+            options.nodeScorer(NodeScorer.forName(scorerName), beamWidth == null ? 0 : parseInt("beamWidth", beamWidth));
+        }
+        String numPaths = request.queryParams("numPaths");
+        if (numPaths != null) {
+            options.numPaths(parseInt("numPaths", numPaths), "Y".equals(request.queryParams("shortestOnly")));
+        }
+        String crawlId = request.queryParams("crawlId");
+        if (crawlId != null) {
+            if (RespClient.getShared() == null || scorerName != null) {
+                throw new IllegalArgumentException("crawlId needs the service to be started with a -stateServer, and a breadth-first crawl");
+            }
+            options.landmarkIndex(null).stateStore(RespCrawlerStateStore.forRun(RespClient.getShared(), sourceTitle, destTitle, crawlId));
+        }
+        return options;
+    }
+
+    // the shared crawler profile, with any settings given in the query params replaced
+    private static CrawlerConfig getConfig(Request request) {
+        // threads past the HTTP client's per-host limit would only wait on it, so that is as many as one request gets
+        return getConfig(CrawlerConfig.getShared(), request.queryParams("numThreads"), request.queryParams("maxBatchSize"),
+                request.queryParams("pollMillis"), request.queryParams("backoffMillis"),
+                WikiRetriever.getClient().dispatcher().getMaxRequestsPerHost());
+    }
+
+    // throws IllegalArgumentException for a setting that is not a number or is out of range
+    static CrawlerConfig getConfig(CrawlerConfig config, String numThreads, String maxBatchSize, String pollMillis, String backoffMillis,
+                                   int maxNumThreads) {
+        Integer threads = numThreads == null ? null : parseInt("numThreads", numThreads);
+        if (threads != null && threads > maxNumThreads) {
+            throw new IllegalArgumentException("numThreads must be at most " + maxNumThreads + ", got " + threads);
+        }
+        return config.withOverrides(threads,
+                maxBatchSize == null ? null : parseInt("maxBatchSize", maxBatchSize),
+                pollMillis == null ? null : parseLong("pollMillis", pollMillis),
+                backoffMillis == null ? null : parseLong("backoffMillis", backoffMillis));
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number, got " + value);
+        }
+    }
+
+    private static long parseLong(String name, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number, got " + value);
+        }
+    }
+
+    private String toResponseBody(CrawlerResult crawlResult, String trace, Response response) {
+        response.type("application/json");
+        if ("chrome".equals(trace)) {
+            return ChromeTraceExporter.toJson(crawlResult);
+        }
+        return new Gson().toJson(new StandardResponse(StatusResponse.SUCCESS, new Gson().toJsonTree(crawlResult)));
+    }
 }
\ No newline at end of file
@@ -1,82 +1,174 @@
 package com.danielmcheng1.wikiracing;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static com.danielmcheng1.wikiracing.Crawler.maxBatchSize;
 
 /**
  * This class is used to interact with all the data the crawler needs as it goes about finding a page.
- * In the current implementation these are all maintained as in-memory Maps and Queues. The current crawler can be scaled
- * to more than one machine to handle more than one request. But to make it lightning fast we would want each request
- * to be scaled to more than one machine. In that case all we would have to change are the state access methods in this
- * class to get webpages from a Redis instance rather than the in-memory map.
+ * The pages visited and queued to visit are kept in a CrawlerStateStore: by default as in-memory Maps and Queues, or on
+ * a Redis server, so that crawler instances on more than one machine can work through one request together. Either way
+ * the crawler reads and writes them a page or a batch at a time, never a link at a time, so that a remote store costs
+ * one round trip per batch. The pages each crawler thread is expanding right now stay local to this instance.
  */
 public class CrawlerState {
-    private HashMap<String, WebNode> visitedForwards;
-    private HashMap<String, WebNode> visitedBackwards;
-    private ConcurrentLinkedQueue<WebNode> toVisitForwards;
-    private ConcurrentLinkedQueue<WebNode> toVisitBackwards;
-    private HashSet<String> isProcessingForwards;
-    private HashSet<String> isProcessingBackwards;
+    // running crawls, so that periodic Flight Recorder snapshots can find them
+    private static final Set<CrawlerState> activeStates = ConcurrentHashMap.newKeySet();
+
+    static {
+        FlightRecorderEvents.register();
+    }
+
+    private final String name;
+    private final CrawlerStateStore store;
+    private final FrontierOrder frontierOrder;
+    // priority last handed out from each frontier, for crawls that expand one priority level at a time
+    private volatile double currentPriorityForwards;
+    private volatile double currentPriorityBackwards;
+    private volatile int maxBatchSize = Crawler.maxBatchSize;
+    private Set<String> isProcessingForwards;
+    private Set<String> isProcessingBackwards;
+    // nodes this instance queued less those it dequeued, for metrics (a shared store's queues also hold other instances' nodes)
+    private final AtomicInteger numToVisitForwards = new AtomicInteger();
+    private final AtomicInteger numToVisitBackwards = new AtomicInteger();
 
     public CrawlerState() {
-        visitedForwards = new HashMap<String, WebNode>();
-        visitedBackwards = new HashMap<String, WebNode>();
-        toVisitForwards = new ConcurrentLinkedQueue<WebNode>();
-        toVisitBackwards = new ConcurrentLinkedQueue<WebNode>();
-        isProcessingForwards = new HashSet<String>();
-        isProcessingBackwards = new HashSet<String>();
+        this("crawl");
+    }
+
+    public CrawlerState(String name) {
+        this(name, FrontierOrder.FIFO, 0);
+    }
+
+    // priority frontiers keep at most beamWidth nodes (0 for no limit), so that memory stays flat however far the crawl spreads;
+    // a FIFO frontier has no notion of the least promising node, so it is never bounded
+    public CrawlerState(String name, FrontierOrder frontierOrder, int beamWidth) {
+        this(name, frontierOrder, new InMemoryCrawlerStateStore(frontierOrder, beamWidth));
+    }
+
+    // the store must order its queues by frontierOrder; only an InMemoryCrawlerStateStore can order them by priority
+    public CrawlerState(String name, FrontierOrder frontierOrder, CrawlerStateStore store) {
+        this.name = name;
+        this.frontierOrder = frontierOrder;
+        this.store = store;
+        isProcessingForwards = ConcurrentHashMap.newKeySet();
+        isProcessingBackwards = ConcurrentHashMap.newKeySet();
     }
 
     /******************************************/
     // METHODS FOR INTERACTING WITH THE QUEUE OF NODES TO VISIT
     /******************************************/
     protected HashMap<String, WebNode> getNextBatchToVisit(Direction direction) {
-        HashMap<String, WebNode> titlesToWebNodes = new HashMap<String, WebNode>();
-        int numAdded = 0;
-        while (numAdded < maxBatchSize) {
-            // .size() is O(n) for concurrent queue so more efficient to try to remove until we cannot
-            WebNode curr = removeNodeFromQueueToVisit(direction);
-            // nothing left in the queue;
-            if (curr == null) {
-                break;
+        return getNextBatchToVisit(direction, maxBatchSize);
+    }
+
+    // at most numTitles nodes, e.g. to top up a batch whose other titles were left to another batch's fetch
+    protected HashMap<String, WebNode> getNextBatchToVisit(Direction direction, int numTitles) {
+        List<WebNode> nodes;
+        if (FrontierOrder.PRIORITY_LEVELS.equals(frontierOrder)) {
+            nodes = new ArrayList<WebNode>();
+            while (nodes.size() < numTitles) {
+                // a batch of one priority level stops at the first node of a worse priority than the batch started with
+                if (!nodes.isEmpty()) {
+                    WebNode next = store.peek(direction);
+                    if (next == null || next.getPriority() > nodes.get(0).getPriority()) {
+                        break;
+                    }
+                }
+                List<WebNode> next = store.dequeue(direction, 1);
+                // nothing left in the queue;
+                if (next.isEmpty()) {
+                    break;
+                }
+                nodes.addAll(next);
             }
+        } else {
+            nodes = store.dequeue(direction, numTitles);
+        }
+
+        HashMap<String, WebNode> titlesToWebNodes = new HashMap<String, WebNode>();
+        if (nodes.isEmpty()) {
+            return titlesToWebNodes;
+        }
+        setCurrentPriority(direction, nodes.get(0).getPriority());
+        getNumToVisitCounter(direction).addAndGet(-nodes.size());
+        Metrics.queuedPages.add(-nodes.size());
+        for (WebNode curr : nodes) {
             addNodeToIsProcessing(curr);
             titlesToWebNodes.put(curr.getTitle(), curr);
-            numAdded++;
         }
         return titlesToWebNodes;
     }
 
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
     protected void addToVisit(WebNode wN) {
-        if (Direction.FORWARDS.equals(wN.getDirection())) {
-            toVisitForwards.add(wN);
-        } else {
-            toVisitBackwards.add(wN);
-        }
+        addToVisit(Collections.singletonList(wN));
     }
 
-    // safe remove of node from queue
-    protected WebNode removeNodeFromQueueToVisit(Direction direction) {
-        // use try-catch to reduce any time lag between checking if queue is empty and actually removing it (as another thread/machine may remove)
-        try {
-            if (Direction.FORWARDS.equals(direction)) {
-                return toVisitForwards.remove();
-            } else {
-                return toVisitBackwards.remove();
+    // nodes from one page, or at least one direction, go to the store together
+    protected void addToVisit(List<WebNode> nodes) {
+        List<WebNode> forwards = new ArrayList<WebNode>(nodes.size());
+        List<WebNode> backwards = new ArrayList<WebNode>();
+        for (WebNode wN : nodes) {
+            (Direction.FORWARDS.equals(wN.getDirection()) ? forwards : backwards).add(wN);
+        }
+        for (List<WebNode> sameDirection : Arrays.asList(forwards, backwards)) {
+            if (sameDirection.isEmpty()) {
+                continue;
             }
-        } catch (Exception NoSuchElementException) {
-            return null;
+            // a priority frontier turns away a node identical to one it already holds, and a beam drops its worst nodes
+            int numAdded = store.enqueue(sameDirection);
+            getNumToVisitCounter(sameDirection.get(0).getDirection()).addAndGet(numAdded);
+            Metrics.queuedPages.add(numAdded);
         }
     }
 
+    protected int getNumToVisit(Direction direction) {
+        return getNumToVisitCounter(direction).get();
+    }
+
+    // once the crawl is over, whatever is left in the queues no longer counts towards the JVM-wide queue depth,
+    // and the store can let go of the crawl
+    protected void releaseQueues() {
+        Metrics.queuedPages.add(-numToVisitForwards.getAndSet(0) - numToVisitBackwards.getAndSet(0));
+        store.close();
+    }
+
     protected boolean noNodesInQueueToVisit(Direction direction) {
+        return store.isQueueEmpty(direction);
+    }
+
+    // in a frontier expanded by priority level, the best node left is worse than the ones still being expanded, which
+    // may yet queue better ones; the crawl should wait for those rather than expand nodes out of order
+    protected boolean nextNodeIsBehindProcessing(Direction direction) {
+        if (!FrontierOrder.PRIORITY_LEVELS.equals(frontierOrder)) {
+            return false;
+        }
+        WebNode next = store.peek(direction);
+        double currentPriority = Direction.FORWARDS.equals(direction) ? currentPriorityForwards : currentPriorityBackwards;
+        return next != null && next.getPriority() > currentPriority;
+    }
+
+    private AtomicInteger getNumToVisitCounter(Direction direction) {
+        return Direction.FORWARDS.equals(direction) ? numToVisitForwards : numToVisitBackwards;
+    }
+
+    private void setCurrentPriority(Direction direction, double priority) {
         if (Direction.FORWARDS.equals(direction)) {
-            return toVisitForwards.isEmpty();
+            currentPriorityForwards = priority;
+        } else {
+            currentPriorityBackwards = priority;
         }
-        return toVisitBackwards.isEmpty();
     }
 
 
@@ -111,31 +203,81 @@ public class CrawlerState {
     /******************************************/
     // METHODS FOR DETERMINING IF NODE HAS BEEN VISITED
     /******************************************/
-    // check if the current crawl has seen this node before
-    // note that this does not check for the intersection between backwards and forwards
-    // rather, it confirms whether the current crawl has seen this node before within its own queue
-    protected boolean visited(WebNode wN) {
-        if (Direction.FORWARDS.equals(wN.getDirection())) {
-            return visitedForwards.containsKey(wN.getTitle());
-        } else {
-            return visitedBackwards.containsKey(wN.getTitle());
+    // mark each node as visited by its own direction of the crawl, unless the crawl has seen it before, and return which
+    // ones are new; note that this does not check for the intersection between backwards and forwards
+    protected boolean[] markAsVisited(List<WebNode> nodes) {
+        if (nodes.isEmpty()) {
+            return new boolean[0];
         }
+        return store.visitIfAbsent(nodes);
     }
 
-    protected void markAsVisited(WebNode wN) {
-        if (Direction.FORWARDS.equals(wN.getDirection())) {
-            visitedForwards.put(wN.getTitle(), wN);
+    protected boolean markAsVisited(WebNode wN) {
+        return markAsVisited(Collections.singletonList(wN))[0];
+    }
+
+    // the nodes the other direction of the crawl has visited too, each of which completes a path
+    protected List<WebNode> visitedFromOtherEnd(List<WebNode> nodes) {
+        List<WebNode> meetings = new ArrayList<WebNode>();
+        if (nodes.isEmpty()) {
+            return meetings;
+        }
+        Direction otherDirection = Direction.FORWARDS.equals(nodes.get(0).getDirection()) ? Direction.BACKWARDS : Direction.FORWARDS;
+        List<String> titles = new ArrayList<String>(nodes.size());
+        for (WebNode wN : nodes) {
+            titles.add(wN.getTitle());
+        }
+        boolean[] found = store.findVisited(otherDirection, titles);
+        for (int i = 0; i < found.length; i++) {
+            if (found[i]) {
+                meetings.add(nodes.get(i));
+            }
+        }
+        return meetings;
+    }
+
+    /******************************************/
+    // METHODS FOR TRACKING RUNNING CRAWLS
+    /******************************************/
+    protected void setActive(boolean active) {
+        if (active) {
+            activeStates.add(this);
         } else {
-            visitedBackwards.put(wN.getTitle(), wN);
+            activeStates.remove(this);
         }
     }
 
-    public HashMap<String, WebNode> getVisitedForwards() {
-        return visitedForwards;
+    protected static Set<CrawlerState> getActiveStates() {
+        return activeStates;
     }
 
-    public HashMap<String, WebNode> getVisitedBackwards() {
-        return visitedBackwards;
+    public String getName() {
+        return name;
     }
 
+    // for a shared store, only the nodes held by this instance (see CrawlerStateStore.getVisited)
+    public Map<String, WebNode> getVisitedForwards() {
+        return store.getVisited(Direction.FORWARDS);
+    }
+
+    public Map<String, WebNode> getVisitedBackwards() {
+        return store.getVisited(Direction.BACKWARDS);
+    }
+
+    public CrawlerStateStore getStore() {
+        return store;
+    }
+
+    /**
+     * How each frontier hands out the nodes queued on it
+     */
+    public enum FrontierOrder {
+        // oldest first, i.e. breadth-first
+        FIFO,
+        // lowest WebNode priority first, as soon as there is a thread to expand it (best-first)
+        PRIORITY,
+        // lowest WebNode priority first, one priority at a time, so no node is expanded before a better one that
+        // expanding the current level could still queue (A*)
+        PRIORITY_LEVELS
+    }
 }
@@ -0,0 +1,37 @@
+package com.danielmcheng1.wikiracing;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where a CrawlerState keeps the pages a crawl has visited and the pages queued to expand: in this JVM
+ * (InMemoryCrawlerStateStore), or on a key-value server that several crawler instances can share
+ * (RespCrawlerStateStore). Every operation takes or returns a whole batch, so that a store on another machine costs one
+ * round trip per batch rather than one per link.
+ */
+public interface CrawlerStateStore extends Closeable {
+    // the visited nodes this crawler holds in memory, which Path traces parents through: every node for a store in this
+    // JVM, and for a shared store the nodes this crawler visited or dequeued, and those another crawler's path runs through
+    Map<String, WebNode> getVisited(Direction direction);
+
+    // mark each node visited from its direction unless a crawler already has, and return which ones this call marked
+    boolean[] visitIfAbsent(List<WebNode> nodes);
+
+    // which of the titles have been visited from the direction; those that have are then in getVisited(direction)
+    boolean[] findVisited(Direction direction, List<String> titles);
+
+    // queue the nodes to expand, and return how many the queues grew by (a bounded queue may drop some)
+    int enqueue(List<WebNode> nodes);
+
+    // up to maxNodes nodes off the front of the direction's queue
+    List<WebNode> dequeue(Direction direction, int maxNodes);
+
+    // the node dequeue would hand out next, or null if the queue is empty
+    WebNode peek(Direction direction);
+
+    boolean isQueueEmpty(Direction direction);
+
+    // stop using the store; a shared store keeps its state on the server unless it belonged to this crawl alone
+    void close();
+}
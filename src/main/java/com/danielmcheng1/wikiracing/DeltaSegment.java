@@ -0,0 +1,53 @@
+package com.danielmcheng1.wikiracing;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Link lists that changed since a CompressedLinkGraph was written, keyed by title. Each entry replaces the page's whole
+ * list in that direction, or marks it invalidated when we know it changed but not what it changed to, in which case
+ * the crawler fetches it from the API as if the page were not in the graph.
+ * <p>
+ * The ChangeLogUpdater writes to the newest segment only and seals it once it grows past its budget, so readers never
+ * lock: a sealed segment never changes again, and the maps of the open one are safe to read while it is written.
+ */
+public class DeltaSegment {
+    // stands in for an invalidated list, compared by identity
+    protected static final String[] invalidated = new String[0];
+
+    private final ConcurrentHashMap<String, String[]> linksForwards = new ConcurrentHashMap<String, String[]>();
+    private final ConcurrentHashMap<String, String[]> linksBackwards = new ConcurrentHashMap<String, String[]>();
+    private volatile boolean sealed;
+
+    // the page's list if this segment has one, which may be invalidated; null if the page did not change here
+    public String[] getLinks(String title, Direction direction) {
+        return getMap(direction).get(title);
+    }
+
+    public void putLinks(String title, Direction direction, String[] links) {
+        if (sealed) {
+            throw new IllegalStateException("Delta segment is sealed");
+        }
+        getMap(direction).put(title, links);
+    }
+
+    public void invalidate(String title, Direction direction) {
+        putLinks(title, direction, invalidated);
+    }
+
+    public void seal() {
+        sealed = true;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    public int getNumEntries() {
+        return linksForwards.size() + linksBackwards.size();
+    }
+
+    protected Map<String, String[]> getMap(Direction direction) {
+        return Direction.FORWARDS.equals(direction) ? linksForwards : linksBackwards;
+    }
+}
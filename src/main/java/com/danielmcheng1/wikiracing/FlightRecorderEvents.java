@@ -0,0 +1,40 @@
+package com.danielmcheng1.wikiracing;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Registers the crawler's Flight Recorder events, and the hook that emits FrontierSnapshot, once the recorder starts
+ * (with -XX:StartFlightRecording, or later with jcmd JFR.start). The events are not registered as their classes load,
+ * since registering the first one sets up the recorder's metadata, which takes a couple of hundred ms of the first
+ * crawl after a restart whether or not anything is recording.
+ */
+public class FlightRecorderEvents {
+    private static final AtomicBoolean registered = new AtomicBoolean();
+
+    // call before emitting any of the events; until the recorder starts they are dropped, as they would be anyway
+    public static void register() {
+        if (!registered.compareAndSet(false, true)) {
+            return;
+        }
+        if (FlightRecorder.isInitialized()) {
+            registerEvents();
+        } else {
+            FlightRecorder.addListener(new FlightRecorderListener() {
+                public void recorderInitialized(FlightRecorder recorder) {
+                    registerEvents();
+                }
+            });
+        }
+    }
+
+    private static void registerEvents() {
+        FlightRecorder.register(WikiFetchEvent.class);
+        FlightRecorder.register(BatchExpandEvent.class);
+        FlightRecorder.register(PathFoundEvent.class);
+        FlightRecorder.register(FrontierSnapshotEvent.class);
+        FrontierSnapshotEvent.registerPeriodic();
+    }
+}
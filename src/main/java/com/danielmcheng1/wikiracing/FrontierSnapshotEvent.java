@@ -0,0 +1,55 @@
+package com.danielmcheng1.wikiracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+
+/**
+ * Periodic Flight Recorder event with the queue and visited sizes in each direction, one per running crawl.
+ * The hook only runs while a recording has this event enabled, so it costs nothing otherwise. It is added by
+ * FlightRecorderEvents once the recorder starts.
+ */
+@Name("com.danielmcheng1.wikiracing.FrontierSnapshot")
+@Label("Frontier Snapshot")
+@Category("Wikiracer")
+@Description("Queue and visited sizes of a running crawl")
+@StackTrace(false)
+@Period("1 s")
+@Registered(false)
+public class FrontierSnapshotEvent extends Event {
+    @Label("Crawl")
+    String crawl;
+
+    @Label("Queued Forwards")
+    int queuedForwards;
+
+    @Label("Queued Backwards")
+    int queuedBackwards;
+
+    @Label("Visited Forwards")
+    int visitedForwards;
+
+    @Label("Visited Backwards")
+    int visitedBackwards;
+
+    public static void registerPeriodic() {
+        FlightRecorder.addPeriodicEvent(FrontierSnapshotEvent.class, () -> {
+            for (CrawlerState crawlerState : CrawlerState.getActiveStates()) {
+                FrontierSnapshotEvent event = new FrontierSnapshotEvent();
+                event.crawl = crawlerState.getName();
+                event.queuedForwards = crawlerState.getNumToVisit(Direction.FORWARDS);
+                event.queuedBackwards = crawlerState.getNumToVisit(Direction.BACKWARDS);
+                // sizes of maps written by other threads: fine for a snapshot, which is approximate anyway
+                event.visitedForwards = crawlerState.getVisitedForwards().size();
+                event.visitedBackwards = crawlerState.getVisitedBackwards().size();
+                event.commit();
+            }
+        });
+    }
+}
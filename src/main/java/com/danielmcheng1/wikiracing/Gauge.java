@@ -0,0 +1,55 @@
+package com.danielmcheng1.wikiracing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Value that can go up and down (e.g. queue depth, busy threads). Either updated directly, or read from a supplier
+ * at scrape time for values that are already tracked elsewhere.
+ */
+public class Gauge {
+    private final String name;
+    private final String help;
+    private final AtomicLong value = new AtomicLong();
+    private final LongSupplier supplier;
+
+    public Gauge(String name, String help) {
+        this(name, help, null);
+    }
+
+    public Gauge(String name, String help, LongSupplier supplier) {
+        this.name = name;
+        this.help = help;
+        this.supplier = supplier;
+    }
+
+    public void increment() {
+        value.incrementAndGet();
+    }
+
+    public void decrement() {
+        value.decrementAndGet();
+    }
+
+    public void add(long amount) {
+        value.addAndGet(amount);
+    }
+
+    public void set(long newValue) {
+        value.set(newValue);
+    }
+
+    public long get() {
+        return supplier == null ? value.get() : supplier.getAsLong();
+    }
+
+    public void render(StringBuilder sB) {
+        sB.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sB.append("# TYPE ").append(name).append(" gauge\n");
+        sB.append(name).append(' ').append(get()).append('\n');
+    }
+
+    public String getName() {
+        return name;
+    }
+}
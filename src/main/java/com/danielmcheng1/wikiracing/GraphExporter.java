@@ -0,0 +1,293 @@
+package com.danielmcheng1.wikiracing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams every link a crawl looks up to a file while the crawl runs, as GraphML, Graphviz DOT or JSON lines, so that
+ * crawls of millions of pages can be analyzed in external tools without keeping a second copy of the graph in memory.
+ * Edges always point the way the link does on Wikipedia, whichever direction of the crawl found them.
+ * <p>
+ * Crawler threads only queue the pages they expand; a writer thread of our own encodes them into a direct buffer and
+ * writes it through a FileChannel. Crawler threads get interrupted when a crawl ends, and an interrupt during a channel
+ * write would close the channel for every thread, so they never touch it. The queue is bounded: if the disk falls
+ * behind, crawler threads wait for it rather than buffering without limit.
+ */
+public class GraphExporter implements CrawlListener, Closeable {
+    public static final String formatGraphML = "graphml";
+    public static final String formatDot = "dot";
+    public static final String formatJsonLines = "jsonl";
+    private static final Logger LOGGER = Logger.getLogger(GraphExporter.class.getName());
+    private static final int queueCapacity = 4096;
+    private static final int bufferSize = 1 << 20;
+
+    private final String fileName;
+    private final String format;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+    private final BlockingQueue<ExpandedPage> queue = new ArrayBlockingQueue<ExpandedPage>(queueCapacity);
+    private final Thread writer;
+    // GraphML declares every node before its edges; only the writer thread touches this
+    private final TitleHashSet declaredNodes;
+    private volatile boolean closed;
+    private long numLinks;
+    private IOException writeError;
+
+    public GraphExporter(String fileName, String format) throws IOException {
+        if (!formatGraphML.equals(format) && !formatDot.equals(format) && !formatJsonLines.equals(format)) {
+            throw new IllegalArgumentException("Unknown graph format " + format + ", expected " + formatGraphML + ", " + formatDot + " or " + formatJsonLines);
+        }
+        this.fileName = fileName;
+        this.format = format;
+        this.declaredNodes = formatGraphML.equals(format) ? new TitleHashSet() : null;
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        if (formatGraphML.equals(format)) {
+            append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n"
+                    + "  <key id=\"crawl\" for=\"edge\" attr.name=\"crawl\" attr.type=\"string\"/>\n"
+                    + "  <graph id=\"crawl\" edgedefault=\"directed\">\n");
+        } else if (formatDot.equals(format)) {
+            append("digraph crawl {\n");
+        }
+        this.writer = new Thread(this::writeUntilClosed, "graph-exporter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void pageExpanded(WebNode wN, String[] links) {
+        if (closed) {
+            return;
+        }
+        try {
+            queue.put(new ExpandedPage(wN.getTitle(), wN.getDirection(), links));
+        } catch (InterruptedException e) {
+            // the crawl is over, and this page with it
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // write out everything queued so far and finish the file
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (writeError != null) {
+                throw writeError;
+            }
+            if (formatGraphML.equals(format)) {
+                append("  </graph>\n</graphml>\n");
+            } else if (formatDot.equals(format)) {
+                append("}\n");
+            }
+            flush();
+            LOGGER.log(Level.INFO, "Exported " + numLinks + " links to " + fileName);
+        } finally {
+            channel.close();
+        }
+    }
+
+    public long getNumLinks() {
+        return numLinks;
+    }
+
+    private void writeUntilClosed() {
+        ArrayList<ExpandedPage> pages = new ArrayList<ExpandedPage>();
+        try {
+            while (!closed || !queue.isEmpty()) {
+                ExpandedPage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                pages.add(first);
+                queue.drainTo(pages);
+                for (ExpandedPage page : pages) {
+                    writePage(page);
+                }
+                pages.clear();
+                // flush once the queue is drained, so the file keeps up with the crawl without a write per page
+                flush();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to export crawl graph to " + fileName + ": " + e.getMessage());
+            writeError = e;
+            // stop taking pages, so crawler threads never wait on a queue nobody drains
+            closed = true;
+            queue.clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writePage(ExpandedPage page) throws IOException {
+        for (String link : page.links) {
+            String from = Direction.FORWARDS.equals(page.direction) ? page.title : link;
+            String to = Direction.FORWARDS.equals(page.direction) ? link : page.title;
+            String crawl = page.direction.toString().toLowerCase();
+            if (formatGraphML.equals(format)) {
+                declareNode(from);
+                declareNode(to);
+                append("    <edge source=\"" + escapeXml(from) + "\" target=\"" + escapeXml(to) + "\"><data key=\"crawl\">" + crawl + "</data></edge>\n");
+            } else if (formatDot.equals(format)) {
+                append("  " + quoteDot(from) + " -> " + quoteDot(to) + " [crawl=" + crawl + "];\n");
+            } else {
+                append("{\"from\":" + quoteJson(from) + ",\"to\":" + quoteJson(to) + ",\"crawl\":\"" + crawl + "\"}\n");
+            }
+            numLinks++;
+        }
+        Metrics.exportedLinks.add(page.links.length);
+    }
+
+    private void declareNode(String title) throws IOException {
+        if (declaredNodes.add(title)) {
+            append("    <node id=\"" + escapeXml(title) + "\"/>\n");
+        }
+    }
+
+    private void append(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > buffer.remaining()) {
+            flush();
+        }
+        if (bytes.length > buffer.capacity()) {
+            channel.write(ByteBuffer.wrap(bytes));
+            return;
+        }
+        buffer.put(bytes);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    protected static String escapeXml(String text) {
+        StringBuilder sB = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': sB.append("&amp;"); break;
+                case '<': sB.append("&lt;"); break;
+                case '>': sB.append("&gt;"); break;
+                case '"': sB.append("&quot;"); break;
+                default: sB.append(c);
+            }
+        }
+        return sB.toString();
+    }
+
+    protected static String quoteDot(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    protected static String quoteJson(String text) {
+        StringBuilder sB = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                sB.append('\\').append(c);
+            } else if (c < 0x20) {
+                sB.append(String.format("\\u%04x", (int) c));
+            } else {
+                sB.append(c);
+            }
+        }
+        return sB.append('"').toString();
+    }
+
+    private static class ExpandedPage {
+        private final String title;
+        private final Direction direction;
+        private final String[] links;
+
+        ExpandedPage(String title, Direction direction, String[] links) {
+            this.title = title;
+            this.direction = direction;
+            this.links = links;
+        }
+    }
+
+    /**
+     * Set of titles held as 64-bit hashes in an open-addressed table, i.e. 8-16 bytes a title rather than the title
+     * itself. Two titles sharing a hash would leave the second undeclared, but across a million titles the odds of
+     * that are around 1 in 10^7.
+     */
+    private static class TitleHashSet {
+        private long[] slots = new long[1 << 16];
+        private int size;
+        private boolean containsZero;
+
+        boolean add(String title) {
+            long hash = hash(title);
+            if (hash == 0) {
+                boolean added = !containsZero;
+                containsZero = true;
+                return added;
+            }
+            if (size * 2 >= slots.length) {
+                grow();
+            }
+            if (!insert(slots, hash)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+        private static boolean insert(long[] table, long hash) {
+            int mask = table.length - 1;
+            int i = (int) (hash ^ (hash >>> 32)) & mask;
+            while (table[i] != 0) {
+                if (table[i] == hash) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = hash;
+            return true;
+        }
+
+        private void grow() {
+            long[] grown = new long[slots.length * 2];
+            for (long hash : slots) {
+                if (hash != 0) {
+                    insert(grown, hash);
+                }
+            }
+            slots = grown;
+        }
+
+        // FNV-1a over the UTF-16 chars, mixed so that similar titles spread across the table
+        private static long hash(String title) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < title.length(); i++) {
+                hash ^= title.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.danielmcheng1.wikiracing;
+
+import okhttp3.HttpUrl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cuts the tail latency of Wiki API calls by hedging them: a request that has not been answered within the given
+ * percentile of recent latencies is sent again, the first response wins and the other request is cancelled. A single
+ * slow call otherwise stalls its whole batch, since a batch has to finish its chain of continue requests before its
+ * pages leave processing.
+ * <p>
+ * Hedges are paid for out of a global budget, so that a slow API does not get twice the load: every request earns
+ * budget tokens (e.g. 0.05 for at most one hedge per 20 requests), every hedge spends one, and at most maxTokens
+ * are saved up for bursts. No request is hedged until minSamples latencies have been seen. A request that loses to its
+ * hedge counts with how long it had been running when it was cancelled, which is at least as long as it would have
+ * taken, so that the slowest requests are not left out of the window and the threshold does not drift down.
+ * <p>
+ * Wrap the transport WikiRetriever would otherwise use, e.g. new HedgingTransport(WikiRetriever.getTransport(), 95, 0.05).
+ */
+public class HedgingTransport implements WikiTransport {
+    public static final double defaultBudget = 0.05;
+    public static final int windowSize = 1000;
+    public static final int minSamples = 20;
+    public static final int maxTokens = 10;
+    // recompute the threshold every this many latencies rather than sort the window on every request
+    private static final int samplesPerUpdate = 20;
+    private static final long tokenScale = 1000000;
+
+    private static final ThreadLocal<Attempt> currentAttempt = new ThreadLocal<Attempt>();
+    private static final AtomicInteger numAttemptThreads = new AtomicInteger();
+
+    private final WikiTransport transport;
+    private final double percentile;
+    private final long tokensPerRequest;
+    private final AtomicLong tokens = new AtomicLong();
+    private final ExecutorService executor;
+
+    // latencies of the most recent requests, in nanoseconds
+    private final long[] window = new long[windowSize];
+    private long numSamples;
+    private volatile long thresholdNanos;
+
+    private final AtomicLong numRequests = new AtomicLong();
+    private final AtomicLong numHedges = new AtomicLong();
+    private final AtomicLong numHedgeWins = new AtomicLong();
+    private final AtomicLong numOverBudget = new AtomicLong();
+
+    public HedgingTransport(WikiTransport transport, double percentile) {
+        this(transport, percentile, defaultBudget);
+    }
+
+    public HedgingTransport(WikiTransport transport, double percentile, double budget) {
+        if (percentile <= 0 || percentile >= 100) {
+            throw new IllegalArgumentException("Hedge percentile must be between 0 and 100: " + percentile);
+        }
+        if (budget < 0) {
+            throw new IllegalArgumentException("Hedge budget must not be negative: " + budget);
+        }
+        this.transport = transport;
+        this.percentile = percentile;
+        this.tokensPerRequest = (long) (budget * tokenScale);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "wiki-hedge-" + numAttemptThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public byte[] fetch(HttpUrl url, String userAgent) throws IOException {
+        numRequests.incrementAndGet();
+        earnToken();
+        long threshold = thresholdNanos;
+        if (threshold == 0) {
+            // too few latencies seen to tell which requests are slow
+            return attempt(url, userAgent);
+        }
+
+        BlockingQueue<Attempt> finished = new LinkedBlockingQueue<Attempt>();
+        Attempt primary = submit(url, userAgent, finished);
+        Attempt hedge = null;
+        try {
+            Attempt done = finished.poll(threshold, TimeUnit.NANOSECONDS);
+            if (done == null) {
+                if (spendToken()) {
+                    numHedges.incrementAndGet();
+                    Metrics.hedgedRequests.increment();
+                    hedge = submit(url, userAgent, finished);
+                } else {
+                    numOverBudget.incrementAndGet();
+                    Metrics.hedgesOverBudget.increment();
+                }
+            }
+            int numPending = hedge == null ? 1 : 2;
+            while (true) {
+                if (done == null) {
+                    done = finished.take();
+                }
+                numPending--;
+                try {
+                    byte[] responseBytes = done.get();
+                    if (done == hedge) {
+                        numHedgeWins.incrementAndGet();
+                        Metrics.hedgeWins.increment();
+                    }
+                    return responseBytes;
+                } catch (ExecutionException e) {
+                    // the other request may still succeed
+                    if (numPending == 0) {
+                        throw toIOException(e.getCause());
+                    }
+                    done = null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a hedged request");
+        } finally {
+            // the loser, or both if we were interrupted, is of no more use to anyone
+            if (primary.cancel(true) && primary.startNanos != 0) {
+                recordLatency(System.nanoTime() - primary.startNanos);
+            }
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    private Attempt submit(HttpUrl url, String userAgent, BlockingQueue<Attempt> finished) {
+        Attempt attempt = new Attempt(url, userAgent, finished);
+        executor.execute(attempt);
+        return attempt;
+    }
+
+    private byte[] attempt(HttpUrl url, String userAgent) throws IOException {
+        long before = System.nanoTime();
+        byte[] responseBytes = transport.fetch(url, userAgent);
+        recordLatency(System.nanoTime() - before);
+        return responseBytes;
+    }
+
+    private static IOException toIOException(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * Called by a transport just before it blocks on a request, with how to abort that request if it loses the race,
+     * for requests that do not notice interrupts (e.g. OkHttp calls). Does nothing unless the request is being hedged.
+     */
+    public static void onCancel(Runnable canceller) {
+        Attempt attempt = currentAttempt.get();
+        if (attempt != null) {
+            attempt.setCanceller(canceller);
+        }
+    }
+
+    /******************************************/
+    // METHODS FOR THE LATENCY THRESHOLD
+    /******************************************/
+    private synchronized void recordLatency(long nanos) {
+        window[(int) (numSamples % windowSize)] = nanos;
+        numSamples++;
+        if (numSamples >= minSamples && numSamples % samplesPerUpdate == 0) {
+            long[] sorted = Arrays.copyOf(window, (int) Math.min(numSamples, windowSize));
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            thresholdNanos = Math.max(1, sorted[Math.max(0, index)]);
+        }
+    }
+
+    // how long a request may take before it is hedged, or 0 while too few latencies have been seen
+    public long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    /******************************************/
+    // METHODS FOR THE HEDGE BUDGET
+    /******************************************/
+    private void earnToken() {
+        long curr = tokens.get();
+        while (curr < maxTokens * tokenScale && !tokens.compareAndSet(curr, Math.min(maxTokens * tokenScale, curr + tokensPerRequest))) {
+            curr = tokens.get();
+        }
+    }
+
+    private boolean spendToken() {
+        long curr = tokens.get();
+        while (curr >= tokenScale) {
+            if (tokens.compareAndSet(curr, curr - tokenScale)) {
+                return true;
+            }
+            curr = tokens.get();
+        }
+        return false;
+    }
+
+    public long getNumRequests() {
+        return numRequests.get();
+    }
+
+    public long getNumHedges() {
+        return numHedges.get();
+    }
+
+    public long getNumHedgeWins() {
+        return numHedgeWins.get();
+    }
+
+    public long getNumOverBudget() {
+        return numOverBudget.get();
+    }
+
+    public WikiTransport getTransport() {
+        return transport;
+    }
+
+    // one copy of a request, which hands itself to the finished queue once it has succeeded or failed
+    private class Attempt extends FutureTask<byte[]> {
+        private final BlockingQueue<Attempt> finished;
+        private volatile Runnable canceller;
+        // when the request was sent, or 0 if it has not been yet
+        private volatile long startNanos;
+
+        Attempt(HttpUrl url, String userAgent, BlockingQueue<Attempt> finished) {
+            super(() -> attempt(url, userAgent));
+            this.finished = finished;
+        }
+
+        @Override
+        public void run() {
+            startNanos = System.nanoTime();
+            currentAttempt.set(this);
+            try {
+                super.run();
+            } finally {
+                currentAttempt.remove();
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (!isCancelled()) {
+                finished.add(this);
+            }
+        }
+
+        private void setCanceller(Runnable canceller) {
+            this.canceller = canceller;
+            // cancelled before the request was even sent
+            if (isCancelled()) {
+                canceller.run();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Runnable currCanceller = canceller;
+            if (cancelled && currCanceller != null) {
+                currCanceller.run();
+            }
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.danielmcheng1.wikiracing;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative longs (e.g. latencies in ms, response sizes in bytes), in the style of
+ * HdrHistogram: every power of two is split into a fixed number of linear sub-buckets, so any recorded value is
+ * accurate to within 1 / subBuckets (about 3%) while the whole range of a long fits in a couple of thousand counters.
+ * <p>
+ * /metrics gets a coarser, fixed set of Prometheus buckets (0, 1, 2, 5, 10, 20, 50, ... up to 10^9), counted
+ * separately and all rendered on every scrape, so that rate() and histogram_quantile() see the same series each time.
+ * <p>
+ * Recording is a couple of bit operations and atomic increments, and never allocates, so it is safe on hot paths.
+ */
+public class Histogram {
+    private static final int subBucketBits = 5;
+    private static final int subBuckets = 1 << subBucketBits;
+    // values below subBuckets get their own exact bucket, above that one group of subBuckets per power of two
+    private static final int numBuckets = (64 - subBucketBits + 1) * subBuckets;
+    protected static final long[] exportedBounds = exportedBounds(1000000000L);
+
+    private final String name;
+    private final String help;
+    private final AtomicLongArray counts = new AtomicLongArray(numBuckets);
+    // the last counter is for values past every exported bound, only rendered as +Inf
+    private final AtomicLongArray exportedCounts = new AtomicLongArray(exportedBounds.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public Histogram(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketIndex(value));
+        exportedCounts.incrementAndGet(exportedIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currMax = max.get();
+        while (value > currMax && !max.compareAndSet(currMax, value)) {
+            currMax = max.get();
+        }
+    }
+
+    protected static int bucketIndex(long value) {
+        if (value < subBuckets) {
+            return (int) value;
+        }
+        // the top subBucketBits + 1 bits of the value pick the bucket: the leading one picks the power of two,
+        // the bits after it pick the linear sub-bucket within that power of two
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - subBucketBits;
+        int subBucket = (int) (value >>> shift) - subBuckets;
+        return (shift + 1) * subBuckets + subBucket;
+    }
+
+    // 0, then 1, 2 and 5 times each power of ten, none of them past maxBound
+    private static long[] exportedBounds(long maxBound) {
+        long[] bounds = new long[64];
+        int numBounds = 1;
+        for (long decade = 1; decade <= maxBound; decade *= 10) {
+            for (long multiple : new long[]{1, 2, 5}) {
+                if (multiple * decade <= maxBound) {
+                    bounds[numBounds++] = multiple * decade;
+                }
+            }
+        }
+        return Arrays.copyOf(bounds, numBounds);
+    }
+
+    // first exported bucket whose bound is at or above the value, by binary search
+    protected static int exportedIndex(long value) {
+        int low = 0;
+        int high = exportedBounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (exportedBounds[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // largest value that lands in the given bucket
+    protected static long bucketUpperBound(int index) {
+        if (index < subBuckets) {
+            return index;
+        }
+        int shift = index / subBuckets - 1;
+        long subBucket = index % subBuckets + subBuckets;
+        if (shift + subBucketBits >= 63) {
+            return Long.MAX_VALUE;
+        }
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    // approximate value at the given quantile (0.0 to 1.0), reported as the upper bound of its bucket
+    public long getValueAtQuantile(double quantile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < numBuckets; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < numBuckets; i++) {
+            counts.set(i, 0);
+        }
+        for (int i = 0; i < exportedCounts.length(); i++) {
+            exportedCounts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    // Prometheus text exposition format: cumulative counts for every exported bucket, empty or not
+    public void render(StringBuilder sB) {
+        sB.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sB.append("# TYPE ").append(name).append(" histogram\n");
+        long cumulative = 0;
+        for (int i = 0; i < exportedBounds.length; i++) {
+            cumulative += exportedCounts.get(i);
+            sB.append(name).append("_bucket{le=\"").append(exportedBounds[i]).append("\"} ").append(cumulative).append('\n');
+        }
+        // from the same counters as the buckets, so +Inf is never below them mid-record
+        cumulative += exportedCounts.get(exportedBounds.length);
+        sB.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        sB.append(name).append("_sum ").append(sum.get()).append('\n');
+        sB.append(name).append("_count ").append(count.get()).append('\n');
+    }
+
+    public String getName() {
+        return name;
+    }
+}
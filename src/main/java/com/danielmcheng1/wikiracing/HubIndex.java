@@ -0,0 +1,426 @@
+package com.danielmcheng1.wikiracing;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Snapshot of the complete links and linkshere of the most-linked pages on Wikipedia (countries, years, major topics),
+ * which almost every race passes through. They are also the most expensive pages to fetch, since a hub's backlinks take
+ * hundreds of continue requests, so the crawler expands any hub in the snapshot locally without calling the API.
+ * <p>
+ * The snapshot is a compact binary file that is memory-mapped at startup: every title it mentions is stored once,
+ * sorted, and links are 4-byte ids into that table. It is built from a list of hub titles (e.g. the most-linked pages
+ * of a recorded LinkGraph) by fetching their links through the WikiRetriever, stopping once the file would grow past
+ * its size budget, and can be refreshed on a schedule so that it does not drift too far from the live site.
+ * <p>
+ * File layout, all integers big-endian:
+ * <pre>
+ *   header: int magic, int version, int numTitles, int numHubs, int numLinks
+ *   titles: int offset per title plus one, then the UTF-8 title bytes, titles sorted by their bytes
+ *   hubs:   per hub in title order: int titleId, int forwardsStart, int forwardsCount, int backwardsStart, int backwardsCount
+ *   links:  int titleId per link
+ * </pre>
+ */
+public class HubIndex {
+    protected static final int magic = 0x57524849; // "WRHI"
+    protected static final int version = 1;
+    protected static final int headerLength = 20;
+    protected static final int hubEntryLength = 20;
+    public static final int defaultNumHubs = 1000;
+    public static final long defaultMaxBytes = 256L * 1024 * 1024;
+    // requests for a batch are retried this many times before a build gives up
+    private static final int maxAttempts = 5;
+
+    private static final Logger LOGGER = Logger.getLogger(HubIndex.class.getName());
+
+    // no hubs unless a snapshot is loaded, e.g. from the command line
+    private static volatile HubIndex shared;
+    private static ScheduledExecutorService refresher;
+
+    private final String fileName;
+    private final long maxBytes;
+    private final int numTitles;
+    private final int numHubs;
+    private final MappedByteBuffer titleOffsets;
+    private final MappedByteBuffer titleBytes;
+    private final MappedByteBuffer hubs;
+    private final MappedByteBuffer links;
+
+    public HubIndex(String fileName) throws IOException {
+        this(fileName, defaultMaxBytes);
+    }
+
+    // maxBytes is the budget for refreshing the snapshot
+    public HubIndex(String fileName, long maxBytes) throws IOException {
+        this.fileName = fileName;
+        this.maxBytes = maxBytes;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (channel.size() < headerLength || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a hub index, or too large to map: " + fileName);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerLength);
+            if (header.getInt() != magic || header.getInt() != version) {
+                throw new IOException("Not a hub index: " + fileName);
+            }
+            this.numTitles = header.getInt();
+            this.numHubs = header.getInt();
+            int numLinks = header.getInt();
+            long position = headerLength;
+            this.titleOffsets = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * (numTitles + 1));
+            position += titleOffsets.capacity();
+            this.titleBytes = channel.map(FileChannel.MapMode.READ_ONLY, position, titleOffsets.getInt(4 * numTitles));
+            position += titleBytes.capacity();
+            this.hubs = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) hubEntryLength * numHubs);
+            position += hubs.capacity();
+            this.links = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * numLinks);
+            position += links.capacity();
+            if (position != channel.size()) {
+                throw new IOException("Hub index is truncated or corrupt: " + fileName);
+            }
+        }
+        LOGGER.log(Level.INFO, "Loaded " + numHubs + " hubs with " + links.capacity() / 4 + " links from " + fileName);
+    }
+
+    public static HubIndex getShared() {
+        return shared;
+    }
+
+    // install a snapshot for every crawl in the JVM to expand hubs from, or null to fetch everything
+    public static void setShared(HubIndex hubIndex) {
+        shared = hubIndex;
+    }
+
+    /******************************************/
+    // METHODS FOR LOOKING UP HUBS
+    /******************************************/
+    // all links of the page in this direction, or null if it is not a hub
+    public String[] getLinks(String title, Direction direction) {
+        int hub = findHub(title.getBytes(StandardCharsets.UTF_8));
+        if (hub < 0) {
+            return null;
+        }
+        int entry = hub * hubEntryLength;
+        int start = hubs.getInt(entry + (Direction.FORWARDS.equals(direction) ? 4 : 12));
+        int count = hubs.getInt(entry + (Direction.FORWARDS.equals(direction) ? 8 : 16));
+        String[] hubLinks = new String[count];
+        for (int i = 0; i < count; i++) {
+            hubLinks[i] = getTitle(links.getInt(4 * (start + i)));
+        }
+        return hubLinks;
+    }
+
+    // number of links of the page in this direction, or 0 if it is not a hub
+    public int getNumLinks(String title, Direction direction) {
+        int hub = findHub(title.getBytes(StandardCharsets.UTF_8));
+        if (hub < 0) {
+            return 0;
+        }
+        return hubs.getInt(hub * hubEntryLength + (Direction.FORWARDS.equals(direction) ? 8 : 16));
+    }
+
+    // binary search of the hubs, which are in title order; returns -1 if the title is not a hub
+    private int findHub(byte[] key) {
+        int low = 0;
+        int high = numHubs - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareTitle(hubs.getInt(mid * hubEntryLength), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareTitle(int id, byte[] key) {
+        int start = titleOffsets.getInt(4 * id);
+        int length = titleOffsets.getInt(4 * (id + 1)) - start;
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int cmp = (titleBytes.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    private String getTitle(int id) {
+        int start = titleOffsets.getInt(4 * id);
+        byte[] bytes = new byte[titleOffsets.getInt(4 * (id + 1)) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = titleBytes.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public List<String> getHubTitles() {
+        ArrayList<String> hubTitles = new ArrayList<String>(numHubs);
+        for (int hub = 0; hub < numHubs; hub++) {
+            hubTitles.add(getTitle(hubs.getInt(hub * hubEntryLength)));
+        }
+        return hubTitles;
+    }
+
+    /******************************************/
+    // METHODS FOR BUILDING AND REFRESHING THE SNAPSHOT
+    /******************************************/
+    // the numHubs pages of the graph with the most links to them, most-linked first
+    public static List<String> getMostLinked(final LinkGraph graph, int numHubs) {
+        Integer[] pages = new Integer[graph.getNumPages()];
+        for (int page = 0; page < pages.length; page++) {
+            pages[page] = page;
+        }
+        Arrays.sort(pages, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Integer.compare(graph.getNumLinks(b, Direction.BACKWARDS), graph.getNumLinks(a, Direction.BACKWARDS));
+            }
+        });
+        ArrayList<String> hubTitles = new ArrayList<String>();
+        for (int i = 0; i < Math.min(numHubs, pages.length); i++) {
+            hubTitles.add(graph.getTitle(pages[i]));
+        }
+        return hubTitles;
+    }
+
+    /**
+     * Fetch both directions of links for each hub, in order, through the WikiRetriever's transport and write them to
+     * fileName, leaving out the remaining hubs once the file would grow past maxBytes. The file is written alongside
+     * and then moved into place, so crawls reading a snapshot already mapped from it are unaffected.
+     */
+    public static void build(List<String> hubTitles, long maxBytes, String fileName) throws IOException {
+        LinkedHashMap<String, String[][]> hubLinks = new LinkedHashMap<String, String[][]>();
+        HashMap<String, Integer> titleLengths = new HashMap<String, Integer>();
+        long numBytes = headerLength + 4;
+        for (int i = 0; i < hubTitles.size() && numBytes <= maxBytes; i += Crawler.maxBatchSize) {
+            List<String> batch = hubTitles.subList(i, Math.min(i + Crawler.maxBatchSize, hubTitles.size()));
+            Map<String, ArrayList<String>> forwards = fetchAllLinks(batch, Direction.FORWARDS);
+            Map<String, ArrayList<String>> backwards = fetchAllLinks(batch, Direction.BACKWARDS);
+            for (String hub : batch) {
+                String[][] bothDirections = new String[][]{toArray(forwards.get(hub)), toArray(backwards.get(hub))};
+                long hubBytes = hubEntryLength + 4L * (bothDirections[0].length + bothDirections[1].length);
+                for (String title : concat(hub, bothDirections)) {
+                    if (!titleLengths.containsKey(title)) {
+                        int length = title.getBytes(StandardCharsets.UTF_8).length;
+                        titleLengths.put(title, length);
+                        hubBytes += 4 + length;
+                    }
+                }
+                numBytes += hubBytes;
+                if (numBytes > maxBytes) {
+                    LOGGER.log(Level.INFO, "Hub index reached its budget of " + maxBytes + " bytes after " + hubLinks.size() + " hubs");
+                    break;
+                }
+                hubLinks.put(hub, bothDirections);
+            }
+        }
+        write(hubLinks, fileName);
+    }
+
+    // rebuild the snapshot from the live links of the same hubs, and load the new one
+    public HubIndex refresh() throws IOException {
+        build(getHubTitles(), maxBytes, fileName);
+        return new HubIndex(fileName, maxBytes);
+    }
+
+    // refresh the shared snapshot in the background every periodMinutes, until the JVM exits
+    public static synchronized void scheduleRefresh(long periodMinutes) {
+        if (refresher != null || periodMinutes <= 0) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hub-index-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            HubIndex current = shared;
+            if (current == null) {
+                return;
+            }
+            try {
+                shared = current.refresh();
+            } catch (IOException | RuntimeException e) {
+                // keep serving the snapshot we have
+                LOGGER.log(Level.WARNING, "Failed to refresh hub index " + current.getFileName() + ": " + e.getMessage());
+            }
+        }, periodMinutes, periodMinutes, TimeUnit.MINUTES);
+    }
+
+    // follow every continue for a batch of titles, collecting all links of each
+    protected static Map<String, ArrayList<String>> fetchAllLinks(List<String> titles, Direction direction) throws IOException {
+        HashMap<String, ArrayList<String>> linksByTitle = new HashMap<String, ArrayList<String>>();
+        String linksKey = Direction.FORWARDS.equals(direction) ? "links" : "linkshere";
+        String titlesConcatenated = StringUtils.join(titles, "|");
+        JsonObject continueParams = null;
+        do {
+            JsonObject response = null;
+            for (int attempt = 0; attempt < maxAttempts && response == null; attempt++) {
+                response = WikiRetriever.getWikiResponse(titlesConcatenated, direction, continueParams);
+            }
+            if (response == null) {
+                throw new IOException("Wiki API did not answer for " + titlesConcatenated);
+            }
+            HashMap<String, String> normalizedToRequested = new HashMap<String, String>();
+            for (Map.Entry<String, String> entry : WikiRetriever.getNormalizedTitles(response).entrySet()) {
+                normalizedToRequested.put(entry.getValue(), entry.getKey());
+            }
+            for (Map.Entry<String, JsonElement> entry : response.getAsJsonObject("query").getAsJsonObject("pages").entrySet()) {
+                JsonObject page = entry.getValue().getAsJsonObject();
+                JsonArray linksForPage = page.getAsJsonArray(linksKey);
+                if (linksForPage == null) {
+                    continue;
+                }
+                String title = page.get("title").getAsString();
+                if (normalizedToRequested.containsKey(title)) {
+                    title = normalizedToRequested.get(title);
+                }
+                ArrayList<String> titleLinks = linksByTitle.get(title);
+                if (titleLinks == null) {
+                    titleLinks = new ArrayList<String>();
+                    linksByTitle.put(title, titleLinks);
+                }
+                for (JsonElement link : linksForPage) {
+                    titleLinks.add(link.getAsJsonObject().get("title").getAsString());
+                }
+            }
+            continueParams = WikiRetriever.getContinue(response);
+        } while (continueParams != null);
+        return linksByTitle;
+    }
+
+    private static String[] toArray(ArrayList<String> titles) {
+        return titles == null ? new String[0] : titles.toArray(new String[titles.size()]);
+    }
+
+    private static List<String> concat(String hub, String[][] bothDirections) {
+        ArrayList<String> titles = new ArrayList<String>(1 + bothDirections[0].length + bothDirections[1].length);
+        titles.add(hub);
+        titles.addAll(Arrays.asList(bothDirections[0]));
+        titles.addAll(Arrays.asList(bothDirections[1]));
+        return titles;
+    }
+
+    private static void write(LinkedHashMap<String, String[][]> hubLinks, String fileName) throws IOException {
+        // every title mentioned, sorted by its bytes, the order lookups search in
+        HashMap<String, byte[]> titleBytes = new HashMap<String, byte[]>();
+        int numLinks = 0;
+        for (Map.Entry<String, String[][]> entry : hubLinks.entrySet()) {
+            for (String title : concat(entry.getKey(), entry.getValue())) {
+                if (!titleBytes.containsKey(title)) {
+                    titleBytes.put(title, title.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            numLinks += entry.getValue()[0].length + entry.getValue()[1].length;
+        }
+        final HashMap<String, byte[]> bytesByTitle = titleBytes;
+        String[] titles = titleBytes.keySet().toArray(new String[titleBytes.size()]);
+        Arrays.sort(titles, new Comparator<String>() {
+            public int compare(String a, String b) {
+                return compareBytes(bytesByTitle.get(a), bytesByTitle.get(b));
+            }
+        });
+        HashMap<String, Integer> ids = new HashMap<String, Integer>(titles.length * 2);
+        for (int id = 0; id < titles.length; id++) {
+            ids.put(titles[id], id);
+        }
+        String[] hubTitles = hubLinks.keySet().toArray(new String[hubLinks.size()]);
+        Arrays.sort(hubTitles, new Comparator<String>() {
+            public int compare(String a, String b) {
+                return compareBytes(bytesByTitle.get(a), bytesByTitle.get(b));
+            }
+        });
+
+        File tempFile = new File(fileName + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeInt(titles.length);
+            out.writeInt(hubTitles.length);
+            out.writeInt(numLinks);
+            int offset = 0;
+            for (String title : titles) {
+                out.writeInt(offset);
+                offset += titleBytes.get(title).length;
+            }
+            out.writeInt(offset);
+            for (String title : titles) {
+                out.write(titleBytes.get(title));
+            }
+            int start = 0;
+            for (String hub : hubTitles) {
+                String[][] bothDirections = hubLinks.get(hub);
+                out.writeInt(ids.get(hub));
+                out.writeInt(start);
+                out.writeInt(bothDirections[0].length);
+                out.writeInt(start + bothDirections[0].length);
+                out.writeInt(bothDirections[1].length);
+                start += bothDirections[0].length + bothDirections[1].length;
+            }
+            for (String hub : hubTitles) {
+                for (String[] directionLinks : hubLinks.get(hub)) {
+                    for (String link : directionLinks) {
+                        out.writeInt(ids.get(link));
+                    }
+                }
+            }
+        }
+        Files.move(tempFile.toPath(), Paths.get(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.log(Level.INFO, "Wrote " + hubTitles.length + " hubs with " + numLinks + " links to " + fileName);
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /******************************************/
+    // STATS
+    /******************************************/
+    public int getNumHubs() {
+        return numHubs;
+    }
+
+    public long getNumLinks() {
+        return links.capacity() / 4;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+}
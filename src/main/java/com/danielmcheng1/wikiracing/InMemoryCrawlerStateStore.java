@@ -0,0 +1,164 @@
+package com.danielmcheng1.wikiracing;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Crawl state in this JVM's memory, for one crawler instance: the default store, and the only one whose frontiers can
+ * be ordered by priority.
+ */
+public class InMemoryCrawlerStateStore implements CrawlerStateStore {
+    // lowest priority first, then in BFS order; the title makes it a total order, as the skip list needs
+    private static final Comparator<WebNode> byPriority = Comparator.comparingDouble(WebNode::getPriority)
+            .thenComparingInt(WebNode::getDistance).thenComparing(WebNode::getTitle);
+
+    // every crawler thread reads and writes these, so they must be concurrent collections
+    private final ConcurrentHashMap<String, WebNode> visitedForwards = new ConcurrentHashMap<String, WebNode>();
+    private final ConcurrentHashMap<String, WebNode> visitedBackwards = new ConcurrentHashMap<String, WebNode>();
+    private final Queue<WebNode> toVisitForwards;
+    private final Queue<WebNode> toVisitBackwards;
+    // a priority frontier holding more than this many nodes drops its worst ones (0 for no limit)
+    private final int beamWidth;
+    // ConcurrentLinkedQueue.size() is O(n), so track the queue sizes alongside for the beam
+    private final AtomicInteger numToVisitForwards = new AtomicInteger();
+    private final AtomicInteger numToVisitBackwards = new AtomicInteger();
+
+    public InMemoryCrawlerStateStore() {
+        this(CrawlerState.FrontierOrder.FIFO, 0);
+    }
+
+    // priority frontiers keep at most beamWidth nodes (0 for no limit), so that memory stays flat however far the crawl spreads;
+    // a FIFO frontier has no notion of the least promising node, so it is never bounded
+    public InMemoryCrawlerStateStore(CrawlerState.FrontierOrder frontierOrder, int beamWidth) {
+        this.beamWidth = CrawlerState.FrontierOrder.FIFO.equals(frontierOrder) ? 0 : beamWidth;
+        if (!CrawlerState.FrontierOrder.FIFO.equals(frontierOrder)) {
+            toVisitForwards = new PriorityFrontier();
+            toVisitBackwards = new PriorityFrontier();
+        } else {
+            toVisitForwards = new ConcurrentLinkedQueue<WebNode>();
+            toVisitBackwards = new ConcurrentLinkedQueue<WebNode>();
+        }
+    }
+
+    public Map<String, WebNode> getVisited(Direction direction) {
+        return Direction.FORWARDS.equals(direction) ? visitedForwards : visitedBackwards;
+    }
+
+    public boolean[] visitIfAbsent(List<WebNode> nodes) {
+        boolean[] added = new boolean[nodes.size()];
+        for (int i = 0; i < added.length; i++) {
+            WebNode wN = nodes.get(i);
+            added[i] = getVisited(wN.getDirection()).putIfAbsent(wN.getTitle(), wN) == null;
+        }
+        return added;
+    }
+
+    public boolean[] findVisited(Direction direction, List<String> titles) {
+        Map<String, WebNode> visited = getVisited(direction);
+        boolean[] found = new boolean[titles.size()];
+        for (int i = 0; i < found.length; i++) {
+            found[i] = visited.containsKey(titles.get(i));
+        }
+        return found;
+    }
+
+    public int enqueue(List<WebNode> nodes) {
+        int numAdded = 0;
+        for (WebNode wN : nodes) {
+            Queue<WebNode> queue = getQueue(wN.getDirection());
+            AtomicInteger numToVisit = Direction.FORWARDS.equals(wN.getDirection()) ? numToVisitForwards : numToVisitBackwards;
+            // a priority frontier turns away a node identical to one it already holds, e.g. queued by two threads at once
+            if (!queue.offer(wN)) {
+                continue;
+            }
+            numAdded++;
+            // the dropped nodes stay visited, so they can still complete a path that reaches them from the other end
+            if (numToVisit.incrementAndGet() > beamWidth && beamWidth > 0) {
+                if (((PriorityFrontier) queue).pollLast() != null) {
+                    numToVisit.decrementAndGet();
+                    numAdded--;
+                    Metrics.beamDroppedPages.increment();
+                }
+            }
+        }
+        return numAdded;
+    }
+
+    public List<WebNode> dequeue(Direction direction, int maxNodes) {
+        Queue<WebNode> queue = getQueue(direction);
+        AtomicInteger numToVisit = Direction.FORWARDS.equals(direction) ? numToVisitForwards : numToVisitBackwards;
+        List<WebNode> nodes = new ArrayList<WebNode>(Math.min(maxNodes, Crawler.maxBatchSize));
+        while (nodes.size() < maxNodes) {
+            // .size() is O(n) for concurrent queue so more efficient to try to remove until we cannot
+            WebNode wN = queue.poll();
+            if (wN == null) {
+                break;
+            }
+            numToVisit.decrementAndGet();
+            nodes.add(wN);
+        }
+        return nodes;
+    }
+
+    public WebNode peek(Direction direction) {
+        return getQueue(direction).peek();
+    }
+
+    public boolean isQueueEmpty(Direction direction) {
+        return getQueue(direction).isEmpty();
+    }
+
+    public void close() {
+    }
+
+    private Queue<WebNode> getQueue(Direction direction) {
+        return Direction.FORWARDS.equals(direction) ? toVisitForwards : toVisitBackwards;
+    }
+
+    /**
+     * Concurrent queue that hands out nodes in order of priority. Unlike a PriorityBlockingQueue it can also drop its
+     * worst node, which is what bounds the beam, and it never takes a lock.
+     */
+    private static class PriorityFrontier extends AbstractQueue<WebNode> {
+        private final ConcurrentSkipListSet<WebNode> nodes = new ConcurrentSkipListSet<WebNode>(byPriority);
+
+        public boolean offer(WebNode wN) {
+            return nodes.add(wN);
+        }
+
+        public WebNode poll() {
+            return nodes.pollFirst();
+        }
+
+        public WebNode pollLast() {
+            return nodes.pollLast();
+        }
+
+        public WebNode peek() {
+            Iterator<WebNode> iterator = nodes.iterator();
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+
+        public boolean isEmpty() {
+            return nodes.isEmpty();
+        }
+
+        public Iterator<WebNode> iterator() {
+            return nodes.iterator();
+        }
+
+        // O(n), so only for debugging
+        public int size() {
+            return nodes.size();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.danielmcheng1.wikiracing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Precomputed BFS distances to and from a few dozen landmark pages, used to steer a crawl towards its destination
+ * (the ALT technique: A*, landmarks and the triangle inequality). For any landmark L and pages u and t,
+ * d(u, t) >= d(L, t) - d(L, u) and d(u, t) >= d(u, L) - d(t, L), so the largest of these over all landmarks is a lower
+ * bound on how many clicks separate u from t. If L reaches u but not t, or t reaches L but u does not, then u cannot
+ * reach t at all.
+ * <p>
+ * The index is built offline from a LinkGraph (e.g. one rebuilt from a recorded TrafficArchive) and memory-mapped when
+ * loaded, so that it costs no heap and the OS only pages in the parts crawls actually touch. Each distance takes one
+ * byte, so 32 landmarks over 6 million pages come to about 400MB on disk. Titles are stored sorted so that they can be
+ * looked up by binary search without building a map.
+ * <p>
+ * File layout, all integers big-endian:
+ * <pre>
+ *   header:    int magic, int version, int numPages, int numLandmarks
+ *   landmarks: int pageId per landmark
+ *   titles:    int offset per page plus one, then the UTF-8 title bytes, pages sorted by title bytes
+ *   distances: per landmark, one byte per page from the landmark, then one byte per page to the landmark
+ * </pre>
+ */
+public class LandmarkIndex {
+    protected static final int magic = 0x57524c49; // "WRLI"
+    protected static final int version = 1;
+    protected static final int headerLength = 16;
+    public static final int defaultNumLandmarks = 32;
+    // distances are kept in an unsigned byte, so the largest value marks a page that cannot be reached and the one
+    // below it any page at least that far away
+    public static final int unreachable = 255;
+    protected static final int farthest = 254;
+
+    private static final Logger LOGGER = Logger.getLogger(LandmarkIndex.class.getName());
+
+    // no index unless one is loaded, e.g. from the command line
+    private static volatile LandmarkIndex shared;
+
+    private final String fileName;
+    private final int numPages;
+    private final int[] landmarks;
+    private final MappedByteBuffer titleOffsets;
+    private final MappedByteBuffer titleBytes;
+    private final MappedByteBuffer[] distancesFrom;
+    private final MappedByteBuffer[] distancesTo;
+
+    public LandmarkIndex(String fileName) throws IOException {
+        this.fileName = fileName;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (channel.size() < headerLength) {
+                throw new IOException("Not a landmark index: " + fileName);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerLength);
+            if (header.getInt() != magic || header.getInt() != version) {
+                throw new IOException("Not a landmark index: " + fileName);
+            }
+            this.numPages = header.getInt();
+            int numLandmarks = header.getInt();
+            MappedByteBuffer landmarkIds = channel.map(FileChannel.MapMode.READ_ONLY, headerLength, 4L * numLandmarks);
+            this.landmarks = new int[numLandmarks];
+            for (int i = 0; i < numLandmarks; i++) {
+                landmarks[i] = landmarkIds.getInt();
+            }
+            long position = headerLength + 4L * numLandmarks;
+            this.titleOffsets = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * (numPages + 1));
+            position += 4L * (numPages + 1);
+            this.titleBytes = channel.map(FileChannel.MapMode.READ_ONLY, position, titleOffsets.getInt(4 * numPages));
+            position += titleBytes.capacity();
+            // one mapping per landmark keeps each under the 2GB limit of a single MappedByteBuffer
+            this.distancesFrom = new MappedByteBuffer[numLandmarks];
+            this.distancesTo = new MappedByteBuffer[numLandmarks];
+            for (int i = 0; i < numLandmarks; i++) {
+                distancesFrom[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, numPages);
+                position += numPages;
+                distancesTo[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, numPages);
+                position += numPages;
+            }
+            if (position != channel.size()) {
+                throw new IOException("Landmark index is truncated or corrupt: " + fileName);
+            }
+        }
+        LOGGER.log(Level.INFO, "Loaded landmark index of " + numPages + " pages and " + landmarks.length + " landmarks from " + fileName);
+    }
+
+    public static LandmarkIndex getShared() {
+        return shared;
+    }
+
+    // install an index for every crawl in the JVM to steer by, or null to go back to plain BFS
+    public static void setShared(LandmarkIndex landmarkIndex) {
+        shared = landmarkIndex;
+    }
+
+    /******************************************/
+    // METHODS FOR ESTIMATING DISTANCES
+    /******************************************/
+    // binary search of the sorted titles; returns -1 if the title is not in the index
+    public int getId(String title) {
+        byte[] key = title.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = numPages - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareTitle(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareTitle(int id, byte[] key) {
+        int start = titleOffsets.getInt(4 * id);
+        int length = titleOffsets.getInt(4 * (id + 1)) - start;
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int cmp = (titleBytes.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    public String getTitle(int id) {
+        int start = titleOffsets.getInt(4 * id);
+        byte[] bytes = new byte[titleOffsets.getInt(4 * (id + 1)) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = titleBytes.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lower bound on the number of links between page from and page to, or unreachable if the landmarks prove there
+     * is no path at all. The bound is only as fresh as the link data the index was built from.
+     */
+    public int lowerBound(int from, int to) {
+        int bound = 0;
+        for (int i = 0; i < landmarks.length; i++) {
+            int landmarkToFrom = distancesFrom[i].get(from) & 0xff;
+            int landmarkToTo = distancesFrom[i].get(to) & 0xff;
+            if (landmarkToFrom != unreachable) {
+                // d(L, to) <= d(L, from) + d(from, to)
+                if (landmarkToTo == unreachable) {
+                    return unreachable;
+                }
+                // a distance we had to cap could be any larger, so we cannot subtract it
+                if (landmarkToFrom != farthest) {
+                    bound = Math.max(bound, landmarkToTo - landmarkToFrom);
+                }
+            }
+            int fromToLandmark = distancesTo[i].get(from) & 0xff;
+            int toToLandmark = distancesTo[i].get(to) & 0xff;
+            // d(from, L) <= d(from, to) + d(to, L)
+            if (fromToLandmark == unreachable) {
+                if (toToLandmark != unreachable) {
+                    return unreachable;
+                }
+            } else if (toToLandmark != unreachable && toToLandmark != farthest) {
+                bound = Math.max(bound, fromToLandmark - toToLandmark);
+            }
+        }
+        return bound;
+    }
+
+    public int getNumPages() {
+        return numPages;
+    }
+
+    public int getNumLandmarks() {
+        return landmarks.length;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /******************************************/
+    // METHODS FOR BUILDING THE INDEX
+    /******************************************/
+    /**
+     * Choose numLandmarks landmarks and write their distances for every page of the graph to fileName. Landmarks are
+     * picked one at a time as the page farthest from all landmarks picked so far, which spreads them around the edge
+     * of the graph where their bounds are tightest; the same seed always picks the same landmarks.
+     */
+    public static void build(LinkGraph graph, int numLandmarks, long seed, String fileName) throws IOException {
+        int numPages = graph.getNumPages();
+        numLandmarks = Math.min(numLandmarks, numPages);
+        int[] landmarks = new int[numLandmarks];
+        byte[][] distancesFrom = new byte[numLandmarks][];
+        byte[][] distancesTo = new byte[numLandmarks][];
+        // how far each page is from its nearest landmark, counting both directions
+        int[] spread = new int[numPages];
+        Arrays.fill(spread, Integer.MAX_VALUE);
+        int next = new Random(seed).nextInt(Math.max(numPages, 1));
+        for (int i = 0; i < numLandmarks; i++) {
+            landmarks[i] = next;
+            distancesFrom[i] = breadthFirstDistances(graph, next, Direction.FORWARDS);
+            distancesTo[i] = breadthFirstDistances(graph, next, Direction.BACKWARDS);
+            int farthestPage = -1;
+            for (int page = 0; page < numPages; page++) {
+                spread[page] = Math.min(spread[page], reachableDistance(distancesFrom[i][page]) + reachableDistance(distancesTo[i][page]));
+                if (farthestPage < 0 || spread[page] > spread[farthestPage]) {
+                    farthestPage = page;
+                }
+            }
+            next = farthestPage;
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Landmark " + (i + 1) + " of " + numLandmarks + ": " + graph.getTitle(landmarks[i]));
+            }
+        }
+        write(graph, landmarks, distancesFrom, distancesTo, fileName);
+    }
+
+    // an unreachable page says nothing about how far out a landmark is, so it adds nothing to the spread
+    private static int reachableDistance(byte distance) {
+        int d = distance & 0xff;
+        return d == unreachable ? 0 : d;
+    }
+
+    protected static byte[] breadthFirstDistances(LinkGraph graph, int start, Direction direction) {
+        int[] distances = new int[graph.getNumPages()];
+        Arrays.fill(distances, -1);
+        int[] queue = new int[graph.getNumPages()];
+        int head = 0;
+        int tail = 0;
+        distances[start] = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int page = queue[head++];
+            for (int i = 0; i < graph.getNumLinks(page, direction); i++) {
+                int link = graph.getLink(page, direction, i);
+                if (distances[link] < 0) {
+                    distances[link] = distances[page] + 1;
+                    queue[tail++] = link;
+                }
+            }
+        }
+        byte[] capped = new byte[distances.length];
+        for (int page = 0; page < distances.length; page++) {
+            capped[page] = (byte) (distances[page] < 0 ? unreachable : Math.min(distances[page], farthest));
+        }
+        return capped;
+    }
+
+    private static void write(LinkGraph graph, int[] landmarks, byte[][] distancesFrom, byte[][] distancesTo, String fileName) throws IOException {
+        int numPages = graph.getNumPages();
+        final byte[][] titles = new byte[numPages][];
+        Integer[] sorted = new Integer[numPages];
+        for (int page = 0; page < numPages; page++) {
+            titles[page] = graph.getTitle(page).getBytes(StandardCharsets.UTF_8);
+            sorted[page] = page;
+        }
+        // sort by unsigned bytes, the same order getId searches in
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return compareBytes(titles[a], titles[b]);
+            }
+        });
+        int[] ids = new int[numPages];
+        for (int id = 0; id < numPages; id++) {
+            ids[sorted[id]] = id;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeInt(numPages);
+            out.writeInt(landmarks.length);
+            for (int landmark : landmarks) {
+                out.writeInt(ids[landmark]);
+            }
+            int offset = 0;
+            for (int id = 0; id < numPages; id++) {
+                out.writeInt(offset);
+                offset += titles[sorted[id]].length;
+            }
+            out.writeInt(offset);
+            for (int id = 0; id < numPages; id++) {
+                out.write(titles[sorted[id]]);
+            }
+            byte[] reordered = new byte[numPages];
+            for (int i = 0; i < landmarks.length; i++) {
+                for (byte[] distances : new byte[][]{distancesFrom[i], distancesTo[i]}) {
+                    for (int page = 0; page < numPages; page++) {
+                        reordered[ids[page]] = distances[page];
+                    }
+                    out.write(reordered);
+                }
+            }
+        }
+        LOGGER.log(Level.INFO, "Wrote landmark index of " + numPages + " pages and " + landmarks.length + " landmarks to " + fileName);
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+}
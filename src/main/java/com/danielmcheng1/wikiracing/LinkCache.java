@@ -0,0 +1,292 @@
+package com.danielmcheng1.wikiracing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared, bounded cache of the links we have already fetched from the Wiki API, plus the title redirects/normalizations
+ * the API reported along the way. A single instance is shared by every crawl in the JVM (batch races and the REST
+ * service) so that popular pages only have to be fetched once.
+ * <p>
+ * Memory is bounded by the total number of cached links rather than the number of pages, since hub pages can carry
+ * thousands of links each. Once the budget is exceeded the least recently used pages are evicted.
+ * <p>
+ * A cache may also be backed by a snapshot of an earlier run's cache (see WarmStart), mapped from disk rather than
+ * loaded, which answers the lookups the cache misses. A page found there is brought into the cache, so the snapshot is
+ * read once per page; a page put, invalidated or redirected since the snapshot was taken is never read from it again.
+ */
+public class LinkCache {
+    public static final long defaultMaxLinks = 1000000;
+    private static final int maxRedirects = 100000;
+
+    private static LinkCache shared = new LinkCache(defaultMaxLinks);
+
+    private final long maxLinks;
+    private long numLinks;
+    private final LinkedHashMap<String, String[]> linksForwards;
+    private final LinkedHashMap<String, String[]> linksBackwards;
+    private final LinkedHashMap<String, String> redirects;
+    // no snapshot unless one is set; entries of it the cache has since replaced or dropped are kept in superseded
+    private TitleListFile snapshotForwards;
+    private TitleListFile snapshotBackwards;
+    private TitleListFile snapshotRedirects;
+    private final HashSet<String> supersededForwards = new HashSet<String>();
+    private final HashSet<String> supersededBackwards = new HashSet<String>();
+    private final HashSet<String> supersededRedirects = new HashSet<String>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong snapshotHits = new AtomicLong();
+
+    public LinkCache(long maxLinks) {
+        this.maxLinks = maxLinks;
+        // access-ordered so that iteration starts at the least recently used page
+        this.linksForwards = new LinkedHashMap<String, String[]>(16, 0.75f, true);
+        this.linksBackwards = new LinkedHashMap<String, String[]>(16, 0.75f, true);
+        this.redirects = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxRedirects;
+            }
+        };
+    }
+
+    public static LinkCache getShared() {
+        return shared;
+    }
+
+    // replace the JVM-wide cache, e.g. to resize it from the command line
+    public static void setShared(LinkCache linkCache) {
+        shared = linkCache;
+    }
+
+    public long getMaxLinks() {
+        return maxLinks;
+    }
+
+    /******************************************/
+    // METHODS FOR CACHED LINKS
+    /******************************************/
+    // returns null if we have never fetched the full set of links for this title in this direction
+    public synchronized String[] getLinks(String title, Direction direction) {
+        String[] links = getMap(direction).get(title);
+        if (links == null) {
+            links = getSnapshotLinks(title, direction);
+        }
+        if (links == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return links;
+    }
+
+    private String[] getSnapshotLinks(String title, Direction direction) {
+        TitleListFile snapshot = getSnapshot(direction);
+        if (snapshot == null || getSuperseded(direction).contains(title)) {
+            return null;
+        }
+        String[] links = snapshot.get(title);
+        if (links != null) {
+            snapshotHits.incrementAndGet();
+            // the same links as the snapshot's, so the snapshot may still stand in for them once they are evicted
+            put(title, direction, links);
+        }
+        return links;
+    }
+
+    // only call this with the COMPLETE set of links for the title (i.e. after all continue requests have returned)
+    public synchronized void putLinks(String title, Direction direction, String[] links) {
+        supersede(title, direction);
+        put(title, direction, links);
+    }
+
+    private void put(String title, Direction direction, String[] links) {
+        if (maxLinks <= 0 || links.length > maxLinks) {
+            return;
+        }
+        String[] previous = getMap(direction).put(title, links);
+        if (previous != null) {
+            numLinks -= previous.length;
+        }
+        numLinks += links.length;
+        evictIfOverBudget();
+    }
+
+    // drop the title's links in this direction, e.g. because the page was edited; returns what was cached, if anything
+    public synchronized String[] invalidate(String title, Direction direction) {
+        String[] previous = getMap(direction).remove(title);
+        if (previous != null) {
+            numLinks -= previous.length;
+        }
+        supersede(title, direction);
+        return previous;
+    }
+
+    private void evictIfOverBudget() {
+        // evict from whichever direction holds more pages (forwards on a tie), so that neither one is starved
+        while (numLinks > maxLinks) {
+            Map<String, String[]> larger = linksForwards.size() >= linksBackwards.size() ? linksForwards : linksBackwards;
+            Iterator<String[]> eldest = larger.values().iterator();
+            if (!eldest.hasNext()) {
+                return;
+            }
+            numLinks -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    private HashMap<String, String[]> getMap(Direction direction) {
+        return Direction.FORWARDS.equals(direction) ? linksForwards : linksBackwards;
+    }
+
+    // so that the snapshot's links for the title are not brought back once these are evicted; only titles in the
+    // snapshot are kept, so the set is bounded by its size
+    private void supersede(String title, Direction direction) {
+        TitleListFile snapshot = getSnapshot(direction);
+        if (snapshot != null && snapshot.contains(title)) {
+            getSuperseded(direction).add(title);
+        }
+    }
+
+    /******************************************/
+    // METHODS FOR REDIRECTS AND NORMALIZED TITLES
+    /******************************************/
+    public synchronized void putRedirect(String fromTitle, String toTitle) {
+        if (fromTitle != null && toTitle != null && !fromTitle.equals(toTitle)) {
+            redirects.put(fromTitle, toTitle);
+            supersedeRedirect(fromTitle);
+        }
+    }
+
+    // forget a redirect, e.g. because its page was deleted or a page was moved over it
+    public synchronized void removeRedirect(String fromTitle) {
+        redirects.remove(fromTitle);
+        supersedeRedirect(fromTitle);
+    }
+
+    private void supersedeRedirect(String fromTitle) {
+        if (snapshotRedirects != null && snapshotRedirects.contains(fromTitle)) {
+            supersededRedirects.add(fromTitle);
+        }
+    }
+
+    // follow the (short) chain of redirects we know about, stopping on cycles
+    public synchronized String resolveTitle(String title) {
+        String resolved = title;
+        for (int hops = 0; hops < 5; hops++) {
+            String next = redirects.get(resolved);
+            if (next == null && snapshotRedirects != null && !supersededRedirects.contains(resolved)) {
+                String[] snapshotNext = snapshotRedirects.get(resolved);
+                if (snapshotNext != null) {
+                    next = snapshotNext[0];
+                    redirects.put(resolved, next);
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            resolved = next;
+        }
+        return resolved;
+    }
+
+    /******************************************/
+    // METHODS FOR SNAPSHOTS
+    /******************************************/
+    // back the cache with a snapshot of an earlier run's links in each direction and redirects; any of them may be null
+    public synchronized void setSnapshot(TitleListFile forwards, TitleListFile backwards, TitleListFile redirects) {
+        this.snapshotForwards = forwards;
+        this.snapshotBackwards = backwards;
+        this.snapshotRedirects = redirects;
+        supersededForwards.clear();
+        supersededBackwards.clear();
+        supersededRedirects.clear();
+    }
+
+    /**
+     * Everything the cache knows in the direction, most recently used first, for writing a new snapshot: its own pages,
+     * then the pages of the snapshot it is backed by that it has not replaced or dropped, in the order they were saved
+     * in, while those stay within maxSnapshotLinks. Pages carried over from an earlier run thus survive a restart that
+     * never looked them up, up to the cache's budget, and the ones used longest ago are the first to go.
+     */
+    public synchronized Map<String, String[]> getLinksToSave(Direction direction, long maxSnapshotLinks) {
+        // the map iterates from the least recently used page
+        List<Map.Entry<String, String[]>> cached = new ArrayList<Map.Entry<String, String[]>>(getMap(direction).entrySet());
+        LinkedHashMap<String, String[]> links = new LinkedHashMap<String, String[]>();
+        for (int i = cached.size() - 1; i >= 0; i--) {
+            links.put(cached.get(i).getKey(), cached.get(i).getValue());
+        }
+        TitleListFile snapshot = getSnapshot(direction);
+        long numSnapshotLinks = 0;
+        for (int rank = 0; snapshot != null && rank < snapshot.getNumTitles(); rank++) {
+            int index = snapshot.getIndexByRank(rank);
+            String title = snapshot.getTitle(index);
+            if (links.containsKey(title) || getSuperseded(direction).contains(title)) {
+                continue;
+            }
+            String[] titleLinks = snapshot.getValues(index);
+            numSnapshotLinks += titleLinks.length;
+            if (numSnapshotLinks > maxSnapshotLinks) {
+                break;
+            }
+            links.put(title, titleLinks);
+        }
+        return links;
+    }
+
+    // the cache's redirects, then the snapshot's that it has not replaced or dropped, up to maxRedirects
+    public synchronized Map<String, String[]> getRedirectsToSave() {
+        LinkedHashMap<String, String[]> saved = new LinkedHashMap<String, String[]>();
+        for (Map.Entry<String, String> redirect : redirects.entrySet()) {
+            saved.put(redirect.getKey(), new String[]{redirect.getValue()});
+        }
+        for (int i = 0; snapshotRedirects != null && i < snapshotRedirects.getNumTitles() && saved.size() < maxRedirects; i++) {
+            String fromTitle = snapshotRedirects.getTitle(i);
+            if (!saved.containsKey(fromTitle) && !supersededRedirects.contains(fromTitle)) {
+                saved.put(fromTitle, snapshotRedirects.getValues(i));
+            }
+        }
+        return saved;
+    }
+
+    private TitleListFile getSnapshot(Direction direction) {
+        return Direction.FORWARDS.equals(direction) ? snapshotForwards : snapshotBackwards;
+    }
+
+    private HashSet<String> getSuperseded(Direction direction) {
+        return Direction.FORWARDS.equals(direction) ? supersededForwards : supersededBackwards;
+    }
+
+    /******************************************/
+    // STATS
+    /******************************************/
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // hits answered from the snapshot, each counted in getHits() too
+    public long getSnapshotHits() {
+        return snapshotHits.get();
+    }
+
+    public synchronized long getNumLinks() {
+        return numLinks;
+    }
+
+    public synchronized int getNumPages() {
+        return linksForwards.size() + linksBackwards.size();
+    }
+}
@@ -0,0 +1,23 @@
+package com.danielmcheng1.wikiracing;
+
+/**
+ * Scores a page by how many links it has in the direction of the crawl, so that a crawl heads for the hubs that most
+ * races pass through. Degrees come from the shared hub index, which holds every hub's links, so pages outside it all
+ * score 0 and are expanded in BFS order.
+ */
+public class LinkDegreeScorer implements NodeScorer {
+    public static final String name = "degree";
+
+    public double score(WebNode wN, String targetTitle) {
+        HubIndex hubIndex = HubIndex.getShared();
+        if (hubIndex == null) {
+            return 0;
+        }
+        // logarithmic, so that a hub's degree does not swamp scores combined with it
+        return Math.log1p(hubIndex.getNumLinks(wN.getTitle(), wN.getDirection()));
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,217 @@
+package com.danielmcheng1.wikiracing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import okhttp3.HttpUrl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Immutable, in-memory link graph in compressed sparse row (CSR) form: the links of page i are
+ * targets[offsets[i]] to targets[offsets[i + 1] - 1], kept sorted. Both directions are stored so that we can answer
+ * "links" (forwards) and "linkshere" (backwards) queries without a scan.
+ * <p>
+ * Used to serve crawls without the network, e.g. behind a MockLinkSource, and as the input to offline indexes such as
+ * the LandmarkIndex.
+ */
+public class LinkGraph {
+    private final String[] titles;
+    private final HashMap<String, Integer> titleIds;
+    private final int[] forwardOffsets;
+    private final int[] forwardTargets;
+    private final int[] backwardOffsets;
+    private final int[] backwardTargets;
+
+    // forwardOffsets has one entry per page plus one, forwardTargets holds each page's sorted, de-duplicated links
+    public LinkGraph(String[] titles, int[] forwardOffsets, int[] forwardTargets) {
+        this.titles = titles;
+        this.titleIds = new HashMap<String, Integer>(titles.length * 2);
+        for (int i = 0; i < titles.length; i++) {
+            titleIds.put(titles[i], i);
+        }
+        this.forwardOffsets = forwardOffsets;
+        this.forwardTargets = forwardTargets;
+
+        // build the reverse graph by counting the in-links of each page, then filling them in
+        this.backwardOffsets = new int[titles.length + 1];
+        for (int target : forwardTargets) {
+            backwardOffsets[target + 1]++;
+        }
+        for (int i = 0; i < titles.length; i++) {
+            backwardOffsets[i + 1] += backwardOffsets[i];
+        }
+        this.backwardTargets = new int[forwardTargets.length];
+        int[] next = Arrays.copyOf(backwardOffsets, titles.length);
+        // walking sources in increasing order keeps each backwards list sorted
+        for (int source = 0; source < titles.length; source++) {
+            for (int i = forwardOffsets[source]; i < forwardOffsets[source + 1]; i++) {
+                backwardTargets[next[forwardTargets[i]]++] = source;
+            }
+        }
+    }
+
+    /**
+     * Generate a random graph that is shaped roughly like Wikipedia: a few hub pages collect most of the links, and
+     * every page also links to the next one so that a path always exists. The same seed always gives the same graph.
+     */
+    public static LinkGraph generate(int numPages, int avgLinks, long seed) {
+        Random random = new Random(seed);
+        String[] titles = new String[numPages];
+        for (int i = 0; i < numPages; i++) {
+            titles[i] = "Page " + i;
+        }
+        int[] offsets = new int[numPages + 1];
+        int[] targets = new int[numPages * (avgLinks + 1)];
+        int numLinks = 0;
+        int[] pageLinks = new int[avgLinks * 4 + 1];
+        for (int source = 0; source < numPages; source++) {
+            // degrees vary from 1 up to 4x the average
+            int degree = 1 + random.nextInt(avgLinks * 2) + (random.nextInt(8) == 0 ? avgLinks * 2 : 0);
+            degree = Math.min(degree, pageLinks.length - 1);
+            int n = 0;
+            pageLinks[n++] = (source + 1) % numPages;
+            for (int i = 1; i < degree; i++) {
+                // squaring a uniform draw skews targets towards low ids, which become the hubs
+                double skewed = random.nextDouble();
+                pageLinks[n++] = (int) (skewed * skewed * numPages);
+            }
+            Arrays.sort(pageLinks, 0, n);
+            if (numLinks + n > targets.length) {
+                targets = Arrays.copyOf(targets, Math.max(targets.length * 2, numLinks + n));
+            }
+            int previous = -1;
+            for (int i = 0; i < n; i++) {
+                if (pageLinks[i] != previous && pageLinks[i] != source) {
+                    targets[numLinks++] = pageLinks[i];
+                }
+                previous = pageLinks[i];
+            }
+            offsets[source + 1] = numLinks;
+        }
+        return new LinkGraph(titles, offsets, Arrays.copyOf(targets, numLinks));
+    }
+
+    /**
+     * Rebuild the part of Wikipedia's link graph that a TrafficArchive saw: every link listed in a recorded "links"
+     * response, plus every link implied by a recorded "linkshere" response, between all the titles we came across.
+     * Pages we only ever saw from one side are missing the links on their other side.
+     */
+    public static LinkGraph fromArchive(TrafficArchive archive) throws IOException {
+        Gson gson = new Gson();
+        HashMap<String, Integer> ids = new HashMap<String, Integer>();
+        ArrayList<String> titles = new ArrayList<String>();
+        // each link packed as (source << 32 | target), so sorting groups them by source
+        long[] links = new long[1024];
+        int numLinks = 0;
+        for (String key : archive.getKeys()) {
+            HttpUrl url = HttpUrl.parse(key);
+            String prop = url == null ? null : url.queryParameter("prop");
+            JsonObject response = gson.fromJson(new String(archive.get(key).getBody(), StandardCharsets.UTF_8), JsonObject.class);
+            if (prop == null || response == null || !response.has("query") || !response.getAsJsonObject("query").has("pages")) {
+                continue;
+            }
+            boolean forwards = "links".equals(prop);
+            for (Map.Entry<String, JsonElement> entry : response.getAsJsonObject("query").getAsJsonObject("pages").entrySet()) {
+                JsonObject page = entry.getValue().getAsJsonObject();
+                JsonArray linksForPage = page.getAsJsonArray(prop);
+                if (linksForPage == null) {
+                    continue;
+                }
+                int pageId = getOrAddId(ids, titles, page.get("title").getAsString());
+                for (JsonElement link : linksForPage) {
+                    int linkId = getOrAddId(ids, titles, link.getAsJsonObject().get("title").getAsString());
+                    if (numLinks == links.length) {
+                        links = Arrays.copyOf(links, links.length * 2);
+                    }
+                    links[numLinks++] = forwards ? ((long) pageId << 32) | linkId : ((long) linkId << 32) | pageId;
+                }
+            }
+        }
+
+        Arrays.sort(links, 0, numLinks);
+        int[] offsets = new int[titles.size() + 1];
+        int[] targets = new int[numLinks];
+        int numTargets = 0;
+        for (int i = 0; i < numLinks; i++) {
+            int source = (int) (links[i] >>> 32);
+            int target = (int) links[i];
+            // the same link is often recorded from both sides
+            if ((i > 0 && links[i] == links[i - 1]) || source == target) {
+                continue;
+            }
+            targets[numTargets++] = target;
+            offsets[source + 1] = numTargets;
+        }
+        // pages without links of their own end where the previous page ended
+        for (int i = 1; i <= titles.size(); i++) {
+            offsets[i] = Math.max(offsets[i], offsets[i - 1]);
+        }
+        return new LinkGraph(titles.toArray(new String[titles.size()]), offsets, Arrays.copyOf(targets, numTargets));
+    }
+
+    private static int getOrAddId(HashMap<String, Integer> ids, ArrayList<String> titles, String title) {
+        Integer id = ids.get(title);
+        if (id == null) {
+            id = titles.size();
+            ids.put(title, id);
+            titles.add(title);
+        }
+        return id;
+    }
+
+    // returns -1 if the title is not in the graph
+    public int getId(String title) {
+        Integer id = titleIds.get(title);
+        return id == null ? -1 : id;
+    }
+
+    public String getTitle(int id) {
+        return titles[id];
+    }
+
+    public int getNumPages() {
+        return titles.length;
+    }
+
+    public int getNumLinks() {
+        return forwardTargets.length;
+    }
+
+    public int getNumLinks(int id, Direction direction) {
+        int[] offsets = Direction.FORWARDS.equals(direction) ? forwardOffsets : backwardOffsets;
+        return offsets[id + 1] - offsets[id];
+    }
+
+    // the i-th link of page id, in increasing order of page id
+    public int getLink(int id, Direction direction, int i) {
+        if (Direction.FORWARDS.equals(direction)) {
+            return forwardTargets[forwardOffsets[id] + i];
+        }
+        return backwardTargets[backwardOffsets[id] + i];
+    }
+
+    // the raw CSR arrays, for engines that walk the whole graph; they must not be modified
+    protected int[] getOffsets(Direction direction) {
+        return Direction.FORWARDS.equals(direction) ? forwardOffsets : backwardOffsets;
+    }
+
+    protected int[] getTargets(Direction direction) {
+        return Direction.FORWARDS.equals(direction) ? forwardTargets : backwardTargets;
+    }
+
+    public String[] getLinkTitles(int id, Direction direction) {
+        String[] links = new String[getNumLinks(id, direction)];
+        for (int i = 0; i < links.length; i++) {
+            links[i] = titles[getLink(id, direction, i)];
+        }
+        return links;
+    }
+}
@@ -0,0 +1,243 @@
+package com.danielmcheng1.wikiracing;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.implementations.MultiGraph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Draws a crawl while it runs, rather than replaying it once it is over like Visualizer. Crawler threads only drop the
+ * pages they visit onto a lock-free queue (or drop the pages themselves, if the drawing falls too far behind), and a
+ * drawing thread of our own picks them up a frame at a time.
+ * <p>
+ * Each level of each direction shows a reservoir sample of the pages visited at that distance, so the picture stays
+ * representative however large the level grows while never holding more than nodesPerLevel of its pages, and at most
+ * maxNodes pages are shown in all. A sampled page whose parent is not shown hangs off the source or destination by a
+ * grey edge. The path is drawn in as soon as it is found, and its pages are never sampled away.
+ */
+public class LiveVisualizer implements CrawlListener {
+    public static final int defaultNodesPerLevel = 25;
+    public static final int defaultMaxNodes = 500;
+    private static final int maxPendingPages = 10000;
+    private static final long frameMillis = 50;
+
+    private final String sourceTitle;
+    private final String destTitle;
+    private final int nodesPerLevel;
+    private final int maxNodes;
+    private final ConcurrentLinkedQueue<WebNode> pendingPages = new ConcurrentLinkedQueue<WebNode>();
+    // ConcurrentLinkedQueue.size() is O(n), so track the queue size alongside
+    private final AtomicInteger numPendingPages = new AtomicInteger();
+    private volatile ArrayList<String> path;
+    private volatile boolean stopped;
+    private Thread drawer;
+
+    // only the drawing thread touches the rest
+    private final MultiGraph graph;
+    private final HashMap<String, Level> levels = new HashMap<String, Level>();
+    private final HashMap<String, WebNode> shown = new HashMap<String, WebNode>();
+    private final HashMap<String, HashSet<String>> shownChildren = new HashMap<String, HashSet<String>>();
+    private HashSet<String> pathTitles = new HashSet<String>();
+    private final Random random = new Random(42);
+
+    public LiveVisualizer(String sourceTitle, String destTitle) {
+        this(sourceTitle, destTitle, defaultNodesPerLevel, defaultMaxNodes);
+    }
+
+    public LiveVisualizer(String sourceTitle, String destTitle, int nodesPerLevel, int maxNodes) {
+        this.sourceTitle = sourceTitle;
+        this.destTitle = destTitle;
+        this.nodesPerLevel = nodesPerLevel;
+        this.maxNodes = maxNodes;
+        this.graph = new MultiGraph("wikigraph", false, true);
+        graph.addAttribute("ui.stylesheet", Visualizer.generateStyleSheet());
+        graph.addNode(sourceTitle);
+        graph.addNode(destTitle);
+        Visualizer.markSourceNode(graph, sourceTitle);
+        Visualizer.markDestNode(graph, destTitle);
+    }
+
+    /******************************************/
+    // METHODS CALLED FROM CRAWLER THREADS
+    /******************************************/
+    public void pageVisited(WebNode wN) {
+        if (stopped) {
+            return;
+        }
+        if (numPendingPages.incrementAndGet() > maxPendingPages) {
+            numPendingPages.decrementAndGet();
+            Metrics.liveVisualizerDroppedPages.increment();
+            return;
+        }
+        pendingPages.offer(wN);
+    }
+
+    public void pathFound(ArrayList<String> path) {
+        this.path = path;
+    }
+
+    /******************************************/
+    // METHODS FOR THE DRAWING THREAD
+    /******************************************/
+    // open a window onto the graph (unless display is false) and start drawing into it
+    public void start(boolean display) {
+        if (display) {
+            graph.display(true);
+        }
+        drawer = new Thread(() -> {
+            while (!stopped) {
+                drawFrame();
+                try {
+                    Thread.sleep(frameMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            drawFrame();
+        }, "live-visualizer");
+        drawer.setDaemon(true);
+        drawer.start();
+    }
+
+    // stop taking pages and draw whatever is still pending; the window stays open
+    public void stop() {
+        stopped = true;
+        if (drawer != null) {
+            try {
+                drawer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // draw every page visited since the last frame, and the path once there is one
+    protected void drawFrame() {
+        WebNode wN;
+        while ((wN = pendingPages.poll()) != null) {
+            numPendingPages.decrementAndGet();
+            sample(wN);
+        }
+        ArrayList<String> foundPath = path;
+        if (foundPath != null && pathTitles.isEmpty()) {
+            showPath(foundPath);
+        }
+    }
+
+    // reservoir sampling (Algorithm R): the n-th page of a level replaces a random sampled page with odds nodesPerLevel / n
+    private void sample(WebNode wN) {
+        String key = wN.getDirection() + ":" + wN.getDistance();
+        Level level = levels.get(key);
+        if (level == null) {
+            level = new Level();
+            levels.put(key, level);
+        }
+        level.numSeen++;
+        if (level.sample.size() < nodesPerLevel) {
+            if (shown.size() < maxNodes && show(wN)) {
+                level.sample.add(wN);
+            }
+            return;
+        }
+        long slot = (long) (random.nextDouble() * level.numSeen);
+        if (slot < nodesPerLevel && canShow(wN.getTitle())) {
+            WebNode replaced = level.sample.set((int) slot, wN);
+            hide(replaced);
+            show(wN);
+        }
+    }
+
+    // false if the page is already shown, e.g. reached from both ends
+    private boolean canShow(String title) {
+        return !shown.containsKey(title) && !title.equals(sourceTitle) && !title.equals(destTitle);
+    }
+
+    private boolean show(WebNode wN) {
+        String title = wN.getTitle();
+        if (!canShow(title)) {
+            return false;
+        }
+        shown.put(title, wN);
+        String parentTitle = wN.getParent() == null ? null : wN.getParent().getTitle();
+        if (parentTitle != null && shown.containsKey(parentTitle)) {
+            HashSet<String> children = shownChildren.get(parentTitle);
+            if (children == null) {
+                children = new HashSet<String>();
+                shownChildren.put(parentTitle, children);
+            }
+            children.add(title);
+        }
+        addEdge(wN);
+        return true;
+    }
+
+    // the children of a hidden page fall back to hanging off their end of the crawl
+    private void hide(WebNode wN) {
+        String title = wN.getTitle();
+        shown.remove(title);
+        HashSet<String> children = shownChildren.remove(title);
+        WebNode parent = wN.getParent();
+        if (parent != null && shownChildren.containsKey(parent.getTitle())) {
+            shownChildren.get(parent.getTitle()).remove(title);
+        }
+        if (pathTitles.contains(title)) {
+            return;
+        }
+        graph.removeNode(title);
+        if (children != null) {
+            for (String child : children) {
+                addEdge(shown.get(child));
+            }
+        }
+    }
+
+    // from the page's parent if that is shown, otherwise from the source or destination
+    private void addEdge(WebNode wN) {
+        String title = wN.getTitle();
+        WebNode parent = wN.getParent();
+        boolean parentShown = parent != null && (shown.containsKey(parent.getTitle()) || parent.getParent() == null);
+        String parentTitle = parentShown ? parent.getTitle() : (Direction.FORWARDS.equals(wN.getDirection()) ? sourceTitle : destTitle);
+        Edge e;
+        if (Direction.FORWARDS.equals(wN.getDirection())) {
+            e = graph.addEdge(parentTitle + "->" + title, parentTitle, title, true);
+        } else {
+            e = graph.addEdge(title + "->" + parentTitle, title, parentTitle, true);
+        }
+        if (e != null) {
+            e.addAttribute("ui.class", parentShown ? wN.getDirection().toString() : "temp");
+            Visualizer.addLabelForNode(graph.getNode(title));
+        }
+    }
+
+    private void showPath(ArrayList<String> foundPath) {
+        pathTitles = new HashSet<String>(foundPath);
+        for (int i = 0; i < foundPath.size() - 1; i++) {
+            graph.addEdge(foundPath.get(i) + "->" + foundPath.get(i + 1), foundPath.get(i), foundPath.get(i + 1), true);
+        }
+        for (String title : foundPath) {
+            Visualizer.markConnectingNode(graph, title);
+        }
+        Visualizer.markSourceNode(graph, sourceTitle);
+        Visualizer.markDestNode(graph, destTitle);
+    }
+
+    // pages on screen, besides the source, destination and path
+    protected int getNumShown() {
+        return shown.size();
+    }
+
+    protected MultiGraph getGraph() {
+        return graph;
+    }
+
+    private static class Level {
+        private long numSeen;
+        private final ArrayList<WebNode> sample = new ArrayList<WebNode>();
+    }
+}
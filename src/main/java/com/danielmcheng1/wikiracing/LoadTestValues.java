@@ -0,0 +1,126 @@
+package com.danielmcheng1.wikiracing;
+
+import org.kohsuke.args4j.Option;
+
+/**
+ * This class handles the load tester's arguments.
+ */
+public class LoadTestValues {
+    @Option(name = "-mode", required = false, usage = "Specify optional load mode: open (fixed request rate) or closed (fixed # of clients) (defaults to closed)")
+    private String mode = LoadTester.modeClosed;
+    @Option(name = "-rps", required = false, usage = "Specify optional target requests per second in open mode (defaults to 20)")
+    private double rps = 20;
+    @Option(name = "-clients", required = false, usage = "Specify optional # of concurrent clients in closed mode (defaults to 8)")
+    private int clients = 8;
+    @Option(name = "-durationSeconds", required = false, usage = "Specify optional length of the test in seconds (defaults to 60)")
+    private int durationSeconds = 60;
+    @Option(name = "-reportSeconds", required = false, usage = "Specify optional seconds between progress reports (defaults to 5)")
+    private int reportSeconds = 5;
+    @Option(name = "-maxOutstanding", required = false, usage = "Specify optional cap on requests in flight in open mode, beyond which requests are dropped and counted as errors (defaults to 2000)")
+    private int maxOutstanding = 2000;
+    @Option(name = "-timeout", required = false, usage = "Specify optional timeout(s) for each crawl (defaults to 15s)")
+    private long timeout = 15;
+    @Option(name = "-numPairs", required = false, usage = "Specify optional # of distinct source/dest pairs to draw requests from (defaults to 1000)")
+    private int numPairs = 1000;
+    @Option(name = "-zipfExponent", required = false, usage = "Specify optional Zipf exponent of pair popularity, 0 for uniform (defaults to 1.0)")
+    private double zipfExponent = 1.0;
+    @Option(name = "-numPages", required = false, usage = "Specify optional # of pages in the mock link graph (defaults to 100000)")
+    private int numPages = 100000;
+    @Option(name = "-avgLinks", required = false, usage = "Specify optional average # of links per page in the mock link graph (defaults to 40)")
+    private int avgLinks = 40;
+    @Option(name = "-apiLatencyMillis", required = false, usage = "Specify optional latency of each mock Wiki API call (defaults to 50ms)")
+    private long apiLatencyMillis = 50;
+    @Option(name = "-stragglerFraction", required = false, usage = "Specify optional fraction of mock Wiki API calls that take -stragglerMillis instead (defaults to 0)")
+    private double stragglerFraction;
+    @Option(name = "-stragglerMillis", required = false, usage = "Specify optional latency of the straggling mock Wiki API calls (defaults to 1000ms)")
+    private long stragglerMillis = 1000;
+    @Option(name = "-hedgePercentile", required = false, usage = "Specify optional percentile of recent Wiki API latencies past which a call is hedged (defaults to 0, no hedging)")
+    private double hedgePercentile;
+    @Option(name = "-hedgeBudget", required = false, usage = "Specify optional max fraction of Wiki API calls that may be hedged (defaults to 0.05)")
+    private double hedgeBudget = HedgingTransport.defaultBudget;
+    @Option(name = "-seed", required = false, usage = "Specify optional random seed for the graph and the request sequence (defaults to 42)")
+    private long seed = 42;
+    @Option(name = "-port", required = false, usage = "Specify optional port to start the in-process REST service on (defaults to 4567)")
+    private int port = 4567;
+    @Option(name = "-output", required = false, usage = "Specify optional file to write the full report to as JSON")
+    private String output;
+
+    public LoadTestValues() {
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public double getRps() {
+        return rps;
+    }
+
+    public int getClients() {
+        return clients;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getReportSeconds() {
+        return reportSeconds;
+    }
+
+    public int getMaxOutstanding() {
+        return maxOutstanding;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public int getNumPairs() {
+        return numPairs;
+    }
+
+    public double getZipfExponent() {
+        return zipfExponent;
+    }
+
+    public int getNumPages() {
+        return numPages;
+    }
+
+    public int getAvgLinks() {
+        return avgLinks;
+    }
+
+    public long getApiLatencyMillis() {
+        return apiLatencyMillis;
+    }
+
+    public double getStragglerFraction() {
+        return stragglerFraction;
+    }
+
+    public long getStragglerMillis() {
+        return stragglerMillis;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public double getHedgeBudget() {
+        return hedgeBudget;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+}
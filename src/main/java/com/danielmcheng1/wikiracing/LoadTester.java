@@ -0,0 +1,378 @@
+package com.danielmcheng1.wikiracing;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Load generator for the REST service: starts a CrawlerService in this JVM on top of a MockLinkSource (so no request
+ * ever reaches Wikipedia), then fires /crawl requests at it and reports throughput, latency percentiles, error rate and
+ * JVM thread/heap usage every few seconds and for the whole run.
+ * <p>
+ * Two load models are supported:
+ * <ul>
+ * <li>closed: a fixed number of clients, each sending its next request as soon as the last one returns. This finds
+ * the throughput the service saturates at, but hides queueing since slow responses also slow down the clients.</li>
+ * <li>open: requests are sent at a fixed rate no matter how fast the service answers, as real users would. Latency is
+ * measured from when each request was due to be sent, so time spent queued behind a slow service is counted.</li>
+ * </ul>
+ * Source/destination pairs follow a Zipf distribution over a fixed set of pairs, since a few races (and pages) are far
+ * more popular than the rest, which is what the shared link cache is there for.
+ * <p>
+ * Run it with e.g. mvn -Ploadtest compile exec:exec -Dloadtest.args="-mode open -rps 50 -durationSeconds 120"
+ */
+public class LoadTester {
+    public static final String modeOpen = "open";
+    public static final String modeClosed = "closed";
+
+    private final LoadTestValues values;
+    private final OkHttpClient client;
+    private final String baseUrl;
+    private final String[][] pairs;
+    private final double[] pairCdf;
+    private final Random random;
+    private volatile boolean finished;
+
+    private final LatencyLog totalLatencies = new LatencyLog();
+    private volatile LatencyLog intervalLatencies = new LatencyLog();
+    private final AtomicLong numErrors = new AtomicLong();
+    private final AtomicLong numIntervalErrors = new AtomicLong();
+    private final AtomicLong numNotFound = new AtomicLong();
+    private final JsonArray intervals = new JsonArray();
+
+    public LoadTester(LoadTestValues values, LinkGraph graph) {
+        if (!modeOpen.equals(values.getMode()) && !modeClosed.equals(values.getMode())) {
+            throw new IllegalArgumentException("Invalid load mode specified: " + values.getMode());
+        }
+        this.values = values;
+        this.baseUrl = "http://localhost:" + values.getPort();
+        // give each crawl its full timeout plus some slack before we call it an error
+        this.client = new OkHttpClient.Builder()
+                .readTimeout(values.getTimeout() + 10, TimeUnit.SECONDS)
+                .build();
+        this.pairs = generatePairs(graph, values.getNumPairs(), values.getSeed());
+        this.pairCdf = zipfCdf(values.getNumPairs(), values.getZipfExponent());
+        this.random = new Random(values.getSeed());
+    }
+
+    /******************************************/
+    // METHODS FOR GENERATING LOAD
+    /******************************************/
+    public void run() throws InterruptedException {
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(values.getDurationSeconds());
+        Thread reporter = new Thread(() -> report(startNanos), "load-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+
+        if (modeOpen.equals(values.getMode())) {
+            runOpenLoop(endNanos);
+        } else {
+            runClosedLoop(endNanos);
+        }
+        // keep reporting until the requests still in flight at the end have returned
+        finished = true;
+        reporter.join();
+        printSummary(System.nanoTime() - startNanos);
+    }
+
+    // one thread per client, each waiting for its response before sending the next request
+    private void runClosedLoop(long endNanos) throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(values.getClients());
+        for (int i = 0; i < values.getClients(); i++) {
+            clients.execute(() -> {
+                while (System.nanoTime() < endNanos) {
+                    sendRequest(System.nanoTime());
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    // send on a fixed schedule, handing each request to its own thread so that slow responses never delay the next one
+    private void runOpenLoop(long endNanos) throws InterruptedException {
+        ExecutorService senders = Executors.newCachedThreadPool();
+        final Semaphore outstanding = new Semaphore(values.getMaxOutstanding());
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / values.getRps());
+        long dueNanos = System.nanoTime();
+        while (dueNanos < endNanos) {
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            final long scheduledNanos = dueNanos;
+            if (outstanding.tryAcquire()) {
+                senders.execute(() -> {
+                    try {
+                        sendRequest(scheduledNanos);
+                    } finally {
+                        outstanding.release();
+                    }
+                });
+            } else {
+                // the service has fallen too far behind to keep every request in flight
+                recordError();
+            }
+            dueNanos += intervalNanos;
+        }
+        senders.shutdown();
+        senders.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    // latency runs from when the request was due to be sent, rather than when it was actually sent
+    private void sendRequest(long scheduledNanos) {
+        String[] pair = pairs[sample(pairCdf, random.nextDouble())];
+        HttpUrl url = HttpUrl.parse(baseUrl).newBuilder()
+                .addPathSegment("crawl")
+                .addPathSegment(pair[0])
+                .addPathSegment(pair[1])
+                .addPathSegment(String.valueOf(values.getTimeout()))
+                .build();
+        Request request = new Request.Builder().url(url).build();
+        try (Response response = client.newCall(request).execute()) {
+            String body = response.body().string();
+            long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduledNanos);
+            if (!response.isSuccessful()) {
+                recordError();
+                return;
+            }
+            // a crawl that timed out is still a successful response, but worth knowing about
+            if (!body.contains("\"foundPath\":\"Y\"")) {
+                numNotFound.incrementAndGet();
+            }
+            totalLatencies.record(latencyMicros);
+            intervalLatencies.record(latencyMicros);
+        } catch (IOException e) {
+            recordError();
+        }
+    }
+
+    private void recordError() {
+        numErrors.incrementAndGet();
+        numIntervalErrors.incrementAndGet();
+    }
+
+    /******************************************/
+    // METHODS FOR REPORTING
+    /******************************************/
+    private void report(long startNanos) {
+        System.out.println(String.format("%8s %8s %8s %9s %9s %9s %9s %8s %9s", "time(s)", "rps", "errors",
+                "p50(ms)", "p90(ms)", "p99(ms)", "p999(ms)", "threads", "heap(MB)"));
+        long reportNanos = TimeUnit.SECONDS.toNanos(values.getReportSeconds());
+        long nextNanos = startNanos + reportNanos;
+        long lastNanos = startNanos;
+        while (!finished) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.max(0, nextNanos - System.nanoTime()));
+            } catch (InterruptedException e) {
+                return;
+            }
+            long nowNanos = System.nanoTime();
+            LatencyLog latencies = intervalLatencies;
+            intervalLatencies = new LatencyLog();
+            long errors = numIntervalErrors.getAndSet(0);
+            printInterval(nowNanos - startNanos, nowNanos - lastNanos, latencies, errors);
+            lastNanos = nowNanos;
+            nextNanos += reportNanos;
+        }
+    }
+
+    private void printInterval(long elapsedNanos, long intervalNanos, LatencyLog latencies, long errors) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        double seconds = intervalNanos / 1e9;
+        double rps = latencies.getCount() / seconds;
+        long heapMB = memory.getHeapMemoryUsage().getUsed() >> 20;
+        System.out.println(String.format("%8.1f %8.1f %8d %9.1f %9.1f %9.1f %9.1f %8d %9d", elapsedNanos / 1e9, rps, errors,
+                latencies.getMillisAtQuantile(0.5), latencies.getMillisAtQuantile(0.9),
+                latencies.getMillisAtQuantile(0.99), latencies.getMillisAtQuantile(0.999), threads.getThreadCount(), heapMB));
+
+        JsonObject interval = toJson(latencies, errors, seconds);
+        interval.addProperty("elapsedSeconds", elapsedNanos / 1e9);
+        interval.addProperty("threads", threads.getThreadCount());
+        interval.addProperty("heapUsedMB", heapMB);
+        synchronized (intervals) {
+            intervals.add(interval);
+        }
+    }
+
+    private void printSummary(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long total = totalLatencies.getCount() + numErrors.get();
+        System.out.println("-----------------------");
+        System.out.println("Mode: " + values.getMode() + (modeOpen.equals(values.getMode()) ? " at " + values.getRps() + " rps" : " with " + values.getClients() + " clients"));
+        System.out.println("Requests: " + total + " in " + String.format("%.1f", seconds) + "s");
+        System.out.println("Throughput: " + String.format("%.1f", totalLatencies.getCount() / seconds) + " rps");
+        System.out.println("Error rate: " + String.format("%.2f%%", total == 0 ? 0.0 : 100.0 * numErrors.get() / total));
+        System.out.println("Crawls without a path: " + numNotFound.get());
+        System.out.println("Latency p50/p90/p99/p999 (ms): " + String.format("%.1f / %.1f / %.1f / %.1f",
+                totalLatencies.getMillisAtQuantile(0.5), totalLatencies.getMillisAtQuantile(0.9),
+                totalLatencies.getMillisAtQuantile(0.99), totalLatencies.getMillisAtQuantile(0.999)));
+        System.out.println("Peak threads: " + ManagementFactory.getThreadMXBean().getPeakThreadCount());
+        WikiTransport transport = WikiRetriever.getTransport();
+        if (transport instanceof HedgingTransport) {
+            HedgingTransport hedging = (HedgingTransport) transport;
+            System.out.println("Hedged API calls: " + hedging.getNumHedges() + " of " + hedging.getNumRequests() + " (" + hedging.getNumHedgeWins()
+                    + " won, " + hedging.getNumOverBudget() + " over budget, threshold " + hedging.getThresholdMillis() + "ms)");
+        }
+
+        if (values.getOutput() != null) {
+            JsonObject report = toJson(totalLatencies, numErrors.get(), seconds);
+            report.addProperty("mode", values.getMode());
+            report.addProperty("targetRps", values.getRps());
+            report.addProperty("clients", values.getClients());
+            report.addProperty("crawlsNotFound", numNotFound.get());
+            report.addProperty("peakThreads", ManagementFactory.getThreadMXBean().getPeakThreadCount());
+            if (transport instanceof HedgingTransport) {
+                report.addProperty("hedgedApiCalls", ((HedgingTransport) transport).getNumHedges());
+                report.addProperty("hedgeWins", ((HedgingTransport) transport).getNumHedgeWins());
+            }
+            synchronized (intervals) {
+                report.add("intervals", intervals);
+            }
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(values.getOutput()), StandardCharsets.UTF_8)) {
+                writer.write(new GsonBuilder().setPrettyPrinting().create().toJson(report));
+                System.out.println("Wrote load test report to " + values.getOutput());
+            } catch (IOException e) {
+                System.err.println("ERROR: Failed to write load test report: " + e.getMessage());
+            }
+        }
+    }
+
+    private static JsonObject toJson(LatencyLog latencies, long errors, double seconds) {
+        JsonObject json = new JsonObject();
+        json.addProperty("requests", latencies.getCount() + errors);
+        json.addProperty("errors", errors);
+        json.addProperty("throughputRps", latencies.getCount() / seconds);
+        json.addProperty("p50Millis", latencies.getMillisAtQuantile(0.5));
+        json.addProperty("p90Millis", latencies.getMillisAtQuantile(0.9));
+        json.addProperty("p99Millis", latencies.getMillisAtQuantile(0.99));
+        json.addProperty("p999Millis", latencies.getMillisAtQuantile(0.999));
+        return json;
+    }
+
+    /******************************************/
+    // METHODS FOR PAIR POPULARITY
+    /******************************************/
+    // distinct, random source/dest pairs from the graph; the same seed always gives the same pairs
+    protected static String[][] generatePairs(LinkGraph graph, int numPairs, long seed) {
+        Random random = new Random(seed);
+        String[][] generated = new String[numPairs][];
+        for (int i = 0; i < numPairs; i++) {
+            int source = random.nextInt(graph.getNumPages());
+            int dest = random.nextInt(graph.getNumPages());
+            generated[i] = new String[]{graph.getTitle(source), graph.getTitle(dest)};
+        }
+        return generated;
+    }
+
+    // cumulative probabilities of a Zipf distribution: the k-th most popular of n items has weight 1 / k^exponent
+    protected static double[] zipfCdf(int n, double exponent) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int k = 1; k <= n; k++) {
+            sum += 1.0 / Math.pow(k, exponent);
+            cdf[k - 1] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    // map a uniform draw in [0, 1) to an item index
+    protected static int sample(double[] cdf, double uniform) {
+        int index = Arrays.binarySearch(cdf, uniform);
+        index = index >= 0 ? index : -index - 1;
+        return Math.min(index, cdf.length - 1);
+    }
+
+    /**
+     * Every latency recorded in one interval (or the whole run), kept exactly so that even p999 is precise. At the
+     * request rates a single box can drive that is at most a few MB.
+     */
+    protected static class LatencyLog {
+        private long[] latencyMicros = new long[1024];
+        private int count;
+
+        public synchronized void record(long micros) {
+            if (count == latencyMicros.length) {
+                latencyMicros = Arrays.copyOf(latencyMicros, count * 2);
+            }
+            latencyMicros[count++] = micros;
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+
+        // nearest-rank percentile, or 0 if nothing was recorded
+        public synchronized double getMillisAtQuantile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencyMicros, count);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(quantile * count);
+            return sorted[Math.max(rank, 1) - 1] / 1000.0;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadTestValues values = new LoadTestValues();
+        CmdLineParser parser = new CmdLineParser(values);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+        // keep the report readable, the crawler logs every request at INFO
+        Util.setAllLogLevels(Level.WARNING);
+
+        System.out.println("Generating mock link graph of " + values.getNumPages() + " pages...");
+        LinkGraph graph = LinkGraph.generate(values.getNumPages(), values.getAvgLinks(), values.getSeed());
+        MockLinkSource mockLinkSource = new MockLinkSource(graph, values.getApiLatencyMillis());
+        mockLinkSource.setStragglers(values.getStragglerFraction(), values.getStragglerMillis());
+        WikiRetriever.setTransport(values.getHedgePercentile() > 0
+                ? new HedgingTransport(mockLinkSource, values.getHedgePercentile(), values.getHedgeBudget())
+                : mockLinkSource);
+        LoadTester loadTester = new LoadTester(values, graph);
+
+        spark.Spark.port(values.getPort());
+        CrawlerService.main(new String[]{});
+        spark.Spark.awaitInitialization();
+        System.out.println("Started REST service on port " + values.getPort() + ", running " + values.getDurationSeconds() + "s load test...");
+        try {
+            loadTester.run();
+        } finally {
+            spark.Spark.stop();
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,230 @@
+package com.danielmcheng1.wikiracing;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * JVM-wide registry of the crawler's metrics, exposed in Prometheus text format at /metrics by the CrawlerService.
+ * Hot paths record straight into the static fields below (no lookups by name, no allocation); the registry lists are
+ * only walked when /metrics is scraped.
+ */
+public class Metrics {
+    private static final List<Histogram> histograms = new CopyOnWriteArrayList<Histogram>();
+    private static final List<Counter> counters = new CopyOnWriteArrayList<Counter>();
+    private static final List<Gauge> gauges = new CopyOnWriteArrayList<Gauge>();
+
+    /******************************************/
+    // WIKI API
+    /******************************************/
+    public static final Histogram apiLatencyMillis = register(new Histogram("wikiracer_api_latency_ms",
+            "Latency of each Wiki API call in milliseconds"));
+    public static final Histogram apiResponseBytes = register(new Histogram("wikiracer_api_response_bytes",
+            "Size of each Wiki API response body in bytes"));
+    public static final Counter apiErrors = register(new Counter("wikiracer_api_errors_total",
+            "Wiki API calls that failed or returned an unparseable response"));
+    public static final Counter suppressedFetches = register(new Counter("wikiracer_suppressed_fetches_total",
+            "Page fetches left out of a request because another batch was already fetching the same title and direction"));
+    public static final Gauge inFlightFetches = register(new Gauge("wikiracer_in_flight_fetches",
+            "Titles whose links some batch is fetching right now", () -> WikiRetriever.getNumInFlightFetches()));
+    public static final Counter refilledPages = register(new Counter("wikiracer_refilled_pages_total",
+            "Pages pulled into a batch from the frontier in place of titles left to another batch's fetch"));
+    public static final Counter hedgedRequests = register(new Counter("wikiracer_hedged_requests_total",
+            "Wiki API calls sent a second time because the first was slower than the hedge percentile"));
+    public static final Counter hedgeWins = register(new Counter("wikiracer_hedge_wins_total",
+            "Hedged Wiki API calls answered by the second request first"));
+    public static final Counter hedgesOverBudget = register(new Counter("wikiracer_hedges_over_budget_total",
+            "Slow Wiki API calls left unhedged because the hedge budget was spent"));
+    public static final Gauge hedgeThresholdMillis = register(new Gauge("wikiracer_hedge_threshold_ms",
+            "Latency in milliseconds past which a Wiki API call is hedged, 0 if hedging is off or still warming up", () -> {
+                WikiTransport transport = WikiRetriever.getTransport();
+                return transport instanceof HedgingTransport ? ((HedgingTransport) transport).getThresholdMillis() : 0;
+            }));
+
+    /******************************************/
+    // HTTP CONNECTIONS
+    /******************************************/
+    public static final Counter httpConnectionsOpened = register(new Counter("wikiracer_http_connections_opened_total",
+            "Connections opened to the Wiki API, each a TCP and TLS handshake"));
+    public static final Counter http2ConnectionsOpened = register(new Counter("wikiracer_http2_connections_opened_total",
+            "Connections opened to the Wiki API that negotiated HTTP/2"));
+    public static final Counter httpConnectionsReused = register(new Counter("wikiracer_http_connections_reused_total",
+            "Wiki API calls sent on a connection that was already open, from the pool or shared over HTTP/2"));
+    public static final Counter httpResponseWireBytes = register(new Counter("wikiracer_http_response_wire_bytes_total",
+            "Wiki API response body bytes as sent over the network, before gunzipping"));
+    public static final Counter dnsLookups = register(new Counter("wikiracer_dns_lookups_total",
+            "Host lookups sent to the resolver"));
+    public static final Counter dnsCacheHits = register(new Counter("wikiracer_dns_cache_hits_total",
+            "Host lookups answered from the DNS cache"));
+    public static final Gauge httpPoolConnections = register(new Gauge("wikiracer_http_pool_connections",
+            "Connections to the Wiki API held open, in use or idle", () -> WikiRetriever.getClient().connectionPool().connectionCount()));
+    public static final Gauge httpPoolIdleConnections = register(new Gauge("wikiracer_http_pool_idle_connections",
+            "Connections to the Wiki API held open with no call on them", () -> WikiRetriever.getClient().connectionPool().idleConnectionCount()));
+    public static final Gauge httpQueuedCalls = register(new Gauge("wikiracer_http_queued_calls",
+            "Wiki API calls waiting for a place under the per-host limit", () -> WikiRetriever.getClient().dispatcher().queuedCallsCount()));
+
+    /******************************************/
+    // CRAWLER
+    /******************************************/
+    public static final Histogram crawlLatencyMillis = register(new Histogram("wikiracer_crawl_latency_ms",
+            "Runtime of each whole crawl in milliseconds, including input validation"));
+    public static final Counter crawlsFound = register(new Counter("wikiracer_crawls_found_total",
+            "Crawls that found a path"));
+    public static final Counter crawlsNotFound = register(new Counter("wikiracer_crawls_not_found_total",
+            "Crawls that timed out before finding a path"));
+    public static final Counter crawlsInvalid = register(new Counter("wikiracer_crawls_invalid_total",
+            "Crawls rejected because an input title does not exist"));
+    public static final Counter titleCacheRejections = register(new Counter("wikiracer_title_cache_rejections_total",
+            "Crawls rejected without calling the Wiki API because the title cache knows an input title does not exist"));
+    public static final Histogram continuationsPerBatch = register(new Histogram("wikiracer_batch_continuations",
+            "Continue requests needed to fetch all links for one batch of titles"));
+    public static final Counter backoffs = register(new Counter("wikiracer_backoffs_total",
+            "Times a crawler thread backed off after a failed Wiki API call"));
+    public static final Histogram expandedPagesPerCrawl = register(new Histogram("wikiracer_crawl_expanded_pages",
+            "Pages whose links were looked up in both directions over each crawl"));
+    public static final Counter landmarkPrunedPages = register(new Counter("wikiracer_landmark_pruned_pages_total",
+            "Pages a goal-directed crawl never expanded because the landmark index proved them dead ends"));
+    public static final Counter otherParentLinks = register(new Counter("wikiracer_other_parent_links_total",
+            "Extra parents kept by multi-path crawls for pages reached by more than one shortest route"));
+    public static final Counter beamDroppedPages = register(new Counter("wikiracer_beam_dropped_pages_total",
+            "Least promising pages dropped from best-first frontiers that were over their beam width"));
+    public static final Histogram visitedPagesPerCrawl = register(new Histogram("wikiracer_crawl_visited_pages",
+            "Pages visited in both directions by the end of each crawl"));
+    public static final Histogram frontierPagesPerCrawl = register(new Histogram("wikiracer_crawl_frontier_pages",
+            "Pages still queued to visit in both directions by the end of each crawl"));
+    public static final Gauge activeCrawls = register(new Gauge("wikiracer_active_crawls",
+            "Crawls currently running"));
+    public static final Gauge queuedPages = register(new Gauge("wikiracer_queued_pages",
+            "Pages queued to visit across all running crawls"));
+    public static final Gauge pendingTasks = register(new Gauge("wikiracer_pending_tasks",
+            "Batch tasks submitted to crawler thread pools that have not started running"));
+    public static final Gauge crawlerThreads = register(new Gauge("wikiracer_crawler_threads",
+            "Threads allocated to crawler thread pools across all running crawls"));
+    public static final Gauge busyCrawlerThreads = register(new Gauge("wikiracer_busy_crawler_threads",
+            "Crawler threads currently expanding a batch"));
+
+    /******************************************/
+    // LINK CACHE
+    /******************************************/
+    public static final Gauge linkCacheHits = register(new Gauge("wikiracer_link_cache_hits",
+            "Lookups answered by the shared link cache", () -> LinkCache.getShared().getHits()));
+    public static final Gauge linkCacheMisses = register(new Gauge("wikiracer_link_cache_misses",
+            "Lookups that missed the shared link cache", () -> LinkCache.getShared().getMisses()));
+    public static final Gauge linkCacheSnapshotHits = register(new Gauge("wikiracer_link_cache_snapshot_hits",
+            "Lookups the shared link cache answered from its warm start snapshot", () -> LinkCache.getShared().getSnapshotHits()));
+    public static final Gauge linkCacheLinks = register(new Gauge("wikiracer_link_cache_links",
+            "Links held in the shared link cache", () -> LinkCache.getShared().getNumLinks()));
+
+    /******************************************/
+    // PATH STORE
+    /******************************************/
+    public static final Gauge pathStoreLookups = register(new Gauge("wikiracer_path_store_lookups",
+            "Crawls seeded from the shared path store", () -> PathStore.getShared().getLookups()));
+    public static final Gauge pathStoreHits = register(new Gauge("wikiracer_path_store_hits",
+            "Crawls whose path was completed by the shared path store alone", () -> PathStore.getShared().getHits()));
+    public static final Gauge pathStoreSeededPages = register(new Gauge("wikiracer_path_store_seeded_pages",
+            "Pages queued from the shared path store rather than discovered through the Wiki API", () -> PathStore.getShared().getSeededPages()));
+    public static final Gauge pathStoreLinks = register(new Gauge("wikiracer_path_store_links",
+            "Links held in the shared path store", () -> PathStore.getShared().getNumLinks()));
+
+    /******************************************/
+    // HUB INDEX
+    /******************************************/
+    public static final Counter hubIndexExpansions = register(new Counter("wikiracer_hub_index_expansions_total",
+            "Pages expanded from the hub index snapshot instead of the Wiki API"));
+    public static final Gauge hubIndexHubs = register(new Gauge("wikiracer_hub_index_hubs",
+            "Hubs in the loaded hub index snapshot", () -> HubIndex.getShared() == null ? 0 : HubIndex.getShared().getNumHubs()));
+    public static final Gauge hubIndexLinks = register(new Gauge("wikiracer_hub_index_links",
+            "Links held in the loaded hub index snapshot", () -> HubIndex.getShared() == null ? 0 : HubIndex.getShared().getNumLinks()));
+
+    /******************************************/
+    // COMPRESSED LINK GRAPH
+    /******************************************/
+    public static final Counter compressedGraphExpansions = register(new Counter("wikiracer_compressed_graph_expansions_total",
+            "Pages expanded from the memory-mapped compressed link graph instead of the Wiki API"));
+    public static final Gauge compressedGraphBytes = register(new Gauge("wikiracer_compressed_graph_bytes",
+            "Size of the loaded compressed link graph file", () -> CompressedLinkGraph.getShared() == null ? 0 : CompressedLinkGraph.getShared().getNumBytes()));
+
+    /******************************************/
+    // CHANGE LOG UPDATES
+    /******************************************/
+    public static final Counter changeLogChanges = register(new Counter("wikiracer_change_log_changes_total",
+            "Recent changes (edits, deletes, moves) applied to the link cache and compressed link graph"));
+    public static final Counter changeLogInvalidations = register(new Counter("wikiracer_change_log_invalidations_total",
+            "Compressed link graph lists invalidated because their new links could not be fetched"));
+    public static final Counter linkGraphCompactions = register(new Counter("wikiracer_link_graph_compactions_total",
+            "Compressed link graph delta segments merged into a new file"));
+    public static final Gauge linkGraphDeltaEntries = register(new Gauge("wikiracer_link_graph_delta_entries",
+            "Lists changed since the compressed link graph file was written", () -> {
+                CompressedLinkGraph graph = CompressedLinkGraph.getShared();
+                long numEntries = 0;
+                for (DeltaSegment delta : graph == null ? new DeltaSegment[0] : graph.getDeltas()) {
+                    numEntries += delta.getNumEntries();
+                }
+                return numEntries;
+            }));
+
+    /******************************************/
+    // PARTITIONED CRAWL
+    /******************************************/
+    public static final Counter partitionLinksSent = register(new Counter("wikiracer_partition_links_sent_total",
+            "Links this partition worker found and sent on to the worker that owns them"));
+    public static final Counter partitionMessagesSent = register(new Counter("wikiracer_partition_messages_sent_total",
+            "Batches of links this partition worker sent to other workers"));
+
+    /******************************************/
+    // SHARED CRAWL STATE
+    /******************************************/
+    public static final Counter stateServerRoundTrips = register(new Counter("wikiracer_state_server_round_trips_total",
+            "Pipelines of commands sent to the crawl state server, each one round trip"));
+    public static final Counter stateServerCommands = register(new Counter("wikiracer_state_server_commands_total",
+            "Commands sent to the crawl state server"));
+
+    /******************************************/
+    // GRAPH EXPORT AND VISUALIZATION
+    /******************************************/
+    public static final Counter exportedLinks = register(new Counter("wikiracer_exported_links_total",
+            "Links written out by crawl graph exporters"));
+    public static final Counter liveVisualizerDroppedPages = register(new Counter("wikiracer_live_visualizer_dropped_pages_total",
+            "Visited pages a live visualization never drew because its drawing thread had fallen behind"));
+
+    public static Histogram register(Histogram histogram) {
+        histograms.add(histogram);
+        return histogram;
+    }
+
+    public static Counter register(Counter counter) {
+        counters.add(counter);
+        return counter;
+    }
+
+    public static Gauge register(Gauge gauge) {
+        gauges.add(gauge);
+        return gauge;
+    }
+
+    // render every registered metric in Prometheus text exposition format
+    public static String render() {
+        StringBuilder sB = new StringBuilder(8192);
+        for (Counter counter : counters) {
+            counter.render(sB);
+        }
+        for (Gauge gauge : gauges) {
+            gauge.render(sB);
+        }
+        // hit ratios are derived at scrape time rather than tracked separately
+        renderRatio(sB, "wikiracer_link_cache_hit_ratio", "Share of link cache lookups that hit",
+                linkCacheHits.get(), linkCacheHits.get() + linkCacheMisses.get());
+        renderRatio(sB, "wikiracer_path_store_hit_ratio", "Share of crawls completed by the path store alone",
+                pathStoreHits.get(), pathStoreLookups.get());
+        for (Histogram histogram : histograms) {
+            histogram.render(sB);
+        }
+        return sB.toString();
+    }
+
+    private static void renderRatio(StringBuilder sB, String name, String help, long hits, long lookups) {
+        sB.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sB.append("# TYPE ").append(name).append(" gauge\n");
+        sB.append(name).append(' ').append(lookups == 0 ? 0.0 : (double) hits / lookups).append('\n');
+    }
+}
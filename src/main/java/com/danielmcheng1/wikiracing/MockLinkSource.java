@@ -0,0 +1,185 @@
+package com.danielmcheng1.wikiracing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import okhttp3.HttpUrl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Stand-in for the MediaWiki API that answers "links"/"linkshere" queries from a local LinkGraph. Responses have the
+ * same shape as the real API, including negative page IDs for missing titles, title normalization, and a continue
+ * parameter once a response reaches the API's limit of 500 links, so the crawler runs against it unchanged.
+ * <p>
+ * Install it with WikiRetriever.setTransport to run crawls offline, in tests, benchmarks and load tests.
+ */
+public class MockLinkSource implements WikiTransport {
+    public static final int maxLinksPerResponse = 500;
+
+    private final LinkGraph graph;
+    private volatile long latencyMillis;
+    private volatile double stragglerFraction;
+    private volatile long stragglerMillis;
+    private final Random random = new Random(42);
+
+    public MockLinkSource(LinkGraph graph) {
+        this(graph, 0);
+    }
+
+    // latencyMillis is added to every request to mimic the round trip to Wikipedia
+    public MockLinkSource(LinkGraph graph, long latencyMillis) {
+        this.graph = graph;
+        this.latencyMillis = latencyMillis;
+    }
+
+    // each request has a stragglerFraction chance of taking stragglerMillis instead, like the slowest responses of a
+    // busy API server, e.g. to measure the crawl's tail latency
+    public void setStragglers(double stragglerFraction, long stragglerMillis) {
+        this.stragglerFraction = stragglerFraction;
+        this.stragglerMillis = stragglerMillis;
+    }
+
+    public byte[] fetch(HttpUrl url, String userAgent) throws IOException {
+        long delayMillis = latencyMillis;
+        if (stragglerFraction > 0) {
+            synchronized (random) {
+                if (random.nextDouble() < stragglerFraction) {
+                    delayMillis = stragglerMillis;
+                }
+            }
+        }
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while simulating latency");
+            }
+        }
+        return respond(url).getBytes(StandardCharsets.UTF_8);
+    }
+
+    protected String respond(HttpUrl url) {
+        String prop = url.queryParameter("prop");
+        Direction direction;
+        String prefix;
+        if ("links".equals(prop)) {
+            direction = Direction.FORWARDS;
+            prefix = "pl";
+        } else if ("linkshere".equals(prop)) {
+            direction = Direction.BACKWARDS;
+            prefix = "lh";
+        } else {
+            throw new IllegalArgumentException("Unsupported prop for mock link source: " + prop);
+        }
+        String titles = url.queryParameter("titles");
+        String continueParam = url.queryParameter(prefix + "continue");
+
+        JsonObject query = new JsonObject();
+        JsonArray normalized = new JsonArray();
+        // links are handed out in page id order, the way the real API pages through them
+        ArrayList<Integer> pageIds = new ArrayList<Integer>();
+        LinkedHashMap<String, JsonObject> pages = new LinkedHashMap<String, JsonObject>();
+        int missingId = -1;
+        for (String requested : titles.split("\\|")) {
+            String title = normalizeTitle(requested);
+            if (!title.equals(requested)) {
+                JsonObject fromTo = new JsonObject();
+                fromTo.addProperty("from", requested);
+                fromTo.addProperty("to", title);
+                normalized.add(fromTo);
+            }
+            int id = graph.getId(title);
+            JsonObject page = new JsonObject();
+            page.addProperty("ns", 0);
+            page.addProperty("title", title);
+            if (id < 0) {
+                page.addProperty("missing", "");
+                pages.put(String.valueOf(missingId--), page);
+            } else {
+                page.addProperty("pageid", id + 1);
+                pages.put(String.valueOf(id + 1), page);
+                pageIds.add(id);
+            }
+        }
+        Collections.sort(pageIds);
+
+        // continue from "<page id>|<offset>" if given, and stop adding links once we hit the per-response limit
+        int startPageId = -1, startOffset = 0;
+        if (continueParam != null) {
+            String[] parts = continueParam.split("\\|");
+            startPageId = Integer.parseInt(parts[0]);
+            startOffset = Integer.parseInt(parts[1]);
+        }
+        String nextContinue = null;
+        int budget = maxLinksPerResponse;
+        for (int id : pageIds) {
+            int pageId = id + 1;
+            if (pageId < startPageId) {
+                continue;
+            }
+            int offset = pageId == startPageId ? startOffset : 0;
+            int numLinks = graph.getNumLinks(id, direction);
+            if (offset >= numLinks) {
+                continue;
+            }
+            if (budget == 0) {
+                nextContinue = pageId + "|" + offset;
+                break;
+            }
+            JsonArray links = new JsonArray();
+            int end = Math.min(numLinks, offset + budget);
+            for (int i = offset; i < end; i++) {
+                JsonObject link = new JsonObject();
+                link.addProperty("ns", 0);
+                link.addProperty("title", graph.getTitle(graph.getLink(id, direction, i)));
+                links.add(link);
+            }
+            budget -= end - offset;
+            pages.get(String.valueOf(pageId)).add(prop, links);
+            if (end < numLinks) {
+                nextContinue = pageId + "|" + end;
+                break;
+            }
+        }
+
+        if (normalized.size() > 0) {
+            query.add("normalized", normalized);
+        }
+        JsonObject pagesJson = new JsonObject();
+        for (Map.Entry<String, JsonObject> page : pages.entrySet()) {
+            pagesJson.add(page.getKey(), page.getValue());
+        }
+        query.add("pages", pagesJson);
+
+        JsonObject response = new JsonObject();
+        if (nextContinue != null) {
+            JsonObject continueJson = new JsonObject();
+            continueJson.addProperty(prefix + "continue", nextContinue);
+            continueJson.addProperty("continue", "||");
+            response.add("continue", continueJson);
+        }
+        response.add("query", query);
+        return new Gson().toJson(response);
+    }
+
+    // the same normalization the real API applies to input titles
+    private static String normalizeTitle(String title) {
+        return Util.normalizeTitle(title.replace('_', ' ').trim());
+    }
+
+    public LinkGraph getGraph() {
+        return graph;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+}
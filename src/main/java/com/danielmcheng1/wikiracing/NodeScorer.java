@@ -0,0 +1,24 @@
+package com.danielmcheng1.wikiracing;
+
+/**
+ * Scoring function for a best-first crawl: how promising a page looks for reaching the other end of the crawl (the
+ * destination when crawling forwards, the source when crawling backwards). Pages with higher scores are expanded first.
+ * Scorers are shared by every crawl and called from every crawler thread, so they must be thread-safe, and they are
+ * called once for every page a crawl discovers, so they must be cheap.
+ */
+public interface NodeScorer {
+    double score(WebNode wN, String targetTitle);
+
+    // short name reported in the crawl's algorithm
+    String getName();
+
+    // the scorer for a name given on the command line or to the REST service
+    static NodeScorer forName(String name) {
+        if (TitleOverlapScorer.name.equals(name)) {
+            return new TitleOverlapScorer();
+        } else if (LinkDegreeScorer.name.equals(name)) {
+            return new LinkDegreeScorer();
+        }
+        throw new IllegalArgumentException("Unknown scorer " + name + ", expected " + TitleOverlapScorer.name + " or " + LinkDegreeScorer.name);
+    }
+}
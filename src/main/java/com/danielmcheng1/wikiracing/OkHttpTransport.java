@@ -0,0 +1,129 @@
+package com.danielmcheng1.wikiracing;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends requests to the live MediaWiki API using OkHttp
+ * <p>
+ * Calls go through the client's Dispatcher rather than straight out on the calling thread, so that its per-host limit
+ * caps how many requests all the crawls in this JVM have open against the API at once; past it, crawler threads wait
+ * their turn. OkHttp asks for gzip and gunzips responses itself, as long as we set no Accept-Encoding of our own.
+ * <p>
+ * A hedged request that loses (see HedgingTransport) is cancelled only if the client speaks HTTP/1.1 alone: OkHttp 3
+ * takes an HTTP/2 connection out of use when any call on it is cancelled, even one whose stream is open, and that is
+ * the connection every crawler thread shares. Over HTTP/2 the loser runs to the end instead, holding its place under
+ * the per-host limit until it does; hedge with a client from newClientBuilder(maxFetchesPerHost, false) to free it.
+ */
+public class OkHttpTransport implements WikiTransport {
+    // the default CrawlerConfig's threads for each of the default batchParallelism races
+    public static final int defaultMaxFetchesPerHost = 64;
+    private static final long keepAliveMinutes = 5;
+    private static final AtomicInteger numFetchThreads = new AtomicInteger();
+
+    private final OkHttpClient client;
+
+    public OkHttpTransport(OkHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * A client for the Wiki API that lets maxFetchesPerHost requests run at once, and keeps as many connections idle
+     * between them so that every crawler thread finds one ready rather than handshaking anew (OkHttp's defaults are 5
+     * of each). Over HTTP/2 the requests share one connection instead. Host lookups are cached (see CachingDns) and
+     * connection reuse and bytes on the wire are counted (see ConnectionMetricsListener).
+     */
+    public static OkHttpClient.Builder newClientBuilder(int maxFetchesPerHost) {
+        return newClientBuilder(maxFetchesPerHost, true);
+    }
+
+    // http2 false for HTTP/1.1 alone, e.g. so that hedged requests that lose can be cancelled
+    public static OkHttpClient.Builder newClientBuilder(int maxFetchesPerHost, boolean http2) {
+        if (maxFetchesPerHost < 1) {
+            throw new IllegalArgumentException("maxFetchesPerHost must be at least 1, got " + maxFetchesPerHost);
+        }
+        // daemon threads, unlike OkHttp's own, so that a finished race does not keep the JVM up while they idle out
+        Dispatcher dispatcher = new Dispatcher(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "wiki-api-fetch-" + numFetchThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }));
+        dispatcher.setMaxRequests(maxFetchesPerHost);
+        dispatcher.setMaxRequestsPerHost(maxFetchesPerHost);
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxFetchesPerHost, keepAliveMinutes, TimeUnit.MINUTES))
+                .protocols(http2 ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1) : Collections.singletonList(Protocol.HTTP_1_1))
+                .dns(new CachingDns())
+                .eventListenerFactory(ConnectionMetricsListener.factory);
+    }
+
+    public byte[] fetch(HttpUrl url, String userAgent) throws IOException {
+        Request request = new Request.Builder()
+                .header("User-Agent", userAgent)
+                .url(url)
+                .build();
+        Call call = client.newCall(request);
+        // OkHttp ignores interrupts while it waits on the socket, so a hedged request that lost cancels its call, which
+        // also gives its place under the per-host limit to the next one; not over HTTP/2, where that would cost the
+        // connection the other calls share
+        if (!client.protocols().contains(Protocol.HTTP_2)) {
+            HedgingTransport.onCancel(call::cancel);
+        }
+        CompletableFuture<byte[]> body = new CompletableFuture<byte[]>();
+        call.enqueue(new Callback() {
+            public void onFailure(Call call, IOException e) {
+                body.completeExceptionally(e);
+            }
+
+            public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    if (!r.isSuccessful()) {
+                        throw new IOException("Wiki API returned HTTP " + r.code());
+                    }
+                    body.complete(r.body().bytes());
+                } catch (IOException e) {
+                    body.completeExceptionally(e);
+                }
+            }
+        });
+        // wait out interrupts, as OkHttp does on the calling thread, so a crawler thread stopped mid-fetch sees its
+        // interrupt once the call is done. The call is not cancelled, since over HTTP/2 that closes the connection every
+        // crawler thread is sharing
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return body.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
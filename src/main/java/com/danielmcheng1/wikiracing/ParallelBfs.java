@@ -0,0 +1,394 @@
+package com.danielmcheng1.wikiracing;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Races entirely in memory over a LinkGraph, for when the links are stored locally rather than fetched from the Wiki
+ * API. The Crawler's per-page WebNodes, queues and maps exist to overlap API round trips; with the links in CSR arrays
+ * they are nearly all of the cost, so this engine keeps nothing per page but a bit in a visited bitmap and an int parent.
+ * <p>
+ * Like the Crawler it searches from both ends, a whole level at a time, always extending the end whose frontier has
+ * fewer links. Each level is split across a fork-join pool by ranges of 64-page words. A level is expanded either top
+ * down (every frontier page claims its unvisited neighbours) or bottom up (every unvisited page looks for a neighbour in
+ * the frontier, stopping at the first), switching between the two as in Beamer et al.'s direction-optimizing BFS: bottom
+ * up once the frontier's links outnumber 1/alpha of the links still unexplored, and back to top down once the frontier
+ * has shrunk below 1/beta of the pages. The middle levels of a race on Wikipedia's graph hold most of the pages, and
+ * there bottom up skips most of the links top down would check.
+ * <p>
+ * Levels are expanded whole, so the first level that reaches a page the other end has visited gives a shortest path.
+ * The bitmaps and parent arrays are reused between races, so racing only allocates the path.
+ */
+public class ParallelBfs {
+    public static final String algorithm = "Direction-Optimizing Parallel BFS";
+    private static final int alpha = 14;
+    private static final int beta = 24;
+    // 16384 pages per fork-join task
+    private static final int wordsPerTask = 256;
+    // levels with fewer frontier links than this run on the calling thread, as forking costs more than it saves
+    private static final long sequentialLinks = 4096;
+
+    private static ParallelBfs shared;
+
+    private final LinkGraph graph;
+    private final ForkJoinPool pool;
+    private final int numPages;
+    private final int numWords;
+    private final ConcurrentLinkedQueue<Search> idleSearches = new ConcurrentLinkedQueue<Search>();
+
+    public ParallelBfs(LinkGraph graph) {
+        this(graph, ForkJoinPool.commonPool());
+    }
+
+    public ParallelBfs(LinkGraph graph, ForkJoinPool pool) {
+        this.graph = graph;
+        this.pool = pool;
+        this.numPages = graph.getNumPages();
+        this.numWords = (numPages + 63) >>> 6;
+    }
+
+    // null unless crawls should run offline, e.g. with -offlineGraph
+    public static ParallelBfs getShared() {
+        return shared;
+    }
+
+    public static void setShared(ParallelBfs parallelBfs) {
+        shared = parallelBfs;
+    }
+
+    public LinkGraph getGraph() {
+        return graph;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /******************************************/
+    // METHODS FOR RACING
+    /******************************************/
+    // the race's path, or no path if there is none or the deadline (from System.nanoTime) passes first
+    public Result race(int source, int dest, long deadlineNanos) {
+        Search search = idleSearches.poll();
+        if (search == null) {
+            search = new Search();
+        }
+        try {
+            return search.run(source, dest, deadlineNanos);
+        } finally {
+            idleSearches.offer(search);
+        }
+    }
+
+    /**
+     * One end of a race. Forwards expands along links and backwards along linkshere; bottom up scans the opposite
+     * direction, looking from each unvisited page back at the frontier.
+     */
+    private class Side {
+        private final AtomicLongArray visited = new AtomicLongArray(numWords);
+        private AtomicLongArray frontier = new AtomicLongArray(numWords);
+        private AtomicLongArray next = new AtomicLongArray(numWords);
+        private final int[] parents = new int[numPages];
+        private final int[] expandOffsets;
+        private final int[] expandTargets;
+        private final int[] scanOffsets;
+        private final int[] scanTargets;
+        private long frontierPages;
+        private long frontierLinks;
+        // links bottom up would scan, i.e. those of the pages not yet visited
+        private long unexploredLinks;
+        private boolean bottomUp;
+
+        Side(Direction direction) {
+            Direction opposite = Direction.FORWARDS.equals(direction) ? Direction.BACKWARDS : Direction.FORWARDS;
+            this.expandOffsets = graph.getOffsets(direction);
+            this.expandTargets = graph.getTargets(direction);
+            this.scanOffsets = graph.getOffsets(opposite);
+            this.scanTargets = graph.getTargets(opposite);
+        }
+
+        void reset(int root) {
+            for (int i = 0; i < numWords; i++) {
+                visited.lazySet(i, 0);
+                frontier.lazySet(i, 0);
+                next.lazySet(i, 0);
+            }
+            setBit(visited, root);
+            setBit(frontier, root);
+            parents[root] = -1;
+            frontierPages = 1;
+            frontierLinks = expandOffsets[root + 1] - expandOffsets[root];
+            unexploredLinks = scanTargets.length - (scanOffsets[root + 1] - scanOffsets[root]);
+            bottomUp = false;
+        }
+
+        boolean isVisited(int page) {
+            return (visited.get(page >>> 6) & (1L << page)) != 0;
+        }
+    }
+
+    /**
+     * Everything one race needs, kept for the next race once it is over.
+     */
+    private class Search {
+        private final Side forwards = new Side(Direction.FORWARDS);
+        private final Side backwards = new Side(Direction.BACKWARDS);
+        private final AtomicInteger meetingPage = new AtomicInteger();
+        private final LongAdder levelPages = new LongAdder();
+        private final LongAdder levelLinks = new LongAdder();
+        private final LongAdder levelExploredLinks = new LongAdder();
+
+        Result run(int source, int dest, long deadlineNanos) {
+            Result result = new Result();
+            if (source == dest) {
+                result.path = new int[]{source};
+                result.numVisited = 1;
+                return result;
+            }
+            forwards.reset(source);
+            backwards.reset(dest);
+            meetingPage.set(-1);
+            result.numVisited = 2;
+            while (forwards.frontierPages > 0 && backwards.frontierPages > 0) {
+                if (System.nanoTime() - deadlineNanos > 0) {
+                    result.timedOut = true;
+                    return result;
+                }
+                Side side = forwards.frontierLinks <= backwards.frontierLinks ? forwards : backwards;
+                expandLevel(side, side == forwards ? backwards : forwards, result);
+                result.numVisited += side.frontierPages;
+                if (meetingPage.get() >= 0) {
+                    tracePath(meetingPage.get(), result);
+                    return result;
+                }
+            }
+            return result;
+        }
+
+        private void expandLevel(Side side, Side other, Result result) {
+            if (!side.bottomUp && side.frontierLinks > side.unexploredLinks / alpha) {
+                side.bottomUp = true;
+            } else if (side.bottomUp && side.frontierPages < numPages / beta) {
+                side.bottomUp = false;
+            }
+            levelPages.reset();
+            levelLinks.reset();
+            levelExploredLinks.reset();
+            LevelTask task = new LevelTask(side, other, 0, numWords);
+            if (side.frontierLinks < sequentialLinks && !side.bottomUp) {
+                task.compute();
+            } else {
+                pool.invoke(task);
+            }
+            if (side.bottomUp) {
+                result.numBottomUpLevels++;
+            } else {
+                result.numTopDownLevels++;
+            }
+
+            // the next frontier becomes the current one, and the old one is cleared to collect the level after
+            AtomicLongArray old = side.frontier;
+            side.frontier = side.next;
+            side.next = old;
+            for (int i = 0; i < numWords; i++) {
+                old.lazySet(i, 0);
+            }
+            side.frontierPages = levelPages.sum();
+            side.frontierLinks = levelLinks.sum();
+            side.unexploredLinks -= levelExploredLinks.sum();
+        }
+
+        private void tracePath(int meeting, Result result) {
+            int length = 1;
+            for (int page = meeting; forwards.parents[page] >= 0; page = forwards.parents[page]) {
+                length++;
+            }
+            int forwardsLength = length;
+            for (int page = meeting; backwards.parents[page] >= 0; page = backwards.parents[page]) {
+                length++;
+            }
+            int[] path = new int[length];
+            int i = forwardsLength - 1;
+            for (int page = meeting; page >= 0; page = forwards.parents[page]) {
+                path[i--] = page;
+            }
+            i = forwardsLength;
+            for (int page = backwards.parents[meeting]; page >= 0; page = backwards.parents[page]) {
+                path[i++] = page;
+            }
+            result.path = path;
+            result.meetingIndex = forwardsLength - 1;
+        }
+
+        /**
+         * Expands one range of words of a level, splitting itself in half until the range is small enough.
+         */
+        private class LevelTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final Side side;
+            private final Side other;
+            private final int fromWord;
+            private final int toWord;
+
+            LevelTask(Side side, Side other, int fromWord, int toWord) {
+                this.side = side;
+                this.other = other;
+                this.fromWord = fromWord;
+                this.toWord = toWord;
+            }
+
+            protected void compute() {
+                if (toWord - fromWord > wordsPerTask) {
+                    int middle = (fromWord + toWord) >>> 1;
+                    invokeAll(new LevelTask(side, other, fromWord, middle), new LevelTask(side, other, middle, toWord));
+                } else if (side.bottomUp) {
+                    expandBottomUp();
+                } else {
+                    expandTopDown();
+                }
+            }
+
+            // frontier pages in this range claim their unvisited neighbours, which may lie in any range
+            private void expandTopDown() {
+                long pages = 0, links = 0, exploredLinks = 0;
+                for (int word = fromWord; word < toWord; word++) {
+                    long bits = side.frontier.get(word);
+                    while (bits != 0) {
+                        int page = (word << 6) + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        for (int i = side.expandOffsets[page]; i < side.expandOffsets[page + 1]; i++) {
+                            int neighbour = side.expandTargets[i];
+                            if (!claim(side.visited, neighbour)) {
+                                continue;
+                            }
+                            side.parents[neighbour] = page;
+                            setBit(side.next, neighbour);
+                            pages++;
+                            links += side.expandOffsets[neighbour + 1] - side.expandOffsets[neighbour];
+                            exploredLinks += side.scanOffsets[neighbour + 1] - side.scanOffsets[neighbour];
+                            if (other.isVisited(neighbour)) {
+                                meetingPage.compareAndSet(-1, neighbour);
+                            }
+                        }
+                    }
+                }
+                addLevelCounts(pages, links, exploredLinks);
+            }
+
+            // unvisited pages in this range look for a neighbour in the frontier; only this task writes their words
+            private void expandBottomUp() {
+                long pages = 0, links = 0, exploredLinks = 0;
+                for (int word = fromWord; word < toWord; word++) {
+                    long visitedBits = side.visited.get(word);
+                    long unvisited = ~visitedBits;
+                    if (word == numWords - 1 && (numPages & 63) != 0) {
+                        unvisited &= (1L << numPages) - 1;
+                    }
+                    long found = 0;
+                    while (unvisited != 0) {
+                        int page = (word << 6) + Long.numberOfTrailingZeros(unvisited);
+                        unvisited &= unvisited - 1;
+                        for (int i = side.scanOffsets[page]; i < side.scanOffsets[page + 1]; i++) {
+                            int neighbour = side.scanTargets[i];
+                            if ((side.frontier.get(neighbour >>> 6) & (1L << neighbour)) == 0) {
+                                continue;
+                            }
+                            side.parents[page] = neighbour;
+                            found |= 1L << page;
+                            pages++;
+                            links += side.expandOffsets[page + 1] - side.expandOffsets[page];
+                            exploredLinks += side.scanOffsets[page + 1] - side.scanOffsets[page];
+                            if (other.isVisited(page)) {
+                                meetingPage.compareAndSet(-1, page);
+                            }
+                            break;
+                        }
+                    }
+                    if (found != 0) {
+                        side.visited.set(word, visitedBits | found);
+                        side.next.set(word, found);
+                    }
+                }
+                addLevelCounts(pages, links, exploredLinks);
+            }
+
+            private void addLevelCounts(long pages, long links, long exploredLinks) {
+                if (pages > 0) {
+                    levelPages.add(pages);
+                    levelLinks.add(links);
+                    levelExploredLinks.add(exploredLinks);
+                }
+            }
+        }
+    }
+
+    // true if this call set the bit, false if it was already set
+    private static boolean claim(AtomicLongArray bitmap, int page) {
+        int word = page >>> 6;
+        long bit = 1L << page;
+        long old;
+        do {
+            old = bitmap.get(word);
+            if ((old & bit) != 0) {
+                return false;
+            }
+        } while (!bitmap.compareAndSet(word, old, old | bit));
+        return true;
+    }
+
+    private static void setBit(AtomicLongArray bitmap, int page) {
+        claim(bitmap, page);
+    }
+
+    /**
+     * The pages of a race's path from source to destination, if it found one, and how the race went.
+     */
+    public static class Result {
+        private int[] path;
+        // where in the path the two ends met
+        private int meetingIndex;
+        private long numVisited;
+        private int numTopDownLevels;
+        private int numBottomUpLevels;
+        private boolean timedOut;
+
+        public int[] getPath() {
+            return path;
+        }
+
+        public long getNumVisited() {
+            return numVisited;
+        }
+
+        public int getNumTopDownLevels() {
+            return numTopDownLevels;
+        }
+
+        public int getNumBottomUpLevels() {
+            return numBottomUpLevels;
+        }
+
+        public boolean timedOut() {
+            return timedOut;
+        }
+    }
+
+    // the path as WebNodes, laid out as Path lays out a crawled one (see Path.toWebNodePath)
+    public Deque<WebNode> toWebNodePath(Result result) {
+        int[] path = result.path;
+        if (path == null) {
+            return null;
+        }
+        String[] titles = new String[path.length];
+        for (int i = 0; i < path.length; i++) {
+            titles[i] = graph.getTitle(path[i]);
+        }
+        return Path.toWebNodePath(titles, result.meetingIndex);
+    }
+}
@@ -0,0 +1,372 @@
+package com.danielmcheng1.wikiracing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs one race at a time across several PartitionWorker JVMs, each of which owns the pages whose titles hash to it.
+ * One hard race can then use the memory and the API budget of every worker, where a Crawler has one JVM's.
+ * <p>
+ * The coordinator only starts and stops races: the workers crawl, and send each other the links they find. Once the
+ * owner of a page sees both ends of the race meet there, the coordinator stops the race and asks the owners of the
+ * pages on the path, one hop at a time, which page each was reached from. See PartitionProtocol for the messages.
+ * <p>
+ * Races are serialized, since each uses every worker. Like a Crawler, a race with no path runs until its timeout. A
+ * race fails at once, with an IOException, if the coordinator loses its connection to a worker or a worker reports that
+ * it cannot reach another.
+ */
+public class PartitionCoordinator implements Closeable {
+    public static final String algorithm = "Partitioned Bidirectional BFS";
+    public static final long replyTimeoutMillis = 10000;
+    // longer than any path between two Wikipedia pages, in case a worker's state is corrupt
+    private static final int maxHops = 100;
+
+    private static final Logger LOGGER = Logger.getLogger(PartitionCoordinator.class.getName());
+
+    private static PartitionCoordinator shared;
+
+    private final String[] workerAddresses;
+    private final WorkerConnection[] workers;
+    private final BlockingQueue<Meeting> meetings = new LinkedBlockingQueue<Meeting>();
+    private final AtomicLong lastRaceId = new AtomicLong(System.currentTimeMillis());
+
+    // addresses as host:port, in partition order, which every race sends to every worker
+    public PartitionCoordinator(List<String> workerAddresses) throws IOException {
+        this.workerAddresses = workerAddresses.toArray(new String[workerAddresses.size()]);
+        this.workers = new WorkerConnection[workerAddresses.size()];
+        try {
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new WorkerConnection(this.workerAddresses[i]);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // null unless races should be partitioned across workers, e.g. with -workers
+    public static PartitionCoordinator getShared() {
+        return shared;
+    }
+
+    public static void setShared(PartitionCoordinator partitionCoordinator) {
+        shared = partitionCoordinator;
+    }
+
+    public int getNumWorkers() {
+        return workers.length;
+    }
+
+    public void close() {
+        for (WorkerConnection worker : workers) {
+            if (worker != null) {
+                worker.close();
+            }
+        }
+    }
+
+    /******************************************/
+    // METHODS FOR RACING
+    /******************************************/
+    public synchronized Result race(String sourceTitle, String destTitle, long timeoutMillis) throws IOException {
+        long raceId = lastRaceId.incrementAndGet();
+        long deadlineMillis = System.currentTimeMillis() + timeoutMillis;
+        meetings.clear();
+        Result result = new Result();
+        try {
+            // every worker must be ready for links before any worker starts sending them
+            for (int i = 0; i < workers.length; i++) {
+                DataOutputStream out = workers[i].begin(PartitionProtocol.start, raceId);
+                out.writeInt(i);
+                out.writeInt(workerAddresses.length);
+                for (String address : workerAddresses) {
+                    out.writeUTF(address);
+                }
+                PartitionProtocol.writeTitle(out, sourceTitle);
+                PartitionProtocol.writeTitle(out, destTitle);
+                workers[i].send();
+            }
+            for (WorkerConnection worker : workers) {
+                worker.awaitReply(raceId);
+            }
+            for (WorkerConnection worker : workers) {
+                worker.begin(PartitionProtocol.go, raceId);
+                worker.send();
+            }
+
+            String meetingTitle = awaitMeeting(raceId, deadlineMillis);
+            for (WorkerConnection worker : workers) {
+                worker.begin(PartitionProtocol.stop, raceId);
+                worker.send();
+            }
+            for (WorkerConnection worker : workers) {
+                long[] stats = (long[]) worker.awaitReply(raceId);
+                result.numThreads += stats[0];
+                result.numApiCalls += stats[1];
+                result.numPagesExpanded += stats[2];
+                result.numVisited += stats[3];
+                result.numLinksSent += stats[4];
+                result.numMessagesSent += stats[5];
+            }
+            if (meetingTitle != null) {
+                List<String> forwards = tracePath(raceId, meetingTitle, Direction.FORWARDS);
+                List<String> backwards = tracePath(raceId, meetingTitle, Direction.BACKWARDS);
+                Collections.reverse(forwards);
+                result.meetingIndex = forwards.size() - 1;
+                forwards.addAll(backwards.subList(1, backwards.size()));
+                result.path = forwards.toArray(new String[forwards.size()]);
+            } else {
+                result.timedOut = true;
+            }
+        } finally {
+            // drop the race's state on every worker we can still reach
+            for (WorkerConnection worker : workers) {
+                try {
+                    worker.begin(PartitionProtocol.end, raceId);
+                    worker.send();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to end race on partition worker " + worker.address + ": " + e.getMessage());
+                }
+            }
+        }
+        return result;
+    }
+
+    // the page where the race's two ends met, or null if the deadline passed first; throws if a worker failed
+    private String awaitMeeting(long raceId, long deadlineMillis) throws IOException {
+        while (true) {
+            long remainingMillis = deadlineMillis - System.currentTimeMillis();
+            Meeting meeting;
+            try {
+                meeting = remainingMillis <= 0 ? null : meetings.poll(remainingMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the partition workers");
+            }
+            if (meeting == null) {
+                return null;
+            }
+            // a meeting from an earlier race that was reported after it timed out
+            if (meeting.raceId == raceId) {
+                if (meeting.failure != null) {
+                    throw new IOException(meeting.failure);
+                }
+                return meeting.title;
+            }
+        }
+    }
+
+    // from the meeting page back to the source (forwards) or destination (backwards), asking each page's owner
+    private List<String> tracePath(long raceId, String meetingTitle, Direction direction) throws IOException {
+        List<String> titles = new ArrayList<String>();
+        String title = meetingTitle;
+        while (title != null) {
+            titles.add(title);
+            if (titles.size() > maxHops) {
+                throw new IOException("Partition workers returned a path of more than " + maxHops + " pages");
+            }
+            WorkerConnection owner = workers[PartitionProtocol.getPartition(title, workers.length)];
+            DataOutputStream out = owner.begin(PartitionProtocol.parent, raceId);
+            PartitionProtocol.writeDirection(out, direction);
+            PartitionProtocol.writeTitle(out, title);
+            owner.send();
+            String parent = (String) owner.awaitReply(raceId);
+            title = parent.isEmpty() ? null : parent;
+        }
+        return titles;
+    }
+
+    /**
+     * Outcome of one race: the path, if any, and the work the workers put into it between them
+     */
+    public static class Result {
+        private String[] path;
+        // where in the path the two ends met
+        private int meetingIndex;
+        private boolean timedOut;
+        private long numThreads;
+        private long numApiCalls;
+        private long numPagesExpanded;
+        private long numVisited;
+        private long numLinksSent;
+        private long numMessagesSent;
+
+        public String[] getPath() {
+            return path;
+        }
+
+        // laid out as Path lays out a crawled path
+        public Deque<WebNode> toWebNodePath() {
+            return path == null ? null : Path.toWebNodePath(path, meetingIndex);
+        }
+
+        public boolean timedOut() {
+            return timedOut;
+        }
+
+        // crawler threads across all workers
+        public long getNumThreads() {
+            return numThreads;
+        }
+
+        // batches fetched from the Wiki API across all workers, not counting continues
+        public long getNumApiCalls() {
+            return numApiCalls;
+        }
+
+        public long getNumPagesExpanded() {
+            return numPagesExpanded;
+        }
+
+        public long getNumVisited() {
+            return numVisited;
+        }
+
+        // links sent from the worker that found them to the worker that owns them
+        public long getNumLinksSent() {
+            return numLinksSent;
+        }
+
+        public long getNumMessagesSent() {
+            return numMessagesSent;
+        }
+    }
+
+    // where a race's two ends met, or why it cannot go on
+    private static class Meeting {
+        private final long raceId;
+        private final String title;
+        private final String failure;
+
+        Meeting(long raceId, String title, String failure) {
+            this.raceId = raceId;
+            this.title = title;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * The coordinator's connection to one worker. Requests are written by the racing thread; a reader thread hands
+     * replies back to it, and meetings, which a worker may report at any time, to the meetings queue.
+     */
+    private class WorkerConnection {
+        private final String address;
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final BlockingQueue<Reply> replies = new LinkedBlockingQueue<Reply>();
+        private volatile IOException failure;
+
+        WorkerConnection(String address) throws IOException {
+            this.address = address;
+            String[] hostAndPort = address.split(":");
+            if (hostAndPort.length != 2) {
+                throw new IOException("Partition worker address must be host:port: " + address);
+            }
+            this.socket = new Socket(hostAndPort[0], Integer.parseInt(hostAndPort[1]));
+            socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            Thread reader = new Thread(this::readMessages, "partition-coordinator-" + address);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        DataOutputStream begin(byte type, long raceId) throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            out.writeByte(type);
+            out.writeLong(raceId);
+            return out;
+        }
+
+        void send() throws IOException {
+            out.flush();
+        }
+
+        // the reply to the last request of this race: true for ok, the stats as a long[], or a parent title
+        Object awaitReply(long raceId) throws IOException {
+            long deadlineMillis = System.currentTimeMillis() + replyTimeoutMillis;
+            while (true) {
+                Reply reply;
+                try {
+                    reply = replies.poll(Math.max(deadlineMillis - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for partition worker " + address);
+                }
+                if (reply == null) {
+                    throw failure != null ? failure : new IOException("Partition worker " + address + " did not reply");
+                }
+                if (reply.raceId == raceId) {
+                    return reply.value;
+                }
+            }
+        }
+
+        private void readMessages() {
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    long raceId = in.readLong();
+                    if (type == PartitionProtocol.meeting) {
+                        meetings.add(new Meeting(raceId, PartitionProtocol.readTitle(in), null));
+                    } else if (type == PartitionProtocol.failure) {
+                        meetings.add(new Meeting(raceId, null, "Partition worker " + address + " failed: " + in.readUTF()));
+                    } else if (type == PartitionProtocol.ok) {
+                        replies.add(new Reply(raceId, true));
+                    } else if (type == PartitionProtocol.stats) {
+                        long[] stats = new long[6];
+                        stats[0] = in.readInt();
+                        for (int i = 1; i < stats.length; i++) {
+                            stats[i] = in.readLong();
+                        }
+                        replies.add(new Reply(raceId, stats));
+                    } else if (type == PartitionProtocol.parentReply) {
+                        replies.add(new Reply(raceId, in.readUTF()));
+                    } else {
+                        throw new IOException("Unexpected message " + type + " from partition worker " + address);
+                    }
+                }
+            } catch (IOException e) {
+                failure = new IOException("Lost connection to partition worker " + address + ": " + e.getMessage());
+                // fail the race that is running, if any; the next one fails to start
+                meetings.add(new Meeting(lastRaceId.get(), null, failure.getMessage()));
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+    }
+
+    private static class Reply {
+        private final long raceId;
+        private final Object value;
+
+        Reply(long raceId, Object value) {
+            this.raceId = raceId;
+            this.value = value;
+        }
+    }
+}
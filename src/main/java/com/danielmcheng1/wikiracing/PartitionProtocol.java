@@ -0,0 +1,64 @@
+package com.danielmcheng1.wikiracing;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Messages between a PartitionCoordinator and its PartitionWorkers, and between the workers themselves, over plain TCP.
+ * Every message is a type byte followed by the race it belongs to and its fields, written with DataOutputStream.
+ * <p>
+ * A race goes:
+ * <ul>
+ * <li>start: coordinator to every worker, which sets up empty state for the race and replies ok. Once all have, </li>
+ * <li>go: coordinator to every worker, which start crawling. The owners of the source and destination seed them.</li>
+ * <li>links: worker to worker, a batch of pages a worker expanded and the links it found on them that the other
+ * worker owns. The owner visits each link it has not seen, and queues it to be expanded in turn.</li>
+ * <li>meeting: worker to coordinator, once a page the worker owns has been visited from both ends.</li>
+ * <li>stop: coordinator to every worker, which stop crawling and reply with their stats.</li>
+ * <li>parent: coordinator to the owner of a page on the path, which replies with the page it was visited from.</li>
+ * <li>end: coordinator to every worker, which stop crawling if they still are and drop the race's state.</li>
+ * <li>failure: worker to coordinator, when the worker cannot go on with the race, e.g. it cannot reach the worker that
+ * owns some of the links it found. The coordinator fails the race rather than let it run to its timeout.</li>
+ * </ul>
+ * Titles are assigned to workers by the hash of the title, so every worker agrees on the owner of a page without asking.
+ */
+public class PartitionProtocol {
+    public static final byte start = 1;
+    public static final byte go = 2;
+    public static final byte links = 3;
+    public static final byte meeting = 4;
+    public static final byte stop = 5;
+    public static final byte parent = 6;
+    public static final byte end = 7;
+    public static final byte ok = 8;
+    public static final byte stats = 9;
+    public static final byte parentReply = 10;
+    public static final byte failure = 11;
+
+    // the worker that owns the title, the same in every JVM since String.hashCode is part of the Java spec
+    public static int getPartition(String title, int numPartitions) {
+        int hash = title.hashCode();
+        // spread the bits, as HashMap does, since titles often differ only in their last characters
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, numPartitions);
+    }
+
+    protected static void writeDirection(DataOutputStream out, Direction direction) throws IOException {
+        out.writeBoolean(Direction.FORWARDS.equals(direction));
+    }
+
+    protected static Direction readDirection(DataInputStream in) throws IOException {
+        return in.readBoolean() ? Direction.FORWARDS : Direction.BACKWARDS;
+    }
+
+    // null is written as the empty string, which is never a Wikipedia title
+    protected static void writeTitle(DataOutputStream out, String title) throws IOException {
+        out.writeUTF(title == null ? "" : title);
+    }
+
+    protected static String readTitle(DataInputStream in) throws IOException {
+        String title = in.readUTF();
+        return title.isEmpty() ? null : title;
+    }
+}
@@ -0,0 +1,589 @@
+package com.danielmcheng1.wikiracing;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One partition of a race split across several JVMs by a PartitionCoordinator. The worker owns the pages whose titles
+ * hash to its partition: it alone keeps their visited entries and queues them to be expanded, in both directions, so
+ * a race's memory and API calls are spread over every worker.
+ * <p>
+ * Expanding a page turns up links owned by every partition. The worker visits its own links itself, and batches the
+ * rest by owner into links messages, sent once maxLinksPerMessage links are waiting or every flushMillis. Since the
+ * owner of a page holds both of its visited entries, it is the one that sees the two ends of the race meet there, and
+ * tells the coordinator. See PartitionProtocol for the messages.
+ * <p>
+ * A worker runs one race at a time. Start one per process with e.g.
+ * java -cp wikiracing.jar com.danielmcheng1.wikiracing.PartitionWorker -port 5701
+ */
+public class PartitionWorker implements Closeable {
+    public static final int defaultPort = 5701;
+    public static final int defaultNumThreads = 8;
+    public static final int maxLinksPerMessage = 2000;
+    public static final long flushMillis = 10;
+
+    private static final Logger LOGGER = Logger.getLogger(PartitionWorker.class.getName());
+
+    private final ServerSocket serverSocket;
+    private final int numThreads;
+    private final LinkCache linkCache;
+    private final List<Socket> connections = new ArrayList<Socket>();
+    private volatile Race race;
+    private volatile boolean closed;
+
+    // port 0 picks any free port; linkCache may be null to fetch every page
+    public PartitionWorker(int port, int numThreads, LinkCache linkCache) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.numThreads = numThreads;
+        this.linkCache = linkCache;
+        Thread acceptor = new Thread(this::acceptConnections, "partition-worker-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void close() throws IOException {
+        closed = true;
+        Race currRace = race;
+        if (currRace != null) {
+            currRace.stop();
+            currRace.end();
+        }
+        serverSocket.close();
+        synchronized (connections) {
+            for (Socket socket : connections) {
+                socket.close();
+            }
+        }
+    }
+
+    /******************************************/
+    // METHODS FOR SERVING THE COORDINATOR AND OTHER WORKERS
+    /******************************************/
+    private void acceptConnections() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                synchronized (connections) {
+                    connections.add(socket);
+                }
+                Thread reader = new Thread(() -> serve(socket), "partition-connection-" + socket.getPort());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.log(Level.WARNING, "Partition worker failed to accept a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // answer one connection's messages, from the coordinator or another worker, until it is closed
+    private void serve(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                byte type = in.readByte();
+                long raceId = in.readLong();
+                Race currRace = race;
+                boolean current = currRace != null && currRace.id == raceId;
+                if (type == PartitionProtocol.start) {
+                    startRace(raceId, in, out);
+                    reply(out, PartitionProtocol.ok, raceId);
+                } else if (type == PartitionProtocol.links) {
+                    // links sent before the race ended are read all the same, to keep the stream in step
+                    receiveLinks(in, current ? currRace : null);
+                } else if (type == PartitionProtocol.go && current) {
+                    currRace.go();
+                } else if (type == PartitionProtocol.stop) {
+                    if (current) {
+                        currRace.stop();
+                    }
+                    synchronized (out) {
+                        out.writeByte(PartitionProtocol.stats);
+                        out.writeLong(raceId);
+                        out.writeInt(numThreads);
+                        out.writeLong(current ? currRace.numApiCalls.get() : 0);
+                        out.writeLong(current ? currRace.numPagesExpanded.get() : 0);
+                        out.writeLong(current ? currRace.visitedForwards.size() + currRace.visitedBackwards.size() : 0);
+                        out.writeLong(current ? currRace.numLinksSent.get() : 0);
+                        out.writeLong(current ? currRace.numMessagesSent.get() : 0);
+                        out.flush();
+                    }
+                } else if (type == PartitionProtocol.parent) {
+                    Direction direction = PartitionProtocol.readDirection(in);
+                    String title = PartitionProtocol.readTitle(in);
+                    Visit visit = current ? currRace.getVisited(direction).get(title) : null;
+                    synchronized (out) {
+                        out.writeByte(PartitionProtocol.parentReply);
+                        out.writeLong(raceId);
+                        PartitionProtocol.writeTitle(out, visit == null ? null : visit.parent);
+                        out.flush();
+                    }
+                } else if (type == PartitionProtocol.end && current) {
+                    // a race the coordinator failed is ended without being stopped first
+                    currRace.stop();
+                    currRace.end();
+                    race = null;
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            // the other end hung up
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Partition worker connection failed: " + e.getMessage());
+        } finally {
+            synchronized (connections) {
+                connections.remove(socket);
+            }
+        }
+    }
+
+    private static void reply(DataOutputStream out, byte type, long raceId) throws IOException {
+        synchronized (out) {
+            out.writeByte(type);
+            out.writeLong(raceId);
+            out.flush();
+        }
+    }
+
+    // a new race replaces whatever race is left over, e.g. from a coordinator that went away mid-race
+    private synchronized void startRace(long raceId, DataInputStream in, DataOutputStream coordinatorOut) throws IOException {
+        int partition = in.readInt();
+        String[] workerAddresses = new String[in.readInt()];
+        for (int i = 0; i < workerAddresses.length; i++) {
+            workerAddresses[i] = in.readUTF();
+        }
+        String sourceTitle = PartitionProtocol.readTitle(in);
+        String destTitle = PartitionProtocol.readTitle(in);
+        Race oldRace = race;
+        if (oldRace != null) {
+            oldRace.stop();
+            oldRace.end();
+        }
+        race = new Race(raceId, partition, workerAddresses, sourceTitle, destTitle, coordinatorOut);
+    }
+
+    private void receiveLinks(DataInputStream in, Race currRace) throws IOException {
+        Direction direction = PartitionProtocol.readDirection(in);
+        int numPages = in.readInt();
+        for (int i = 0; i < numPages; i++) {
+            String parent = PartitionProtocol.readTitle(in);
+            int distance = in.readInt();
+            int numLinks = in.readInt();
+            for (int j = 0; j < numLinks; j++) {
+                String title = PartitionProtocol.readTitle(in);
+                if (currRace != null) {
+                    currRace.visit(direction, title, parent, distance);
+                }
+            }
+        }
+    }
+
+    /******************************************/
+    // METHODS FOR CRAWLING ONE PARTITION OF A RACE
+    /******************************************/
+    private class Race {
+        private final long id;
+        private final int partition;
+        private final int numPartitions;
+        private final String sourceTitle;
+        private final String destTitle;
+        private final DataOutputStream coordinatorOut;
+        private final ConcurrentHashMap<String, Visit> visitedForwards = new ConcurrentHashMap<String, Visit>();
+        private final ConcurrentHashMap<String, Visit> visitedBackwards = new ConcurrentHashMap<String, Visit>();
+        private final ConcurrentLinkedQueue<String> toVisitForwards = new ConcurrentLinkedQueue<String>();
+        private final ConcurrentLinkedQueue<String> toVisitBackwards = new ConcurrentLinkedQueue<String>();
+        // one per other worker, null for this one
+        private final Outbox[] outboxes;
+        private final AtomicBoolean meetingReported = new AtomicBoolean();
+        private final ExecutorService executor;
+        private volatile boolean running;
+
+        private final AtomicLong numApiCalls = new AtomicLong();
+        private final AtomicLong numPagesExpanded = new AtomicLong();
+        private final AtomicLong numLinksSent = new AtomicLong();
+        private final AtomicLong numMessagesSent = new AtomicLong();
+
+        Race(long id, int partition, String[] workerAddresses, String sourceTitle, String destTitle, DataOutputStream coordinatorOut) {
+            this.id = id;
+            this.partition = partition;
+            this.numPartitions = workerAddresses.length;
+            this.sourceTitle = sourceTitle;
+            this.destTitle = destTitle;
+            this.coordinatorOut = coordinatorOut;
+            this.outboxes = new Outbox[numPartitions];
+            for (int i = 0; i < numPartitions; i++) {
+                if (i != partition) {
+                    outboxes[i] = new Outbox(this, workerAddresses[i]);
+                }
+            }
+            AtomicInteger numRaceThreads = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(numThreads + 1, runnable -> {
+                Thread thread = new Thread(runnable, "partition-" + partition + "-race-" + numRaceThreads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        void go() {
+            running = true;
+            if (PartitionProtocol.getPartition(sourceTitle, numPartitions) == partition) {
+                visit(Direction.FORWARDS, sourceTitle, null, -1);
+            }
+            if (PartitionProtocol.getPartition(destTitle, numPartitions) == partition) {
+                visit(Direction.BACKWARDS, destTitle, null, -1);
+            }
+            // half the threads start on each end, and any thread helps out the other end when its own runs dry
+            for (int i = 0; i < numThreads; i++) {
+                Direction direction = i % 2 == 0 ? Direction.FORWARDS : Direction.BACKWARDS;
+                executor.execute(() -> crawl(direction));
+            }
+            executor.execute(this::flushPeriodically);
+        }
+
+        void stop() {
+            running = false;
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void end() {
+            for (Outbox outbox : outboxes) {
+                if (outbox != null) {
+                    outbox.close();
+                }
+            }
+        }
+
+        // parentDistance is that of the page the link was found on, -1 for the source and destination themselves
+        void visit(Direction direction, String title, String parent, int parentDistance) {
+            if (getVisited(direction).putIfAbsent(title, new Visit(parent, parentDistance + 1)) != null) {
+                return;
+            }
+            getQueue(direction).add(title);
+            // either end may visit the page first, and whichever visits it second sees the other's entry
+            Direction opposite = Direction.FORWARDS.equals(direction) ? Direction.BACKWARDS : Direction.FORWARDS;
+            if (getVisited(opposite).containsKey(title) && meetingReported.compareAndSet(false, true)) {
+                try {
+                    synchronized (coordinatorOut) {
+                        coordinatorOut.writeByte(PartitionProtocol.meeting);
+                        coordinatorOut.writeLong(id);
+                        PartitionProtocol.writeTitle(coordinatorOut, title);
+                        coordinatorOut.flush();
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to report meeting at " + title + ": " + e.getMessage());
+                }
+            }
+        }
+
+        // tell the coordinator we cannot go on, so that it fails the race rather than letting it run to its timeout
+        void reportFailure(String message) {
+            LOGGER.log(Level.WARNING, message);
+            if (!running) {
+                return;
+            }
+            try {
+                synchronized (coordinatorOut) {
+                    coordinatorOut.writeByte(PartitionProtocol.failure);
+                    coordinatorOut.writeLong(id);
+                    coordinatorOut.writeUTF(message);
+                    coordinatorOut.flush();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to report failure to the coordinator: " + e.getMessage());
+            }
+        }
+
+        private void crawl(Direction home) {
+            Direction opposite = Direction.FORWARDS.equals(home) ? Direction.BACKWARDS : Direction.FORWARDS;
+            CrawlerConfig config = CrawlerConfig.getShared();
+            while (running && !Thread.currentThread().isInterrupted()) {
+                Direction direction = getQueue(home).isEmpty() ? opposite : home;
+                List<String> batch = new ArrayList<String>();
+                String title;
+                while (batch.size() < config.getMaxBatchSize() && (title = getQueue(direction).poll()) != null) {
+                    batch.add(title);
+                }
+                if (batch.isEmpty()) {
+                    try {
+                        Thread.sleep(config.getPollMillis());
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    expand(batch, direction);
+                } catch (IOException e) {
+                    // try the batch again once the API has had a rest
+                    getQueue(direction).addAll(batch);
+                    Metrics.backoffs.increment();
+                    try {
+                        Thread.sleep(config.getBackoffMillis());
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        // look up the links of a batch of pages we own, from the link cache or the Wiki API, and route them to their owners
+        private void expand(List<String> batch, Direction direction) throws IOException {
+            Map<String, String[]> linksByTitle = new HashMap<String, String[]>();
+            List<String> titlesToFetch = new ArrayList<String>();
+            for (String title : batch) {
+                String[] cachedLinks = linkCache == null ? null : linkCache.getLinks(title, direction);
+                if (cachedLinks == null) {
+                    titlesToFetch.add(title);
+                } else {
+                    linksByTitle.put(title, cachedLinks);
+                }
+            }
+            if (!titlesToFetch.isEmpty()) {
+                numApiCalls.incrementAndGet();
+                for (Map.Entry<String, ArrayList<String>> entry : HubIndex.fetchAllLinks(titlesToFetch, direction).entrySet()) {
+                    String[] links = entry.getValue().toArray(new String[entry.getValue().size()]);
+                    if (linkCache != null) {
+                        linkCache.putLinks(entry.getKey(), direction, links);
+                    }
+                    linksByTitle.put(entry.getKey(), links);
+                }
+            }
+            numPagesExpanded.addAndGet(batch.size());
+
+            for (Map.Entry<String, String[]> entry : linksByTitle.entrySet()) {
+                if (!running) {
+                    return;
+                }
+                Visit parent = getVisited(direction).get(entry.getKey());
+                if (parent == null) {
+                    continue;
+                }
+                List<List<String>> linksByOwner = new ArrayList<List<String>>(numPartitions);
+                for (int i = 0; i < numPartitions; i++) {
+                    linksByOwner.add(new ArrayList<String>());
+                }
+                for (String link : entry.getValue()) {
+                    linksByOwner.get(PartitionProtocol.getPartition(link, numPartitions)).add(link);
+                }
+                for (String link : linksByOwner.get(partition)) {
+                    visit(direction, link, entry.getKey(), parent.distance);
+                }
+                for (int i = 0; i < numPartitions; i++) {
+                    if (outboxes[i] != null && !linksByOwner.get(i).isEmpty()) {
+                        outboxes[i].add(direction, entry.getKey(), parent.distance, linksByOwner.get(i));
+                    }
+                }
+            }
+        }
+
+        private void flushPeriodically() {
+            while (running) {
+                try {
+                    Thread.sleep(flushMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (Outbox outbox : outboxes) {
+                    if (outbox != null) {
+                        outbox.flush();
+                    }
+                }
+            }
+        }
+
+        ConcurrentHashMap<String, Visit> getVisited(Direction direction) {
+            return Direction.FORWARDS.equals(direction) ? visitedForwards : visitedBackwards;
+        }
+
+        private ConcurrentLinkedQueue<String> getQueue(Direction direction) {
+            return Direction.FORWARDS.equals(direction) ? toVisitForwards : toVisitBackwards;
+        }
+    }
+
+    /**
+     * Links waiting to be sent to one other worker, grouped by the page they were found on, which is sent once per
+     * group rather than with every link.
+     */
+    private static class Outbox {
+        private final Race race;
+        private final String address;
+        private final List<LinkGroup> forwards = new ArrayList<LinkGroup>();
+        private final List<LinkGroup> backwards = new ArrayList<LinkGroup>();
+        private int numLinks;
+        private Socket socket;
+        private DataOutputStream out;
+        private boolean failed;
+
+        Outbox(Race race, String address) {
+            this.race = race;
+            this.address = address;
+        }
+
+        synchronized void add(Direction direction, String parent, int parentDistance, List<String> links) {
+            (Direction.FORWARDS.equals(direction) ? forwards : backwards).add(new LinkGroup(parent, parentDistance, links));
+            numLinks += links.size();
+            if (numLinks >= maxLinksPerMessage) {
+                flush();
+            }
+        }
+
+        synchronized void flush() {
+            if (numLinks == 0 || failed) {
+                return;
+            }
+            try {
+                send();
+            } catch (IOException e) {
+                // e.g. the worker restarted, so try once more on a new connection; links it already got are ignored
+                disconnect();
+                try {
+                    send();
+                } catch (IOException retryFailure) {
+                    // the worker owns every page that hashes to it, so the race cannot go on without these links
+                    disconnect();
+                    failed = true;
+                    race.reportFailure("Failed to send links to partition worker " + address + ": " + retryFailure.getMessage());
+                }
+            }
+            forwards.clear();
+            backwards.clear();
+            numLinks = 0;
+        }
+
+        private void send() throws IOException {
+            if (out == null) {
+                String[] hostAndPort = address.split(":");
+                socket = new Socket(hostAndPort[0], Integer.parseInt(hostAndPort[1]));
+                socket.setTcpNoDelay(true);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            }
+            int numMessages = write(Direction.FORWARDS, forwards) + write(Direction.BACKWARDS, backwards);
+            out.flush();
+            race.numLinksSent.addAndGet(numLinks);
+            race.numMessagesSent.addAndGet(numMessages);
+            Metrics.partitionLinksSent.add(numLinks);
+            Metrics.partitionMessagesSent.add(numMessages);
+        }
+
+        // returns how many messages were written
+        private int write(Direction direction, List<LinkGroup> groups) throws IOException {
+            if (groups.isEmpty()) {
+                return 0;
+            }
+            out.writeByte(PartitionProtocol.links);
+            out.writeLong(race.id);
+            PartitionProtocol.writeDirection(out, direction);
+            out.writeInt(groups.size());
+            for (LinkGroup group : groups) {
+                PartitionProtocol.writeTitle(out, group.parent);
+                out.writeInt(group.parentDistance);
+                out.writeInt(group.links.size());
+                for (String link : group.links) {
+                    PartitionProtocol.writeTitle(out, link);
+                }
+            }
+            return 1;
+        }
+
+        private void disconnect() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // already gone
+                }
+            }
+            socket = null;
+            out = null;
+        }
+
+        synchronized void close() {
+            disconnect();
+            failed = true;
+        }
+    }
+
+    private static class LinkGroup {
+        private final String parent;
+        private final int parentDistance;
+        private final List<String> links;
+
+        LinkGroup(String parent, int parentDistance, List<String> links) {
+            this.parent = parent;
+            this.parentDistance = parentDistance;
+            this.links = links;
+        }
+    }
+
+    // how the race reached a page: the page it was linked from (null for the source and destination), and how far out
+    private static class Visit {
+        private final String parent;
+        private final int distance;
+
+        Visit(String parent, int distance) {
+            this.parent = parent;
+            this.distance = distance;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        PartitionWorkerValues values = new PartitionWorkerValues();
+        CmdLineParser parser = new CmdLineParser(values);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+        Util.setAllLogLevels(Level.WARNING);
+        if (values.getMockPages() > 0) {
+            // every worker generates the same graph from the same seed, so they agree on every page's links
+            LinkGraph graph = LinkGraph.generate(values.getMockPages(), values.getMockAvgLinks(), values.getSeed());
+            WikiRetriever.setTransport(new MockLinkSource(graph, values.getMockLatencyMillis()));
+        }
+        PartitionWorker worker = new PartitionWorker(values.getPort(), values.getNumThreads(), LinkCache.getShared());
+        System.out.println("Partition worker listening on port " + worker.getPort());
+        // serve races until the process is killed
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            worker.close();
+        }
+    }
+}
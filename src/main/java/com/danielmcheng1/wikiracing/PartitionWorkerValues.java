@@ -0,0 +1,48 @@
+package com.danielmcheng1.wikiracing;
+
+import org.kohsuke.args4j.Option;
+
+/**
+ * This class handles the partition worker's arguments.
+ */
+public class PartitionWorkerValues {
+    @Option(name = "-port", required = false, usage = "Specify optional port to listen for the coordinator and the other workers on (defaults to 5701)")
+    private int port = PartitionWorker.defaultPort;
+    @Option(name = "-numThreads", required = false, usage = "Specify optional # of threads expanding this worker's pages (defaults to 8)")
+    private int numThreads = PartitionWorker.defaultNumThreads;
+    @Option(name = "-mockPages", required = false, usage = "Specify optional # of pages in a mock link graph to crawl instead of the live Wiki API (defaults to 0, the live API)")
+    private int mockPages;
+    @Option(name = "-mockAvgLinks", required = false, usage = "Specify optional average # of links per page in the mock link graph (defaults to 40)")
+    private int mockAvgLinks = 40;
+    @Option(name = "-mockLatencyMillis", required = false, usage = "Specify optional latency of each mock Wiki API call (defaults to 0ms)")
+    private long mockLatencyMillis;
+    @Option(name = "-seed", required = false, usage = "Specify optional random seed for the mock link graph, the same on every worker (defaults to 42)")
+    private long seed = 42;
+
+    public PartitionWorkerValues() {
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public int getMockPages() {
+        return mockPages;
+    }
+
+    public int getMockAvgLinks() {
+        return mockAvgLinks;
+    }
+
+    public long getMockLatencyMillis() {
+        return mockLatencyMillis;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+}
@@ -1,8 +1,12 @@
 package com.danielmcheng1.wikiracing;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -11,38 +15,70 @@ import java.util.logging.Logger;
  */
 public class Path {
     private static final Logger LOGGER = Logger.getLogger(Path.class.getName());
-    private HashMap<String, WebNode> visitedForwards;
-    private HashMap<String, WebNode> visitedBackwards;
+    private Map<String, WebNode> visitedForwards;
+    private Map<String, WebNode> visitedBackwards;
+    private final PathStore pathStore;
     private WebNode finalConnectingNode;
     private Deque<WebNode> webNodePath;
-    private boolean foundPath;
+    // written after webNodePath, so a thread that sees it set also sees the path
+    private volatile boolean foundPath;
 
-    public Path(HashMap<String, WebNode> visitedForwards, HashMap<String, WebNode> visitedBackwards) {
+    public Path(Map<String, WebNode> visitedForwards, Map<String, WebNode> visitedBackwards) {
+        this(visitedForwards, visitedBackwards, null);
+    }
+
+    // every path we find is added to pathStore (if not null) for later crawls to reuse
+    public Path(Map<String, WebNode> visitedForwards, Map<String, WebNode> visitedBackwards, PathStore pathStore) {
         this.visitedForwards = visitedForwards;
         this.visitedBackwards = visitedBackwards;
+        this.pathStore = pathStore;
     }
 
     // if we've found the connecting midpoint node, then save the path going forwards and backwards
-    public void savePath(WebNode connectingNode) {
+    // threads that meet at the same time race to save; the first one wins and the rest are ignored
+    public synchronized void savePath(WebNode connectingNode) {
+        if (foundPath) {
+            return;
+        }
         finalConnectingNode = connectingNode;
-        tracePath();
+        this.webNodePath = tracePath();
         this.foundPath = true;
+        if (pathStore != null) {
+            ArrayList<String> titles = new ArrayList<String>(webNodePath.size());
+            for (WebNode wN : webNodePath) {
+                titles.add(wN.getTitle());
+            }
+            pathStore.putPath(titles);
+        }
+
+        PathFoundEvent event = new PathFoundEvent();
+        if (event.shouldCommit()) {
+            event.sourceTitle = webNodePath.getFirst().getTitle();
+            event.destTitle = webNodePath.getLast().getTitle();
+            event.connectingTitle = connectingNode.getTitle();
+            event.direction = connectingNode.getDirection().toString();
+            // the connecting title sits at the end of both the forwards and backwards half of the path
+            event.pathLength = getForwardsConnectingNode().getDistance() + getBackwardsConnectingNode().getDistance();
+            event.commit();
+        }
     }
 
     // use a deque so we can build bidirectionally
-    private void tracePath() {
+    private Deque<WebNode> tracePath() {
         if (finalConnectingNode == null) {
             throw new java.lang.IllegalStateException("Path cannot be calculated");
         }
-        this.webNodePath = new ArrayDeque<WebNode>();
+        Deque<WebNode> webNodePath = new ArrayDeque<WebNode>();
 
         // we know the midpoint -- but we need to retrieve the nodes from both FORWARDS and BACKWARDS
         // so that we can walk in both directions AWAY from this midpoint
         WebNode forwardsNode = getForwardsConnectingNode();
         WebNode backwardsNode = getBackwardsConnectingNode();
-        LOGGER.log(Level.INFO, Util.getThread() + "Final connecting node: " + finalConnectingNode);
-        LOGGER.log(Level.INFO, Util.getThread() + "ForwardsNode: " + forwardsNode);
-        LOGGER.log(Level.INFO, Util.getThread() + "BackwardsNode: " + backwardsNode);
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.log(Level.INFO, Util.getThread() + "Final connecting node: " + finalConnectingNode);
+            LOGGER.log(Level.INFO, Util.getThread() + "ForwardsNode: " + forwardsNode);
+            LOGGER.log(Level.INFO, Util.getThread() + "BackwardsNode: " + backwardsNode);
+        }
 
         // now retrace our path until we hit the source (or destination) node
         while (forwardsNode != null) {
@@ -53,6 +89,7 @@ public class Path {
             webNodePath.addLast(backwardsNode);
             backwardsNode = backwardsNode.getParent();
         }
+        return webNodePath;
     }
 
     // bidirectional: check if the we've found a node that intersects with the OPPOSITE crawl
@@ -95,6 +132,85 @@ public class Path {
         }
     }
 
+    /**
+     * Find up to numPaths distinct paths from the source to the destination among the pages this crawl has already
+     * visited, shortest first, without fetching anything more. Every page visited from both ends is a meeting node,
+     * and each meeting node yields a path for every combination of parents behind it in either direction (see
+     * WebNode.getParents). With shortestOnly, only paths through the meeting nodes at the smallest total distance are
+     * returned; otherwise longer meeting nodes follow, skipping any path that would visit a page twice.
+     */
+    public List<ArrayList<String>> findPaths(int numPaths, boolean shortestOnly) {
+        ArrayList<WebNode> meetingNodes = new ArrayList<WebNode>();
+        // walk the smaller side and look each title up in the other
+        boolean forwardsSmaller = visitedForwards.size() <= visitedBackwards.size();
+        Map<String, WebNode> smaller = forwardsSmaller ? visitedForwards : visitedBackwards;
+        Map<String, WebNode> larger = forwardsSmaller ? visitedBackwards : visitedForwards;
+        for (Map.Entry<String, WebNode> entry : smaller.entrySet()) {
+            WebNode other = larger.get(entry.getKey());
+            if (other != null) {
+                meetingNodes.add(forwardsSmaller ? entry.getValue() : other);
+            }
+        }
+        // sort by total distance so that paths come out shortest first
+        Collections.sort(meetingNodes, (a, b) -> {
+            int byLength = Integer.compare(getLength(a), getLength(b));
+            return byLength != 0 ? byLength : a.getTitle().compareTo(b.getTitle());
+        });
+
+        ArrayList<ArrayList<String>> paths = new ArrayList<ArrayList<String>>();
+        HashSet<ArrayList<String>> seen = new HashSet<ArrayList<String>>();
+        for (WebNode forwardsNode : meetingNodes) {
+            if (paths.size() >= numPaths || shortestOnly && getLength(forwardsNode) > getLength(meetingNodes.get(0))) {
+                break;
+            }
+            WebNode backwardsNode = visitedBackwards.get(forwardsNode.getTitle());
+            List<ArrayList<String>> forwardsHalves = traceHalves(forwardsNode, numPaths);
+            List<ArrayList<String>> backwardsHalves = traceHalves(backwardsNode, numPaths);
+            for (ArrayList<String> forwardsHalf : forwardsHalves) {
+                for (ArrayList<String> backwardsHalf : backwardsHalves) {
+                    if (paths.size() >= numPaths) {
+                        break;
+                    }
+                    // the meeting page ends both halves
+                    ArrayList<String> candidate = new ArrayList<String>(forwardsHalf);
+                    for (int i = backwardsHalf.size() - 2; i >= 0; i--) {
+                        candidate.add(backwardsHalf.get(i));
+                    }
+                    if (new HashSet<String>(candidate).size() == candidate.size() && seen.add(candidate)) {
+                        paths.add(candidate);
+                    }
+                }
+            }
+        }
+        return paths;
+    }
+
+    private int getLength(WebNode forwardsNode) {
+        return forwardsNode.getDistance() + visitedBackwards.get(forwardsNode.getTitle()).getDistance();
+    }
+
+    // up to limit chains of titles from the start of this node's crawl (the source or destination) to the node itself
+    private static List<ArrayList<String>> traceHalves(WebNode wN, int limit) {
+        ArrayList<ArrayList<String>> halves = new ArrayList<ArrayList<String>>();
+        List<WebNode> parents = wN.getParents();
+        if (parents.isEmpty()) {
+            ArrayList<String> half = new ArrayList<String>();
+            half.add(wN.getTitle());
+            halves.add(half);
+            return halves;
+        }
+        for (WebNode parent : parents) {
+            for (ArrayList<String> half : traceHalves(parent, limit - halves.size())) {
+                half.add(wN.getTitle());
+                halves.add(half);
+            }
+            if (halves.size() >= limit) {
+                break;
+            }
+        }
+        return halves;
+    }
+
     public Deque<WebNode> getPath() {
         return webNodePath;
     }
@@ -103,6 +219,27 @@ public class Path {
         return foundPath;
     }
 
+    // a path found other than by crawling, e.g. offline or across partitions, laid out as a crawled one: the forwards
+    // half from the source to the page where the two ends met, then the backwards half from that page to the destination
+    public static Deque<WebNode> toWebNodePath(String[] titles, int meetingIndex) {
+        Deque<WebNode> webNodePath = new ArrayDeque<WebNode>();
+        WebNode forwardsNode = null;
+        for (int i = 0; i <= meetingIndex; i++) {
+            forwardsNode = new WebNode(titles[i], forwardsNode, Direction.FORWARDS, i);
+            webNodePath.addLast(forwardsNode);
+        }
+        WebNode[] backwardsNodes = new WebNode[titles.length - meetingIndex];
+        WebNode backwardsNode = null;
+        for (int i = titles.length - 1; i >= meetingIndex; i--) {
+            backwardsNode = new WebNode(titles[i], backwardsNode, Direction.BACKWARDS, titles.length - 1 - i);
+            backwardsNodes[i - meetingIndex] = backwardsNode;
+        }
+        for (WebNode wN : backwardsNodes) {
+            webNodePath.addLast(wN);
+        }
+        return webNodePath;
+    }
+
     public static void setLogLevel(Level level) {
         LOGGER.setLevel(level);
     }
@@ -0,0 +1,36 @@
+package com.danielmcheng1.wikiracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event emitted when the forwards and backwards crawls meet.
+ */
+@Name("com.danielmcheng1.wikiracing.PathFound")
+@Label("Path Found")
+@Category("Wikiracer")
+@Description("The forwards and backwards crawls met")
+@StackTrace(false)
+@Registered(false)
+public class PathFoundEvent extends Event {
+    @Label("Source Title")
+    String sourceTitle;
+
+    @Label("Destination Title")
+    String destTitle;
+
+    @Label("Connecting Title")
+    String connectingTitle;
+
+    @Label("Found By Direction")
+    String direction;
+
+    @Label("Path Length")
+    @Description("Number of clicks from the source to the destination")
+    int pathLength;
+}
@@ -0,0 +1,228 @@
+package com.danielmcheng1.wikiracing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared, bounded store of every path the crawler has found. If we found A -> X -> Y -> B, then any later race from A
+ * can reach X, Y and B without a single API call, and any later race to B can do the same from A, X and Y.
+ * <p>
+ * New crawls walk the paths that start at their source (forwards) or end at their destination (backwards) to seed
+ * both crawls before the first request, so a repeated race completes immediately and one that shares an end with a
+ * solved race starts with its frontier already partly expanded. Only those paths are walked: a page's place along a
+ * shortest path from this crawl's source is its true distance from it, whereas a walk over links stored by races
+ * between other pages would only give an upper bound, and a page seeded too far out is never visited again at its
+ * real distance, so the crawl would find longer paths than it should.
+ * <p>
+ * Like the LinkCache, a single instance is shared by every crawl in the JVM and memory is bounded by the number of
+ * links held, evicting the least recently used paths first. It is only touched once when each crawl starts and once
+ * when it finds a path, so a single lock is plenty.
+ * <p>
+ * A store may be restored from a snapshot of an earlier run's store (see WarmStart). The snapshot is small, so rather than
+ * being looked up in place like the LinkCache's it is read in whole, but only when a crawl first touches the store.
+ */
+public class PathStore {
+    public static final long defaultMaxLinks = 200000;
+    // cap on how many pages we seed each direction of a crawl with, so that a large store cannot flood the queues
+    public static final int maxSeedPages = 1000;
+    // joins a path's titles into its key; MediaWiki titles cannot contain it
+    private static final String titleSeparator = "|";
+
+    private static PathStore shared = new PathStore(defaultMaxLinks);
+
+    private final long maxLinks;
+    private long numLinks;
+    // keyed by the path's titles joined up, access-ordered so that iteration starts at the least recently used path
+    private final LinkedHashMap<String, String[]> paths;
+    private final HashMap<String, LinkedHashSet<String>> pathsBySource;
+    private final HashMap<String, LinkedHashSet<String>> pathsByDest;
+    // read into the store on first use, then dropped
+    private TitleListFile snapshot;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong seededPages = new AtomicLong();
+
+    public PathStore(long maxLinks) {
+        this.maxLinks = maxLinks;
+        this.paths = new LinkedHashMap<String, String[]>(16, 0.75f, true);
+        this.pathsBySource = new HashMap<String, LinkedHashSet<String>>();
+        this.pathsByDest = new HashMap<String, LinkedHashSet<String>>();
+    }
+
+    public static PathStore getShared() {
+        return shared;
+    }
+
+    // replace the JVM-wide store, e.g. to resize it from the command line
+    public static void setShared(PathStore pathStore) {
+        shared = pathStore;
+    }
+
+    /******************************************/
+    // METHODS FOR RECORDING PATHS
+    /******************************************/
+    // titles runs from the source to the destination
+    public synchronized void putPath(List<String> titles) {
+        restoreSnapshot();
+        if (maxLinks <= 0 || titles.size() < 2) {
+            return;
+        }
+        addPath(titles.toArray(new String[titles.size()]));
+        evictIfOverBudget();
+    }
+
+    private void addPath(String[] path) {
+        String key = String.join(titleSeparator, path);
+        if (paths.put(key, path) != null) {
+            return;
+        }
+        getOrCreate(pathsBySource, path[0]).add(key);
+        getOrCreate(pathsByDest, path[path.length - 1]).add(key);
+        numLinks += path.length - 1;
+    }
+
+    private static LinkedHashSet<String> getOrCreate(Map<String, LinkedHashSet<String>> keys, String title) {
+        LinkedHashSet<String> titleKeys = keys.get(title);
+        if (titleKeys == null) {
+            titleKeys = new LinkedHashSet<String>();
+            keys.put(title, titleKeys);
+        }
+        return titleKeys;
+    }
+
+    private void evictIfOverBudget() {
+        Iterator<Map.Entry<String, String[]>> eldest = paths.entrySet().iterator();
+        while (numLinks > maxLinks && eldest.hasNext()) {
+            Map.Entry<String, String[]> entry = eldest.next();
+            String[] path = entry.getValue();
+            removeKey(pathsBySource, path[0], entry.getKey());
+            removeKey(pathsByDest, path[path.length - 1], entry.getKey());
+            numLinks -= path.length - 1;
+            eldest.remove();
+        }
+    }
+
+    private static void removeKey(Map<String, LinkedHashSet<String>> keys, String title, String key) {
+        LinkedHashSet<String> titleKeys = keys.get(title);
+        titleKeys.remove(key);
+        if (titleKeys.isEmpty()) {
+            keys.remove(title);
+        }
+    }
+
+    /******************************************/
+    // METHODS FOR SEEDING CRAWLS
+    /******************************************/
+    /**
+     * Walk of the stored paths that start at title (FORWARDS) or end at it (BACKWARDS), one step along all of them at a
+     * time. Returns each page on them mapped to the page we reached it from, in the order they were reached, i.e. in
+     * increasing distance from title; a page on several paths is reached from the one it is closest to title on. The
+     * title itself is not included.
+     */
+    public synchronized LinkedHashMap<String, String> walk(String title, Direction direction, int maxPages) {
+        restoreSnapshot();
+        LinkedHashMap<String, String> parents = new LinkedHashMap<String, String>();
+        boolean forwards = Direction.FORWARDS.equals(direction);
+        LinkedHashSet<String> keys = (forwards ? pathsBySource : pathsByDest).get(title);
+        if (keys == null) {
+            return parents;
+        }
+        List<String[]> walked = new ArrayList<String[]>(keys.size());
+        int longest = 0;
+        for (String key : keys) {
+            // the get marks the path used
+            String[] path = paths.get(key);
+            if (!forwards) {
+                path = path.clone();
+                Collections.reverse(Arrays.asList(path));
+            }
+            walked.add(path);
+            longest = Math.max(longest, path.length);
+        }
+        for (int step = 1; step < longest && parents.size() < maxPages; step++) {
+            for (String[] path : walked) {
+                if (parents.size() >= maxPages) {
+                    break;
+                }
+                if (step < path.length && !path[step].equals(title) && !parents.containsKey(path[step])) {
+                    parents.put(path[step], path[step - 1]);
+                }
+            }
+        }
+        return parents;
+    }
+
+    // called once per crawl after seeding it, hit if the store alone completed the path
+    public void recordLookup(boolean hit, int pagesSeeded) {
+        lookups.incrementAndGet();
+        if (hit) {
+            hits.incrementAndGet();
+        }
+        seededPages.addAndGet(pagesSeeded);
+    }
+
+    /******************************************/
+    // METHODS FOR SNAPSHOTS
+    /******************************************/
+    // restore the paths of an earlier run's store, written by getPathsToSave, when a crawl first uses this one
+    public synchronized void setSnapshot(TitleListFile snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    // every path, keyed by its titles joined up, for writing a snapshot
+    public synchronized Map<String, String[]> getPathsToSave() {
+        restoreSnapshot();
+        return new LinkedHashMap<String, String[]>(paths);
+    }
+
+    private void restoreSnapshot() {
+        if (snapshot == null) {
+            return;
+        }
+        TitleListFile restoring = snapshot;
+        snapshot = null;
+        if (maxLinks <= 0) {
+            return;
+        }
+        for (int i = 0; i < restoring.getNumTitles(); i++) {
+            String[] path = restoring.getValues(i);
+            // anything else, e.g. a snapshot of links from before paths were kept whole, is skipped
+            if (path.length >= 2 && String.join(titleSeparator, path).equals(restoring.getTitle(i))) {
+                addPath(path);
+            }
+        }
+        evictIfOverBudget();
+    }
+
+    /******************************************/
+    // STATS
+    /******************************************/
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getSeededPages() {
+        return seededPages.get();
+    }
+
+    public synchronized long getNumLinks() {
+        return numLinks;
+    }
+
+    public synchronized int getNumPaths() {
+        return paths.size();
+    }
+}
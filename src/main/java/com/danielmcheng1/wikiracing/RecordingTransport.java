@@ -0,0 +1,116 @@
+package com.danielmcheng1.wikiracing;
+
+import okhttp3.HttpUrl;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Passes every request through to another transport (the live API by default) and appends the request and its raw
+ * response to a TrafficArchive file, so the same traffic can be replayed later with a ReplayTransport. Failed requests
+ * are not recorded. The index is written on close, so close the recorder once the crawls you want to capture are done.
+ * <p>
+ * We write through a plain stream rather than a FileChannel: crawler threads get interrupted when a crawl ends, and an
+ * interrupt during a channel write closes the channel for every other thread.
+ */
+public class RecordingTransport implements WikiTransport, Closeable {
+    private static final Logger LOGGER = Logger.getLogger(RecordingTransport.class.getName());
+
+    private final WikiTransport delegate;
+    private final String fileName;
+    private final OutputStream out;
+    private long position;
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>();
+    private long rawBytes;
+    private boolean closed;
+
+    public RecordingTransport(WikiTransport delegate, String fileName) throws IOException {
+        this.delegate = delegate;
+        this.fileName = fileName;
+        this.out = new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16);
+        ByteBuffer header = ByteBuffer.allocate(TrafficArchive.headerLength);
+        header.putInt(TrafficArchive.magic).putInt(TrafficArchive.version);
+        header.flip();
+        write(header);
+    }
+
+    public byte[] fetch(HttpUrl url, String userAgent) throws IOException {
+        long before = System.nanoTime();
+        byte[] responseBytes = delegate.fetch(url, userAgent);
+        long latencyMicros = (System.nanoTime() - before) / 1000;
+        record(TrafficArchive.getKey(url), (int) Math.min(latencyMicros, Integer.MAX_VALUE), responseBytes);
+        return responseBytes;
+    }
+
+    // compress outside the lock, so that only the append itself is serialized across crawler threads
+    private void record(String key, int latencyMicros, byte[] responseBytes) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = TrafficArchive.deflate(responseBytes);
+        ByteBuffer record = ByteBuffer.allocate(16 + keyBytes.length + compressed.length);
+        record.putInt(keyBytes.length).put(keyBytes);
+        record.putInt(latencyMicros).putInt(responseBytes.length).putInt(compressed.length).put(compressed);
+        record.flip();
+        synchronized (this) {
+            // a later crawl may repeat a request, e.g. once the link cache evicts a page; the first answer is enough
+            if (closed || index.containsKey(key)) {
+                return;
+            }
+            try {
+                index.put(key, position);
+                write(record);
+                // flush every record so that a recording cut short can still be replayed by scanning it
+                out.flush();
+                rawBytes += responseBytes.length;
+            } catch (IOException e) {
+                index.remove(key);
+                LOGGER.log(Level.WARNING, "Failed to record response to " + fileName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // write the index and trailer, after which the archive can be opened for replay
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            long indexOffset = position;
+            int indexLength = 4;
+            for (String key : index.keySet()) {
+                indexLength += 12 + key.getBytes(StandardCharsets.UTF_8).length;
+            }
+            ByteBuffer indexBytes = ByteBuffer.allocate(indexLength + TrafficArchive.trailerLength);
+            indexBytes.putInt(index.size());
+            for (Map.Entry<String, Long> entry : index.entrySet()) {
+                byte[] keyBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                indexBytes.putInt(keyBytes.length).put(keyBytes).putLong(entry.getValue());
+            }
+            indexBytes.putLong(indexOffset).putInt(TrafficArchive.magic);
+            indexBytes.flip();
+            write(indexBytes);
+            LOGGER.log(Level.INFO, "Recorded " + index.size() + " responses (" + rawBytes + " bytes, "
+                    + position + " compressed) to " + fileName);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        out.write(buffer.array(), buffer.position(), buffer.remaining());
+        position += buffer.remaining();
+    }
+
+    public synchronized int getNumRecords() {
+        return index.size();
+    }
+}
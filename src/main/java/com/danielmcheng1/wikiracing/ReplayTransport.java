@@ -0,0 +1,296 @@
+package com.danielmcheng1.wikiracing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import okhttp3.HttpUrl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves Wiki API requests from a TrafficArchive recorded by a RecordingTransport, so crawls can be rerun offline on
+ * exactly the same responses, e.g. to compare the throughput of two versions of the crawler on identical traffic.
+ * <p>
+ * Requests that were recorded verbatim are answered with the recorded bytes. The crawler batches titles in whatever
+ * order its threads happen to discover them though, so a rerun can ask for a batch that was never recorded as such.
+ * Those requests are answered in full (no continue) from every link the archive recorded for each of the titles.
+ * <p>
+ * Latency is simulated per request according to the latency spec, one of:
+ * <ul>
+ * <li>none: answer immediately (the default)</li>
+ * <li>recorded: wait as long as the live API took to answer this request</li>
+ * <li>empirical: wait for a latency drawn at random from all the recorded latencies</li>
+ * <li>fixed:MILLIS: always wait MILLIS</li>
+ * <li>lognormal:MEDIAN_MILLIS:SIGMA: wait for a log-normally distributed latency, a good fit for WAN round trips</li>
+ * </ul>
+ * Random draws come from a seeded generator, so the same seed gives the same sequence of latencies.
+ */
+public class ReplayTransport implements WikiTransport, Closeable {
+    public static final String latencyNone = "none";
+    public static final String latencyRecorded = "recorded";
+    public static final String latencyEmpirical = "empirical";
+    public static final String latencyFixed = "fixed";
+    public static final String latencyLogNormal = "lognormal";
+
+    private static final Logger LOGGER = Logger.getLogger(ReplayTransport.class.getName());
+    private static final Gson gson = new Gson();
+
+    private final TrafficArchive archive;
+    private final Random random;
+    private volatile String latencyModel = latencyNone;
+    private volatile double latencyMillis;
+    private volatile double latencySigma;
+
+    private final AtomicLong numReplayed = new AtomicLong();
+    private final AtomicLong numAssembled = new AtomicLong();
+    private final AtomicLong numUnknownTitles = new AtomicLong();
+
+    // built the first time a request misses the archive
+    private RecordedLinks recordedLinks;
+    private int[] recordedLatencyMicros;
+
+    public ReplayTransport(String fileName) throws IOException {
+        this(fileName, latencyNone, 42);
+    }
+
+    public ReplayTransport(String fileName, String latencySpec, long seed) throws IOException {
+        this.archive = new TrafficArchive(fileName);
+        this.random = new Random(seed);
+        setLatency(latencySpec);
+        LOGGER.log(Level.INFO, "Replaying " + archive.getNumRecords() + " recorded responses from " + fileName);
+    }
+
+    public byte[] fetch(HttpUrl url, String userAgent) throws IOException {
+        TrafficArchive.Record record = archive.get(TrafficArchive.getKey(url));
+        byte[] responseBytes;
+        if (record != null) {
+            numReplayed.incrementAndGet();
+            responseBytes = record.getBody();
+        } else {
+            numAssembled.incrementAndGet();
+            responseBytes = assembleResponse(url).getBytes(StandardCharsets.UTF_8);
+        }
+        simulateLatency(record);
+        return responseBytes;
+    }
+
+    /******************************************/
+    // METHODS FOR SIMULATED LATENCY
+    /******************************************/
+    public void setLatency(String latencySpec) {
+        String[] parts = latencySpec.split(":");
+        String model = parts[0];
+        try {
+            if (latencyFixed.equals(model) && parts.length == 2) {
+                latencyMillis = Double.parseDouble(parts[1]);
+            } else if (latencyLogNormal.equals(model) && parts.length == 3) {
+                latencyMillis = Double.parseDouble(parts[1]);
+                latencySigma = Double.parseDouble(parts[2]);
+            } else if (!(latencyNone.equals(model) || latencyRecorded.equals(model) || latencyEmpirical.equals(model))
+                    || parts.length != 1) {
+                throw new IllegalArgumentException("Invalid replay latency specified: " + latencySpec);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid replay latency specified: " + latencySpec);
+        }
+        latencyModel = model;
+    }
+
+    private void simulateLatency(TrafficArchive.Record record) throws IOException {
+        long micros;
+        String model = latencyModel;
+        if (latencyRecorded.equals(model)) {
+            // requests we had to assemble have no recorded latency of their own
+            micros = record != null ? record.getLatencyMicros() : drawRecordedLatency();
+        } else if (latencyEmpirical.equals(model)) {
+            micros = drawRecordedLatency();
+        } else if (latencyFixed.equals(model)) {
+            micros = (long) (latencyMillis * 1000);
+        } else if (latencyLogNormal.equals(model)) {
+            micros = (long) (latencyMillis * 1000 * Math.exp(latencySigma * random.nextGaussian()));
+        } else {
+            return;
+        }
+        try {
+            Thread.sleep(micros / 1000, (int) (micros % 1000) * 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while simulating latency");
+        }
+    }
+
+    private long drawRecordedLatency() throws IOException {
+        int[] latencies = getRecordedLatencies();
+        return latencies.length == 0 ? 0 : latencies[random.nextInt(latencies.length)];
+    }
+
+    private synchronized int[] getRecordedLatencies() throws IOException {
+        if (recordedLatencyMicros == null) {
+            int[] latencies = new int[archive.getNumRecords()];
+            int i = 0;
+            for (String key : archive.getKeys()) {
+                latencies[i++] = archive.get(key).getLatencyMicros();
+            }
+            recordedLatencyMicros = latencies;
+        }
+        return recordedLatencyMicros;
+    }
+
+    /******************************************/
+    // METHODS FOR ASSEMBLING UNRECORDED BATCHES
+    /******************************************/
+    // answer with every recorded link for each requested title, in a single response
+    protected String assembleResponse(HttpUrl url) throws IOException {
+        RecordedLinks recorded = getRecordedLinks();
+        String prop = url.queryParameter("prop");
+        HashMap<String, LinkedHashSet<String>> linksByTitle = "linkshere".equals(prop) ? recorded.linksHere : recorded.links;
+
+        JsonArray normalized = new JsonArray();
+        JsonObject pages = new JsonObject();
+        int missingId = -1;
+        for (String requested : url.queryParameter("titles").split("\\|")) {
+            String title = recorded.normalized.containsKey(requested) ? recorded.normalized.get(requested) : requested;
+            if (!title.equals(requested)) {
+                JsonObject fromTo = new JsonObject();
+                fromTo.addProperty("from", requested);
+                fromTo.addProperty("to", title);
+                normalized.add(fromTo);
+            }
+            JsonObject page = new JsonObject();
+            page.addProperty("ns", 0);
+            page.addProperty("title", title);
+            if (recorded.missing.contains(title)) {
+                page.addProperty("missing", "");
+                pages.add(String.valueOf(missingId--), page);
+                continue;
+            }
+            LinkedHashSet<String> links = linksByTitle.get(title);
+            if (links == null) {
+                // we never recorded this page in this direction, so the best we can do is a dead end
+                numUnknownTitles.incrementAndGet();
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, "No recorded " + prop + " for " + title);
+                }
+            } else {
+                JsonArray linksJson = new JsonArray();
+                for (String link : links) {
+                    JsonObject linkJson = new JsonObject();
+                    linkJson.addProperty("ns", 0);
+                    linkJson.addProperty("title", link);
+                    linksJson.add(linkJson);
+                }
+                page.add(prop, linksJson);
+            }
+            pages.add(String.valueOf(recorded.getPageId(title)), page);
+        }
+
+        JsonObject query = new JsonObject();
+        if (normalized.size() > 0) {
+            query.add("normalized", normalized);
+        }
+        query.add("pages", pages);
+        JsonObject response = new JsonObject();
+        response.add("query", query);
+        return gson.toJson(response);
+    }
+
+    // parse every recorded response once, collecting the links we saw for each title across all of its continues
+    private synchronized RecordedLinks getRecordedLinks() throws IOException {
+        if (recordedLinks == null) {
+            RecordedLinks recorded = new RecordedLinks();
+            for (String key : archive.getKeys()) {
+                HttpUrl url = HttpUrl.parse(key);
+                String prop = url == null ? null : url.queryParameter("prop");
+                JsonObject response = gson.fromJson(new String(archive.get(key).getBody(), StandardCharsets.UTF_8), JsonObject.class);
+                if (prop == null || response == null || !response.has("query")) {
+                    continue;
+                }
+                recorded.add(response, prop);
+            }
+            LOGGER.log(Level.INFO, "Assembling unrecorded batches from links for " + recorded.links.size()
+                    + " pages forwards and " + recorded.linksHere.size() + " backwards");
+            recordedLinks = recorded;
+        }
+        return recordedLinks;
+    }
+
+    /******************************************/
+    // STATS
+    /******************************************/
+    public long getNumReplayed() {
+        return numReplayed.get();
+    }
+
+    public long getNumAssembled() {
+        return numAssembled.get();
+    }
+
+    public long getNumUnknownTitles() {
+        return numUnknownTitles.get();
+    }
+
+    public void close() throws IOException {
+        LOGGER.log(Level.INFO, "Replayed " + numReplayed.get() + " recorded responses and assembled " + numAssembled.get()
+                + " (" + numUnknownTitles.get() + " titles had no recorded links)");
+        archive.close();
+    }
+
+    /**
+     * Per-title view of all the traffic in an archive
+     */
+    private static class RecordedLinks {
+        private final HashMap<String, LinkedHashSet<String>> links = new HashMap<String, LinkedHashSet<String>>();
+        private final HashMap<String, LinkedHashSet<String>> linksHere = new HashMap<String, LinkedHashSet<String>>();
+        private final HashMap<String, String> normalized = new HashMap<String, String>();
+        private final HashSet<String> missing = new HashSet<String>();
+        private final LinkedHashMap<String, Integer> pageIds = new LinkedHashMap<String, Integer>();
+
+        private void add(JsonObject response, String prop) {
+            normalized.putAll(WikiRetriever.getNormalizedTitles(response));
+            HashMap<String, LinkedHashSet<String>> linksByTitle = "linkshere".equals(prop) ? linksHere : links;
+            JsonObject pageResults = response.getAsJsonObject("query").getAsJsonObject("pages");
+            for (Map.Entry<String, JsonElement> entry : pageResults.entrySet()) {
+                JsonObject page = entry.getValue().getAsJsonObject();
+                String title = page.get("title").getAsString();
+                if (Integer.parseInt(entry.getKey()) < 0) {
+                    missing.add(title);
+                    continue;
+                }
+                pageIds.put(title, Integer.parseInt(entry.getKey()));
+                JsonArray linksForPage = page.getAsJsonArray(prop);
+                LinkedHashSet<String> titleLinks = linksByTitle.get(title);
+                if (titleLinks == null) {
+                    titleLinks = new LinkedHashSet<String>();
+                    linksByTitle.put(title, titleLinks);
+                }
+                if (linksForPage != null) {
+                    for (JsonElement link : linksForPage) {
+                        titleLinks.add(link.getAsJsonObject().get("title").getAsString());
+                    }
+                }
+            }
+        }
+
+        // reuse the real page ID where we saw one, otherwise make up one that cannot clash with it
+        private synchronized int getPageId(String title) {
+            Integer pageId = pageIds.get(title);
+            if (pageId == null) {
+                pageId = Integer.MAX_VALUE - pageIds.size();
+                pageIds.put(title, pageId);
+            }
+            return pageId;
+        }
+    }
+}
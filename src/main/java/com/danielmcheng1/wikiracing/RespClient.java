@@ -0,0 +1,158 @@
+package com.danielmcheng1.wikiracing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client for a key-value server that speaks the Redis protocol: Redis itself, or a RespServer in tests and benchmarks.
+ * Each call writes all of its commands before reading any reply (pipelining), so a batch of commands costs one round
+ * trip however many commands it holds. Connections are pooled, so that crawler threads can pipeline side by side.
+ * <p>
+ * Connecting and each read give up after timeoutMillis, so that a server that has gone away fails the call instead of
+ * leaving the crawler thread making it stuck on the socket.
+ */
+public class RespClient implements Closeable {
+    // well under a crawl's default 15s timeout, and far over any round trip a live server takes
+    public static final int defaultTimeoutMillis = 3000;
+    private static RespClient shared;
+
+    private final String host;
+    private final int port;
+    private final int timeoutMillis;
+    private final ConcurrentLinkedQueue<Connection> idleConnections = new ConcurrentLinkedQueue<Connection>();
+    private final AtomicLong numRoundTrips = new AtomicLong();
+    private final AtomicLong numCommands = new AtomicLong();
+    private volatile boolean closed;
+
+    public RespClient(String host, int port) {
+        this(host, port, defaultTimeoutMillis);
+    }
+
+    public RespClient(String host, int port, int timeoutMillis) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    // address as host:port, e.g. from -stateServer
+    public RespClient(String address) {
+        String[] hostAndPort = address.split(":");
+        if (hostAndPort.length != 2) {
+            throw new IllegalArgumentException("State server address must be host:port: " + address);
+        }
+        this.host = hostAndPort[0];
+        this.port = Integer.parseInt(hostAndPort[1]);
+        this.timeoutMillis = defaultTimeoutMillis;
+    }
+
+    // null unless crawls keep their state on a key-value server, e.g. with -stateServer
+    public static RespClient getShared() {
+        return shared;
+    }
+
+    public static void setShared(RespClient respClient) {
+        shared = respClient;
+    }
+
+    /******************************************/
+    // METHODS FOR SENDING COMMANDS
+    /******************************************/
+    public Object call(String... command) throws IOException {
+        return pipeline(Collections.singletonList(command)).get(0);
+    }
+
+    // the replies to the commands, in order, in one round trip; an error reply to any command is thrown once all are read
+    public List<Object> pipeline(List<String[]> commands) throws IOException {
+        if (closed) {
+            throw new IOException("State server client is closed");
+        }
+        Connection connection = idleConnections.poll();
+        if (connection == null) {
+            connection = new Connection();
+        }
+        List<Object> replies = new ArrayList<Object>(commands.size());
+        try {
+            for (String[] command : commands) {
+                RespProtocol.writeCommand(connection.out, command);
+            }
+            connection.out.flush();
+            for (int i = 0; i < commands.size(); i++) {
+                replies.add(RespProtocol.read(connection.in));
+            }
+        } catch (IOException e) {
+            // the stream may be halfway through a reply, so the connection cannot be reused
+            connection.close();
+            throw new IOException("State server " + host + ":" + port + " failed: " + e.getMessage(), e);
+        }
+        if (closed) {
+            connection.close();
+        } else {
+            idleConnections.offer(connection);
+        }
+        numRoundTrips.incrementAndGet();
+        numCommands.addAndGet(commands.size());
+        Metrics.stateServerRoundTrips.increment();
+        Metrics.stateServerCommands.add(commands.size());
+        for (Object reply : replies) {
+            if (reply instanceof RespProtocol.ErrorReply) {
+                throw new IOException("State server " + host + ":" + port + " replied " + ((RespProtocol.ErrorReply) reply).getMessage());
+            }
+        }
+        return replies;
+    }
+
+    public long getNumRoundTrips() {
+        return numRoundTrips.get();
+    }
+
+    public long getNumCommands() {
+        return numCommands.get();
+    }
+
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idleConnections.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private class Connection {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        Connection() throws IOException {
+            socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+                socket.setSoTimeout(timeoutMillis);
+                socket.setTcpNoDelay(true);
+            } catch (IOException e) {
+                close();
+                throw new IOException("State server " + host + ":" + port + " failed: " + e.getMessage(), e);
+            }
+            in = new BufferedInputStream(socket.getInputStream());
+            out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+    }
+}
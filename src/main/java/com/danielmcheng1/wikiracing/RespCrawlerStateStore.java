@@ -0,0 +1,305 @@
+package com.danielmcheng1.wikiracing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Crawl state on a key-value server that speaks the Redis protocol, so that crawler instances on several machines can
+ * expand one crawl between them, or one can pick up a crawl where another left off. For each direction the server
+ * holds a hash of the visited titles, each with its distance and the titles on its path back to the source or
+ * destination, and a list of the titles queued to expand, each with the same record.
+ * <p>
+ * Each batch operation is one pipeline, i.e. one round trip: visiting a page's links is one HSETNX per link, sent
+ * together; queueing them is one RPUSH per direction; dequeueing a batch is one LPOP with a count (Redis 6.2 or later);
+ * and probing the other direction for a page's links is one HMGET. Since every record carries its whole path, the
+ * WebNodes for pages another instance visited are built from the reply alone, ancestors and all.
+ * <p>
+ * Crawler instances share a crawl by using the same crawl key on the same server; see forRun. A run's keys are given a
+ * time to live, set again in the same pipeline each time a batch is visited or queued, so that a run nobody works on
+ * any more is dropped by the server rather than kept forever. The queues are first in, first out, so this store only
+ * backs breadth-first crawls.
+ */
+public class RespCrawlerStateStore implements CrawlerStateStore {
+    private static final Logger LOGGER = Logger.getLogger(RespCrawlerStateStore.class.getName());
+    // '|' is one of the characters Wikipedia titles may not contain
+    private static final String separator = "|";
+    public static final long defaultRunTtlSeconds = 24 * 60 * 60;
+    private static volatile long runTtlSeconds = defaultRunTtlSeconds;
+
+    private final RespClient client;
+    private final String crawlKey;
+    private final boolean deleteOnClose;
+    // 0 for keys that never expire
+    private final long ttlSeconds;
+    private final String visitedForwardsKey;
+    private final String visitedBackwardsKey;
+    private final String toVisitForwardsKey;
+    private final String toVisitBackwardsKey;
+    private final ConcurrentHashMap<String, WebNode> visitedForwards = new ConcurrentHashMap<String, WebNode>();
+    private final ConcurrentHashMap<String, WebNode> visitedBackwards = new ConcurrentHashMap<String, WebNode>();
+
+    // state shared with every other crawler using the same crawlKey on the same server, which outlives this store
+    public RespCrawlerStateStore(RespClient client, String crawlKey) {
+        this(client, crawlKey, false, 0);
+    }
+
+    protected RespCrawlerStateStore(RespClient client, String crawlKey, boolean deleteOnClose, long ttlSeconds) {
+        this.client = client;
+        this.crawlKey = crawlKey;
+        this.deleteOnClose = deleteOnClose;
+        this.ttlSeconds = ttlSeconds;
+        // the braces make Redis Cluster keep a crawl's keys on one node, so that one pipeline can reach them all
+        String prefix = "wikiracer:{" + crawlKey + "}:";
+        this.visitedForwardsKey = prefix + "visited:forwards";
+        this.visitedBackwardsKey = prefix + "visited:backwards";
+        this.toVisitForwardsKey = prefix + "tovisit:forwards";
+        this.toVisitBackwardsKey = prefix + "tovisit:backwards";
+    }
+
+    // state for one crawl alone, under a key of its own, deleted from the server when the crawl closes it
+    public static RespCrawlerStateStore forCrawl(RespClient client, String name) {
+        return new RespCrawlerStateStore(client, name + "#" + UUID.randomUUID(), true, 0);
+    }
+
+    /**
+     * State for the run of a race that any number of crawler instances can share: each instance that races the same
+     * source and destination with the same runId, against the same server, joins the crawl and expands its queues
+     * alongside the others, or takes it over if they have stopped. It stays on the server once they are done, so that
+     * a later instance can still pick it up, until no instance has visited or queued a page for the run's time to live
+     * (see setRunTtlSeconds); delete its keys to race afresh under the same runId.
+     */
+    public static RespCrawlerStateStore forRun(RespClient client, String sourceTitle, String destTitle, String runId) {
+        return forRun(client, sourceTitle, destTitle, runId, runTtlSeconds);
+    }
+
+    // as above, with keys that expire ttlSeconds after the last batch visited or queued, or never if 0
+    public static RespCrawlerStateStore forRun(RespClient client, String sourceTitle, String destTitle, String runId, long ttlSeconds) {
+        return new RespCrawlerStateStore(client, Util.normalizeTitle(sourceTitle) + separator + Util.normalizeTitle(destTitle) + separator + runId,
+                false, ttlSeconds);
+    }
+
+    // time to live of the runs forRun starts from here on, e.g. from -crawlTtlSeconds; 0 to keep them forever
+    public static void setRunTtlSeconds(long ttlSeconds) {
+        runTtlSeconds = ttlSeconds;
+    }
+
+    public static long getRunTtlSeconds() {
+        return runTtlSeconds;
+    }
+
+    public String getCrawlKey() {
+        return crawlKey;
+    }
+
+    public Map<String, WebNode> getVisited(Direction direction) {
+        return Direction.FORWARDS.equals(direction) ? visitedForwards : visitedBackwards;
+    }
+
+    /******************************************/
+    // METHODS FOR BATCH OPERATIONS, ONE ROUND TRIP EACH
+    /******************************************/
+    public boolean[] visitIfAbsent(List<WebNode> nodes) {
+        List<String[]> commands = new ArrayList<String[]>(nodes.size() + 4);
+        for (WebNode wN : nodes) {
+            commands.add(new String[]{"HSETNX", getVisitedKey(wN.getDirection()), wN.getTitle(), toRecord(wN)});
+        }
+        addExpiry(commands);
+        List<Object> replies = pipeline(commands);
+        boolean[] added = new boolean[nodes.size()];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = Long.valueOf(1).equals(replies.get(i));
+            if (added[i]) {
+                WebNode wN = nodes.get(i);
+                getVisited(wN.getDirection()).putIfAbsent(wN.getTitle(), wN);
+            }
+        }
+        return added;
+    }
+
+    public boolean[] findVisited(Direction direction, List<String> titles) {
+        boolean[] found = new boolean[titles.size()];
+        if (titles.isEmpty()) {
+            return found;
+        }
+        List<?> records = getRecords(direction, titles);
+        Map<String, WebNode> visited = getVisited(direction);
+        // pages another crawler visited need nodes here, for Path to trace the path through them
+        Map<String, String> titlesToRecords = new HashMap<String, String>();
+        for (int i = 0; i < found.length; i++) {
+            found[i] = records.get(i) != null;
+            if (found[i] && !visited.containsKey(titles.get(i))) {
+                titlesToRecords.put(titles.get(i), (String) records.get(i));
+            }
+        }
+        load(direction, titlesToRecords);
+        return found;
+    }
+
+    public int enqueue(List<WebNode> nodes) {
+        List<String> forwards = new ArrayList<String>();
+        List<String> backwards = new ArrayList<String>();
+        for (WebNode wN : nodes) {
+            (Direction.FORWARDS.equals(wN.getDirection()) ? forwards : backwards).add(wN.getTitle() + separator + toRecord(wN));
+        }
+        List<String[]> commands = new ArrayList<String[]>(6);
+        if (!forwards.isEmpty()) {
+            commands.add(push(toVisitForwardsKey, forwards));
+        }
+        if (!backwards.isEmpty()) {
+            commands.add(push(toVisitBackwardsKey, backwards));
+        }
+        if (!commands.isEmpty()) {
+            addExpiry(commands);
+            pipeline(commands);
+        }
+        return nodes.size();
+    }
+
+    public List<WebNode> dequeue(Direction direction, int maxNodes) {
+        Object reply = pipeline(Collections.singletonList(new String[]{"LPOP", getQueueKey(direction), String.valueOf(maxNodes)})).get(0);
+        if (reply == null) {
+            return new ArrayList<WebNode>();
+        }
+        List<String> entries = new ArrayList<String>();
+        for (Object entry : (List<?>) reply) {
+            entries.add((String) entry);
+        }
+        return toNodes(direction, entries);
+    }
+
+    public WebNode peek(Direction direction) {
+        String entry = (String) pipeline(Collections.singletonList(new String[]{"LINDEX", getQueueKey(direction), "0"})).get(0);
+        if (entry == null) {
+            return null;
+        }
+        return toNodes(direction, Collections.singletonList(entry)).get(0);
+    }
+
+    public boolean isQueueEmpty(Direction direction) {
+        return Long.valueOf(0).equals(pipeline(Collections.singletonList(new String[]{"LLEN", getQueueKey(direction)})).get(0));
+    }
+
+    public void close() {
+        if (deleteOnClose) {
+            try {
+                client.call("DEL", visitedForwardsKey, visitedBackwardsKey, toVisitForwardsKey, toVisitBackwardsKey);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to delete crawl state " + crawlKey + " from the state server: " + e.getMessage());
+            }
+        }
+    }
+
+    /******************************************/
+    // METHODS FOR BUILDING NODES FROM THE SERVER'S RECORDS
+    /******************************************/
+    // the nodes for entries of the direction's queue, each a title followed by its record
+    private List<WebNode> toNodes(Direction direction, List<String> entries) {
+        Map<String, WebNode> visited = getVisited(direction);
+        Map<String, String> titlesToRecords = new HashMap<String, String>();
+        List<String> titles = new ArrayList<String>(entries.size());
+        for (String entry : entries) {
+            String title = entry.substring(0, entry.indexOf(separator));
+            titles.add(title);
+            if (!visited.containsKey(title)) {
+                titlesToRecords.put(title, entry.substring(title.length() + 1));
+            }
+        }
+        load(direction, titlesToRecords);
+        List<WebNode> nodes = new ArrayList<WebNode>(titles.size());
+        for (String title : titles) {
+            nodes.add(visited.get(title));
+        }
+        return nodes;
+    }
+
+    // build nodes for the titles from their records, along with the nodes for their ancestors not held here yet
+    private void load(Direction direction, Map<String, String> titlesToRecords) {
+        Map<String, WebNode> visited = getVisited(direction);
+        for (Map.Entry<String, String> entry : titlesToRecords.entrySet()) {
+            String[] fields = entry.getValue().split(Pattern.quote(separator), -1);
+            int distance = Integer.parseInt(fields[0]);
+            // the ancestors are nearest first, so build from the source or destination down
+            WebNode parent = null;
+            for (int i = fields.length - 1; i >= 1; i--) {
+                if (fields[i].isEmpty()) {
+                    continue;
+                }
+                WebNode ancestor = visited.get(fields[i]);
+                if (ancestor == null) {
+                    visited.putIfAbsent(fields[i], new WebNode(fields[i], parent, direction, distance - i));
+                    ancestor = visited.get(fields[i]);
+                }
+                parent = ancestor;
+            }
+            visited.putIfAbsent(entry.getKey(), new WebNode(entry.getKey(), parent, direction, distance));
+        }
+    }
+
+    // each title's record, or null if it was never visited from the direction, in one HMGET
+    private List<?> getRecords(Direction direction, List<String> titles) {
+        String[] command = new String[titles.size() + 2];
+        command[0] = "HMGET";
+        command[1] = getVisitedKey(direction);
+        for (int i = 0; i < titles.size(); i++) {
+            command[i + 2] = titles.get(i);
+        }
+        return (List<?>) pipeline(Collections.singletonList(command)).get(0);
+    }
+
+    // distance|parent|grandparent|..., i.e. the page's distance and then its path back to the source or destination
+    private static String toRecord(WebNode wN) {
+        StringBuilder record = new StringBuilder().append(wN.getDistance());
+        for (WebNode ancestor = wN.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            record.append(separator).append(ancestor.getTitle());
+        }
+        return record.toString();
+    }
+
+    private static String[] push(String key, List<String> titles) {
+        String[] command = new String[titles.size() + 2];
+        command[0] = "RPUSH";
+        command[1] = key;
+        for (int i = 0; i < titles.size(); i++) {
+            command[i + 2] = titles.get(i);
+        }
+        return command;
+    }
+
+    // set the time to live of all four keys again, whichever of them the batch wrote, so they expire together
+    private void addExpiry(List<String[]> commands) {
+        if (ttlSeconds <= 0) {
+            return;
+        }
+        String ttl = String.valueOf(ttlSeconds);
+        for (String key : new String[]{visitedForwardsKey, visitedBackwardsKey, toVisitForwardsKey, toVisitBackwardsKey}) {
+            commands.add(new String[]{"EXPIRE", key, ttl});
+        }
+    }
+
+    private List<Object> pipeline(List<String[]> commands) {
+        try {
+            return client.pipeline(commands);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to reach crawl state " + crawlKey + ": " + e.getMessage());
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String getVisitedKey(Direction direction) {
+        return Direction.FORWARDS.equals(direction) ? visitedForwardsKey : visitedBackwardsKey;
+    }
+
+    private String getQueueKey(Direction direction) {
+        return Direction.FORWARDS.equals(direction) ? toVisitForwardsKey : toVisitBackwardsKey;
+    }
+}
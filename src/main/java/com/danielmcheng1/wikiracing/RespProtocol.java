@@ -0,0 +1,137 @@
+package com.danielmcheng1.wikiracing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Redis serialization protocol (RESP 2), which RespClient speaks to Redis or to a RespServer. A command is an array
+ * of bulk strings; a reply is a simple string, an error, an integer, a bulk string (or null) or an array of replies.
+ * <p>
+ * Replies are read as String (simple and bulk strings), Long, List of replies, null, or an ErrorReply, which the caller
+ * decides whether to throw once it has read the rest of the replies in the pipeline.
+ */
+public class RespProtocol {
+    private static final byte[] crlf = {'\r', '\n'};
+
+    protected static void writeCommand(OutputStream out, String... args) throws IOException {
+        writeLine(out, '*', String.valueOf(args.length));
+        for (String arg : args) {
+            writeBulkString(out, arg);
+        }
+    }
+
+    // null as the null bulk string, a List as an array, a Number as an integer, and anything else as a bulk string
+    protected static void writeReply(OutputStream out, Object reply) throws IOException {
+        if (reply instanceof ErrorReply) {
+            writeLine(out, '-', ((ErrorReply) reply).getMessage());
+        } else if (reply instanceof Number) {
+            writeLine(out, ':', String.valueOf(((Number) reply).longValue()));
+        } else if (reply instanceof List) {
+            List<?> replies = (List<?>) reply;
+            writeLine(out, '*', String.valueOf(replies.size()));
+            for (Object element : replies) {
+                writeReply(out, element);
+            }
+        } else {
+            writeBulkString(out, reply == null ? null : reply.toString());
+        }
+    }
+
+    private static void writeBulkString(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeLine(out, '$', "-1");
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeLine(out, '$', String.valueOf(bytes.length));
+        out.write(bytes);
+        out.write(crlf);
+    }
+
+    private static void writeLine(OutputStream out, char type, String line) throws IOException {
+        out.write(type);
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write(crlf);
+    }
+
+    // the next reply, or command, on the stream (which should be buffered, since this reads a byte at a time)
+    protected static Object read(InputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            throw new IOException("Connection closed");
+        }
+        String line = readLine(in);
+        switch (type) {
+            case '+':
+                return line;
+            case '-':
+                return new ErrorReply(line);
+            case ':':
+                return Long.parseLong(line);
+            case '$': {
+                int length = Integer.parseInt(line);
+                if (length < 0) {
+                    return null;
+                }
+                byte[] bytes = new byte[length];
+                int numRead = 0;
+                while (numRead < length) {
+                    int n = in.read(bytes, numRead, length - numRead);
+                    if (n < 0) {
+                        throw new IOException("Connection closed");
+                    }
+                    numRead += n;
+                }
+                readLine(in);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            case '*': {
+                int length = Integer.parseInt(line);
+                if (length < 0) {
+                    return null;
+                }
+                List<Object> replies = new ArrayList<Object>(length);
+                for (int i = 0; i < length; i++) {
+                    replies.add(read(in));
+                }
+                return replies;
+            }
+            default:
+                throw new IOException("Unexpected RESP type " + (char) type);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connection closed");
+            }
+            if (b == '\r') {
+                in.read();
+                return line.toString();
+            }
+            line.append((char) b);
+        }
+    }
+
+    /**
+     * An error reply, e.g. to an unknown command or a command on a key of the wrong type
+     */
+    public static class ErrorReply {
+        private final String message;
+
+        public ErrorReply(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.danielmcheng1.wikiracing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-process stand-in for a Redis server, speaking the same protocol, for tests and benchmarks of the crawl state that
+ * RespCrawlerStateStore keeps on one. It knows only the commands the store sends, and keeps everything in memory; run a
+ * real Redis to share crawl state between machines.
+ */
+public class RespServer implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(RespServer.class.getName());
+
+    private final ServerSocket serverSocket;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    // values are a HashMap for a hash or an ArrayDeque for a list; every command holds the lock, as Redis runs one at a time
+    private final HashMap<String, Object> data = new HashMap<String, Object>();
+    // when each key with a time to live expires, in ms since the epoch
+    private final HashMap<String, Long> expiries = new HashMap<String, Long>();
+    private final AtomicLong numCommands = new AtomicLong();
+    private volatile boolean closed;
+
+    // port 0 for any free port
+    public RespServer(int port) throws IOException {
+        serverSocket = new ServerSocket(port);
+        Thread acceptor = new Thread(this::acceptConnections, "resp-server-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String getAddress() {
+        return "localhost:" + getPort();
+    }
+
+    public long getNumCommands() {
+        return numCommands.get();
+    }
+
+    public int getNumKeys() {
+        synchronized (data) {
+            removeExpiredKeys();
+            return data.size();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+        for (Socket socket : connections) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                Thread server = new Thread(() -> serve(socket), "resp-server-connection");
+                server.setDaemon(true);
+                server.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.log(Level.WARNING, "Failed to accept state server connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            while (true) {
+                Object command = RespProtocol.read(in);
+                if (!(command instanceof List) || ((List<?>) command).isEmpty()) {
+                    RespProtocol.writeReply(out, new RespProtocol.ErrorReply("ERR expected a command"));
+                } else {
+                    List<?> args = (List<?>) command;
+                    String[] strings = new String[args.size()];
+                    for (int i = 0; i < strings.length; i++) {
+                        strings[i] = String.valueOf(args.get(i));
+                    }
+                    numCommands.incrementAndGet();
+                    Object reply;
+                    synchronized (data) {
+                        reply = execute(strings);
+                    }
+                    RespProtocol.writeReply(out, reply);
+                }
+                // a pipelining client has written its next commands already, so reply to them all at once
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // the client hung up
+        } finally {
+            connections.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+    }
+
+    /******************************************/
+    // METHODS FOR RUNNING COMMANDS
+    /******************************************/
+    private Object execute(String[] args) {
+        String name = args[0].toUpperCase();
+        removeExpiredKeys();
+        try {
+            switch (name) {
+                case "PING":
+                    return "PONG";
+                case "DEL": {
+                    long numDeleted = 0;
+                    for (int i = 1; i < args.length; i++) {
+                        expiries.remove(args[i]);
+                        if (data.remove(args[i]) != null) {
+                            numDeleted++;
+                        }
+                    }
+                    return numDeleted;
+                }
+                case "HSETNX": {
+                    checkArgs(args, 4);
+                    return getHash(args[1], true).putIfAbsent(args[2], args[3]) == null ? 1L : 0L;
+                }
+                case "HGET": {
+                    checkArgs(args, 3);
+                    HashMap<String, String> hash = getHash(args[1], false);
+                    return hash == null ? null : hash.get(args[2]);
+                }
+                case "HMGET": {
+                    HashMap<String, String> hash = getHash(args[1], false);
+                    List<Object> values = new ArrayList<Object>(args.length - 2);
+                    for (int i = 2; i < args.length; i++) {
+                        values.add(hash == null ? null : hash.get(args[i]));
+                    }
+                    return values;
+                }
+                case "HLEN": {
+                    checkArgs(args, 2);
+                    HashMap<String, String> hash = getHash(args[1], false);
+                    return hash == null ? 0L : (long) hash.size();
+                }
+                case "RPUSH": {
+                    ArrayDeque<String> list = getList(args[1], true);
+                    list.addAll(Arrays.asList(args).subList(2, args.length));
+                    return (long) list.size();
+                }
+                case "LPOP": {
+                    ArrayDeque<String> list = getList(args[1], false);
+                    if (args.length == 2) {
+                        return list == null ? null : list.pollFirst();
+                    }
+                    // with a count, as from Redis 6.2: an array of up to count elements, or null if the list is empty
+                    if (list == null) {
+                        return null;
+                    }
+                    int count = Integer.parseInt(args[2]);
+                    List<Object> popped = new ArrayList<Object>(Math.min(count, list.size()));
+                    while (popped.size() < count && !list.isEmpty()) {
+                        popped.add(list.pollFirst());
+                    }
+                    return popped;
+                }
+                case "LLEN": {
+                    checkArgs(args, 2);
+                    ArrayDeque<String> list = getList(args[1], false);
+                    return list == null ? 0L : (long) list.size();
+                }
+                case "LINDEX": {
+                    checkArgs(args, 3);
+                    ArrayDeque<String> list = getList(args[1], false);
+                    int index = Integer.parseInt(args[2]);
+                    if (list == null || index < 0 || index >= list.size()) {
+                        return null;
+                    }
+                    // the store only ever peeks at the head of a list, so other indexes need not be fast
+                    return index == 0 ? list.peekFirst() : new ArrayList<String>(list).get(index);
+                }
+                case "EXPIRE": {
+                    checkArgs(args, 3);
+                    if (!data.containsKey(args[1])) {
+                        return 0L;
+                    }
+                    expiries.put(args[1], System.currentTimeMillis() + Long.parseLong(args[2]) * 1000);
+                    return 1L;
+                }
+                case "TTL": {
+                    checkArgs(args, 2);
+                    if (!data.containsKey(args[1])) {
+                        return -2L;
+                    }
+                    Long expiry = expiries.get(args[1]);
+                    return expiry == null ? -1L : (expiry - System.currentTimeMillis() + 999) / 1000;
+                }
+                default:
+                    return new RespProtocol.ErrorReply("ERR unknown command '" + args[0] + "'");
+            }
+        } catch (ClassCastException e) {
+            return new RespProtocol.ErrorReply("WRONGTYPE Operation against a key holding the wrong kind of value");
+        } catch (IllegalArgumentException e) {
+            return new RespProtocol.ErrorReply("ERR " + e.getMessage());
+        }
+    }
+
+    // Redis expires keys as they are looked up and in the background; here, before every command
+    private void removeExpiredKeys() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, Long>> it = expiries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> expiry = it.next();
+            if (expiry.getValue() <= now) {
+                data.remove(expiry.getKey());
+                it.remove();
+            }
+        }
+    }
+
+    private static void checkArgs(String[] args, int numArgs) {
+        if (args.length != numArgs) {
+            throw new IllegalArgumentException("wrong number of arguments for '" + args[0] + "' command");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private HashMap<String, String> getHash(String key, boolean create) {
+        HashMap<String, String> hash = (HashMap<String, String>) data.get(key);
+        if (hash == null && create) {
+            hash = new HashMap<String, String>();
+            data.put(key, hash);
+        }
+        return hash;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArrayDeque<String> getList(String key, boolean create) {
+        ArrayDeque<String> list = (ArrayDeque<String>) data.get(key);
+        if (list == null && create) {
+            list = new ArrayDeque<String>();
+            data.put(key, list);
+        }
+        // Redis deletes a list once it is empty
+        if (list != null && list.isEmpty() && !create) {
+            data.remove(key);
+            expiries.remove(key);
+            return null;
+        }
+        return list;
+    }
+}
@@ -0,0 +1,75 @@
+package com.danielmcheng1.wikiracing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shared record of the titles we know exist on Wikipedia and the ones we know do not, learned from the crawls' own
+ * requests: the first batch of each direction holds the source or destination, and the API marks a title that does
+ * not exist as missing or invalid. A race from or to a title known to be missing fails straight away, without
+ * calling the API.
+ * <p>
+ * Missing titles are forgotten after missingTtlMillis, since pages get created; existing ones are kept until they are
+ * evicted, or the ChangeLogUpdater sees them deleted. The least recently used titles are evicted past maxTitles.
+ */
+public class TitleCache {
+    public static final int defaultMaxTitles = 100000;
+    public static final long defaultMissingTtlMillis = 60 * 60 * 1000;
+    // stands in for the expiry of titles that exist, which never expire
+    private static final long valid = Long.MAX_VALUE;
+
+    private static TitleCache shared = new TitleCache(defaultMaxTitles, defaultMissingTtlMillis);
+
+    private final long missingTtlMillis;
+    // expiry of each title we know is missing, or valid for one we know exists
+    private final LinkedHashMap<String, Long> expiries;
+
+    public TitleCache(int maxTitles, long missingTtlMillis) {
+        this.missingTtlMillis = missingTtlMillis;
+        this.expiries = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxTitles;
+            }
+        };
+    }
+
+    public static TitleCache getShared() {
+        return shared;
+    }
+
+    // replace the JVM-wide cache, or null to look every title up
+    public static void setShared(TitleCache titleCache) {
+        shared = titleCache;
+    }
+
+    // true if the title exists, false if it is missing, or null if we do not know
+    public synchronized Boolean isValid(String title) {
+        Long expiry = expiries.get(title);
+        if (expiry == null) {
+            return null;
+        }
+        if (expiry == valid) {
+            return true;
+        }
+        if (expiry < System.currentTimeMillis()) {
+            expiries.remove(title);
+            return null;
+        }
+        return false;
+    }
+
+    public synchronized void markValid(String title) {
+        expiries.put(title, valid);
+    }
+
+    public synchronized void markMissing(String title) {
+        expiries.put(title, System.currentTimeMillis() + missingTtlMillis);
+    }
+
+    public synchronized int getNumTitles() {
+        return expiries.size();
+    }
+}
@@ -0,0 +1,285 @@
+package com.danielmcheng1.wikiracing;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A map from titles to lists of titles (a page's links, or the one title a redirect points to) in a file that is
+ * memory-mapped and looked up in place, so that opening one costs the same however large it is and only the pages a
+ * crawl asks for are ever read from disk. The WarmStart snapshots of the link cache, redirects and path store are
+ * written in this format.
+ * <p>
+ * File layout, header integers big-endian:
+ * <pre>
+ *   header: int magic, int version, int numTitles, int unused, long titleBytesLength, long valuesLength
+ *   titles: int offset per title plus one, then the UTF-8 title bytes, sorted by title bytes for looking titles up
+ *   values: int offset per title plus one, then each title's list: varint count, then per title in it
+ *           varint length and the UTF-8 bytes
+ *   ranks:  int index per title, in the order the map written listed them (version 2 on)
+ * </pre>
+ * Version 1 files, which have no ranks, list their titles in index order.
+ */
+public class TitleListFile {
+    protected static final int magic = 0x5752544c; // "WRTL"
+    protected static final int version = 2;
+    protected static final int headerLength = 32;
+
+    private final String fileName;
+    private final int numTitles;
+    private final long numBytes;
+    private final MappedByteBuffer titleOffsets;
+    private final MappedByteBuffer titleBytes;
+    private final MappedByteBuffer valueOffsets;
+    private final MappedByteBuffer values;
+    private final MappedByteBuffer ranks;
+
+    public TitleListFile(String fileName) throws IOException {
+        this.fileName = fileName;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (channel.size() < headerLength) {
+                throw new IOException("Not a title list file: " + fileName);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerLength);
+            int fileVersion = header.getInt(0) == magic ? header.getInt(4) : -1;
+            if (fileVersion != 1 && fileVersion != version) {
+                throw new IOException("Not a title list file: " + fileName);
+            }
+            header.position(8);
+            this.numTitles = header.getInt();
+            header.getInt(); // unused
+            long titleBytesLength = header.getLong();
+            long valuesLength = header.getLong();
+            long position = headerLength;
+            this.titleOffsets = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * (numTitles + 1));
+            position += titleOffsets.capacity();
+            this.titleBytes = channel.map(FileChannel.MapMode.READ_ONLY, position, titleBytesLength);
+            position += titleBytesLength;
+            this.valueOffsets = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * (numTitles + 1));
+            position += valueOffsets.capacity();
+            this.values = channel.map(FileChannel.MapMode.READ_ONLY, position, valuesLength);
+            position += valuesLength;
+            this.ranks = fileVersion == 1 ? null : channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * numTitles);
+            position += ranks == null ? 0 : ranks.capacity();
+            if (position != channel.size()) {
+                throw new IOException("Title list file is truncated or corrupt: " + fileName);
+            }
+            this.numBytes = position;
+        }
+    }
+
+    /******************************************/
+    // METHODS FOR LOOKING UP TITLES
+    /******************************************/
+    public int getNumTitles() {
+        return numTitles;
+    }
+
+    public long getNumBytes() {
+        return numBytes;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    // the title's list, or null if the file has none for it
+    public String[] get(String title) {
+        int index = indexOf(title);
+        return index < 0 ? null : getValues(index);
+    }
+
+    public boolean contains(String title) {
+        return indexOf(title) >= 0;
+    }
+
+    // binary search of the titles; returns -1 if the title is not in the file
+    public int indexOf(String title) {
+        byte[] key = title.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = numTitles - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareTitle(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // the titles in index order, for reading the whole file back
+    public String getTitle(int index) {
+        int start = titleOffsets.getInt(4 * index);
+        return decode(titleBytes, start, titleOffsets.getInt(4 * (index + 1)) - start);
+    }
+
+    // the index of the title the map written listed rank-th, e.g. in order of recency for the link cache's pages
+    public int getIndexByRank(int rank) {
+        return ranks == null ? rank : ranks.getInt(4 * rank);
+    }
+
+    public String[] getValues(int index) {
+        int[] position = {valueOffsets.getInt(4 * index)};
+        String[] list = new String[readVarint(values, position)];
+        for (int i = 0; i < list.length; i++) {
+            int length = readVarint(values, position);
+            list[i] = decode(values, position[0], length);
+            position[0] += length;
+        }
+        return list;
+    }
+
+    private int compareTitle(int index, byte[] key) {
+        int start = titleOffsets.getInt(4 * index);
+        int length = titleOffsets.getInt(4 * (index + 1)) - start;
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int cmp = (titleBytes.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    // absolute reads only, so that any number of threads can look titles up at once
+    private static String decode(MappedByteBuffer buffer, int start, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarint(MappedByteBuffer buffer, int[] position) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get(position[0]++);
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /******************************************/
+    // METHODS FOR WRITING THE FILE
+    /******************************************/
+    /**
+     * Write the lists into fileName, keeping the order the map lists them in as well (see getIndexByRank). The file is
+     * written alongside and then moved into place, so anything still reading a file mapped from the old one, e.g. the
+     * snapshot being replaced, is unaffected.
+     */
+    public static void write(Map<String, String[]> lists, String fileName) throws IOException {
+        final byte[][] titles = new byte[lists.size()][];
+        String[][] titleLists = new String[lists.size()][];
+        int numTitles = 0;
+        for (Map.Entry<String, String[]> entry : lists.entrySet()) {
+            titles[numTitles] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            titleLists[numTitles++] = entry.getValue();
+        }
+        Integer[] order = new Integer[numTitles];
+        for (int i = 0; i < numTitles; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compareBytes(titles[a], titles[b]));
+
+        File target = new File(fileName).getAbsoluteFile();
+        File temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+        long titleBytesLength = 0;
+        long valuesLength = 0;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+                out.write(new byte[headerLength]);
+                out.writeInt(0);
+                for (int i : order) {
+                    titleBytesLength += titles[i].length;
+                    if (titleBytesLength > Integer.MAX_VALUE) {
+                        throw new IOException("Titles too large for a title list file");
+                    }
+                    out.writeInt((int) titleBytesLength);
+                }
+                for (int i : order) {
+                    out.write(titles[i]);
+                }
+                // each list is encoded once to learn its length, then written after all the offsets
+                byte[][] encoded = new byte[numTitles][];
+                out.writeInt(0);
+                for (int i = 0; i < numTitles; i++) {
+                    encoded[i] = encode(titleLists[order[i]]);
+                    valuesLength += encoded[i].length;
+                    if (valuesLength > Integer.MAX_VALUE) {
+                        throw new IOException("Lists too large for a title list file");
+                    }
+                    out.writeInt((int) valuesLength);
+                }
+                for (byte[] list : encoded) {
+                    out.write(list);
+                }
+                int[] indexes = new int[numTitles];
+                for (int i = 0; i < numTitles; i++) {
+                    indexes[order[i]] = i;
+                }
+                for (int index : indexes) {
+                    out.writeInt(index);
+                }
+            }
+            // the header comes last, once the lengths are known
+            ByteBuffer header = ByteBuffer.allocate(headerLength);
+            header.putInt(magic).putInt(version).putInt(numTitles).putInt(0).putLong(titleBytesLength).putLong(valuesLength);
+            header.flip();
+            try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                channel.write(header, 0);
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private static byte[] encode(String[] list) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeVarint(bytes, list.length);
+        for (String title : list) {
+            byte[] titleBytes = title.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes, titleBytes.length);
+            bytes.write(titleBytes, 0, titleBytes.length);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+}
@@ -0,0 +1,46 @@
+package com.danielmcheng1.wikiracing;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Scores a page by the share of the target title's words that also appear in its own title, so that a crawl towards
+ * "History of France" tries "France" and "French Revolution" before "Potato". Common words are ignored.
+ */
+public class TitleOverlapScorer implements NodeScorer {
+    public static final String name = "title";
+
+    private static final Set<String> stopWords = new HashSet<String>(Arrays.asList(
+            "a", "an", "and", "at", "by", "de", "for", "from", "in", "of", "on", "or", "the", "to", "with"));
+
+    public double score(WebNode wN, String targetTitle) {
+        Set<String> targetTokens = tokenize(targetTitle);
+        if (targetTokens.isEmpty()) {
+            return 0;
+        }
+        int shared = 0;
+        for (String token : tokenize(wN.getTitle())) {
+            if (targetTokens.contains(token)) {
+                shared++;
+            }
+        }
+        return (double) shared / targetTokens.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // lower-cased words of a title, with disambiguation brackets and punctuation treated as spaces
+    protected static Set<String> tokenize(String title) {
+        HashSet<String> tokens = new HashSet<String>();
+        for (String token : title.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty() && !stopWords.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,255 @@
+package com.danielmcheng1.wikiracing;
+
+import okhttp3.HttpUrl;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Read side of a recorded archive of Wiki API traffic (see RecordingTransport for the write side). Each record holds
+ * one request URL, the latency we observed for it, and its raw response body deflate-compressed, so a replay serves
+ * exactly the bytes the live API returned. Records are located through an index at the end of the file, so opening an
+ * archive only reads the index and each lookup reads just its own record. The file is memory-mapped rather than read
+ * through a FileChannel, since an interrupt during a channel read (e.g. a crawler thread cancelled at the end of a
+ * crawl) would close the channel for every other thread.
+ * <p>
+ * File layout, all integers big-endian:
+ * <pre>
+ *   header:  int magic, int version
+ *   record:  int keyLength, key (UTF-8), int latencyMicros, int rawLength, int compressedLength, compressed body
+ *   index:   int numRecords, then per record: int keyLength, key (UTF-8), long recordOffset
+ *   trailer: long indexOffset, int magic
+ * </pre>
+ * If the recording JVM died before writing the index, the records are scanned instead.
+ */
+public class TrafficArchive implements Closeable {
+    protected static final int magic = 0x57525441; // "WRTA"
+    protected static final int version = 1;
+    protected static final int headerLength = 8;
+    protected static final int trailerLength = 12;
+
+    private static final Logger LOGGER = Logger.getLogger(TrafficArchive.class.getName());
+
+    private final MappedByteBuffer buffer;
+    private final LinkedHashMap<String, Long> index;
+
+    public TrafficArchive(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Traffic archive is too large to map, record it in smaller pieces: " + fileName);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer header = readFully(0, headerLength);
+        if (header.getInt() != magic || header.getInt() != version) {
+            throw new IOException("Not a wikiracer traffic archive: " + fileName);
+        }
+        LinkedHashMap<String, Long> indexFromTrailer = readIndex();
+        if (indexFromTrailer == null) {
+            LOGGER.log(Level.WARNING, "Traffic archive " + fileName + " has no index (recording did not finish), scanning its records");
+            indexFromTrailer = scanRecords();
+        }
+        this.index = indexFromTrailer;
+    }
+
+    /**
+     * The key we record and look up each request under. The crawler joins the titles of a batch in whatever order they
+     * came off the queue, but the API answers the same set of titles the same way, so we sort them.
+     */
+    public static String getKey(HttpUrl url) {
+        String titles = url.queryParameter("titles");
+        if (titles == null) {
+            return url.toString();
+        }
+        String[] sorted = titles.split("\\|");
+        Arrays.sort(sorted);
+        return url.newBuilder().setQueryParameter("titles", String.join("|", sorted)).build().toString();
+    }
+
+    /******************************************/
+    // METHODS FOR READING RECORDS
+    /******************************************/
+    // returns null if nothing was recorded under this key
+    public Record get(String key) throws IOException {
+        Long offset = index.get(key);
+        if (offset == null) {
+            return null;
+        }
+        return readRecord(offset);
+    }
+
+    public Set<String> getKeys() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    public int getNumRecords() {
+        return index.size();
+    }
+
+    private Record readRecord(long offset) throws IOException {
+        int keyLength = readFully(offset, 4).getInt();
+        ByteBuffer recordHeader = readFully(offset + 4 + keyLength, 12);
+        int latencyMicros = recordHeader.getInt();
+        int rawLength = recordHeader.getInt();
+        int compressedLength = recordHeader.getInt();
+        ByteBuffer compressed = readFully(offset + 16 + keyLength, compressedLength);
+        return new Record(latencyMicros, inflate(compressed.array(), rawLength));
+    }
+
+    private LinkedHashMap<String, Long> readIndex() throws IOException {
+        long size = buffer.capacity();
+        if (size < headerLength + trailerLength) {
+            return null;
+        }
+        ByteBuffer trailer = readFully(size - trailerLength, trailerLength);
+        long indexOffset = trailer.getLong();
+        if (trailer.getInt() != magic || indexOffset < headerLength || indexOffset > size - trailerLength) {
+            return null;
+        }
+        ByteBuffer indexBytes = readFully(indexOffset, (int) (size - trailerLength - indexOffset));
+        int numRecords = indexBytes.getInt();
+        LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(numRecords * 2);
+        for (int i = 0; i < numRecords; i++) {
+            byte[] key = new byte[indexBytes.getInt()];
+            indexBytes.get(key);
+            entries.put(new String(key, StandardCharsets.UTF_8), indexBytes.getLong());
+        }
+        return entries;
+    }
+
+    // rebuild the index by walking every record, stopping at the first one that was only partly written
+    private LinkedHashMap<String, Long> scanRecords() throws IOException {
+        LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>();
+        long size = buffer.capacity();
+        long offset = headerLength;
+        while (offset + 16 <= size) {
+            int keyLength = readFully(offset, 4).getInt();
+            if (keyLength <= 0 || offset + 16 + keyLength > size) {
+                break;
+            }
+            byte[] key = readFully(offset + 4, keyLength).array();
+            ByteBuffer recordHeader = readFully(offset + 4 + keyLength, 12);
+            recordHeader.getInt();
+            recordHeader.getInt();
+            long next = offset + 16 + keyLength + recordHeader.getInt();
+            if (next > size) {
+                break;
+            }
+            entries.put(new String(key, StandardCharsets.UTF_8), offset);
+            offset = next;
+        }
+        return entries;
+    }
+
+    // copy out of a duplicate of the mapping, so that concurrent readers do not share a position
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        if (length < 0 || position + length > buffer.capacity()) {
+            throw new EOFException("Traffic archive truncated at offset " + position);
+        }
+        ByteBuffer mapped = buffer.duplicate();
+        mapped.position((int) position);
+        byte[] bytes = new byte[length];
+        mapped.get(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    // the mapping is released once the archive is garbage collected
+    public void close() {
+    }
+
+    /******************************************/
+    // METHODS FOR COMPRESSION
+    /******************************************/
+    protected static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            // responses are mostly repeated JSON keys, so they compress well below their raw size
+            byte[] buffer = new byte[Math.max(64, raw.length / 2)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    protected static byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength) {
+                throw new IOException("Corrupt traffic archive record: expected " + rawLength + " bytes but inflated " + length);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt traffic archive record: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * One recorded response and how long the live API took to return it
+     */
+    public static class Record {
+        private final int latencyMicros;
+        private final byte[] body;
+
+        public Record(int latencyMicros, byte[] body) {
+            this.latencyMicros = latencyMicros;
+            this.body = body;
+        }
+
+        public int getLatencyMicros() {
+            return latencyMicros;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+    // for debugging: print a summary of an archive, e.g. java ... TrafficArchive traffic.wra
+    public static void main(String[] args) throws IOException {
+        try (TrafficArchive archive = new TrafficArchive(args[0])) {
+            long rawBytes = 0;
+            for (String key : archive.getKeys()) {
+                rawBytes += archive.get(key).getBody().length;
+            }
+            System.out.println(archive.getNumRecords() + " records, " + rawBytes + " response bytes, "
+                    + archive.buffer.capacity() + " bytes on disk");
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package com.danielmcheng1.wikiracing;
 
-import com.google.gson.JsonObject;
-
 import java.util.logging.Level;
 
 /**
@@ -22,11 +20,8 @@ public class Util {
         return title.substring(0, 1).toUpperCase() + title.substring(1);
     }
 
-    public static void assertValidInputTitle(String title) {
-        JsonObject response = WikiRetriever.getWikiResponse(title, Direction.FORWARDS, null);
-        if (WikiRetriever.getMissingInvalidPages(response).size() != 0) {
-            throw new IllegalArgumentException("Input title of " + title + " does not exist on Wikipedia");
-        }
+    public static String getMissingTitleMessage(String title) {
+        return "Input title of " + title + " does not exist on Wikipedia";
     }
 
     public static String getThread() {
@@ -9,14 +9,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 
 /**
  * This class is used to visualize the path from source to destination title
  * To make the animation readable, up to 25 visited pages are shown going out from each start/destTile
  * Nodes are traced in BFS order, but order is not guaranteed within a given level
+ * (See LiveVisualizer for drawing a crawl while it runs)
  */
 public class Visualizer {
-    public static void visualize(ArrayList<String> path, HashMap<String, WebNode> visitedForwards, HashMap<String, WebNode> visitedBackwards) {
+    public static final String modeReplay = "replay";
+    public static final String modeLive = "live";
+    public static final String modeNone = "none";
+
+    public static void visualize(ArrayList<String> path, Map<String, WebNode> visitedForwards, Map<String, WebNode> visitedBackwards) {
         if (path == null) {
             System.out.println("Crawler must have found path in order to generate visualization");
             return;
@@ -42,6 +48,7 @@ public class Visualizer {
         markSourceNode(graph, sourceTitle);
         markDestNode(graph, destTitle);
         Viewer viewer = graph.display(true);
+        HashSet<String> pathTitles = new HashSet<String>(path);
 
         // animate in nodes in BFS order (i.e. in increasing order of distance from source/dest nodes
         Integer[] sortedDistances = visitedGroupedByDistance.keySet().toArray(new Integer[visitedGroupedByDistance.keySet().size()]);
@@ -53,7 +60,7 @@ public class Visualizer {
             HashSet<WebNode> webNodes = visitedGroupedByDistance.get(dist);
             for (WebNode currWebNode : webNodes) {
                 Direction direction = currWebNode.getDirection();
-                Boolean nodeOnPath = nodeOnPath(currWebNode, path);
+                Boolean nodeOnPath = pathTitles.contains(currWebNode.getTitle());
 
                 // only showing first level for this viz implementation, aside from the connecting path
                 if (dist > 1 && !nodeOnPath) {
@@ -94,7 +101,7 @@ public class Visualizer {
     }
 
     // utility method to group visited web nodes by distance from source and destination titles
-    private static synchronized void addToGroupByDistance(HashMap<String, WebNode> visitedNodes, HashMap<Integer, HashSet<WebNode>> visitedGroupedByDistance) {
+    private static synchronized void addToGroupByDistance(Map<String, WebNode> visitedNodes, HashMap<Integer, HashSet<WebNode>> visitedGroupedByDistance) {
         for (String title : visitedNodes.keySet()) {
             WebNode curr = visitedNodes.get(title);
             Integer dist = curr.getDistance();
@@ -106,7 +113,7 @@ public class Visualizer {
     }
 
     // CSS file per GraphStream's guidelines: http://graphstream-project.org/doc/Advanced-Concepts/GraphStream-CSS-Reference/
-    private static String generateStyleSheet() {
+    static String generateStyleSheet() {
         StringBuilder sB = new StringBuilder();
         sB.append("node { fill-color: grey; size: 0px; text-background-mode: plain; text-background-color: purple;}"); // stroke-mode: plain; stroke-color: black; stroke-width: 1px;}");
         sB.append("node.sourceTitle {fill-color: red; size: 15px; text-size: 13; text-style: bold;}");
@@ -126,19 +133,15 @@ public class Visualizer {
         }
     }
 
-    private static boolean nodeOnPath(WebNode node, ArrayList<String> path) {
-        return path.contains(node.getTitle());
-    }
-
-    private static void markSourceNode(MultiGraph graph, String sourceTitle) {
+    static void markSourceNode(MultiGraph graph, String sourceTitle) {
         markSpecialNode(graph, sourceTitle, "sourceTitle");
     }
 
-    private static void markDestNode(MultiGraph graph, String destTitle) {
+    static void markDestNode(MultiGraph graph, String destTitle) {
         markSpecialNode(graph, destTitle, "destTitle");
     }
 
-    private static void markConnectingNode(MultiGraph graph, String connectingTitle) {
+    static void markConnectingNode(MultiGraph graph, String connectingTitle) {
         markSpecialNode(graph, connectingTitle, "connectingTitle");
     }
 
@@ -164,7 +167,7 @@ public class Visualizer {
         return e;
     }
 
-    private static void addLabelForNode(Node node) {
+    static void addLabelForNode(Node node) {
         node.addAttribute("ui.label", node.getId());
     }
 }
\ No newline at end of file
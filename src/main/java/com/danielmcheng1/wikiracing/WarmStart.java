@@ -0,0 +1,82 @@
+package com.danielmcheng1.wikiracing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Snapshots of what a crawler has learned, kept in a directory across restarts so that a new JVM does not have to
+ * fetch it all again: the LinkCache's links in each direction, its redirects, and the PathStore's paths. They are
+ * written when the JVM shuts down and mapped back when it starts, which costs milliseconds however large they are, as
+ * nothing is read until a crawl looks a page up (see TitleListFile).
+ * <p>
+ * Each snapshot carries over the pages of the one before it that the run never looked up, so a page fetched once
+ * stays known across any number of restarts until the cache's budget pushes it out.
+ */
+public class WarmStart {
+    public static final String linksForwardsFileName = "links-forwards.wrtl";
+    public static final String linksBackwardsFileName = "links-backwards.wrtl";
+    public static final String redirectsFileName = "redirects.wrtl";
+    public static final String pathsFileName = "paths.wrtl";
+
+    private static final Logger LOGGER = Logger.getLogger(WarmStart.class.getName());
+
+    /******************************************/
+    // METHODS FOR RESTORING AT STARTUP
+    /******************************************/
+    // map the snapshots in dirName under the cache and the store, skipping any not written yet; returns the pages mapped
+    public static int restore(String dirName, LinkCache linkCache, PathStore pathStore) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        TitleListFile forwards = open(dirName, linksForwardsFileName);
+        TitleListFile backwards = open(dirName, linksBackwardsFileName);
+        TitleListFile redirects = open(dirName, redirectsFileName);
+        TitleListFile paths = open(dirName, pathsFileName);
+        linkCache.setSnapshot(forwards, backwards, redirects);
+        if (paths != null) {
+            pathStore.setSnapshot(paths);
+        }
+        int numPages = getNumTitles(forwards) + getNumTitles(backwards);
+        LOGGER.log(Level.INFO, "Mapped warm start snapshots of " + numPages + " pages, " + getNumTitles(redirects) + " redirects and "
+                + getNumTitles(paths) + " path store paths from " + dirName + " in " + (System.currentTimeMillis() - startMillis) + "ms");
+        return numPages;
+    }
+
+    private static TitleListFile open(String dirName, String fileName) throws IOException {
+        File file = new File(dirName, fileName);
+        return file.exists() ? new TitleListFile(file.getPath()) : null;
+    }
+
+    private static int getNumTitles(TitleListFile snapshot) {
+        return snapshot == null ? 0 : snapshot.getNumTitles();
+    }
+
+    /******************************************/
+    // METHODS FOR SAVING AT SHUTDOWN
+    /******************************************/
+    public static void save(String dirName, LinkCache linkCache, PathStore pathStore) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        File dir = new File(dirName);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create warm start directory " + dirName);
+        }
+        // pages carried over from the earlier run get what the cache's own pages leave of its budget, half each way
+        long spareLinks = Math.max(0, linkCache.getMaxLinks() - linkCache.getNumLinks()) / 2;
+        TitleListFile.write(linkCache.getLinksToSave(Direction.FORWARDS, spareLinks), new File(dir, linksForwardsFileName).getPath());
+        TitleListFile.write(linkCache.getLinksToSave(Direction.BACKWARDS, spareLinks), new File(dir, linksBackwardsFileName).getPath());
+        TitleListFile.write(linkCache.getRedirectsToSave(), new File(dir, redirectsFileName).getPath());
+        TitleListFile.write(pathStore.getPathsToSave(), new File(dir, pathsFileName).getPath());
+        LOGGER.log(Level.INFO, "Saved warm start snapshots to " + dirName + " in " + (System.currentTimeMillis() - startMillis) + "ms");
+    }
+
+    // save the JVM-wide cache and store, as they are then, when the JVM shuts down
+    public static void saveOnShutdown(String dirName) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                save(dirName, LinkCache.getShared(), PathStore.getShared());
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to save warm start snapshots to " + dirName + ": " + e.getMessage());
+            }
+        }, "warm-start-save"));
+    }
+}
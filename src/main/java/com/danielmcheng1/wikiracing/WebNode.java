@@ -1,5 +1,8 @@
 package com.danielmcheng1.wikiracing;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Data structure for a link
@@ -9,6 +12,11 @@ public class WebNode {
     private WebNode parent;
     private Direction direction;
     private int distance;
+    // order of this node in a prioritized frontier, lowest first
+    private double priority;
+    // further parents reaching this node at the same distance, kept by crawls that return several paths (null until
+    // the first one, so single-path crawls pay nothing for them)
+    private volatile WebNode[] otherParents;
 
     public WebNode(String title, WebNode parent, Direction direction, int distance) {
         this.title = title;
@@ -25,6 +33,39 @@ public class WebNode {
         return this.parent;
     }
 
+    // the parent this node was discovered from, followed by any other parents at the same distance
+    public List<WebNode> getParents() {
+        ArrayList<WebNode> parents = new ArrayList<WebNode>();
+        if (parent != null) {
+            parents.add(parent);
+        }
+        WebNode[] others = otherParents;
+        if (others != null) {
+            parents.addAll(Arrays.asList(others));
+        }
+        return parents;
+    }
+
+    // returns false if the node already has maxParents parents (or this one)
+    public synchronized boolean addParent(WebNode otherParent, int maxParents) {
+        if (otherParent == parent) {
+            return false;
+        }
+        WebNode[] others = otherParents == null ? new WebNode[0] : otherParents;
+        if (others.length + 1 >= maxParents) {
+            return false;
+        }
+        for (WebNode other : others) {
+            if (other == otherParent) {
+                return false;
+            }
+        }
+        WebNode[] grown = Arrays.copyOf(others, others.length + 1);
+        grown[others.length] = otherParent;
+        otherParents = grown;
+        return true;
+    }
+
     public Direction getDirection() {
         return this.direction;
     }
@@ -33,6 +74,14 @@ public class WebNode {
         return this.distance;
     }
 
+    public double getPriority() {
+        return this.priority;
+    }
+
+    public void setPriority(double priority) {
+        this.priority = priority;
+    }
+
     public String toString() {
         String parentTitle = parent == null ? "NULL" : parent.getTitle(); // source and dest nodes will not have a parent
         return "{title: " + title + ", direction: " + direction + ", parentTitle: " + parentTitle + ", distance: " + distance + "}";
@@ -0,0 +1,33 @@
+package com.danielmcheng1.wikiracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one call to the Wiki API, emitted by WikiRetriever.getResponse. The event duration is the
+ * latency of the call, including reading the response body.
+ */
+@Name("com.danielmcheng1.wikiracing.WikiFetch")
+@Label("Wiki Fetch")
+@Category("Wikiracer")
+@Description("One request to the MediaWiki API")
+@StackTrace(false)
+@Registered(false)
+public class WikiFetchEvent extends Event {
+    @Label("URL Length")
+    @Description("Characters in the request URL, which grows with the number of titles in the batch")
+    int urlLength;
+
+    @Label("Response Size")
+    @DataAmount
+    long responseBytes;
+
+    @Label("Succeeded")
+    boolean succeeded;
+}
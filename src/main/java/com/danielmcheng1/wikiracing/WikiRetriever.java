@@ -2,12 +2,17 @@ package com.danielmcheng1.wikiracing;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,8 +24,26 @@ public class WikiRetriever {
     private static final String wikiNamespaces = "0|14|100";
     private static final String wikiUserAgent = "wikiracer/1.0 (dcheng21@uchicago.edu)";
     private static final Logger LOGGER = Logger.getLogger(WikiRetriever.class.getName());
-    // Avoid creating several instances, should be singleton
-    public static final OkHttpClient client = new OkHttpClient();
+    /**
+     * The client WikiRetriever starts out with, which setClient may since have replaced.
+     *
+     * @deprecated use getClient(), which returns the client requests are actually sent through
+     */
+    @Deprecated
+    public static final OkHttpClient client = OkHttpTransport.newClientBuilder(OkHttpTransport.defaultMaxFetchesPerHost).build();
+    // Avoid creating several instances, should be singleton; every crawl in the JVM shares its connections
+    private static volatile OkHttpClient currentClient = client;
+    private static final Gson gson = new Gson();
+    private static volatile WikiTransport transport = new OkHttpTransport(currentClient);
+    // running total of response bytes read by each thread, so callers can attribute bytes to their own batch
+    private static final ThreadLocal<long[]> bytesReadOnThread = ThreadLocal.withInitial(() -> new long[1]);
+    // the links of every (title, direction) some batch is fetching right now, so that other batches, of this crawl or
+    // any other, wait for them instead of fetching them again
+    private static final ConcurrentHashMap<String, CompletableFuture<String[]>> inFlightFetches = new ConcurrentHashMap<String, CompletableFuture<String[]>>();
+
+    static {
+        FlightRecorderEvents.register();
+    }
 
     // based on input list of titles, build the WikiAPI URL and request a response
     public static JsonObject getWikiResponse(String titles, Direction direction, JsonObject continueParams) {
@@ -44,6 +67,27 @@ public class WikiRetriever {
         return missingInvalid;
     }
 
+    // the API normalizes titles before looking them up (e.g. "apple_pie" becomes "Apple pie") and reports each mapping
+    // https://www.mediawiki.org/wiki/API:Query#Title_normalization
+    public static HashMap<String, String> getNormalizedTitles(JsonObject response) {
+        HashMap<String, String> normalized = new HashMap<String, String>();
+        if (response == null || !response.has("query")) {
+            return normalized;
+        }
+        JsonObject query = response.getAsJsonObject("query");
+        for (String key : new String[]{"normalized", "redirects"}) {
+            JsonArray mappings = query.getAsJsonArray(key);
+            if (mappings == null) {
+                continue;
+            }
+            for (JsonElement mapping : mappings) {
+                JsonObject fromTo = mapping.getAsJsonObject();
+                normalized.put(fromTo.get("from").getAsString(), fromTo.get("to").getAsString());
+            }
+        }
+        return normalized;
+    }
+
     /*
     WikiMedia API returns up to 500 results at a time
     Continue key allows user to pick back up at the last result
@@ -58,7 +102,9 @@ public class WikiRetriever {
             return null;
         }
         JsonObject continueJson = response.getAsJsonObject("continue");
-        LOGGER.log(Level.INFO, getThread() + "Continue: " + continueJson);
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.log(Level.INFO, getThread() + "Continue: " + continueJson);
+        }
         return continueJson;
     }
 
@@ -87,31 +133,143 @@ public class WikiRetriever {
                 urlBuilder.addQueryParameter(key, continueParams.get(key).getAsString());
             }
         }
-        LOGGER.log(Level.INFO, getThread() + "Constructed wikiURL: " + urlBuilder.build());
-        return urlBuilder.build();
+        HttpUrl wikiURL = urlBuilder.build();
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.log(Level.INFO, getThread() + "Constructed wikiURL: " + wikiURL);
+        }
+        return wikiURL;
     }
 
-    // general method for requesting response using OkHTTP library
+    // general method for requesting a response from whichever transport is configured (the live API by default)
     private static JsonObject getResponse(HttpUrl url, String userAgent) {
-        Request request = new Request.Builder()
-                .header("User-Agent", userAgent)
-                .url(url)
-                .build();
+        WikiFetchEvent event = new WikiFetchEvent();
+        event.begin();
         try {
             long before = System.currentTimeMillis();
-            Response response = client.newCall(request).execute();
+            byte[] responseBytes = transport.fetch(url, userAgent);
             long after = System.currentTimeMillis();
             long delta = after - before;
-            LOGGER.log(Level.INFO, getThread() + "Delta for getResponse: " + delta);
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.log(Level.INFO, getThread() + "Delta for getResponse: " + delta);
+            }
+            Metrics.apiLatencyMillis.record(delta);
+            Metrics.apiResponseBytes.record(responseBytes.length);
+            bytesReadOnThread.get()[0] += responseBytes.length;
+            event.responseBytes = responseBytes.length;
 
-            String jsonStringResponse = response.body().string();
-            LOGGER.log(Level.INFO, getThread() + "Response body: " + jsonStringResponse);
-            return new Gson().fromJson(jsonStringResponse, JsonObject.class);
+            JsonObject json = parseResponse(responseBytes);
+            event.succeeded = json != null;
+            return json;
         } catch (Exception e) {
             // Crawler class will back-off then attempt to call this again
-            LOGGER.log(Level.INFO, getThread() + "Exception in getResponse: " + e.getMessage());
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.log(Level.INFO, getThread() + "Exception in getResponse: " + e.getMessage());
+            }
+            Metrics.apiErrors.increment();
             return null;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.urlLength = url.toString().length();
+                event.commit();
+            }
+        }
+    }
+
+    protected static JsonObject parseResponse(byte[] responseBytes) {
+        String jsonStringResponse = new String(responseBytes, StandardCharsets.UTF_8);
+        // response bodies run to hundreds of KB, so only build the log message if it will actually be logged
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.log(Level.INFO, getThread() + "Response body: " + jsonStringResponse);
+        }
+        return gson.fromJson(jsonStringResponse, JsonObject.class);
+    }
+
+    /******************************************/
+    // METHODS FOR SHARING IN-FLIGHT FETCHES
+    /******************************************/
+    // stands in for the links of a page that does not exist, compared by identity
+    public static final String[] missingPage = new String[0];
+
+    /**
+     * Returns null if no batch is fetching the title's links in this direction, in which case the caller now is and
+     * must finish with completeFetch or abandonFetch. Otherwise returns the links the other batch will complete with,
+     * or null if it gives up, in which case the caller should claim the title again: one waiting batch gets the claim
+     * and the rest wait on it. A title the Wiki API says does not exist completes with missingPage.
+     */
+    public static CompletableFuture<String[]> claimFetch(String title, Direction direction) {
+        CompletableFuture<String[]> pending = inFlightFetches.putIfAbsent(getFetchKey(title, direction), new CompletableFuture<String[]>());
+        if (pending != null) {
+            Metrics.suppressedFetches.increment();
         }
+        return pending;
+    }
+
+    // hand the complete set of links for a claimed title to every batch waiting on it
+    public static void completeFetch(String title, Direction direction, String[] links) {
+        CompletableFuture<String[]> claim = inFlightFetches.remove(getFetchKey(title, direction));
+        if (claim != null) {
+            claim.complete(links);
+        }
+    }
+
+    // only when the links are not all known, e.g. because the crawl ended between continues or the Wiki API failed
+    public static void abandonFetch(String title, Direction direction) {
+        completeFetch(title, direction, null);
+    }
+
+    public static int getNumInFlightFetches() {
+        return inFlightFetches.size();
+    }
+
+    private static String getFetchKey(String title, Direction direction) {
+        return direction + "|" + title;
+    }
+
+    public static WikiTransport getTransport() {
+        return transport;
+    }
+
+    public static OkHttpClient getClient() {
+        return currentClient;
+    }
+
+    /**
+     * Send Wiki API requests through this client from now on, e.g. one sized for how many crawler threads will fetch
+     * at once. Replaces the transport, so call it before wrapping the transport in hedging or recording.
+     */
+    public static void setClient(OkHttpClient okHttpClient) {
+        currentClient = okHttpClient;
+        transport = new OkHttpTransport(okHttpClient);
+    }
+
+    // e.g. swap in a MockLinkSource to crawl offline
+    public static void setTransport(WikiTransport wikiTransport) {
+        transport = wikiTransport;
+    }
+
+    /**
+     * Record all traffic from the current transport to recordFile, or serve it from a recording in replayFile instead
+     * (replay wins if both are given). A recording is closed, and its index written, when the JVM shuts down.
+     */
+    public static void useTrafficArchive(String recordFile, String replayFile, String replayLatency) throws IOException {
+        if (replayFile != null) {
+            setTransport(new ReplayTransport(replayFile, replayLatency == null ? ReplayTransport.latencyNone : replayLatency, 42));
+        } else if (recordFile != null) {
+            final RecordingTransport recorder = new RecordingTransport(transport, recordFile);
+            setTransport(recorder);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    recorder.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to finish recording to " + recordFile + ": " + e.getMessage());
+                }
+            }));
+        }
+    }
+
+    public static long getBytesReadOnThread() {
+        return bytesReadOnThread.get()[0];
     }
 
     // for debugging
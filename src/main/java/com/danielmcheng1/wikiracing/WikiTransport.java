@@ -0,0 +1,14 @@
+package com.danielmcheng1.wikiracing;
+
+import okhttp3.HttpUrl;
+
+import java.io.IOException;
+
+/**
+ * Where WikiRetriever sends its requests. By default this is the live MediaWiki API over HTTP, but it can be swapped
+ * for a local link source (e.g. a MockLinkSource) to run crawls offline, in tests and in benchmarks.
+ */
+public interface WikiTransport {
+    // return the raw JSON body the MediaWiki API would return for this URL, or throw if the request failed
+    byte[] fetch(HttpUrl url, String userAgent) throws IOException;
+}
@@ -0,0 +1,79 @@
+package com.danielmcheng1.wikiracing;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class AutotunerTest extends TestCase {
+    private WikiTransport liveTransport;
+    private LinkGraph graph;
+
+    @Override
+    protected void setUp() {
+        liveTransport = WikiRetriever.getTransport();
+        graph = LinkGraph.generate(5000, 20, 7);
+        WikiRetriever.setTransport(new MockLinkSource(graph));
+    }
+
+    @Override
+    protected void tearDown() {
+        WikiRetriever.setTransport(liveTransport);
+    }
+
+    @Test
+    public void testProfileRoundTripAndOverrides() throws IOException {
+        File profile = File.createTempFile("profile", ".json");
+        try {
+            CrawlerConfig config = new CrawlerConfig(8, 25, 20, 250);
+            config.save(profile.getPath());
+            CrawlerConfig loaded = CrawlerConfig.load(profile.getPath());
+            assertEquals("Testing that a saved profile loads back the same", config.toString(), loaded.toString());
+            CrawlerConfig overridden = loaded.withOverrides(null, 100, null, null);
+            assertEquals("Testing that overrides replace only the settings given", 8, overridden.getNumThreads());
+            assertEquals("Testing that overrides replace only the settings given", 100, overridden.getMaxBatchSize());
+        } finally {
+            profile.delete();
+        }
+        try {
+            new CrawlerConfig(16, CrawlerConfig.maxTitlesPerRequest + 1, 100, 500);
+            fail("Testing that a batch size beyond the Wiki API's limit is rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRequestOverridesAreChecked() {
+        CrawlerConfig config = CrawlerService.getConfig(new CrawlerConfig(), "32", null, "20", null, 64);
+        assertEquals("Testing that a request can raise the thread count up to the limit", 32, config.getNumThreads());
+        assertEquals("Testing that a request's overrides replace only the settings given", CrawlerConfig.defaultMaxBatchSize, config.getMaxBatchSize());
+        try {
+            CrawlerService.getConfig(new CrawlerConfig(), "100000", null, null, null, 64);
+            fail("Testing that a request cannot ask for more threads than the limit");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            CrawlerService.getConfig(new CrawlerConfig(), null, "lots", null, null, 64);
+            fail("Testing that a malformed setting is rejected as a bad argument");
+        } catch (IllegalArgumentException e) {
+            assertTrue("Testing that the error names the bad setting", e.getMessage().contains("maxBatchSize"));
+        }
+    }
+
+    @Test
+    public void testTuneReturnsBestCandidate() {
+        List<String[]> pairs = Autotuner.generatePairs(graph, 3, 42);
+        assertEquals("Testing that the requested number of pairs is generated", 3, pairs.size());
+        Autotuner autotuner = new Autotuner(pairs, Autotuner.goalLatency, 15);
+        autotuner.setPrintProgress(false);
+        CrawlerConfig start = new CrawlerConfig(4, 10, 100, 500);
+        CrawlerConfig best = autotuner.tune(start);
+        assertTrue("Testing that the tuned config is no slower than the one it started from", autotuner.evaluate(best) <= autotuner.evaluate(start));
+        assertTrue("Testing that each config is only crawled once", autotuner.getNumEvaluated() <= 2 * 12 + 1);
+        assertEquals("Testing that the backoff is left alone", 500, best.getBackoffMillis());
+    }
+}
@@ -0,0 +1,14 @@
+package com.danielmcheng1.wikiracing;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class BatchRunnerTest extends TestCase {
+    @Test
+    public void testParsePair() {
+        assertEquals("Testing that tab separated pairs are parsed", "Chair", BatchRunner.parsePair("Apple\tChair")[1]);
+        assertEquals("Testing that comma separated pairs are parsed", "Chair", BatchRunner.parsePair(" Apple , Chair ")[1]);
+        assertNull("Testing that comments are skipped", BatchRunner.parsePair("# Apple,Chair"));
+        assertNull("Testing that malformed lines are skipped", BatchRunner.parsePair("Apple"));
+    }
+}
@@ -0,0 +1,108 @@
+package com.danielmcheng1.wikiracing;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+
+public class ChangeLogUpdaterTest extends TestCase {
+    private WikiTransport liveTransport;
+    private File graphFile;
+    private File changeLogDir;
+    private LinkCache linkCache;
+
+    @Override
+    protected void setUp() throws IOException {
+        liveTransport = WikiRetriever.getTransport();
+        // A -> B, A -> C, B -> C, C -> A
+        LinkGraph written = new LinkGraph(new String[]{"A", "B", "C"}, new int[]{0, 2, 3, 4}, new int[]{1, 2, 2, 0});
+        graphFile = File.createTempFile("graph", ".wrg");
+        CompressedLinkGraph.write(written, graphFile.getPath());
+        CompressedLinkGraph.setShared(new CompressedLinkGraph(graphFile.getPath()));
+        // since then A has dropped its link to C for one to the new page D
+        LinkGraph live = new LinkGraph(new String[]{"A", "B", "C", "D"}, new int[]{0, 2, 3, 4, 5}, new int[]{1, 3, 2, 0, 2});
+        WikiRetriever.setTransport(new MockLinkSource(live));
+        linkCache = new LinkCache(LinkCache.defaultMaxLinks);
+        linkCache.putLinks("A", Direction.FORWARDS, new String[]{"B", "C"});
+        linkCache.putLinks("C", Direction.BACKWARDS, new String[]{"A", "B"});
+        changeLogDir = Files.createTempDirectory("changes").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+        WikiRetriever.setTransport(liveTransport);
+        CompressedLinkGraph.setShared(null);
+        ParallelBfs.setShared(null);
+        graphFile.delete();
+        for (File file : changeLogDir.listFiles()) {
+            file.delete();
+        }
+        changeLogDir.delete();
+    }
+
+    @Test
+    public void testChangesPatchGraphAndCache() throws IOException {
+        writeChanges("0001.json", "{\"type\":\"edit\",\"ns\":0,\"title\":\"A\",\"rcid\":1,\"timestamp\":\"2026-01-01T00:00:00Z\"}");
+        writeChanges("0002.json", "{\"type\":\"log\",\"ns\":0,\"title\":\"B\",\"rcid\":3,\"timestamp\":\"2026-01-01T00:02:00Z\",\"logtype\":\"delete\",\"logaction\":\"delete\"},"
+                + "{\"type\":\"log\",\"ns\":0,\"title\":\"C\",\"rcid\":2,\"timestamp\":\"2026-01-01T00:01:00Z\",\"logtype\":\"move\",\"logaction\":\"move\",\"logparams\":{\"target_ns\":0,\"target_title\":\"E\"}}");
+        ChangeLogUpdater updater = new ChangeLogUpdater(linkCache);
+        updater.setUpdatesParallelBfs(true);
+        assertEquals("Testing that both files are applied", 2, updater.applyNewFiles(changeLogDir.getPath()));
+        assertEquals("Testing that files are only applied once", 0, updater.applyNewFiles(changeLogDir.getPath()));
+
+        CompressedLinkGraph graph = CompressedLinkGraph.getShared();
+        assertEquals("Testing that an edit refetches the page's links", set("B", "D"), set(graph.getLinkTitles("A", Direction.FORWARDS)));
+        assertNull("Testing that edited links are dropped from the cache", linkCache.getLinks("A", Direction.FORWARDS));
+        assertNull("Testing that the linkshere of pages that lost a link are dropped from the cache", linkCache.getLinks("C", Direction.BACKWARDS));
+        assertEquals("Testing that a moved page's links go with it", set("A"), set(graph.getLinkTitles("E", Direction.FORWARDS)));
+        assertEquals("Testing that a move leaves a redirect", set("E"), set(graph.getLinkTitles("C", Direction.FORWARDS)));
+        assertEquals("Testing that the redirect is resolved", "E", linkCache.resolveTitle("C"));
+        assertEquals("Testing that linkshere follow the move", set("E"), set(graph.getLinkTitles("A", Direction.BACKWARDS)));
+        assertEquals("Testing that a deleted page has no links", 0, graph.getLinkTitles("B", Direction.FORWARDS).length);
+        assertEquals("Testing that linkshere drop edited and deleted pages", 0, graph.getLinkTitles("C", Direction.BACKWARDS).length);
+
+        assertTrue("Testing that the deltas are compacted", updater.compact());
+        CompressedLinkGraph compacted = CompressedLinkGraph.getShared();
+        assertNotSame("Testing that the compacted graph is swapped in", graph, compacted);
+        assertEquals("Testing that no deltas are left", 0, compacted.getDeltas().length);
+        assertEquals("Testing that new pages are written to the file", set("A"), set(compacted.getLinkTitles("E", Direction.FORWARDS)));
+        assertEquals("Testing that linkshere are rebuilt from the changed links", set("A"), set(compacted.getLinkTitles("D", Direction.BACKWARDS)));
+        assertEquals("Testing that redirects survive compaction", set("C"), set(compacted.getLinkTitles("E", Direction.BACKWARDS)));
+        assertEquals("Testing that the old graph still serves reads", set("B", "D"), set(graph.getLinkTitles("A", Direction.FORWARDS)));
+        LinkGraph offline = ParallelBfs.getShared().getGraph();
+        assertEquals("Testing that offline races get the compacted graph", offline.getId("A"),
+                ParallelBfs.getShared().race(offline.getId("E"), offline.getId("A"), Long.MAX_VALUE).getPath()[1]);
+    }
+
+    @Test
+    public void testUnfetchableEditsAreInvalidated() throws IOException {
+        WikiRetriever.setTransport((url, userAgent) -> {
+            throw new IOException("Wiki API is down");
+        });
+        writeChanges("0001.json", "{\"type\":\"edit\",\"ns\":0,\"title\":\"A\",\"rcid\":1,\"timestamp\":\"2026-01-01T00:00:00Z\"},"
+                + "{\"type\":\"edit\",\"ns\":1,\"title\":\"Talk:B\",\"rcid\":2,\"timestamp\":\"2026-01-01T00:01:00Z\"}");
+        ChangeLogUpdater updater = new ChangeLogUpdater(linkCache);
+        assertEquals("Testing that talk pages are left out", 1, updater.apply(new File(changeLogDir, "0001.json").getPath()));
+        CompressedLinkGraph graph = CompressedLinkGraph.getShared();
+        assertNull("Testing that links that could not be fetched are invalidated", graph.getLinkTitles("A", Direction.FORWARDS));
+        assertNull("Testing that the linkshere they were in are invalidated", graph.getLinkTitles("C", Direction.BACKWARDS));
+        assertEquals("Testing that other pages are untouched", set("C"), set(graph.getLinkTitles("B", Direction.FORWARDS)));
+
+        assertTrue("Testing that the deltas are compacted", updater.compact());
+        assertNull("Testing that invalidations survive compaction", CompressedLinkGraph.getShared().getLinkTitles("A", Direction.FORWARDS));
+    }
+
+    private void writeChanges(String fileName, String changes) throws IOException {
+        String log = "{\"batchcomplete\":\"\",\"query\":{\"recentchanges\":[" + changes + "]}}";
+        Files.write(new File(changeLogDir, fileName).toPath(), log.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static HashSet<String> set(String... titles) {
+        return new HashSet<String>(Arrays.asList(titles));
+    }
+}
@@ -0,0 +1,75 @@
+package com.danielmcheng1.wikiracing;
+
+import okhttp3.HttpUrl;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CompressedLinkGraphTest extends MockGraphTestCase {
+    private File graphFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        graphFile = File.createTempFile("graph", ".wrg");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        CompressedLinkGraph.setShared(null);
+        graphFile.delete();
+    }
+
+    @Test
+    public void testRoundTripAndSize() throws IOException {
+        // a small window and index interval so that references chain and most lookups skip pages
+        CompressedLinkGraph.write(graph, graphFile.getPath(), 3, 2, 8);
+        CompressedLinkGraph compressed = new CompressedLinkGraph(graphFile.getPath());
+        assertEquals("Testing that every page is stored", graph.getNumPages(), compressed.getNumPages());
+        for (Direction direction : Direction.values()) {
+            for (int page = 0; page < graph.getNumPages(); page++) {
+                int[] links = compressed.getLinks(page, direction);
+                int[] expected = new int[graph.getNumLinks(page, direction)];
+                for (int i = 0; i < expected.length; i++) {
+                    expected[i] = graph.getLink(page, direction, i);
+                }
+                assertTrue("Testing that the links of " + page + " decode as they were", Arrays.equals(expected, links));
+            }
+        }
+        assertEquals("Testing that titles are looked up by their bytes", 12345, compressed.getId("Page 12345"));
+        assertEquals("Testing that missing titles are not found", -1, compressed.getId("Page 123456"));
+        assertNull("Testing that missing titles have no links", compressed.getLinkTitles("Page 123456", Direction.FORWARDS));
+        long csrBytes = 8L * graph.getNumLinks() + 8L * (graph.getNumPages() + 1);
+        assertTrue("Testing that the file is smaller than the links as raw CSR", compressed.getNumBytes() < csrBytes);
+    }
+
+    @Test
+    public void testCrawlExpandsFromCompressedGraph() throws IOException {
+        CompressedLinkGraph.write(graph, graphFile.getPath());
+        CompressedLinkGraph.setShared(new CompressedLinkGraph(graphFile.getPath()));
+        CountingLinkSource countingLinkSource = new CountingLinkSource(graph);
+        WikiRetriever.setTransport(countingLinkSource);
+        long expansionsBefore = Metrics.compressedGraphExpansions.get();
+        assertTrue("Testing that the crawl finds a path from the compressed graph", runCrawl(crawlOptions("Page 12345", "Page 777")).foundPath());
+        assertTrue("Testing that pages were expanded from the compressed graph", Metrics.compressedGraphExpansions.get() > expansionsBefore);
+        assertEquals("Testing that no page needed the API", 0, countingLinkSource.numLinkRequests.get());
+    }
+
+    private static class CountingLinkSource extends MockLinkSource {
+        private final AtomicInteger numLinkRequests = new AtomicInteger();
+
+        CountingLinkSource(LinkGraph graph) {
+            super(graph);
+        }
+
+        @Override
+        protected String respond(HttpUrl url) {
+            numLinkRequests.incrementAndGet();
+            return super.respond(url);
+        }
+    }
+}
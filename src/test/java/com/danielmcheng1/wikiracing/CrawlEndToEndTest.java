@@ -3,15 +3,29 @@ package com.danielmcheng1.wikiracing;
 import junit.framework.TestCase;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 
+/**
+ * Runs against the live API by default. To run offline and reproducibly, record the traffic once with
+ * -Dwikiracing.record=FILE and then replay it with -Dwikiracing.replay=FILE (optionally -Dwikiracing.replayLatency=SPEC).
+ */
 public class CrawlEndToEndTest extends TestCase {
+    private static boolean archiveInstalled;
     private Crawler crawl;
 
     @Override
-    protected void setUp() {
+    protected void setUp() throws IOException {
+        // every test in the run shares the one recording/replay
+        synchronized (CrawlEndToEndTest.class) {
+            if (!archiveInstalled) {
+                WikiRetriever.useTrafficArchive(System.getProperty("wikiracing.record"),
+                        System.getProperty("wikiracing.replay"), System.getProperty("wikiracing.replayLatency"));
+                archiveInstalled = true;
+            }
+        }
     }
 
     @Test
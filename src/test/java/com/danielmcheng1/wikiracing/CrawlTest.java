@@ -3,7 +3,11 @@ package com.danielmcheng1.wikiracing;
 import junit.framework.TestCase;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 public class CrawlTest extends TestCase {
     private Crawler crawler;
@@ -79,4 +83,77 @@ public class CrawlTest extends TestCase {
         String normalized = Util.normalizeTitle("apple COMPUTER");
         assertEquals("Testing that normalize capitalizes the first letter without changing the rest", "Apple COMPUTER", normalized);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFindPathsThroughEveryParentAndMeetingNode() {
+        HashMap<String, WebNode> visitedForwards = new HashMap<String, WebNode>();
+        HashMap<String, WebNode> visitedBackwards = new HashMap<String, WebNode>();
+        WebNode source = visit(visitedForwards, "S", null);
+        WebNode a = visit(visitedForwards, "A", source);
+        WebNode b = visit(visitedForwards, "B", source);
+        visit(visitedForwards, "M", a).addParent(b, Crawler.maxParentsPerPage);
+        visit(visitedForwards, "N", a);
+        WebNode dest = visit(visitedBackwards, "D", null);
+        visit(visitedBackwards, "M", dest);
+        visit(visitedBackwards, "N", visit(visitedBackwards, "C", dest));
+        Path path = new Path(visitedForwards, visitedBackwards);
+
+        List<ArrayList<String>> shortest = path.findPaths(5, true);
+        assertEquals("Testing that both parents of the meeting node give a path", 2, shortest.size());
+        assertEquals("Testing that the first parent comes first", Arrays.asList("S", "A", "M", "D"), shortest.get(0));
+        assertEquals("Testing that the other parent comes second", Arrays.asList("S", "B", "M", "D"), shortest.get(1));
+        List<ArrayList<String>> all = path.findPaths(5, false);
+        assertEquals("Testing that longer meeting nodes follow", Arrays.asList("S", "A", "N", "C", "D"), all.get(2));
+        assertEquals("Testing that no more than numPaths are returned", 1, path.findPaths(1, false).size());
+    }
+
+    @Test
+    public void testFirstMeetingSavesThePath() throws InterruptedException {
+        HashMap<String, WebNode> visitedForwards = new HashMap<String, WebNode>();
+        HashMap<String, WebNode> visitedBackwards = new HashMap<String, WebNode>();
+        WebNode source = visit(visitedForwards, "S", null);
+        WebNode dest = new WebNode("D", null, Direction.BACKWARDS, 0);
+        visitedBackwards.put("D", dest);
+        List<List<String>> validPaths = new ArrayList<List<String>>();
+        List<WebNode> meetingNodes = new ArrayList<WebNode>();
+        for (int i = 0; i < 8; i++) {
+            String title = "M" + i;
+            meetingNodes.add(visit(visitedForwards, title, source));
+            visitedBackwards.put(title, new WebNode(title, dest, Direction.BACKWARDS, 1));
+            validPaths.add(Arrays.asList("S", title, "D"));
+        }
+        PathStore pathStore = new PathStore(1000);
+        Path path = new Path(visitedForwards, visitedBackwards, pathStore);
+
+        // every thread meets the other end at once, each through a different page
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (WebNode meetingNode : meetingNodes) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                path.savePath(meetingNode);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue("Testing that a path is found", path.foundPath());
+        assertTrue("Testing that the path is one whole path", validPaths.contains(CrawlerResult.savePathAsArray(path.getPath())));
+        assertEquals("Testing that only the first path found is stored", 1, pathStore.getNumPaths());
+    }
+
+    // findPaths only follows parents and distances, so the direction does not matter here
+    private static WebNode visit(HashMap<String, WebNode> visited, String title, WebNode parent) {
+        WebNode wN = new WebNode(title, parent, Direction.FORWARDS, parent == null ? 0 : parent.getDistance() + 1);
+        visited.put(title, wN);
+        return wN;
+    }
+}
@@ -0,0 +1,57 @@
+package com.danielmcheng1.wikiracing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class CrawlTraceTest extends TestCase {
+    private CrawlTrace trace;
+
+    @Override
+    protected void setUp() {
+        trace = new CrawlTrace(2);
+    }
+
+    @Test
+    public void testRecordCopiesBatchStats() {
+        BatchStats stats = new BatchStats(System.nanoTime());
+        stats.markRequestStart();
+        stats.markRequestEnd(1234);
+        stats.markContinue();
+        stats.addLinksParsed(500);
+        stats.markEnd();
+        trace.record(Direction.FORWARDS, "Apple|Chair", stats);
+
+        CrawlTrace.BatchTrace batch = trace.getBatches().get(0);
+        assertEquals("Testing that titles are recorded", "Apple|Chair", batch.getTitles());
+        assertEquals("Testing that bytes are recorded", 1234, batch.getBytes());
+        assertEquals("Testing that continues are recorded", 1, batch.getNumContinues());
+        assertEquals("Testing that links parsed are recorded", 500, batch.getNumLinksParsed());
+        assertTrue("Testing that the batch ends after it starts", batch.getEndMicros() >= batch.getStartMicros());
+    }
+
+    @Test
+    public void testRecordDropsBatchesPastCapacity() {
+        for (int i = 0; i < 3; i++) {
+            BatchStats stats = new BatchStats(0);
+            stats.markEnd();
+            trace.record(Direction.BACKWARDS, "Title_" + i, stats);
+        }
+        assertEquals("Testing that the trace keeps only its capacity", 2, trace.getBatches().size());
+        assertEquals("Testing that dropped batches are counted", 1, trace.getNumDropped());
+    }
+
+    @Test
+    public void testChromeExportHasEventPerBatch() {
+        BatchStats stats = new BatchStats(0);
+        stats.markEnd();
+        trace.record(Direction.FORWARDS, "Apple", stats);
+        CrawlerResult result = new CrawlerResult("Found path!", null, 10, "Bidirectional BFS", 16, 50, 1);
+        result.setTrace(trace.getBatches());
+
+        JsonObject exported = new Gson().fromJson(ChromeTraceExporter.toJson(result), JsonObject.class);
+        // one batch event plus one thread name event
+        assertEquals("Testing that the export holds the batch and thread events", 2, exported.getAsJsonArray("traceEvents").size());
+    }
+}
@@ -0,0 +1,78 @@
+package com.danielmcheng1.wikiracing;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class GraphExporterTest extends MockGraphTestCase {
+    private File exportFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        exportFile = File.createTempFile("wikiracer", ".export");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        exportFile.delete();
+    }
+
+    @Test
+    public void testJsonLinesHoldEveryLinkLookedUp() throws Exception {
+        GraphExporter exporter = runCrawl(GraphExporter.formatJsonLines);
+        List<String> lines = Files.readAllLines(exportFile.toPath(), StandardCharsets.UTF_8);
+        assertTrue("Testing that links were exported", exporter.getNumLinks() > 0);
+        assertEquals("Testing that every link is one line", exporter.getNumLinks(), lines.size());
+        for (String line : lines) {
+            JsonObject edge = new JsonParser().parse(line).getAsJsonObject();
+            assertLinks(edge.get("from").getAsString(), edge.get("to").getAsString());
+        }
+        assertEquals("Testing that quotes are escaped in JSON", "\"say \\\"hi\\\"\"", GraphExporter.quoteJson("say \"hi\""));
+    }
+
+    @Test
+    public void testGraphMLDeclaresEachNodeOnce() throws Exception {
+        GraphExporter exporter = runCrawl(GraphExporter.formatGraphML);
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(exportFile);
+        NodeList nodes = document.getElementsByTagName("node");
+        HashSet<String> declared = new HashSet<String>();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            assertTrue("Testing that each node is declared once", declared.add(((Element) nodes.item(i)).getAttribute("id")));
+        }
+        NodeList edges = document.getElementsByTagName("edge");
+        assertEquals("Testing that every link is an edge", exporter.getNumLinks(), edges.getLength());
+        for (int i = 0; i < edges.getLength(); i++) {
+            Element edge = (Element) edges.item(i);
+            assertTrue("Testing that edges join declared nodes", declared.contains(edge.getAttribute("source")) && declared.contains(edge.getAttribute("target")));
+            assertLinks(edge.getAttribute("source"), edge.getAttribute("target"));
+        }
+    }
+
+    private GraphExporter runCrawl(String format) throws Exception {
+        GraphExporter exporter = new GraphExporter(exportFile.getPath(), format);
+        CrawlerController crawlerController = new CrawlerController(crawlOptions("Page 12345", "Page 777"));
+        crawlerController.setPrintProgress(false);
+        crawlerController.addListener(exporter);
+        crawlerController.runCrawl();
+        exporter.close();
+        return exporter;
+    }
+
+    private void assertLinks(String from, String to) {
+        String[] links = graph.getLinkTitles(graph.getId(from), Direction.FORWARDS);
+        assertTrue("Testing that " + from + " links to " + to, Arrays.asList(links).contains(to));
+    }
+}
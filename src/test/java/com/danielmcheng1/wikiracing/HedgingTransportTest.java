@@ -0,0 +1,98 @@
+package com.danielmcheng1.wikiracing;
+
+import okhttp3.HttpUrl;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HedgingTransportTest extends MockGraphTestCase {
+    @Test
+    public void testHedgingCutsTailLatency() throws IOException {
+        MockLinkSource plain = new MockLinkSource(graph, 5);
+        plain.setStragglers(0.03, 300);
+        MockLinkSource stragglers = new MockLinkSource(graph, 5);
+        stragglers.setStragglers(0.03, 300);
+        HedgingTransport hedging = new HedgingTransport(stragglers, 95, 0.1);
+
+        long plainP99 = fetchAll(plain, 200).getValueAtQuantile(0.99);
+        long hedgedP99 = fetchAll(hedging, 200).getValueAtQuantile(0.99);
+        assertTrue("Testing that stragglers make up the tail without hedging", plainP99 >= 300);
+        assertTrue("Testing that hedging cuts the tail, p99 " + hedgedP99 + "ms", hedgedP99 < 100);
+        assertTrue("Testing that hedges win the race", hedging.getNumHedgeWins() > 0);
+        assertTrue("Testing that hedges stay within budget", hedging.getNumHedges() <= 0.1 * 200);
+    }
+
+    @Test
+    public void testNoHedgesPastBudget() throws IOException {
+        MockLinkSource stragglers = new MockLinkSource(graph, 2);
+        stragglers.setStragglers(0.1, 50);
+        HedgingTransport hedging = new HedgingTransport(stragglers, 90, 0);
+        fetchAll(hedging, 60);
+        assertEquals("Testing that nothing is hedged without a budget", 0, hedging.getNumHedges());
+        assertTrue("Testing that slow requests over budget are counted", hedging.getNumOverBudget() > 0);
+    }
+
+    @Test
+    public void testThresholdCountsCancelledRequests() throws IOException {
+        AtomicInteger numRequests = new AtomicInteger();
+        // 10% of requests take 30ms and another 10% 150ms, so the 85th percentile is 30ms; the 150ms ones lose to
+        // their hedges, and left out, the threshold would drop to that of the fast requests
+        HedgingTransport hedging = new HedgingTransport((url, userAgent) -> {
+            int request = numRequests.incrementAndGet();
+            try {
+                Thread.sleep(request % 10 == 3 ? 30 : request % 10 == 7 ? 150 : 1);
+            } catch (InterruptedException e) {
+                throw new IOException("Call cancelled");
+            }
+            return "{}".getBytes(StandardCharsets.UTF_8);
+        }, 85, 1);
+        fetchAll(hedging, 150);
+        assertTrue("Testing that hedged requests still count towards the threshold", hedging.getNumHedges() > 0);
+        assertTrue("Testing that the threshold keeps the slow requests, " + hedging.getThresholdMillis() + "ms", hedging.getThresholdMillis() >= 20);
+    }
+
+    @Test
+    public void testLoserIsCancelled() throws Exception {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        AtomicInteger numRequests = new AtomicInteger();
+        HedgingTransport hedging = new HedgingTransport((url, userAgent) -> {
+            // the first request past warm up hangs until it is cancelled, the way an OkHttp call ignores interrupts
+            if (numRequests.incrementAndGet() == HedgingTransport.minSamples + 1) {
+                CountDownLatch gate = new CountDownLatch(1);
+                HedgingTransport.onCancel(gate::countDown);
+                while (gate.getCount() > 0) {
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        // ignored, like OkHttp does
+                    }
+                }
+                cancelled.countDown();
+                throw new IOException("Call cancelled");
+            }
+            return "{}".getBytes(StandardCharsets.UTF_8);
+        }, 50, 1);
+        HttpUrl url = WikiRetriever.buildWikiURL("Page 1", Direction.FORWARDS, null);
+        for (int i = 0; i <= HedgingTransport.minSamples; i++) {
+            assertEquals("Testing that every request is answered", "{}", new String(hedging.fetch(url, "test"), StandardCharsets.UTF_8));
+        }
+        assertEquals("Testing that the hanging request is hedged", 1, hedging.getNumHedges());
+        assertTrue("Testing that the losing request is cancelled", cancelled.await(5, TimeUnit.SECONDS));
+    }
+
+    // latencies in ms of fetching a page's links the given number of times, one after another
+    private static Histogram fetchAll(WikiTransport transport, int numRequests) throws IOException {
+        Histogram latencies = new Histogram("test_latency_ms", "Latency in milliseconds");
+        for (int i = 0; i < numRequests; i++) {
+            HttpUrl url = WikiRetriever.buildWikiURL("Page " + i, Direction.FORWARDS, null);
+            long before = System.currentTimeMillis();
+            transport.fetch(url, "test");
+            latencies.record(System.currentTimeMillis() - before);
+        }
+        return latencies;
+    }
+}
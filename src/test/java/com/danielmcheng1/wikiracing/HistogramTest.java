@@ -0,0 +1,77 @@
+package com.danielmcheng1.wikiracing;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class HistogramTest extends TestCase {
+    private Histogram histogram;
+
+    @Override
+    protected void setUp() {
+        histogram = new Histogram("test_latency_ms", "Test latency");
+    }
+
+    @Test
+    public void testBucketUpperBoundContainsValue() {
+        long[] values = {0, 1, 3, 4, 7, 8, 9, 100, 1000, 123456789L, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = Histogram.bucketIndex(value);
+            assertTrue("Testing that bucket for " + value + " has an upper bound at or above it", Histogram.bucketUpperBound(index) >= value);
+            if (index > 0) {
+                assertTrue("Testing that bucket below " + value + " ends before it", Histogram.bucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void testQuantilesWithinPrecision() {
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        long p50 = histogram.getValueAtQuantile(0.5);
+        long p99 = histogram.getValueAtQuantile(0.99);
+        assertTrue("Testing that p50 " + p50 + " is within 1/32 of 500", p50 >= 500 && p50 <= 500 + 500 / 32);
+        assertTrue("Testing that p99 " + p99 + " is within 1/32 of 990", p99 >= 990 && p99 <= 1000);
+        assertEquals("Testing that every value is counted", 1000, histogram.getCount());
+        assertEquals("Testing that the max is tracked exactly", 1000, histogram.getMax());
+    }
+
+    @Test
+    public void testRenderIsCumulative() {
+        histogram.record(1);
+        histogram.record(1);
+        histogram.record(50);
+        StringBuilder sB = new StringBuilder();
+        histogram.render(sB);
+        String rendered = sB.toString();
+        assertTrue("Testing that the smallest bucket holds two values", rendered.contains("test_latency_ms_bucket{le=\"1\"} 2"));
+        assertTrue("Testing that the +Inf bucket holds every value", rendered.contains("test_latency_ms_bucket{le=\"+Inf\"} 3"));
+        assertTrue("Testing that the sum is rendered", rendered.contains("test_latency_ms_sum 52"));
+        assertTrue("Testing that a value is counted in the first bucket above it", rendered.contains("test_latency_ms_bucket{le=\"50\"} 3"));
+    }
+
+    @Test
+    public void testRenderedBucketsAreFixed() {
+        StringBuilder empty = new StringBuilder();
+        histogram.render(empty);
+        histogram.record(7);
+        histogram.record(123456);
+        histogram.record(5000000000L);
+        StringBuilder recorded = new StringBuilder();
+        histogram.render(recorded);
+        assertEquals("Testing that every scrape has the same buckets", empty.toString().replaceAll(" -?\\d+\n", "\n"),
+                recorded.toString().replaceAll(" -?\\d+\n", "\n"));
+        String[] lines = recorded.toString().split("\n");
+        assertEquals("Testing that the last bound is a billion", "test_latency_ms_bucket{le=\"1000000000\"} 2", lines[lines.length - 4]);
+        assertEquals("Testing that values past every bound count only towards +Inf", "test_latency_ms_bucket{le=\"+Inf\"} 3", lines[lines.length - 3]);
+        for (String line : lines) {
+            if (!line.startsWith("test_latency_ms_bucket{le=\"") || line.contains("+Inf")) {
+                continue;
+            }
+            long bound = Long.parseLong(line.substring(line.indexOf('"') + 1, line.lastIndexOf('"')));
+            long expected = bound < 7 ? 0 : bound < 123456 ? 1 : 2;
+            assertEquals("Testing that the bucket up to " + bound + " counts the values at or below it", expected,
+                    Long.parseLong(line.substring(line.lastIndexOf(' ') + 1)));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.danielmcheng1.wikiracing;
+
+import okhttp3.HttpUrl;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HubIndexTest extends MockGraphTestCase {
+    private File indexFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        indexFile = File.createTempFile("wikiracer", ".wrh");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        HubIndex.setShared(null);
+        indexFile.delete();
+    }
+
+    @Test
+    public void testHubsHaveAllTheirLinks() throws IOException {
+        List<String> hubTitles = HubIndex.getMostLinked(graph, 20);
+        HubIndex.build(hubTitles, HubIndex.defaultMaxBytes, indexFile.getPath());
+        HubIndex hubIndex = new HubIndex(indexFile.getPath());
+
+        assertEquals("Testing that the most-linked page is the first hub", "Page 0", hubTitles.get(0));
+        assertEquals("Testing that every hub fits the budget", 20, hubIndex.getNumHubs());
+        for (String hub : hubTitles) {
+            for (Direction direction : Direction.values()) {
+                String[] expected = graph.getLinkTitles(graph.getId(hub), direction);
+                String[] actual = hubIndex.getLinks(hub, direction);
+                Arrays.sort(expected);
+                Arrays.sort(actual);
+                assertTrue("Testing that " + hub + " has all its links " + direction, Arrays.equals(expected, actual));
+            }
+        }
+        assertNull("Testing that pages that are not hubs are not found", hubIndex.getLinks("Page 19999", Direction.FORWARDS));
+    }
+
+    @Test
+    public void testBuildStaysWithinBudget() throws IOException {
+        long maxBytes = 256 * 1024;
+        HubIndex.build(HubIndex.getMostLinked(graph, 100), maxBytes, indexFile.getPath());
+        HubIndex hubIndex = new HubIndex(indexFile.getPath());
+        assertTrue("Testing that the budget leaves out some hubs (kept " + hubIndex.getNumHubs() + ")", hubIndex.getNumHubs() > 0 && hubIndex.getNumHubs() < 100);
+        assertTrue("Testing that the file fits the budget", indexFile.length() <= maxBytes);
+    }
+
+    @Test
+    public void testCrawlExpandsHubsWithoutApiCalls() throws IOException {
+        HubIndex.build(HubIndex.getMostLinked(graph, 200), HubIndex.defaultMaxBytes, indexFile.getPath());
+        HubIndex.setShared(new HubIndex(indexFile.getPath()));
+        // the destination is the biggest hub, whose backlinks would take several continues to fetch
+        CountingLinkSource withHubs = new CountingLinkSource(graph, "Page 0");
+        WikiRetriever.setTransport(withHubs);
+        long expansionsBefore = Metrics.hubIndexExpansions.get();
+        CrawlerResult result = runCrawl(crawlOptions("Page 12345", "Page 0"));
+        assertNotNull("Testing that the crawl finds a path with hubs expanded locally", result.getPath());
+        assertTrue("Testing that hubs were expanded from the index", Metrics.hubIndexExpansions.get() > expansionsBefore);
+        assertEquals("Testing that the hub's backlinks are never fetched from the API", 0, withHubs.numBacklinkRequests.get());
+    }
+
+    // counts the requests for the backlinks of one page
+    private static class CountingLinkSource extends MockLinkSource {
+        private final String title;
+        private final AtomicInteger numBacklinkRequests = new AtomicInteger();
+
+        CountingLinkSource(LinkGraph graph, String title) {
+            super(graph);
+            this.title = title;
+        }
+
+        @Override
+        protected String respond(HttpUrl url) {
+            if ("linkshere".equals(url.queryParameter("prop")) && Arrays.asList(url.queryParameter("titles").split("\\|")).contains(title)) {
+                numBacklinkRequests.incrementAndGet();
+            }
+            return super.respond(url);
+        }
+    }
+}
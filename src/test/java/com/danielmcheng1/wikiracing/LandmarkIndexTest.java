@@ -0,0 +1,136 @@
+package com.danielmcheng1.wikiracing;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class LandmarkIndexTest extends MockGraphTestCase {
+    private File indexFile;
+    private LandmarkIndex landmarkIndex;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        indexFile = File.createTempFile("wikiracer", ".wrl");
+        LandmarkIndex.build(graph, 16, 42, indexFile.getPath());
+        landmarkIndex = new LandmarkIndex(indexFile.getPath());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        indexFile.delete();
+    }
+
+    @Test
+    public void testLowerBoundNeverOverestimates() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20; i++) {
+            int from = random.nextInt(graph.getNumPages());
+            byte[] distances = LandmarkIndex.breadthFirstDistances(graph, from, Direction.FORWARDS);
+            for (int j = 0; j < 50; j++) {
+                int to = random.nextInt(graph.getNumPages());
+                int bound = landmarkIndex.lowerBound(landmarkIndex.getId(graph.getTitle(from)), landmarkIndex.getId(graph.getTitle(to)));
+                assertTrue("Testing that the bound from " + from + " to " + to + " is at most the true distance", bound <= (distances[to] & 0xff));
+            }
+        }
+        assertEquals("Testing that titles are found by binary search", "Page 777", landmarkIndex.getTitle(landmarkIndex.getId("Page 777")));
+        assertEquals("Testing that unknown titles are not found", -1, landmarkIndex.getId("No such page"));
+    }
+
+    @Test
+    public void testDeadEndDestinationIsNotPruned() throws IOException {
+        // Page 0 links to Page 1, a dead end, and to Page 2, which links back to it
+        useGraph(new LinkGraph(new String[]{"Page 0", "Page 1", "Page 2"}, new int[]{0, 2, 2, 3}, new int[]{1, 2, 0}));
+        LandmarkIndex.build(graph, 3, 42, indexFile.getPath());
+        landmarkIndex = new LandmarkIndex(indexFile.getPath());
+        int start = landmarkIndex.getId("Page 0");
+        int deadEnd = landmarkIndex.getId("Page 1");
+        int bound = landmarkIndex.lowerBound(start, deadEnd);
+        assertTrue("Testing that a dead end one link away is not taken for unreachable, got " + bound, bound <= 1);
+        assertEquals("Testing that a dead end reaches nothing", LandmarkIndex.unreachable, landmarkIndex.lowerBound(deadEnd, start));
+
+        CrawlerResult result = runOneThreadEachWay("Page 0", "Page 1", landmarkIndex);
+        assertEquals("Testing that the goal-directed crawl finds the dead end", Arrays.asList("Page 0", "Page 1"), result.getPath());
+    }
+
+    @Test
+    public void testGoalDirectedCrawlExpandsFewerPages() throws IOException {
+        // on a ring every page is far from most others, so blind BFS spreads out both ways round it
+        useGraph(buildRing(2000, 3));
+        LandmarkIndex.build(graph, 16, 42, indexFile.getPath());
+        landmarkIndex = new LandmarkIndex(indexFile.getPath());
+
+        CrawlerResult bfs = raceAcrossRing(null);
+        CrawlerResult alt = raceAcrossRing(landmarkIndex);
+        assertEquals("Testing that the crawl is reported as goal-directed", Crawler.algorithmALT, alt.getAlgorithm());
+        assertTrue("Testing that steering by landmarks expands fewer pages (" + alt.getNumPagesExpanded() + " vs "
+                + bfs.getNumPagesExpanded() + ")", alt.getNumPagesExpanded() < bfs.getNumPagesExpanded());
+
+        assertNotNull("Testing that the goal-directed crawl finds a path", alt.getPath());
+        assertPathFollowsLinks(alt.getPath());
+    }
+
+    @Test
+    public void testGraphFromRecordedTraffic() throws IOException {
+        File archiveFile = File.createTempFile("wikiracer", ".wra");
+        try {
+            RecordingTransport recorder = new RecordingTransport(new MockLinkSource(graph), archiveFile.getPath());
+            WikiRetriever.setTransport(recorder);
+            runCrawl(crawlOptions("Page 12345", "Page 777"));
+            recorder.close();
+
+            LinkGraph recorded;
+            try (TrafficArchive archive = new TrafficArchive(archiveFile.getPath())) {
+                recorded = LinkGraph.fromArchive(archive);
+            }
+            int source = recorded.getId("Page 12345");
+            assertTrue("Testing that the source page was recorded", source >= 0);
+            assertEquals("Testing that every forward link of the source was recorded", graph.getNumLinks(graph.getId("Page 12345"), Direction.FORWARDS),
+                    recorded.getNumLinks(source, Direction.FORWARDS));
+            for (int page = 0; page < recorded.getNumPages(); page++) {
+                for (String link : recorded.getLinkTitles(page, Direction.FORWARDS)) {
+                    String[] links = graph.getLinkTitles(graph.getId(recorded.getTitle(page)), Direction.FORWARDS);
+                    assertTrue("Testing that " + recorded.getTitle(page) + " links to " + link, Arrays.asList(links).contains(link));
+                }
+            }
+        } finally {
+            archiveFile.delete();
+        }
+    }
+
+    private static CrawlerResult raceAcrossRing(LandmarkIndex landmarkIndex) {
+        return runOneThreadEachWay("Page 1978", "Page 1748", landmarkIndex);
+    }
+
+    // one thread each way, so that every batch is the best the frontier has when it is taken
+    private static CrawlerResult runOneThreadEachWay(String sourceTitle, String destTitle, LandmarkIndex landmarkIndex) {
+        return runCrawl(crawlOptions(sourceTitle, destTitle).landmarkIndex(landmarkIndex)
+                .config(new CrawlerConfig(2, 10, CrawlerConfig.defaultPollMillis, CrawlerConfig.defaultBackoffMillis)));
+    }
+
+    // each page links to the span pages either side of it
+    private static LinkGraph buildRing(int numPages, int span) {
+        String[] titles = new String[numPages];
+        int[] offsets = new int[numPages + 1];
+        int[] targets = new int[numPages * span * 2];
+        int numLinks = 0;
+        for (int page = 0; page < numPages; page++) {
+            titles[page] = "Page " + page;
+            int[] links = new int[span * 2];
+            for (int i = 1; i <= span; i++) {
+                links[2 * i - 2] = (page + numPages - i) % numPages;
+                links[2 * i - 1] = (page + i) % numPages;
+            }
+            Arrays.sort(links);
+            for (int link : links) {
+                targets[numLinks++] = link;
+            }
+            offsets[page + 1] = numLinks;
+        }
+        return new LinkGraph(titles, offsets, targets);
+    }
+}
@@ -0,0 +1,46 @@
+package com.danielmcheng1.wikiracing;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class LinkCacheTest extends TestCase {
+    private LinkCache linkCache;
+
+    @Override
+    protected void setUp() {
+        linkCache = new LinkCache(5);
+    }
+
+    @Test
+    public void testGetLinksReturnsNullIfNotCached() {
+        assertNull("Testing that uncached titles return null", linkCache.getLinks("Apple", Direction.FORWARDS));
+        assertEquals("Testing that the miss is counted", 1, linkCache.getMisses());
+    }
+
+    @Test
+    public void testGetLinksIsPerDirection() {
+        linkCache.putLinks("Apple", Direction.FORWARDS, new String[]{"Fruit", "Tree"});
+        assertEquals("Testing that cached links are returned", 2, linkCache.getLinks("Apple", Direction.FORWARDS).length);
+        assertNull("Testing that links are not shared across directions", linkCache.getLinks("Apple", Direction.BACKWARDS));
+        assertEquals("Testing that the hit is counted", 1, linkCache.getHits());
+    }
+
+    @Test
+    public void testPutLinksEvictsLeastRecentlyUsed() {
+        linkCache.putLinks("Apple", Direction.FORWARDS, new String[]{"Fruit", "Tree"});
+        linkCache.putLinks("Chair", Direction.FORWARDS, new String[]{"Furniture", "Wood"});
+        linkCache.getLinks("Apple", Direction.FORWARDS);
+        linkCache.putLinks("Orange", Direction.FORWARDS, new String[]{"Fruit", "Color"});
+
+        assertTrue("Testing that the cache stays within its link budget", linkCache.getNumLinks() <= 5);
+        assertNull("Testing that the least recently used page is evicted", linkCache.getLinks("Chair", Direction.FORWARDS));
+        assertNotNull("Testing that recently used pages are kept", linkCache.getLinks("Apple", Direction.FORWARDS));
+    }
+
+    @Test
+    public void testResolveTitleFollowsRedirects() {
+        linkCache.putRedirect("Apple_pie", "Apple pie");
+        assertEquals("Testing that known redirects are resolved", "Apple pie", linkCache.resolveTitle("Apple_pie"));
+        assertEquals("Testing that unknown titles are unchanged", "Chair", linkCache.resolveTitle("Chair"));
+    }
+}
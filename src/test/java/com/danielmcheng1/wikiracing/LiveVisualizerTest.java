@@ -0,0 +1,53 @@
+package com.danielmcheng1.wikiracing;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class LiveVisualizerTest extends TestCase {
+    private LiveVisualizer liveVisualizer;
+    private WebNode source;
+    private WebNode dest;
+
+    @Override
+    protected void setUp() {
+        // never displayed, so the graph can be checked headless
+        liveVisualizer = new LiveVisualizer("Source", "Dest", 10, 25);
+        source = new WebNode("Source", null, Direction.FORWARDS, 0);
+        dest = new WebNode("Dest", null, Direction.BACKWARDS, 0);
+    }
+
+    @Test
+    public void testEachLevelIsSampled() {
+        WebNode onPath = null;
+        for (int i = 0; i < 1000; i++) {
+            WebNode wN = new WebNode("Forwards " + i, source, Direction.FORWARDS, 1);
+            onPath = i == 500 ? wN : onPath;
+            liveVisualizer.pageVisited(wN);
+            liveVisualizer.pageVisited(new WebNode("Backwards " + i, dest, Direction.BACKWARDS, 1));
+        }
+        liveVisualizer.drawFrame();
+        assertEquals("Testing that each level shows at most nodesPerLevel pages", 20, liveVisualizer.getNumShown());
+
+        for (int i = 0; i < 1000; i++) {
+            liveVisualizer.pageVisited(new WebNode("Further " + i, onPath, Direction.FORWARDS, 2));
+        }
+        liveVisualizer.pathFound(new ArrayList<String>(Arrays.asList("Source", "Forwards 500", "Dest")));
+        liveVisualizer.drawFrame();
+        assertEquals("Testing that the node budget caps the pages shown", 25, liveVisualizer.getNumShown());
+        assertNotNull("Testing that the path is drawn even if it was not sampled", liveVisualizer.getGraph().getNode("Forwards 500"));
+        assertTrue("Testing that only sampled pages, the ends and the path are drawn", liveVisualizer.getGraph().getNodeCount() <= 25 + 3);
+    }
+
+    @Test
+    public void testCrawlerThreadsNeverWait() {
+        long droppedBefore = Metrics.liveVisualizerDroppedPages.get();
+        // nothing is drawing, so the queue fills up and the rest are dropped rather than waited on
+        for (int i = 0; i < 20000; i++) {
+            liveVisualizer.pageVisited(new WebNode("Page " + i, source, Direction.FORWARDS, 1));
+        }
+        assertEquals("Testing that pages past the queue limit are dropped", 10000, Metrics.liveVisualizerDroppedPages.get() - droppedBefore);
+    }
+}
@@ -0,0 +1,31 @@
+package com.danielmcheng1.wikiracing;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class LoadTesterTest extends TestCase {
+    @Test
+    public void testZipfFavorsPopularPairs() {
+        double[] cdf = LoadTester.zipfCdf(1000, 1.0);
+        assertEquals("Testing that the CDF ends at 1", 1.0, cdf[cdf.length - 1], 1e-9);
+        // with exponent 1 the top pair of 1000 draws about 13% of requests
+        assertEquals("Testing that the most popular pair is drawn most often", 0.134, cdf[0], 0.001);
+        assertEquals("Testing that a draw of 0 picks the most popular pair", 0, LoadTester.sample(cdf, 0.0));
+        assertEquals("Testing that a draw just under 1 picks the least popular pair", 999, LoadTester.sample(cdf, 0.9999999));
+
+        double[] uniform = LoadTester.zipfCdf(4, 0.0);
+        assertEquals("Testing that exponent 0 is uniform", 2, LoadTester.sample(uniform, 0.6));
+    }
+
+    @Test
+    public void testLatencyPercentiles() {
+        LoadTester.LatencyLog latencies = new LoadTester.LatencyLog();
+        assertEquals("Testing that an empty log reports 0", 0.0, latencies.getMillisAtQuantile(0.99));
+        for (int i = 1; i <= 2000; i++) {
+            latencies.record(i * 1000);
+        }
+        assertEquals("Testing the median", 1000.0, latencies.getMillisAtQuantile(0.5));
+        assertEquals("Testing p99", 1980.0, latencies.getMillisAtQuantile(0.99));
+        assertEquals("Testing p999", 1998.0, latencies.getMillisAtQuantile(0.999));
+    }
+}
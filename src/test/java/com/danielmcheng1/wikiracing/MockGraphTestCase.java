@@ -0,0 +1,61 @@
+package com.danielmcheng1.wikiracing;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Base for tests that crawl a generated graph instead of Wikipedia. Each test starts with the graph served by a
+ * MockLinkSource in place of the live transport, which is put back once the test is over.
+ */
+public abstract class MockGraphTestCase extends TestCase {
+    // generating it takes a while, so every test shares the one graph; a LinkGraph is never changed once built
+    private static final LinkGraph sharedGraph = LinkGraph.generate(20000, 40, 42);
+
+    protected LinkGraph graph;
+    private WikiTransport liveTransport;
+
+    @Override
+    protected void setUp() throws Exception {
+        liveTransport = WikiRetriever.getTransport();
+        useGraph(sharedGraph);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        WikiRetriever.setTransport(liveTransport);
+    }
+
+    // serve this graph instead, e.g. one built for a single test
+    protected void useGraph(LinkGraph graph) {
+        this.graph = graph;
+        WikiRetriever.setTransport(new MockLinkSource(graph));
+    }
+
+    // a crawl that reuses nothing from earlier crawls and is not steered by landmarks, so it only sees the graph
+    protected static CrawlOptions crawlOptions(String sourceTitle, String destTitle) {
+        return new CrawlOptions(sourceTitle, destTitle).timeoutSeconds((long) 15).linkCache(null).pathStore(null).landmarkIndex(null);
+    }
+
+    protected void assertValidPath(List<String> path, String sourceTitle, String destTitle) {
+        assertNotNull("Testing that the crawl finds a path", path);
+        assertEquals("Testing that the path starts at the source", sourceTitle, path.get(0));
+        assertEquals("Testing that the path ends at the destination", destTitle, path.get(path.size() - 1));
+        assertPathFollowsLinks(path);
+    }
+
+    protected void assertPathFollowsLinks(List<String> path) {
+        for (int i = 0; i < path.size() - 1; i++) {
+            String[] links = graph.getLinkTitles(graph.getId(path.get(i)), Direction.FORWARDS);
+            assertTrue("Testing that " + path.get(i) + " links to " + path.get(i + 1), Arrays.asList(links).contains(path.get(i + 1)));
+        }
+    }
+
+    protected static CrawlerResult runCrawl(CrawlOptions options) {
+        CrawlerController crawlerController = new CrawlerController(options);
+        crawlerController.setPrintProgress(false);
+        crawlerController.runCrawl();
+        return crawlerController.getResult();
+    }
+}
@@ -0,0 +1,54 @@
+package com.danielmcheng1.wikiracing;
+
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+public class MockLinkSourceTest extends MockGraphTestCase {
+    @Test
+    public void testResponseReturnsInvalidIfMissing() {
+        JsonObject response = WikiRetriever.getWikiResponse("Page 1|No such page", Direction.FORWARDS, null);
+        assertEquals("Testing that missing titles get negative page IDs", 1, WikiRetriever.getMissingInvalidPages(response).size());
+    }
+
+    @Test
+    public void testResponseContinuesPastLimit() {
+        // page 0 is the biggest hub, so its backlinks take several continues to page through
+        int expected = graph.getNumLinks(0, Direction.BACKWARDS);
+        int received = 0;
+        JsonObject continueParams = null;
+        do {
+            JsonObject response = WikiRetriever.getWikiResponse("Page 0", Direction.BACKWARDS, continueParams);
+            JsonObject page = response.getAsJsonObject("query").getAsJsonObject("pages").getAsJsonObject("1");
+            if (page.has("linkshere")) {
+                received += page.getAsJsonArray("linkshere").size();
+            }
+            continueParams = WikiRetriever.getContinue(response);
+        } while (continueParams != null);
+        assertTrue("Testing that the hub needs continues", expected > MockLinkSource.maxLinksPerResponse);
+        assertEquals("Testing that every backlink is returned across continues", expected, received);
+    }
+
+    @Test
+    public void testCrawlFindsValidPathOffline() {
+        assertValidPath(runCrawl(crawlOptions("Page 12345", "Page 777")).getPath(), "Page 12345", "Page 777");
+    }
+
+    @Test
+    public void testCrawlFindsShortestPaths() {
+        CrawlerResult result = runCrawl(crawlOptions("Page 12345", "Page 777").numPaths(5, true));
+        List<ArrayList<String>> paths = result.getPaths();
+        // how many shortest paths the crawl sees depends on how far it got, so the enumeration itself is tested in CrawlTest
+        assertFalse("Testing that the crawl returns paths", paths.isEmpty());
+        assertTrue("Testing that no more paths than asked for are returned", paths.size() <= 5);
+        assertEquals("Testing that the paths are distinct", paths.size(), new HashSet<ArrayList<String>>(paths).size());
+        for (ArrayList<String> path : paths) {
+            assertEquals("Testing that every path is as short as the shortest", paths.get(0).size(), path.size());
+            assertTrue("Testing that the paths are no longer than the first one found", path.size() <= result.getPath().size());
+            assertValidPath(path, "Page 12345", "Page 777");
+        }
+    }
+}
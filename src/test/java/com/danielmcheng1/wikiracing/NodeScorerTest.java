@@ -0,0 +1,36 @@
+package com.danielmcheng1.wikiracing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+public class NodeScorerTest extends MockGraphTestCase {
+    @Test
+    public void testTitleOverlap() {
+        NodeScorer scorer = NodeScorer.forName("title");
+        double france = scorer.score(new WebNode("France", null, Direction.FORWARDS, 1), "History of France");
+        double revolution = scorer.score(new WebNode("French Revolution", null, Direction.FORWARDS, 1), "History of France");
+        double history = scorer.score(new WebNode("History (disambiguation)", null, Direction.FORWARDS, 1), "History of France");
+        assertEquals("Testing that stop words are not counted", 0.5, france);
+        assertEquals("Testing that disambiguation brackets are split into words", 0.5, history);
+        assertEquals("Testing that pages sharing no words score 0", 0.0, revolution);
+        try {
+            NodeScorer.forName("categories");
+            fail("Testing that an unknown scorer is rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBestFirstCrawlWithBeam() {
+        long droppedBefore = Metrics.beamDroppedPages.get();
+        CrawlerResult result = runCrawl(crawlOptions("Page 12345", "Page 777").nodeScorer(NodeScorer.forName("title"), 10));
+
+        assertEquals("Testing that the crawl is reported as best-first", Crawler.algorithmBestFirst + " (title)", result.getAlgorithm());
+        assertTrue("Testing that the beam dropped the least promising pages", Metrics.beamDroppedPages.get() > droppedBefore);
+        ArrayList<String> path = result.getPath();
+        assertNotNull("Testing that the best-first crawl finds a path", path);
+        assertPathFollowsLinks(path);
+    }
+}
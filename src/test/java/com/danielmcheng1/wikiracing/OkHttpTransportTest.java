@@ -0,0 +1,463 @@
+package com.danielmcheng1.wikiracing;
+
+import okhttp3.Dns;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.internal.http2.ErrorCode;
+import okhttp3.internal.http2.Header;
+import okhttp3.internal.http2.Http2Connection;
+import okhttp3.internal.http2.Http2Stream;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import org.junit.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+public class OkHttpTransportTest extends MockGraphTestCase {
+    private static final char[] keyStorePassword = "wikiracer".toCharArray();
+    private static SSLContext sslContext;
+    private static X509TrustManager trustManager;
+
+    private StandInServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        if (sslContext == null) {
+            createKeys();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testCrawlOverHttp2SharesOneConnection() throws Exception {
+        MockLinkSource mockLinkSource = new MockLinkSource(graph, 5);
+        server = new StandInServer(mockLinkSource, true);
+        WikiTransport transport = server.transport(newClient(OkHttpTransport.defaultMaxFetchesPerHost));
+        HttpUrl url = WikiRetriever.buildWikiURL("Page 1|Page 2", Direction.FORWARDS, null);
+        assertTrue("Testing that responses come back as the API sent them",
+                Arrays.equals(mockLinkSource.fetch(url, "test"), transport.fetch(url, "test")));
+
+        long before = Metrics.httpResponseWireBytes.get();
+        WikiRetriever.setTransport(transport);
+        assertTrue("Testing that the crawl finds a path over HTTP/2", runCrawl(crawlOptions("Page 123", "Page 4567").timeoutSeconds((long) 30)).foundPath());
+        fetchAtOnce(transport, 16, 2);
+        assertEquals("Testing that the stand-in negotiated HTTP/2", 1, server.getNumHttp2Connections());
+        assertEquals("Testing that every request shares the one connection", 1, server.getNumConnections());
+        assertTrue("Testing that requests from many threads are multiplexed, at most " + server.getMaxConcurrentRequests() + " at once",
+                server.getMaxConcurrentRequests() > 1);
+        assertEquals("Testing that every response was gzipped", server.getNumRequests(), server.getNumGzipped());
+        assertTrue("Testing that responses take fewer bytes on the wire than once gunzipped",
+                2 * (Metrics.httpResponseWireBytes.get() - before) < server.getNumBytes());
+    }
+
+    @Test
+    public void testLosingHedgeKeepsSharedConnection() throws Exception {
+        server = new StandInServer(new MockLinkSource(graph, 5), true);
+        OkHttpClient client = newClient(OkHttpTransport.newClientBuilder(OkHttpTransport.defaultMaxFetchesPerHost));
+        WikiTransport transport = server.transport(client);
+        hedgeOnce(transport);
+        for (long deadline = System.currentTimeMillis() + 5000; client.dispatcher().runningCallsCount() > 0 && System.currentTimeMillis() < deadline; ) {
+            Thread.sleep(10);
+        }
+        transport.fetch(WikiRetriever.buildWikiURL("Page 1", Direction.FORWARDS, null), "test");
+        assertEquals("Testing that the losing request over HTTP/2 leaves its connection to the next request", 1, server.getNumConnections());
+    }
+
+    @Test
+    public void testLosingHedgeIsCancelledOverHttp1() throws Exception {
+        server = new StandInServer(new MockLinkSource(graph, 5), false);
+        OkHttpClient client = newClient(OkHttpTransport.newClientBuilder(OkHttpTransport.defaultMaxFetchesPerHost, false));
+        hedgeOnce(server.transport(client));
+        long hedgeWon = System.currentTimeMillis();
+        while (client.dispatcher().runningCallsCount() > 0 && System.currentTimeMillis() - hedgeWon < 5000) {
+            Thread.sleep(10);
+        }
+        assertTrue("Testing that the losing request over HTTP/1.1 is cancelled before the server would have answered it",
+                System.currentTimeMillis() - hedgeWon < StandInServer.slowHandshakeMillis / 2);
+    }
+
+    @Test
+    public void testPoolKeepsAConnectionForEveryThread() throws Exception {
+        server = new StandInServer(new MockLinkSource(graph, 5), false);
+        WikiTransport transport = server.transport(newClient(16));
+        // rounds of one request from each of 16 threads, with every connection idle in between
+        for (int round = 0; round < 5; round++) {
+            fetchAtOnce(transport, 16, 1);
+        }
+        assertEquals("Testing that the stand-in fell back to HTTP/1.1", 0, server.getNumHttp2Connections());
+        assertTrue("Testing that idle connections are kept for the next round, " + server.getNumConnections() + " opened",
+                server.getNumConnections() <= 16);
+        assertEquals("Testing that every request was answered", 80, server.getNumRequests());
+    }
+
+    @Test
+    public void testPerHostLimitCapsConcurrentRequests() throws Exception {
+        server = new StandInServer(new MockLinkSource(graph, 10), false);
+        WikiTransport transport = server.transport(newClient(4));
+        fetchAtOnce(transport, 16, 3);
+        assertEquals("Testing that every request was answered", 48, server.getNumRequests());
+        assertTrue("Testing that no more than the limit are sent at once, " + server.getMaxConcurrentRequests() + " were",
+                server.getMaxConcurrentRequests() <= 4);
+        assertTrue("Testing that no more connections are opened than requests run at once", server.getNumConnections() <= 4);
+    }
+
+    @Test
+    public void testDnsIsCachedAndServedStale() throws UnknownHostException {
+        AtomicInteger numLookups = new AtomicInteger();
+        List<InetAddress> addresses = Collections.singletonList(InetAddress.getLoopbackAddress());
+        boolean[] resolverDown = {false};
+        Dns resolver = hostname -> {
+            numLookups.incrementAndGet();
+            if (resolverDown[0]) {
+                throw new UnknownHostException(hostname);
+            }
+            return addresses;
+        };
+        CachingDns cachingDns = new CachingDns(resolver, 60000);
+        cachingDns.lookup("en.wikipedia.org");
+        assertEquals("Testing that a host is looked up from the cache", addresses, cachingDns.lookup("en.wikipedia.org"));
+        assertEquals("Testing that the resolver is asked once", 1, numLookups.get());
+
+        CachingDns expiring = new CachingDns(resolver, 0);
+        expiring.lookup("en.wikipedia.org");
+        resolverDown[0] = true;
+        assertEquals("Testing that the last addresses are used when the resolver fails", addresses, expiring.lookup("en.wikipedia.org"));
+        try {
+            expiring.lookup("de.wikipedia.org");
+            fail("Testing that a host never resolved fails");
+        } catch (UnknownHostException e) {
+            // expected
+        }
+    }
+
+    // fetch numRequests pages from each of numThreads threads, all at once
+    private static void fetchAtOnce(WikiTransport transport, int numThreads, int numRequests) throws Exception {
+        List<Thread> threads = new ArrayList<Thread>();
+        List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+        for (int i = 0; i < numThreads; i++) {
+            int thread = i;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int j = 0; j < numRequests; j++) {
+                        transport.fetch(WikiRetriever.buildWikiURL("Page " + (thread * numRequests + j), Direction.FORWARDS, null), "test");
+                    }
+                } catch (IOException e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+    }
+
+    /**
+     * Hedge one request sent through the transport, which loses to its hedge while it is still setting up its
+     * connection: the stand-in is made slow to shake hands, and the warm-up requests and the hedge are answered without
+     * it, taking long enough that the hedge is sent well after the request.
+     */
+    private void hedgeOnce(WikiTransport transport) throws IOException {
+        server.setHandshakeDelayMillis(StandInServer.slowHandshakeMillis);
+        AtomicInteger numFetches = new AtomicInteger();
+        WikiTransport hedged = (url, userAgent) -> {
+            if (numFetches.incrementAndGet() == HedgingTransport.minSamples + 1) {
+                return transport.fetch(url, userAgent);
+            }
+            try {
+                Thread.sleep(numFetches.get() <= HedgingTransport.minSamples ? 20 : 200);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return new byte[0];
+        };
+        HedgingTransport hedgingTransport = new HedgingTransport(hedged, 50, 1);
+        for (int i = 0; i <= HedgingTransport.minSamples; i++) {
+            hedgingTransport.fetch(WikiRetriever.buildWikiURL("Page " + i, Direction.FORWARDS, null), "test");
+        }
+        assertEquals("Testing that the request to the stand-in lost to its hedge", 1, hedgingTransport.getNumHedgeWins());
+    }
+
+    // a client that trusts the stand-in's certificate
+    private static OkHttpClient newClient(int maxFetchesPerHost) {
+        return newClient(OkHttpTransport.newClientBuilder(maxFetchesPerHost));
+    }
+
+    private static OkHttpClient newClient(OkHttpClient.Builder builder) {
+        return builder.sslSocketFactory(sslContext.getSocketFactory(), trustManager).build();
+    }
+
+    /******************************************/
+    // METHODS FOR THE STAND-IN SERVER
+    /******************************************/
+    // the stand-in's key and a self-signed certificate for localhost, made with the JDK's keytool, which clients trust
+    private static void createKeys() throws Exception {
+        File file = File.createTempFile("standin", ".p12");
+        file.delete();
+        String password = new String(keyStorePassword);
+        Process keytool = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/keytool").getPath(),
+                "-genkeypair", "-alias", "standin", "-keyalg", "RSA", "-keysize", "2048", "-validity", "1",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-storetype", "PKCS12",
+                "-keystore", file.getPath(), "-storepass", password, "-keypass", password)
+                .redirectErrorStream(true).start();
+        byte[] output = readAll(keytool.getInputStream());
+        if (keytool.waitFor() != 0) {
+            throw new IOException("keytool failed: " + new String(output));
+        }
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(file)) {
+            keyStore.load(in, keyStorePassword);
+        } finally {
+            file.delete();
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, keyStorePassword);
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+        trustManager = (X509TrustManager) trustManagerFactory.getTrustManagers()[0];
+        sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), new X509TrustManager[]{trustManager}, null);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = in.read(buffer)) != -1; ) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Serves a WikiTransport's responses over HTTPS on localhost, speaking HTTP/2 to clients that offer it if
+     * http2 is set and HTTP/1.1 with keep-alive otherwise, and gzipping bodies for clients that accept it, as the
+     * Wiki API does. Counts connections and requests so tests can see how a client used them.
+     */
+    private static class StandInServer implements Closeable {
+        static final long slowHandshakeMillis = 1000;
+
+        private final WikiTransport source;
+        private final SSLServerSocket serverSocket;
+        private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<Socket>());
+        private final AtomicInteger numConnections = new AtomicInteger();
+        private final AtomicInteger numHttp2Connections = new AtomicInteger();
+        private final AtomicInteger numRequests = new AtomicInteger();
+        private final AtomicInteger numGzipped = new AtomicInteger();
+        private final AtomicInteger numBytes = new AtomicInteger();
+        private final AtomicInteger concurrentRequests = new AtomicInteger();
+        private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+        private volatile long handshakeDelayMillis;
+
+        StandInServer(WikiTransport source, boolean http2) throws IOException {
+            this.source = source;
+            this.serverSocket = (SSLServerSocket) sslContext.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            SSLParameters parameters = serverSocket.getSSLParameters();
+            parameters.setApplicationProtocols(http2 ? new String[]{"h2", "http/1.1"} : new String[]{"http/1.1"});
+            serverSocket.setSSLParameters(parameters);
+            Thread acceptor = new Thread(this::acceptConnections, "stand-in-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        // sends the Wiki API URLs it is given to this server instead
+        WikiTransport transport(OkHttpClient client) {
+            OkHttpTransport okHttpTransport = new OkHttpTransport(client);
+            return (url, userAgent) -> okHttpTransport.fetch(url.newBuilder().host("localhost").port(serverSocket.getLocalPort()).build(), userAgent);
+        }
+
+        private void acceptConnections() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    SSLSocket socket = (SSLSocket) serverSocket.accept();
+                    sockets.add(socket);
+                    numConnections.incrementAndGet();
+                    Thread connection = new Thread(() -> serveConnection(socket), "stand-in-connection");
+                    connection.setDaemon(true);
+                    connection.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serveConnection(SSLSocket socket) {
+            try {
+                Thread.sleep(handshakeDelayMillis);
+                socket.startHandshake();
+                if ("h2".equals(socket.getApplicationProtocol())) {
+                    numHttp2Connections.incrementAndGet();
+                    Http2Connection connection = new Http2Connection.Builder(false).socket(socket).listener(new Http2Connection.Listener() {
+                        // OkHttp calls this for one stream at a time, so each is served on its own thread
+                        public void onStream(Http2Stream stream) {
+                            Thread streamThread = new Thread(() -> {
+                                try {
+                                    serveStream(stream);
+                                } catch (IOException e) {
+                                    // the client cancelled the stream
+                                }
+                            }, "stand-in-stream");
+                            streamThread.setDaemon(true);
+                            streamThread.start();
+                        }
+                    }).build();
+                    connection.start();
+                } else {
+                    serveHttp1(socket);
+                }
+            } catch (IOException | InterruptedException e) {
+                // the client hung up
+            }
+        }
+
+        private void serveStream(Http2Stream stream) throws IOException {
+            String path = null;
+            String acceptEncoding = null;
+            for (Header header : stream.getRequestHeaders()) {
+                if (header.name.equals(Header.TARGET_PATH)) {
+                    path = header.value.utf8();
+                } else if (header.name.utf8().equals("accept-encoding")) {
+                    acceptEncoding = header.value.utf8();
+                }
+            }
+            byte[] body;
+            try {
+                body = respond(path, acceptEncoding);
+            } catch (IOException e) {
+                stream.close(ErrorCode.INTERNAL_ERROR);
+                return;
+            }
+            List<Header> responseHeaders = new ArrayList<Header>();
+            responseHeaders.add(new Header(Header.RESPONSE_STATUS, "200"));
+            responseHeaders.add(new Header("content-type", "application/json"));
+            if (isGzip(acceptEncoding)) {
+                responseHeaders.add(new Header("content-encoding", "gzip"));
+            }
+            stream.sendResponseHeaders(responseHeaders, true);
+            try (BufferedSink sink = Okio.buffer(stream.getSink())) {
+                sink.write(body);
+            }
+        }
+
+        private void serveHttp1(SSLSocket socket) throws IOException {
+            BufferedSource in = Okio.buffer(Okio.source(socket));
+            BufferedSink out = Okio.buffer(Okio.sink(socket));
+            while (true) {
+                String requestLine = in.readUtf8Line();
+                if (requestLine == null) {
+                    return;
+                }
+                String acceptEncoding = null;
+                for (String line = in.readUtf8LineStrict(); !line.isEmpty(); line = in.readUtf8LineStrict()) {
+                    if (line.toLowerCase().startsWith("accept-encoding:")) {
+                        acceptEncoding = line.substring("accept-encoding:".length()).trim();
+                    }
+                }
+                byte[] body = respond(requestLine.split(" ")[1], acceptEncoding);
+                out.writeUtf8("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: " + body.length + "\r\n");
+                if (isGzip(acceptEncoding)) {
+                    out.writeUtf8("Content-Encoding: gzip\r\n");
+                }
+                out.writeUtf8("\r\n").write(body).flush();
+            }
+        }
+
+        private byte[] respond(String path, String acceptEncoding) throws IOException {
+            numRequests.incrementAndGet();
+            maxConcurrentRequests.accumulateAndGet(concurrentRequests.incrementAndGet(), Math::max);
+            try {
+                byte[] body = source.fetch(HttpUrl.parse("https://en.wikipedia.org" + path), "stand-in");
+                numBytes.addAndGet(body.length);
+                if (!isGzip(acceptEncoding)) {
+                    return body;
+                }
+                numGzipped.incrementAndGet();
+                ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+                    gzip.write(body);
+                }
+                return gzipped.toByteArray();
+            } finally {
+                concurrentRequests.decrementAndGet();
+            }
+        }
+
+        private static boolean isGzip(String acceptEncoding) {
+            return acceptEncoding != null && acceptEncoding.contains("gzip");
+        }
+
+        // a slow TLS handshake, so that a test can act on a connection the client is still setting up
+        void setHandshakeDelayMillis(long handshakeDelayMillis) {
+            this.handshakeDelayMillis = handshakeDelayMillis;
+        }
+
+        int getNumConnections() {
+            return numConnections.get();
+        }
+
+        int getNumHttp2Connections() {
+            return numHttp2Connections.get();
+        }
+
+        int getNumRequests() {
+            return numRequests.get();
+        }
+
+        int getNumGzipped() {
+            return numGzipped.get();
+        }
+
+        // response body bytes before any gzipping
+        int getNumBytes() {
+            return numBytes.get();
+        }
+
+        int getMaxConcurrentRequests() {
+            return maxConcurrentRequests.get();
+        }
+
+        public void close() throws IOException {
+            serverSocket.close();
+            synchronized (sockets) {
+                for (Socket socket : sockets) {
+                    socket.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.danielmcheng1.wikiracing;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class ParallelBfsTest extends TestCase {
+    private LinkGraph graph;
+    private ForkJoinPool pool;
+    private ParallelBfs parallelBfs;
+
+    @Override
+    protected void setUp() {
+        graph = LinkGraph.generate(100000, 20, 42);
+        pool = new ForkJoinPool(4);
+        parallelBfs = new ParallelBfs(graph, pool);
+    }
+
+    @Override
+    protected void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testRacesFindShortestPaths() {
+        Random random = new Random(7);
+        for (int i = 0; i < 50; i++) {
+            int source = random.nextInt(graph.getNumPages());
+            int dest = random.nextInt(graph.getNumPages());
+            ParallelBfs.Result result = parallelBfs.race(source, dest, System.nanoTime() + 10000000000L);
+            int[] path = result.getPath();
+            assertNotNull("Testing that every page can reach every other page of the generated graph", path);
+            assertEquals("Testing that the path starts at the source", source, path[0]);
+            assertEquals("Testing that the path ends at the destination", dest, path[path.length - 1]);
+            for (int j = 0; j < path.length - 1; j++) {
+                assertTrue("Testing that every step of the path is a link", hasLink(path[j], path[j + 1]));
+            }
+            assertEquals("Testing that the path is as short as a plain BFS finds", distance(graph, source, dest), path.length - 1);
+        }
+    }
+
+    @Test
+    public void testBottomUpLevelsWithoutPath() {
+        // two dense halves where only the second links to the first, so both ends fill their half and never meet
+        int numPages = 20000;
+        int half = numPages / 2;
+        Random random = new Random(7);
+        String[] titles = new String[numPages];
+        int[] offsets = new int[numPages + 1];
+        int[] targets = new int[numPages * 20];
+        for (int page = 0; page < numPages; page++) {
+            titles[page] = "Page " + page;
+            int first = page < half ? 0 : half;
+            int[] links = new int[20];
+            for (int i = 0; i < links.length; i++) {
+                links[i] = first + random.nextInt(half);
+            }
+            if (page >= half) {
+                links[0] = random.nextInt(half);
+            }
+            Arrays.sort(links);
+            int numLinks = offsets[page];
+            for (int i = 0; i < links.length; i++) {
+                if ((i == 0 || links[i] != links[i - 1]) && links[i] != page) {
+                    targets[numLinks++] = links[i];
+                }
+            }
+            offsets[page + 1] = numLinks;
+        }
+        LinkGraph halves = new LinkGraph(titles, offsets, Arrays.copyOf(targets, offsets[numPages]));
+        ParallelBfs.Result result = new ParallelBfs(halves, pool).race(1, numPages - 1, System.nanoTime() + 10000000000L);
+        assertNull("Testing that there is no path from the first half to the second", result.getPath());
+        assertFalse("Testing that a race without a path is not reported as timed out", result.timedOut());
+        assertTrue("Testing that the dense middle levels are expanded bottom up", result.getNumBottomUpLevels() > 0);
+        result = new ParallelBfs(halves, pool).race(numPages - 1, 1, System.nanoTime() + 10000000000L);
+        assertEquals("Testing that the other way round there is a shortest path", distance(halves, numPages - 1, 1), result.getPath().length - 1);
+    }
+
+    @Test
+    public void testRaceThroughController() {
+        CrawlerController crawlerController = new CrawlerController(new CrawlOptions("Page 12345", "Page 777").timeoutSeconds((long) 15)
+                .linkCache(null).pathStore(null).landmarkIndex(null));
+        crawlerController.setPrintProgress(false);
+        crawlerController.setParallelBfs(parallelBfs);
+        crawlerController.runCrawl();
+        CrawlerResult result = crawlerController.getResult();
+        assertTrue("Testing that the offline race finds a path", result.foundPath());
+        assertEquals("Testing that the offline race reports its engine", ParallelBfs.algorithm, result.getAlgorithm());
+        assertEquals("Testing that the offline race makes no API calls", 0, result.getNumApiCalls());
+        assertEquals("Testing that the result path matches the race", distance(graph, 12345, 777) + 1, result.getPath().size());
+        assertEquals("Testing that the result path starts at the source", "Page 12345", result.getPath().get(0));
+        assertEquals("Testing that the result path ends at the destination", "Page 777", result.getPath().get(result.getPath().size() - 1));
+
+        crawlerController = new CrawlerController(new CrawlOptions("Page 12345", "Not A Page").timeoutSeconds((long) 15)
+                .linkCache(null).pathStore(null).landmarkIndex(null));
+        crawlerController.setPrintProgress(false);
+        crawlerController.setParallelBfs(parallelBfs);
+        crawlerController.runCrawl();
+        assertFalse("Testing that titles missing from the offline graph are rejected", crawlerController.getResult().foundPath());
+    }
+
+    private boolean hasLink(int from, int to) {
+        for (int i = 0; i < graph.getNumLinks(from, Direction.FORWARDS); i++) {
+            if (graph.getLink(from, Direction.FORWARDS, i) == to) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int distance(LinkGraph graph, int source, int dest) {
+        int[] distances = new int[graph.getNumPages()];
+        Arrays.fill(distances, -1);
+        distances[source] = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        queue.add(source);
+        while (!queue.isEmpty()) {
+            int page = queue.poll();
+            if (page == dest) {
+                return distances[page];
+            }
+            for (int i = 0; i < graph.getNumLinks(page, Direction.FORWARDS); i++) {
+                int link = graph.getLink(page, Direction.FORWARDS, i);
+                if (distances[link] < 0) {
+                    distances[link] = distances[page] + 1;
+                    queue.add(link);
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,192 @@
+package com.danielmcheng1.wikiracing;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PartitionedCrawlTest extends MockGraphTestCase {
+    @Test
+    public void testRaceAcrossWorkers() throws IOException {
+        List<PartitionWorker> workers = new ArrayList<PartitionWorker>();
+        List<String> addresses = new ArrayList<String>();
+        for (int i = 0; i < 3; i++) {
+            // no link cache, so that each worker fetches its own pages
+            PartitionWorker worker = new PartitionWorker(0, 4, null);
+            workers.add(worker);
+            addresses.add("localhost:" + worker.getPort());
+        }
+        PartitionCoordinator coordinator = new PartitionCoordinator(addresses);
+        try {
+            PartitionCoordinator.Result race = coordinator.race("Page 12345", "Page 777", 15000);
+            assertValidPath(race, "Page 12345", "Page 777");
+            assertTrue("Testing that workers send each other the links they own", race.getNumLinksSent() > 0);
+            assertTrue("Testing that links are batched", race.getNumMessagesSent() < race.getNumLinksSent() / 10);
+
+            CrawlerController crawlerController = new CrawlerController(crawlOptions("Page 4321", "Page 99"));
+            crawlerController.setPrintProgress(false);
+            crawlerController.setPartitionCoordinator(coordinator);
+            crawlerController.runCrawl();
+            CrawlerResult result = crawlerController.getResult();
+            assertTrue("Testing that the next race starts from scratch and finds a path", result.foundPath());
+            assertValidPath(result.getPath(), "Page 4321", "Page 99");
+            assertEquals("Testing that the result names the engine", PartitionCoordinator.algorithm, result.getAlgorithm());
+        } finally {
+            coordinator.close();
+            for (PartitionWorker worker : workers) {
+                worker.close();
+            }
+        }
+    }
+
+    @Test
+    public void testRaceAcrossWorkerProcesses() throws Exception {
+        List<Process> processes = new ArrayList<Process>();
+        List<String> addresses = new ArrayList<String>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                int port = findFreePort();
+                Process process = new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                        "-cp", System.getProperty("java.class.path"), PartitionWorker.class.getName(),
+                        "-port", String.valueOf(port), "-mockPages", "20000", "-mockAvgLinks", "40", "-seed", "42")
+                        .redirectErrorStream(true).start();
+                processes.add(process);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null && !line.startsWith("Partition worker listening")) {
+                    // skip anything the JVM prints on startup
+                }
+                assertNotNull("Testing that the worker process starts", line);
+                addresses.add("localhost:" + port);
+            }
+            PartitionCoordinator coordinator = new PartitionCoordinator(addresses);
+            try {
+                assertValidPath(coordinator.race("Page 12345", "Page 777", 15000), "Page 12345", "Page 777");
+            } finally {
+                coordinator.close();
+            }
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    @Test
+    public void testRaceFailsWhenWorkerIsUnreachable() throws Exception {
+        // slow enough that the worker cannot find a path before its first links for the other worker fail to send
+        WikiRetriever.setTransport(new MockLinkSource(graph, 300));
+        PartitionWorker worker = new PartitionWorker(0, 4, null);
+        // answers the coordinator, but takes no connections from other workers
+        ServerSocket unreachable = new ServerSocket(0);
+        Thread fakeWorker = new Thread(() -> serveCoordinatorOnly(unreachable));
+        fakeWorker.setDaemon(true);
+        fakeWorker.start();
+        PartitionCoordinator coordinator = new PartitionCoordinator(Arrays.asList("localhost:" + worker.getPort(), "localhost:" + unreachable.getLocalPort()));
+        try {
+            // both ends are owned by the real worker, so that it finds links owned by the other one, and far enough
+            // apart that a path takes more than one round of requests from each end
+            String sourceTitle = findTitleOwnedBy(0, 2, 100);
+            String destTitle = findTitleOwnedBy(0, 2, 200);
+            while (getDistance(sourceTitle, destTitle) < 4) {
+                destTitle = findTitleOwnedBy(0, 2, Integer.parseInt(destTitle.substring("Page ".length())) + 1);
+            }
+            long startMillis = System.currentTimeMillis();
+            try {
+                coordinator.race(sourceTitle, destTitle, 15000);
+                fail("Testing that a race whose links cannot be delivered fails");
+            } catch (IOException e) {
+                assertTrue("Testing that the failure says which worker was unreachable, got: " + e.getMessage(), e.getMessage().contains("Failed to send links"));
+            }
+            assertTrue("Testing that the race fails well before its timeout", System.currentTimeMillis() - startMillis < 5000);
+        } finally {
+            coordinator.close();
+            worker.close();
+        }
+    }
+
+    // reply to the coordinator's start and stop, as a worker would, after closing the port to everyone else
+    private static void serveCoordinatorOnly(ServerSocket serverSocket) {
+        try (Socket socket = serverSocket.accept();
+             DataInputStream in = new DataInputStream(socket.getInputStream());
+             DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+            serverSocket.close();
+            while (true) {
+                byte type = in.readByte();
+                long raceId = in.readLong();
+                if (type == PartitionProtocol.start) {
+                    in.readInt();
+                    for (int i = in.readInt(); i > 0; i--) {
+                        in.readUTF();
+                    }
+                    in.readUTF();
+                    in.readUTF();
+                    out.writeByte(PartitionProtocol.ok);
+                    out.writeLong(raceId);
+                } else if (type == PartitionProtocol.stop) {
+                    out.writeByte(PartitionProtocol.stats);
+                    out.writeLong(raceId);
+                    out.writeInt(0);
+                    for (int i = 0; i < 5; i++) {
+                        out.writeLong(0);
+                    }
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the coordinator hung up
+        }
+    }
+
+    private static String findTitleOwnedBy(int partition, int numPartitions, int from) {
+        for (int page = from; ; page++) {
+            if (PartitionProtocol.getPartition("Page " + page, numPartitions) == partition) {
+                return "Page " + page;
+            }
+        }
+    }
+
+    private void assertValidPath(PartitionCoordinator.Result race, String sourceTitle, String destTitle) {
+        assertNotNull("Testing that the race finds a path", race.getPath());
+        assertValidPath(Arrays.asList(race.getPath()), sourceTitle, destTitle);
+    }
+
+    // the length of the shortest path between the titles, breadth-first over the whole graph
+    private int getDistance(String fromTitle, String toTitle) {
+        int[] distances = new int[graph.getNumPages()];
+        Arrays.fill(distances, -1);
+        int from = graph.getId(fromTitle);
+        int to = graph.getId(toTitle);
+        distances[from] = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>(Collections.singletonList(from));
+        while (!queue.isEmpty() && distances[to] < 0) {
+            int page = queue.poll();
+            for (int i = 0; i < graph.getNumLinks(page, Direction.FORWARDS); i++) {
+                int link = graph.getLink(page, Direction.FORWARDS, i);
+                if (distances[link] < 0) {
+                    distances[link] = distances[page] + 1;
+                    queue.add(link);
+                }
+            }
+        }
+        return distances[to] < 0 ? Integer.MAX_VALUE : distances[to];
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
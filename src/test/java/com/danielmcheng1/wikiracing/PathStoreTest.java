@@ -0,0 +1,72 @@
+package com.danielmcheng1.wikiracing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+public class PathStoreTest extends MockGraphTestCase {
+    @Test
+    public void testWalkFollowsPathsFromTitle() {
+        PathStore pathStore = new PathStore(100);
+        pathStore.putPath(Arrays.asList("A", "X", "Y", "B"));
+        pathStore.putPath(Arrays.asList("A", "Z", "Y", "D"));
+        pathStore.putPath(Arrays.asList("C", "Y", "D"));
+
+        LinkedHashMap<String, String> forwards = pathStore.walk("A", Direction.FORWARDS, 100);
+        assertEquals("Testing that the walk reaches pages in order of distance", Arrays.asList("X", "Z", "Y", "B", "D"), new ArrayList<String>(forwards.keySet()));
+        assertEquals("Testing that each page maps to the page it was reached from", "Y", forwards.get("D"));
+
+        LinkedHashMap<String, String> backwards = pathStore.walk("D", Direction.BACKWARDS, 100);
+        assertEquals("Testing that the walk follows paths backwards", Arrays.asList("Y", "Z", "C", "A"), new ArrayList<String>(backwards.keySet()));
+        assertTrue("Testing that paths not ending at the title are not walked", !backwards.containsKey("X"));
+        assertTrue("Testing that a page with no path from it seeds nothing", pathStore.walk("Y", Direction.FORWARDS, 100).isEmpty());
+        assertEquals("Testing that the walk stops at maxPages", 2, pathStore.walk("A", Direction.FORWARDS, 2).size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        PathStore pathStore = new PathStore(3);
+        pathStore.putPath(Arrays.asList("A", "B", "C"));
+        pathStore.putPath(Arrays.asList("D", "E"));
+        pathStore.walk("A", Direction.FORWARDS, 100);
+        pathStore.putPath(Arrays.asList("F", "G"));
+        assertTrue("Testing that the store stays within its budget", pathStore.getNumLinks() <= 3);
+        assertTrue("Testing that the least recently used path was evicted", pathStore.walk("D", Direction.FORWARDS, 100).isEmpty());
+        assertTrue("Testing that evicted paths are gone backwards too", pathStore.walk("E", Direction.BACKWARDS, 100).isEmpty());
+        assertEquals("Testing that a path walked since is kept", 2, pathStore.walk("A", Direction.FORWARDS, 100).size());
+        assertEquals("Testing that the newest path is kept", 1, pathStore.walk("F", Direction.FORWARDS, 100).size());
+    }
+
+    @Test
+    public void testOtherRacesPathsDoNotLengthenPath() {
+        // S links to A and C, A to B, B to C and C to D
+        String[] titles = {"S", "A", "B", "C", "D"};
+        useGraph(new LinkGraph(titles, new int[]{0, 2, 3, 4, 5, 5}, new int[]{1, 3, 2, 3, 4}));
+        PathStore pathStore = new PathStore(100);
+        // races from S to B and from B to C, which together would put C three links out from S
+        pathStore.putPath(Arrays.asList("S", "A", "B"));
+        pathStore.putPath(Arrays.asList("B", "C"));
+        assertEquals("Testing that pages of other races' paths are found at their true distance", Arrays.asList("S", "C", "D"),
+                runCrawl(crawlOptions("S", "D").pathStore(pathStore)).getPath());
+    }
+
+    @Test
+    public void testRepeatedRaceSkipsCrawl() {
+        PathStore pathStore = new PathStore(PathStore.defaultMaxLinks);
+        ArrayList<String> firstPath = runCrawl(crawlOptions("Page 12345", "Page 777").pathStore(pathStore)).getPath();
+
+        CrawlerResult repeat = runCrawl(crawlOptions("Page 12345", "Page 777").pathStore(pathStore));
+        // every path found along the way is stored, so the repeat can only do as well or better
+        assertEquals("Testing that a repeated race ends at the destination", "Page 777", repeat.getPath().get(repeat.getPath().size() - 1));
+        assertTrue("Testing that a repeated race finds a path no longer than the first", repeat.getPath().size() <= firstPath.size());
+        assertEquals("Testing that a repeated race needs no crawl requests", 0, repeat.getNumApiCalls());
+
+        // any later race from the same source to a page on the path is already solved too
+        CrawlerResult overlapping = runCrawl(crawlOptions("Page 12345", firstPath.get(firstPath.size() - 2)).pathStore(pathStore));
+        assertEquals("Testing that an overlapping race needs no crawl requests", 0, overlapping.getNumApiCalls());
+        assertEquals("Testing the path store hit rate", 2, pathStore.getHits());
+        assertEquals("Testing the path store lookups", 3, pathStore.getLookups());
+    }
+}
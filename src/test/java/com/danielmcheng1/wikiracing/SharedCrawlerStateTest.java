@@ -0,0 +1,188 @@
+package com.danielmcheng1.wikiracing;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SharedCrawlerStateTest extends MockGraphTestCase {
+    private RespServer server;
+    private RespClient client;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new RespServer(0);
+        client = new RespClient(server.getAddress());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        RespClient.setShared(null);
+        client.close();
+        server.close();
+        super.tearDown();
+    }
+
+    @Test
+    public void testBatchOperationsAreOneRoundTrip() {
+        RespCrawlerStateStore store = new RespCrawlerStateStore(client, "batches");
+        WebNode source = new WebNode("Source", null, Direction.FORWARDS, 0);
+        List<WebNode> links = new ArrayList<WebNode>();
+        List<String> titles = new ArrayList<String>();
+        for (int i = 0; i < 500; i++) {
+            links.add(new WebNode("Link " + i, source, Direction.FORWARDS, 1));
+            titles.add("Link " + i);
+        }
+
+        long roundTrips = client.getNumRoundTrips();
+        boolean[] added = store.visitIfAbsent(links);
+        assertEquals("Testing that visiting 500 links is one round trip", roundTrips + 1, client.getNumRoundTrips());
+        for (boolean isAdded : added) {
+            assertTrue("Testing that new links are marked visited", isAdded);
+        }
+        for (boolean isAdded : store.visitIfAbsent(links.subList(0, 10))) {
+            assertFalse("Testing that visited links are not marked again", isAdded);
+        }
+
+        roundTrips = client.getNumRoundTrips();
+        assertEquals("Testing that the store reports every link queued", 500, store.enqueue(links));
+        boolean[] found = store.findVisited(Direction.BACKWARDS, titles);
+        List<WebNode> batch = store.dequeue(Direction.FORWARDS, 50);
+        assertEquals("Testing that queueing, probing and dequeueing are one round trip each", roundTrips + 3, client.getNumRoundTrips());
+        for (boolean isFound : found) {
+            assertFalse("Testing that nothing is visited from the other end", isFound);
+        }
+        assertEquals("Testing that a batch is dequeued", 50, batch.size());
+        assertSame("Testing that dequeued nodes are the ones this crawler visited", links.get(0), batch.get(0));
+        assertEquals("Testing that the queue is first in, first out", "Link 49", batch.get(49).getTitle());
+    }
+
+    @Test
+    public void testJoiningInstanceLoadsPathsInOneRoundTrip() throws IOException {
+        RespCrawlerStateStore first = RespCrawlerStateStore.forRun(client, "Source", "Dest", "run-1");
+        WebNode source = new WebNode("Source", null, Direction.FORWARDS, 0);
+        WebNode link = new WebNode("Link", source, Direction.FORWARDS, 1);
+        WebNode deepLink = new WebNode("Deep Link", link, Direction.FORWARDS, 2);
+        first.visitIfAbsent(Arrays.asList(source, link, deepLink));
+        first.enqueue(Collections.singletonList(deepLink));
+        first.close();
+        assertEquals("Testing that a run's state stays on the server once an instance closes it", 2, server.getNumKeys());
+
+        try (RespClient otherClient = new RespClient(server.getAddress())) {
+            RespCrawlerStateStore second = RespCrawlerStateStore.forRun(otherClient, "source", "dest", "run-1");
+            assertEquals("Testing that instances racing the same run share its key", first.getCrawlKey(), second.getCrawlKey());
+            long roundTrips = otherClient.getNumRoundTrips();
+            List<WebNode> batch = second.dequeue(Direction.FORWARDS, 10);
+            assertEquals("Testing that dequeueing a page another instance queued is one round trip", roundTrips + 1, otherClient.getNumRoundTrips());
+            assertEquals("Testing that the queued page is dequeued", 1, batch.size());
+            assertEquals("Testing that the page keeps its distance", 2, batch.get(0).getDistance());
+            assertEquals("Testing that the page keeps its parent", "Link", batch.get(0).getParent().getTitle());
+            assertEquals("Testing that the page keeps its path to the source", "Source", batch.get(0).getParent().getParent().getTitle());
+            assertEquals("Testing that ancestors keep their distances", 1, batch.get(0).getParent().getDistance());
+
+            RespCrawlerStateStore third = RespCrawlerStateStore.forRun(otherClient, "Source", "Dest", "run-1");
+            roundTrips = otherClient.getNumRoundTrips();
+            boolean[] found = third.findVisited(Direction.FORWARDS, Collections.singletonList("Deep Link"));
+            assertEquals("Testing that probing for a page another instance visited is one round trip", roundTrips + 1, otherClient.getNumRoundTrips());
+            assertTrue("Testing that the page is found", found[0]);
+            assertEquals("Testing that the probe builds the page's path", "Source", third.getVisited(Direction.FORWARDS).get("Deep Link").getParent().getParent().getTitle());
+        }
+        assertFalse("Testing that other runs get other keys",
+                first.getCrawlKey().equals(RespCrawlerStateStore.forRun(client, "Source", "Dest", "run-2").getCrawlKey()));
+    }
+
+    @Test
+    public void testRunExpiresOnceNoInstanceWorksOnIt() throws Exception {
+        RespCrawlerStateStore store = RespCrawlerStateStore.forRun(client, "Source", "Dest", "run-ttl", 1);
+        WebNode source = new WebNode("Source", null, Direction.FORWARDS, 0);
+        WebNode link = new WebNode("Link", source, Direction.FORWARDS, 1);
+        long roundTrips = client.getNumRoundTrips();
+        store.visitIfAbsent(Arrays.asList(source, link));
+        store.enqueue(Collections.singletonList(link));
+        assertEquals("Testing that setting the keys to expire adds no round trips", roundTrips + 2, client.getNumRoundTrips());
+        String visitedKey = "wikiracer:{" + store.getCrawlKey() + "}:visited:forwards";
+        String queueKey = "wikiracer:{" + store.getCrawlKey() + "}:tovisit:forwards";
+        assertEquals("Testing that the visited pages are set to expire", 1L, client.call("TTL", visitedKey));
+        assertEquals("Testing that the queue is set to expire", 1L, client.call("TTL", queueKey));
+
+        // each batch sets the keys to expire again, so a run that is still worked on outlives its time to live
+        Thread.sleep(600);
+        store.visitIfAbsent(Collections.singletonList(new WebNode("Other Link", source, Direction.FORWARDS, 1)));
+        Thread.sleep(600);
+        assertEquals("Testing that a batch keeps the run on the server", 2, server.getNumKeys());
+        Thread.sleep(900);
+        assertEquals("Testing that the run is dropped once no batch has kept it", 0, server.getNumKeys());
+
+        RespCrawlerStateStore kept = RespCrawlerStateStore.forRun(client, "Source", "Dest", "run-kept", 0);
+        kept.visitIfAbsent(Collections.singletonList(source));
+        assertEquals("Testing that a run with no time to live never expires", -1L,
+                client.call("TTL", "wikiracer:{" + kept.getCrawlKey() + "}:visited:forwards"));
+    }
+
+    @Test
+    public void testCrawlOnStateServer() {
+        RespClient.setShared(client);
+        assertValidPath(runCrawl(crawlOptions("Page 12345", "Page 777")).getPath(), "Page 12345", "Page 777");
+        assertTrue("Testing that the crawl kept its state on the server", server.getNumCommands() > 0);
+        assertEquals("Testing that the crawl deletes its state once it is over", 0, server.getNumKeys());
+    }
+
+    @Test
+    public void testCrawlFailsWhenStateServerStops() {
+        CrawlerController crawlerController = new CrawlerController(crawlOptions("Page 12345", "Page 777")
+                .stateStore(new RespCrawlerStateStore(client, "stopped")));
+        crawlerController.setPrintProgress(false);
+        server.close();
+        long startTime = System.currentTimeMillis();
+        crawlerController.runCrawl();
+        assertTrue("Testing that the crawl ends as soon as its state server is gone", System.currentTimeMillis() - startTime < 5000);
+        assertFalse("Testing that the crawl finds no path", crawlerController.getResult().foundPath());
+        assertTrue("Testing that the crawl reports the state server failed", crawlerController.getResult().getInfo().startsWith("Crawl state failed"));
+    }
+
+    @Test
+    public void testCrawlFailsWhenStateServerHangs() throws IOException {
+        // the server's backlog completes the connection, but nothing ever reads from it or answers
+        try (ServerSocket silentServer = new ServerSocket(0);
+             RespClient silentClient = new RespClient("localhost", silentServer.getLocalPort(), 200)) {
+            long startTime = System.currentTimeMillis();
+            CrawlerController crawlerController = new CrawlerController(crawlOptions("Page 12345", "Page 777")
+                    .stateStore(new RespCrawlerStateStore(silentClient, "silent")));
+            crawlerController.setPrintProgress(false);
+            crawlerController.runCrawl();
+            assertTrue("Testing that a state server that stops answering times out rather than hanging the crawl",
+                    System.currentTimeMillis() - startTime < 5000);
+            assertTrue("Testing that the crawl reports the state server failed", crawlerController.getResult().getInfo().startsWith("Crawl state failed"));
+        }
+    }
+
+    @Test
+    public void testCrawlerTakesOverSharedCrawl() throws Exception {
+        Crawler first = new Crawler(crawlOptions("Page 12345", "Page 777").stateStore(new RespCrawlerStateStore(client, "handoff")));
+        first.findNextLinks(first.getCrawlerState().getNextBatchToVisit(Direction.FORWARDS), Direction.FORWARDS);
+        first.findNextLinks(first.getCrawlerState().getNextBatchToVisit(Direction.BACKWARDS), Direction.BACKWARDS);
+        assertNull("Testing that the first crawler stops before it finds a path", first.getPath());
+
+        // a second instance, with a connection of its own, picks up where the first left off
+        try (RespClient otherClient = new RespClient(server.getAddress())) {
+            Crawler second = new Crawler(crawlOptions("Page 12345", "Page 777").stateStore(new RespCrawlerStateStore(otherClient, "handoff")));
+            assertFalse("Testing that the second crawler does not visit the source again", second.getCrawlerState().getVisitedForwards().containsKey("Page 12345"));
+            long startTime = System.currentTimeMillis();
+            Thread forwards = new Thread(() -> second.runCrawlMultithreaded(Direction.FORWARDS, startTime, 2));
+            Thread backwards = new Thread(() -> second.runCrawlMultithreaded(Direction.BACKWARDS, startTime, 2));
+            forwards.start();
+            backwards.start();
+            forwards.join(20000);
+            backwards.join(20000);
+            assertNotNull("Testing that the second crawler finds a path", second.getPath());
+            assertValidPath(CrawlerResult.savePathAsArray(second.getPath()), "Page 12345", "Page 777");
+            assertTrue("Testing that the second crawler traced the path through pages the first visited",
+                    second.getCrawlerState().getVisitedForwards().containsKey("Page 12345"));
+        }
+    }
+}
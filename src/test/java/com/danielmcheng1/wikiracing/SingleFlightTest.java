@@ -0,0 +1,129 @@
+package com.danielmcheng1.wikiracing;
+
+import okhttp3.HttpUrl;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SingleFlightTest extends MockGraphTestCase {
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // batches of earlier tests' crawls may still be finishing their requests
+        awaitNoFetchesInFlight();
+    }
+
+    @Test
+    public void testClaimsAreShared() throws Exception {
+        assertNull("Testing that the first batch claims the fetch", WikiRetriever.claimFetch("Apple", Direction.FORWARDS));
+        assertNull("Testing that the other direction is a separate fetch", WikiRetriever.claimFetch("Apple", Direction.BACKWARDS));
+        CompletableFuture<String[]> pending = WikiRetriever.claimFetch("Apple", Direction.FORWARDS);
+        assertNotNull("Testing that a second batch waits on the first", pending);
+        WikiRetriever.completeFetch("Apple", Direction.FORWARDS, new String[]{"Fruit"});
+        assertEquals("Testing that waiting batches get the links", "Fruit", pending.get()[0]);
+        assertNull("Testing that a completed fetch is no longer in flight", WikiRetriever.claimFetch("Apple", Direction.FORWARDS));
+
+        pending = WikiRetriever.claimFetch("Apple", Direction.BACKWARDS);
+        WikiRetriever.abandonFetch("Apple", Direction.BACKWARDS);
+        assertNull("Testing that an abandoned fetch hands out no links", pending.get());
+        WikiRetriever.abandonFetch("Apple", Direction.FORWARDS);
+        assertEquals("Testing that no claims are left behind", 0, WikiRetriever.getNumInFlightFetches());
+    }
+
+    @Test
+    public void testBatchWaitsOnInFlightFetchAndRefills() throws Exception {
+        GatedLinkSource gatedLinkSource = new GatedLinkSource(graph);
+        WikiRetriever.setTransport(gatedLinkSource);
+        // a destination neither source links to, so that neither crawl stops before its fetches complete
+        Crawler first = new Crawler(crawlOptions("Page 1", "Page 19999"));
+        Crawler second = new Crawler(crawlOptions("Page 3", "Page 19999"));
+
+        // the first crawl's request for Page 1 is held until the second crawl has asked for it too
+        Thread firstThread = new Thread(() -> first.findNextLinks(first.getCrawlerState().getNextBatchToVisit(Direction.FORWARDS), Direction.FORWARDS));
+        firstThread.start();
+        gatedLinkSource.firstRequest.await();
+        HashMap<String, WebNode> batch = new HashMap<String, WebNode>();
+        batch.put("Page 1", new WebNode("Page 1", null, Direction.FORWARDS, 0));
+        long suppressedBefore = Metrics.suppressedFetches.get();
+        Thread secondThread = new Thread(() -> second.findNextLinks(batch, Direction.FORWARDS));
+        secondThread.start();
+        gatedLinkSource.secondRequest.await();
+        gatedLinkSource.gate.countDown();
+        firstThread.join(10000);
+        secondThread.join(10000);
+
+        assertEquals("Testing that Page 1 is fetched once", Arrays.asList("Page 1", "Page 3"), gatedLinkSource.requestedTitles);
+        assertEquals("Testing that the duplicate fetch is counted", suppressedBefore + 1, Metrics.suppressedFetches.get());
+        String link = graph.getTitle(graph.getLink(graph.getId("Page 1"), Direction.FORWARDS, 0));
+        assertTrue("Testing that the waiting batch expands the other batch's links", second.getCrawlerState().getVisitedForwards().containsKey(link));
+        assertEquals("Testing that no claims are left behind", 0, WikiRetriever.getNumInFlightFetches());
+    }
+
+    @Test
+    public void testConcurrentCrawlsShareFetches() throws Exception {
+        WikiRetriever.setTransport(new MockLinkSource(graph, 30));
+        long suppressedBefore = Metrics.suppressedFetches.get();
+        int numCrawls = 6;
+        ExecutorService executor = Executors.newFixedThreadPool(numCrawls);
+        try {
+            List<Future<CrawlerResult>> results = new ArrayList<Future<CrawlerResult>>();
+            for (int i = 0; i < numCrawls; i++) {
+                results.add(executor.submit(() -> runCrawl(crawlOptions("Page 12345", "Page 777"))));
+            }
+            for (Future<CrawlerResult> result : results) {
+                assertTrue("Testing that every crawl finds a path", result.get().foundPath());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue("Testing that crawls waited on each other's fetches", Metrics.suppressedFetches.get() > suppressedBefore);
+        // batches still running when their crawl returns give up their claims as they finish
+        awaitNoFetchesInFlight();
+        assertEquals("Testing that no claims are left behind", 0, WikiRetriever.getNumInFlightFetches());
+    }
+
+    private static void awaitNoFetchesInFlight() throws InterruptedException {
+        for (int i = 0; i < 200 && WikiRetriever.getNumInFlightFetches() > 0; i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    // holds the first request until released, and records the titles of every request
+    private static class GatedLinkSource extends MockLinkSource {
+        private final CountDownLatch firstRequest = new CountDownLatch(1);
+        private final CountDownLatch secondRequest = new CountDownLatch(1);
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private final List<String> requestedTitles = new CopyOnWriteArrayList<String>();
+
+        GatedLinkSource(LinkGraph graph) {
+            super(graph);
+        }
+
+        @Override
+        protected String respond(HttpUrl url) {
+            if (url.queryParameter("plcontinue") == null) {
+                requestedTitles.add(url.queryParameter("titles"));
+            }
+            if (requestedTitles.size() == 1) {
+                firstRequest.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            } else {
+                secondRequest.countDown();
+            }
+            return super.respond(url);
+        }
+    }
+}
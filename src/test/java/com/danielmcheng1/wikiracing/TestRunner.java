@@ -8,6 +8,29 @@ public class TestRunner {
     public static void main(String[] args) {
         runOneSuite(WikiRetrieverTest.class, "unit tests for WikiRetriever");
         runOneSuite(CrawlTest.class, "unit tests for crawler");
+        runOneSuite(SingleFlightTest.class, "unit tests for sharing in-flight fetches");
+        runOneSuite(TitleCacheTest.class, "unit tests for title validation");
+        runOneSuite(HedgingTransportTest.class, "unit tests for hedged requests");
+        runOneSuite(OkHttpTransportTest.class, "tests for the Wiki API's HTTP client against an HTTPS stand-in");
+        runOneSuite(LinkCacheTest.class, "unit tests for link cache");
+        runOneSuite(PathStoreTest.class, "unit tests for path store");
+        runOneSuite(HistogramTest.class, "unit tests for metrics histograms");
+        runOneSuite(CrawlTraceTest.class, "unit tests for crawl traces");
+        runOneSuite(MockLinkSourceTest.class, "offline tests against the mock link source");
+        runOneSuite(TrafficArchiveTest.class, "unit tests for recording and replaying traffic");
+        runOneSuite(LandmarkIndexTest.class, "unit tests for the landmark index");
+        runOneSuite(HubIndexTest.class, "unit tests for the hub index");
+        runOneSuite(NodeScorerTest.class, "unit tests for best-first scoring");
+        runOneSuite(GraphExporterTest.class, "unit tests for crawl graph export");
+        runOneSuite(LiveVisualizerTest.class, "unit tests for live visualization");
+        runOneSuite(AutotunerTest.class, "unit tests for crawler settings and autotuning");
+        runOneSuite(ParallelBfsTest.class, "unit tests for the offline parallel BFS");
+        runOneSuite(PartitionedCrawlTest.class, "tests for races partitioned across worker JVMs");
+        runOneSuite(SharedCrawlerStateTest.class, "tests for crawl state on a state server");
+        runOneSuite(CompressedLinkGraphTest.class, "unit tests for the compressed link graph");
+        runOneSuite(ChangeLogUpdaterTest.class, "unit tests for change log updates");
+        runOneSuite(LoadTesterTest.class, "unit tests for the load tester");
+        runOneSuite(WarmStartTest.class, "unit tests for warm start snapshots");
         runOneSuite(CrawlEndToEndTest.class, "end to end tests for crawler");
 
     }
@@ -0,0 +1,119 @@
+package com.danielmcheng1.wikiracing;
+
+import okhttp3.HttpUrl;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TitleCacheTest extends MockGraphTestCase {
+    private TitleCache liveTitleCache;
+    private CountingLinkSource countingLinkSource;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        liveTitleCache = TitleCache.getShared();
+        TitleCache.setShared(new TitleCache(TitleCache.defaultMaxTitles, TitleCache.defaultMissingTtlMillis));
+        countingLinkSource = new CountingLinkSource(graph);
+        WikiRetriever.setTransport(countingLinkSource);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        TitleCache.setShared(liveTitleCache);
+    }
+
+    @Test
+    public void testCrawlValidatesTitlesInItsOwnRequests() {
+        CrawlerResult result = runCrawl(crawlOptions("Page 12345", "Page 777"));
+        assertTrue("Testing that the crawl finds a path", result.foundPath());
+        assertEquals("Testing that the source is known to exist", Boolean.TRUE, TitleCache.getShared().isValid("Page 12345"));
+        assertEquals("Testing that the destination is known to exist", Boolean.TRUE, TitleCache.getShared().isValid("Page 777"));
+    }
+
+    @Test
+    public void testMissingTitlesFailFast() {
+        long rejectionsBefore = Metrics.titleCacheRejections.get();
+        CrawlerResult result = runCrawl(crawlOptions("Page 12345", "Page 123456"));
+        assertFalse("Testing that a missing destination finds no path", result.foundPath());
+        assertEquals("Testing that the missing title is reported", Util.getMissingTitleMessage("Page 123456"), result.getInfo());
+        assertEquals("Testing that the missing title is remembered", Boolean.FALSE, TitleCache.getShared().isValid("Page 123456"));
+
+        countingLinkSource.numLinkRequests.set(0);
+        result = runCrawl(crawlOptions("Page 777", "Page 123456"));
+        assertEquals("Testing that the missing title is reported again", Util.getMissingTitleMessage("Page 123456"), result.getInfo());
+        assertEquals("Testing that a known missing title needs no API call", 0, countingLinkSource.numLinkRequests.get());
+        assertEquals("Testing that the rejection is counted", rejectionsBefore + 1, Metrics.titleCacheRejections.get());
+    }
+
+    @Test
+    public void testRaceToItselfChecksTheTitle() {
+        CrawlerResult result = runCrawl(crawlOptions("No such page", "No such page"));
+        assertFalse("Testing that a race from a missing page to itself finds no path", result.foundPath());
+        assertEquals("Testing that the missing title is reported", Util.getMissingTitleMessage("No such page"), result.getInfo());
+
+        result = runCrawl(crawlOptions("Page 777", "Page 777"));
+        assertEquals("Testing that a race from a page to itself is the page alone", Arrays.asList("Page 777"), result.getPath());
+        assertTrue("Testing that the page is checked with the Wiki API", result.getNumApiCalls() > 0);
+        countingLinkSource.numLinkRequests.set(0);
+        result = runCrawl(crawlOptions("Page 777", "Page 777"));
+        assertEquals("Testing that the page is found again", Arrays.asList("Page 777"), result.getPath());
+        assertEquals("Testing that a page known to exist needs no API call", 0, countingLinkSource.numLinkRequests.get());
+    }
+
+    @Test
+    public void testConcurrentRacesLearnTitleIsMissing() throws Exception {
+        countingLinkSource.setLatencyMillis(100);
+        int numCrawls = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(numCrawls);
+        try {
+            List<Future<CrawlerResult>> results = new ArrayList<Future<CrawlerResult>>();
+            for (int i = 0; i < numCrawls; i++) {
+                String sourceTitle = "Page " + (1000 + i);
+                results.add(executor.submit(() -> runCrawl(crawlOptions(sourceTitle, "Page 123456"))));
+            }
+            for (Future<CrawlerResult> result : results) {
+                assertEquals("Testing that every crawl learns the destination is missing", Util.getMissingTitleMessage("Page 123456"), result.get().getInfo());
+                assertTrue("Testing that no crawl fetches the missing page again after another has", result.get().getRuntimeMillis() < 1000);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue("Testing that the missing page is not refetched by each crawl in turn", countingLinkSource.numLinkRequests.get() <= 2 * numCrawls);
+    }
+
+    @Test
+    public void testMissingTitlesExpire() throws InterruptedException {
+        TitleCache titleCache = new TitleCache(2, 20);
+        titleCache.markMissing("Page 1");
+        titleCache.markValid("Page 2");
+        assertEquals("Testing that a missing title is known", Boolean.FALSE, titleCache.isValid("Page 1"));
+        Thread.sleep(50);
+        assertNull("Testing that a missing title is forgotten once it expires", titleCache.isValid("Page 1"));
+        assertEquals("Testing that a valid title does not expire", Boolean.TRUE, titleCache.isValid("Page 2"));
+        titleCache.markValid("Page 3");
+        titleCache.markValid("Page 4");
+        assertNull("Testing that the least recently used title is evicted", titleCache.isValid("Page 2"));
+    }
+
+    private static class CountingLinkSource extends MockLinkSource {
+        private final AtomicInteger numLinkRequests = new AtomicInteger();
+
+        CountingLinkSource(LinkGraph graph) {
+            super(graph);
+        }
+
+        @Override
+        protected String respond(HttpUrl url) {
+            numLinkRequests.incrementAndGet();
+            return super.respond(url);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.danielmcheng1.wikiracing;
+
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class TrafficArchiveTest extends MockGraphTestCase {
+    private MockLinkSource mockLinkSource;
+    private File archiveFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mockLinkSource = new MockLinkSource(graph);
+        archiveFile = File.createTempFile("wikiracer", ".wra");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        archiveFile.delete();
+    }
+
+    @Test
+    public void testReplayReturnsRecordedBytes() throws IOException {
+        RecordingTransport recorder = new RecordingTransport(mockLinkSource, archiveFile.getPath());
+        byte[] recorded = recorder.fetch(WikiRetriever.buildWikiURL("Page 3|Page 0", Direction.BACKWARDS, null), "test");
+        recorder.close();
+
+        ReplayTransport replay = new ReplayTransport(archiveFile.getPath());
+        // the same batch of titles in a different order is the same request
+        byte[] replayed = replay.fetch(WikiRetriever.buildWikiURL("Page 0|Page 3", Direction.BACKWARDS, null), "test");
+        replay.close();
+        assertTrue("Testing that replay returns exactly the recorded response", Arrays.equals(recorded, replayed));
+        assertEquals("Testing that the request was served from the archive", 1, replay.getNumReplayed());
+    }
+
+    @Test
+    public void testReplayWithoutIndex() throws IOException {
+        // never closed, as if the recording JVM had been killed
+        RecordingTransport recorder = new RecordingTransport(mockLinkSource, archiveFile.getPath());
+        recorder.fetch(WikiRetriever.buildWikiURL("Page 1", Direction.FORWARDS, null), "test");
+        recorder.fetch(WikiRetriever.buildWikiURL("Page 2", Direction.FORWARDS, null), "test");
+
+        TrafficArchive archive = new TrafficArchive(archiveFile.getPath());
+        assertEquals("Testing that records are found by scanning when the index is missing", 2, archive.getNumRecords());
+        archive.close();
+        recorder.close();
+    }
+
+    @Test
+    public void testCrawlReplaysOffline() throws IOException {
+        RecordingTransport recorder = new RecordingTransport(mockLinkSource, archiveFile.getPath());
+        WikiRetriever.setTransport(recorder);
+        runCrawl(crawlOptions("Page 12345", "Page 777"));
+        recorder.close();
+
+        // the rerun may batch titles differently, so some requests have to be assembled from the recorded links
+        ReplayTransport replay = new ReplayTransport(archiveFile.getPath(), "fixed:1", 42);
+        WikiRetriever.setTransport(replay);
+        ArrayList<String> path = runCrawl(crawlOptions("Page 12345", "Page 777")).getPath();
+        JsonObject missing = WikiRetriever.getMissingInvalidPages(WikiRetriever.getWikiResponse("Page 12345", Direction.FORWARDS, null));
+        replay.close();
+        assertEquals("Testing that recorded pages are not reported missing", 0, missing.size());
+        assertNotNull("Testing that the crawler finds a path on replayed traffic", path);
+        assertPathFollowsLinks(path);
+    }
+
+    @Test
+    public void testInvalidLatency() throws IOException {
+        new RecordingTransport(mockLinkSource, archiveFile.getPath()).close();
+        ReplayTransport replay = new ReplayTransport(archiveFile.getPath());
+        try {
+            replay.setLatency("lognormal:50");
+            fail("Testing that a lognormal latency without a sigma is rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        } finally {
+            replay.close();
+        }
+    }
+}
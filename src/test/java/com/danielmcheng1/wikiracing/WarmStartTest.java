@@ -0,0 +1,125 @@
+package com.danielmcheng1.wikiracing;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class WarmStartTest extends TestCase {
+    private WikiTransport liveTransport;
+    private File dir;
+
+    @Override
+    protected void setUp() throws IOException {
+        liveTransport = WikiRetriever.getTransport();
+        dir = Files.createTempDirectory("warmstart").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+        WikiRetriever.setTransport(liveTransport);
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws IOException {
+        LinkCache linkCache = new LinkCache(1000);
+        linkCache.putLinks("Apple", Direction.FORWARDS, new String[]{"Fruit", "Malus", "Pomme d'api"});
+        linkCache.putLinks("Pear", Direction.BACKWARDS, new String[]{"Fruit", "Pyrus"});
+        linkCache.putLinks("Empty", Direction.FORWARDS, new String[0]);
+        linkCache.putRedirect("Apples", "Apple");
+        PathStore pathStore = new PathStore(1000);
+        pathStore.putPath(Arrays.asList("Apple", "Fruit", "Pear"));
+        WarmStart.save(dir.getPath(), linkCache, pathStore);
+
+        LinkCache restoredCache = new LinkCache(1000);
+        PathStore restoredStore = new PathStore(1000);
+        assertEquals("Testing that every page's links are mapped back", 3, WarmStart.restore(dir.getPath(), restoredCache, restoredStore));
+        assertEquals("Testing that nothing is read until it is looked up", 0, restoredCache.getNumPages());
+        assertTrue("Testing that links come back as they were", Arrays.equals(new String[]{"Fruit", "Malus", "Pomme d'api"},
+                restoredCache.getLinks("Apple", Direction.FORWARDS)));
+        assertEquals("Testing that pages with no links come back", 0, restoredCache.getLinks("Empty", Direction.FORWARDS).length);
+        assertNull("Testing that links are kept by direction", restoredCache.getLinks("Pear", Direction.FORWARDS));
+        assertEquals("Testing that snapshot hits are counted", 2, restoredCache.getSnapshotHits());
+        assertEquals("Testing that pages looked up are brought into the cache", 2, restoredCache.getNumPages());
+        assertEquals("Testing that redirects come back", "Apple", restoredCache.resolveTitle("Apples"));
+        assertEquals("Testing that the path store is restored when a crawl uses it", "Fruit",
+                restoredStore.walk("Pear", Direction.BACKWARDS, 10).get("Apple"));
+
+        // a page changed since the snapshot is never read from it again
+        restoredCache.invalidate("Apple", Direction.FORWARDS);
+        assertNull("Testing that an invalidated page is not brought back from the snapshot", restoredCache.getLinks("Apple", Direction.FORWARDS));
+        restoredCache.removeRedirect("Apples");
+        assertEquals("Testing that a removed redirect is not brought back from the snapshot", "Apples", restoredCache.resolveTitle("Apples"));
+
+        // pages the restarted run never looked up are carried over into its snapshot, and dropped ones are not
+        WarmStart.save(dir.getPath(), restoredCache, restoredStore);
+        LinkCache nextCache = new LinkCache(1000);
+        WarmStart.restore(dir.getPath(), nextCache, new PathStore(1000));
+        assertNotNull("Testing that a page not looked up survives another restart", nextCache.getLinks("Pear", Direction.BACKWARDS));
+        assertNull("Testing that an invalidated page does not survive a restart", nextCache.getLinks("Apple", Direction.FORWARDS));
+    }
+
+    @Test
+    public void testRecentlyUsedPagesSurviveRestarts() throws IOException {
+        LinkCache linkCache = new LinkCache(1000);
+        linkCache.putLinks("Zebra", Direction.FORWARDS, new String[]{"Africa", "Equus", "Stripe"});
+        linkCache.putLinks("Aardvark", Direction.FORWARDS, new String[]{"Africa", "Orycteropus", "Termite"});
+        linkCache.getLinks("Zebra", Direction.FORWARDS);
+        WarmStart.save(dir.getPath(), linkCache, new PathStore(1000));
+
+        // a restart that looks nothing up has room to carry over only one of the two pages
+        LinkCache restartedCache = new LinkCache(6);
+        WarmStart.restore(dir.getPath(), restartedCache, new PathStore(1000));
+        WarmStart.save(dir.getPath(), restartedCache, new PathStore(1000));
+        LinkCache nextCache = new LinkCache(1000);
+        WarmStart.restore(dir.getPath(), nextCache, new PathStore(1000));
+        assertNotNull("Testing that the page used last is carried over", nextCache.getLinks("Zebra", Direction.FORWARDS));
+        assertNull("Testing that the page used longest ago is the one dropped", nextCache.getLinks("Aardvark", Direction.FORWARDS));
+    }
+
+    @Test
+    public void testRestartedCrawlIsServedFromSnapshot() throws IOException {
+        LinkGraph graph = LinkGraph.generate(20000, 10, 42);
+        WikiRetriever.setTransport(new MockLinkSource(graph));
+        LinkCache linkCache = new LinkCache(LinkCache.defaultMaxLinks);
+        PathStore pathStore = new PathStore(PathStore.defaultMaxLinks);
+        CrawlerController coldController = new CrawlerController(new CrawlOptions("Page 123", "Page 4567").timeoutSeconds((long) 15)
+                .linkCache(linkCache).pathStore(pathStore));
+        coldController.setPrintProgress(false);
+        coldController.runCrawl();
+        assertTrue("Testing that the cold crawl finds a path", coldController.getResult().foundPath());
+        assertTrue("Testing that the cold crawl calls the Wiki API", coldController.getResult().getNumApiCalls() > 0);
+        WarmStart.save(dir.getPath(), linkCache, pathStore);
+
+        // a fresh cache and store stand in for a restarted JVM
+        LinkCache restoredCache = new LinkCache(LinkCache.defaultMaxLinks);
+        PathStore restoredStore = new PathStore(PathStore.defaultMaxLinks);
+        WarmStart.restore(dir.getPath(), restoredCache, restoredStore);
+        CrawlerController warmController = new CrawlerController(new CrawlOptions("Page 123", "Page 4567").timeoutSeconds((long) 15)
+                .linkCache(restoredCache).pathStore(restoredStore));
+        warmController.setPrintProgress(false);
+        warmController.runCrawl();
+        assertTrue("Testing that the warm crawl finds a path", warmController.getResult().foundPath());
+        assertEquals("Testing that the warm crawl finds the same path", coldController.getResult().getPath(), warmController.getResult().getPath());
+        assertEquals("Testing that the warm crawl needs no Wiki API calls", 0, warmController.getResult().getNumApiCalls());
+    }
+
+    @Test
+    public void testCorruptSnapshotIsRejected() throws IOException {
+        File file = new File(dir, WarmStart.linksForwardsFileName);
+        Files.write(file.toPath(), new byte[]{1, 2, 3});
+        try {
+            WarmStart.restore(dir.getPath(), new LinkCache(1000), new PathStore(1000));
+            fail("Testing that a file that is not a snapshot is rejected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}